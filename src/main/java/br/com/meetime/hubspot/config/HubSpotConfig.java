@@ -1,12 +1,25 @@
 package br.com.meetime.hubspot.config;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -23,6 +36,26 @@ public class HubSpotConfig {
     private OAuthConfig oauth;
     @NotNull
     private WebhookConfig webhook;
+    @NotNull
+    private HydrationConfig hydration = new HydrationConfig();
+    @NotNull
+    private TokenStoreConfig tokenStore = new TokenStoreConfig();
+    @NotNull
+    private ContactsConfig contacts = new ContactsConfig();
+    @NotNull
+    private IdempotencyConfig idempotency = new IdempotencyConfig();
+    @NotNull
+    private RateGovernorConfig rateGovernor = new RateGovernorConfig();
+    @NotNull
+    private SchedulerConfig scheduler = new SchedulerConfig();
+    @NotNull
+    private PortalLimitsConfig portalLimits = new PortalLimitsConfig();
+    @NotNull
+    private ResilienceConfig resilience = new ResilienceConfig();
+    @NotNull
+    private HttpClientConfig httpClient = new HttpClientConfig();
+    @NotNull
+    private AdminConfig admin = new AdminConfig();
 
     @Getter
     @Setter
@@ -46,6 +79,10 @@ public class HubSpotConfig {
         private String tokenUri;
         @NotBlank
         private String scopes;
+        @NotNull
+        private ProactiveRefreshConfig proactiveRefresh = new ProactiveRefreshConfig();
+        @NotNull
+        private CoordinationConfig coordination = new CoordinationConfig();
 
         public Set<String> getScopeSet() {
             return Set.of(scopes.split("\\s+"));
@@ -56,11 +93,383 @@ public class HubSpotConfig {
         }
     }
 
+    @Getter
+    @Setter
+    public static class ProactiveRefreshConfig {
+        private boolean enabled = true;
+        // Point of the token lifetime at which it is refreshed in the background.
+        @DecimalMin("0.1")
+        @DecimalMax("0.95")
+        private double lifetimeFraction = 0.75;
+        // Up to this fraction of the lifetime is randomly taken off the refresh time, so portals authorized together do not refresh together.
+        @DecimalMin("0.0")
+        @DecimalMax("0.5")
+        private double jitter = 0.05;
+        @NotNull
+        private Duration retryInitialBackoff = Duration.ofSeconds(2);
+        @NotNull
+        private Duration retryMaxBackoff = Duration.ofMinutes(2);
+        @PositiveOrZero
+        private int retryMaxAttempts = 6;
+    }
+
+    @Getter
+    @Setter
+    public static class CoordinationConfig {
+        @NotNull
+        private CoordinationType type = CoordinationType.MEMORY;
+        // Lease files of the FILE coordinator; must be on a volume every instance mounts.
+        @NotBlank
+        private String directory = "data/oauth/leases";
+        // A lease not released within this time (e.g. its holder died) can be taken by another instance.
+        @NotNull
+        private Duration leaseTtl = Duration.ofSeconds(30);
+        // How often an instance waiting on another one's refresh checks the lease again.
+        @NotNull
+        private Duration pollInterval = Duration.ofMillis(250);
+        @NotNull
+        private Duration maxWait = Duration.ofSeconds(45);
+    }
+
+    /**
+     * How instances agree on who refreshes a portal's token. MEMORY only coordinates callers inside
+     * this instance; FILE takes leases through lock files on a shared directory.
+     */
+    public enum CoordinationType {
+        MEMORY,
+        FILE
+    }
+
+    @Getter
+    @Setter
+    public static class TokenStoreConfig {
+        @NotNull
+        private TokenStoreType type = TokenStoreType.MEMORY;
+        @NotBlank
+        private String file = "data/oauth/tokens.dat";
+        // Base64 AES key (16, 24 or 32 bytes); required by the FILE store and the FILE coordinator.
+        private String encryptionKey;
+    }
+
+    /**
+     * Where OAuth tokens live. MEMORY loses them on restart; FILE keeps an encrypted copy on disk
+     * and loads it on startup.
+     */
+    public enum TokenStoreType {
+        MEMORY,
+        FILE
+    }
+
+    @Getter
+    @Setter
+    public static class ContactsConfig {
+        @NotNull
+        private BatchCreateConfig batchCreate = new BatchCreateConfig();
+        @NotNull
+        private BulkImportConfig bulkImport = new BulkImportConfig();
+        @NotNull
+        private ContactCacheConfig cache = new ContactCacheConfig();
+        @NotNull
+        private ConflictCacheConfig conflictCache = new ConflictCacheConfig();
+    }
+
+    @Getter
+    @Setter
+    public static class BatchCreateConfig {
+        // Off: every contact is its own POST /crm/v3/objects/contacts.
+        private boolean enabled = false;
+        // HubSpot's batch create accepts at most 100 inputs per call.
+        @Positive
+        @Max(100)
+        private int maxBatchSize = 100;
+        @NotNull
+        private Duration maxWait = Duration.ofMillis(20);
+        @Positive
+        private int maxConcurrentBatches = 4;
+        // A creation still unanswered after this fails instead of leaving its caller waiting forever.
+        // Bulk chunks count it from the end of their batch call, after the wait for a permit.
+        @NotNull
+        private Duration timeout = Duration.ofSeconds(60);
+    }
+
+    @Getter
+    @Setter
+    public static class BulkImportConfig {
+        // Rows per batch create call; HubSpot accepts at most 100.
+        @Positive
+        @Max(100)
+        private int chunkSize = 100;
+        // Chunks in flight per import; bounds how many rows an import holds in memory.
+        @Positive
+        private int maxConcurrentChunks = 4;
+        // Finished imports whose status stays pollable; running ones are never dropped.
+        @Positive
+        private int retainedImports = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class ContactCacheConfig {
+        // Bound on the estimated heap taken by cached contacts, not on their count.
+        @NotNull
+        private DataSize maximumWeight = DataSize.ofMegabytes(32);
+        // Webhooks keep entries fresh; the TTL only covers events that never arrive.
+        @NotNull
+        private Duration ttl = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class ConflictCacheConfig {
+        // Normalized emails remembered per portal; each entry is a few dozen bytes.
+        @Positive
+        private long maximumSize = 100_000;
+        // Contact deletions clear entries as their webhooks arrive; the TTL covers missed ones.
+        @NotNull
+        private Duration ttl = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class IdempotencyConfig {
+        // Idempotency keys remembered, each with the response it got.
+        @Positive
+        private long maximumSize = 10_000;
+        // How long a client may keep retrying with the same key.
+        @NotNull
+        private Duration ttl = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class RateGovernorConfig {
+        // Off: hubspotApi keeps the limitForPeriod set under resilience4j.ratelimiter.
+        private boolean enabled = true;
+        // Share of the rate HubSpot grants that we actually use.
+        @DecimalMin("0.1")
+        @DecimalMax("1.0")
+        private double safetyFactor = 0.9;
+        // Below this share of a window left, the rate ramps down linearly towards min-limit-for-period.
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double slowdownThreshold = 0.25;
+        // Below this share of the daily quota left, the rest is spread over the time until the daily reset.
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double dailySlowdownThreshold = 0.1;
+        @Positive
+        private int minLimitForPeriod = 1;
+        // HubSpot resets the daily quota at midnight in the account's time zone.
+        @NotNull
+        private ZoneId dailyResetZone = ZoneOffset.UTC;
+    }
+
+    @Getter
+    @Setter
+    public static class SchedulerConfig {
+        // How long a call may wait for a hubspotApi permit before failing with 429, per priority.
+        // Permits go to the earliest deadline, so bulk work is served once it has waited long enough.
+        @NotNull
+        private Duration interactiveDeadline = Duration.ofSeconds(2);
+        @NotNull
+        private Duration webhookDeadline = Duration.ofSeconds(30);
+        @NotNull
+        private Duration bulkDeadline = Duration.ofMinutes(5);
+        // Calls waiting for a permit; beyond this new calls fail right away.
+        @Positive
+        private int maxQueued = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class PortalLimitsConfig {
+        // Off: portals share the hubspotApi limiter first come, first served.
+        private boolean enabled = true;
+        // A portal with no call for this long stops counting towards the fair share.
+        @NotNull
+        private Duration idleTtl = Duration.ofSeconds(10);
+        // How much of its share a portal that has been quiet may spend at once.
+        @NotNull
+        private Duration burst = Duration.ofSeconds(1);
+        @Positive
+        private int defaultWeight = 1;
+        // Portal id to weight; a portal gets weight / (sum of the active weights) of the app rate.
+        @NotNull
+        private Map<Long, @Positive Integer> weights = new HashMap<>();
+        // How long the rate HubSpot's headers allow a portal holds without a newer response from it.
+        @NotNull
+        private Duration rateCapTtl = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class ResilienceConfig {
+        // Retries after the first attempt; 0 turns retrying off.
+        @PositiveOrZero
+        private int maxRetries = 3;
+        // Decorrelated jitter: each wait is random between base-delay and three times the previous one.
+        @NotNull
+        private Duration baseDelay = Duration.ofMillis(200);
+        @NotNull
+        private Duration maxDelay = Duration.ofSeconds(5);
+        // A Retry-After longer than this is passed on to the caller instead of waited out.
+        @NotNull
+        private Duration maxRetryAfter = Duration.ofSeconds(10);
+        // Retries may add at most this share of the calls made, plus min-retries-per-second.
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double retryBudgetRatio = 0.1;
+        @PositiveOrZero
+        private int minRetriesPerSecond = 3;
+    }
+
+    @Getter
+    @Setter
+    public static class AdminConfig {
+        // HTTP Basic credentials for /admin/**. Without a password the admin endpoints stay closed.
+        @NotBlank
+        private String username = "admin";
+        private String password = "";
+    }
+
+    @Getter
+    @Setter
+    public static class HttpClientConfig {
+        // Connection pool and timeouts of hubSpotWebClient.
+        @NotNull
+        private ConnectionProfile api = new ConnectionProfile();
+        // Connection pool and timeouts of hubSpotOAuthWebClient.
+        @NotNull
+        private ConnectionProfile oauth = new ConnectionProfile();
+    }
+
+    @Getter
+    @Setter
+    public static class ConnectionProfile {
+        @Positive
+        private int maxConnections = 50;
+        // Requests waiting for a pooled connection; beyond this they fail right away.
+        @Positive
+        private int pendingAcquireMaxCount = 500;
+        @NotNull
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        // Below the idle timeout of the load balancers on the way, so the pool closes idle connections first.
+        @NotNull
+        private Duration maxIdleTime = Duration.ofSeconds(20);
+        // Reconnecting now and then follows DNS changes on HubSpot's side.
+        @NotNull
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        // How often idle and expired connections are closed while the pool is not used; 0 only on acquire.
+        @NotNull
+        private Duration evictInBackground = Duration.ofSeconds(30);
+        @NotNull
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        // Longest wait for the response after the request was sent.
+        @NotNull
+        private Duration responseTimeout = Duration.ofSeconds(10);
+        private boolean tcpKeepAlive = true;
+        // Offer HTTP/2 through ALPN, falling back to HTTP/1.1 when the server does not accept it.
+        private boolean http2 = true;
+    }
+
+    @Getter
+    @Setter
+    public static class HydrationConfig {
+        // HubSpot's batch read accepts at most 100 ids per call.
+        @Positive
+        @Max(100)
+        private int maxBatchSize = 100;
+        @NotNull
+        private Duration maxWait = Duration.ofMillis(250);
+        // Batches read at once by each pipeline (interactive, and webhook or bulk).
+        @Positive
+        private int maxConcurrentBatches = 4;
+        // A lookup still unanswered after this fails, so a stuck batch cannot hold a webhook lane forever.
+        @NotNull
+        private Duration timeout = Duration.ofSeconds(60);
+        @NotEmpty
+        private List<String> properties = List.of("email", "firstname", "lastname", "phone", "company");
+    }
+
     @Getter
     @Setter
     public static class WebhookConfig {
         @NotBlank
         private String clientSecret;
+        @NotNull
+        private QueueConfig queue = new QueueConfig();
+        @NotNull
+        private JournalConfig journal = new JournalConfig();
+        @NotNull
+        private DedupConfig dedup = new DedupConfig();
+        @NotNull
+        private CoalescingConfig coalescing = new CoalescingConfig();
+    }
+
+    @Getter
+    @Setter
+    public static class QueueConfig {
+        @Positive
+        private int lanes = Runtime.getRuntime().availableProcessors();
+        @Positive
+        private int laneCapacity = 2_500;
+        // Object changes (subscription type and property) per lane whose latest occurredAt is remembered to drop out-of-order events.
+        @Positive
+        private int trackedObjectsPerLane = 10_000;
+        // Work items per lane whose handlers may be waiting on HubSpot at the same time.
+        @Positive
+        private int maxInFlightPerLane = 256;
+        @NotNull
+        private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+    }
+
+    @Getter
+    @Setter
+    public static class JournalConfig {
+        private boolean enabled = true;
+        @NotBlank
+        private String directory = "data/webhook-journal";
+        @NotNull
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        @Positive
+        private int maxSegments = 16;
+        private boolean forceOnAppend = false;
+        // Unfinished batches older than this no longer keep their segment from being deleted; they are logged and dropped.
+        @NotNull
+        private Duration unfinishedMaxAge = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class DedupConfig {
+        private boolean enabled = true;
+        // Upper bound on remembered (portalId, eventId) pairs; memory is allocated up front for it.
+        @Positive
+        private int maxEntries = 1_000_000;
+        @NotNull
+        private Duration retention = Duration.ofHours(24);
+        @Positive
+        private int stripes = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class CoalescingConfig {
+        // Events for the same object arriving within this window are merged into one work item; zero disables merging.
+        @NotNull
+        private Duration window = Duration.ofMillis(500);
+        @Positive
+        private int maxPendingObjectsPerLane = 10_000;
+    }
+
+    /**
+     * What to do with a webhook batch that does not fit in the ingestion queue.
+     * REJECT answers 503 so HubSpot redelivers the whole batch later; DROP accepts
+     * the batch and discards the events that did not fit.
+     */
+    public enum OverflowPolicy {
+        REJECT,
+        DROP
     }
 
 
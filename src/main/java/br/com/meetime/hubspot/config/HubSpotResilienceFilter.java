@@ -0,0 +1,259 @@
+package br.com.meetime.hubspot.config;
+
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Retries HubSpot calls that failed for reasons that may pass, behind a circuit breaker. A {@code 429} is
+ * retried for any request, since HubSpot did not process it. A {@code 500}, {@code 502}, {@code 503},
+ * {@code 504} or an I/O error is retried only for requests that are safe to send twice: idempotent methods
+ * and requests marked with {@link #RETRYABLE_ATTRIBUTE}. A connection that could not be opened is
+ * retried for any request, since nothing was sent.
+ * <p>
+ * The wait before a retry uses decorrelated jitter (random between {@code base-delay} and three times the
+ * previous wait, capped at {@code max-delay}), and is never shorter than HubSpot's {@code Retry-After}.
+ * A {@code Retry-After} longer than {@code max-retry-after} is passed on instead. Each retry also takes a
+ * permit through {@code retryPermit}, since it is another call against the rate limit. A retry budget
+ * stops retries from multiplying the load during an outage: retries may add up to {@code retry-budget-ratio}
+ * of the calls made, plus {@code min-retries-per-second}.
+ * <p>
+ * Every attempt goes through the client's Resilience4j circuit breaker, which counts {@code 5xx} and I/O
+ * errors as failures. While it is open, calls fail at once with {@link CallNotPermittedException}.
+ */
+public class HubSpotResilienceFilter implements ExchangeFilterFunction {
+
+    public static final String RETRYABLE_ATTRIBUTE = HubSpotResilienceFilter.class.getName() + ".retryable";
+
+    private static final Logger log = LoggerFactory.getLogger(HubSpotResilienceFilter.class);
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS =
+            Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final Set<Integer> RETRYABLE_SERVER_ERRORS = Set.of(500, 502, 503, 504);
+
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final HubSpotConfig.ResilienceConfig resilienceConfig;
+    private final Function<ClientRequest, Mono<Void>> retryPermit;
+    private final RetryBudget retryBudget;
+    private final Counter statusRetries;
+    private final Counter transportRetries;
+    private final Counter deniedRetries;
+
+    public HubSpotResilienceFilter(String name,
+                                   CircuitBreakerRegistry circuitBreakerRegistry,
+                                   HubSpotConfig.ResilienceConfig resilienceConfig,
+                                   MeterRegistry meterRegistry,
+                                   Function<ClientRequest, Mono<Void>> retryPermit) {
+        this.name = name;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+        this.resilienceConfig = resilienceConfig;
+        this.retryPermit = retryPermit;
+        this.retryBudget = new RetryBudget(resilienceConfig.getRetryBudgetRatio(), resilienceConfig.getMinRetriesPerSecond());
+        this.statusRetries = retries(meterRegistry, "status");
+        this.transportRetries = retries(meterRegistry, "transport");
+        this.deniedRetries = Counter.builder("hubspot.api.retries.denied")
+                .description("Retries not made because the retry budget was spent")
+                .tag("client", name)
+                .register(meterRegistry);
+    }
+
+    private Counter retries(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("hubspot.api.retries")
+                .description("HubSpot calls sent again after a failed attempt")
+                .tag("client", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        retryBudget.deposit();
+        return attempt(request, next, 0, 0);
+    }
+
+    // Materialized so a retry's own outcome is not judged again by this attempt.
+    private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next, int retries, long previousDelayNanos) {
+        return guarded(request, next)
+                .materialize()
+                .flatMap(signal -> signal.isOnNext()
+                        ? onResponse(request, next, signal.get(), retries, previousDelayNanos)
+                        : onError(request, next, signal, retries, previousDelayNanos));
+    }
+
+    private Mono<ClientResponse> guarded(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                log.warn("HUBSPOT CIRCUIT {} IS OPEN. FAILING {} {} WITHOUT CALLING HUBSPOT.", name, request.method(), request.url().getPath());
+                return Mono.error(CallNotPermittedException.createCallNotPermittedException(circuitBreaker));
+            }
+            long startNanos = System.nanoTime();
+            return next.exchange(request)
+                    .doOnNext(response -> {
+                        long elapsedNanos = System.nanoTime() - startNanos;
+                        if (response.statusCode().is5xxServerError()) {
+                            circuitBreaker.onError(elapsedNanos, TimeUnit.NANOSECONDS, new HubSpotApiException(
+                                    "HUBSPOT ANSWERED " + response.statusCode().value(), response.statusCode()));
+                        } else {
+                            circuitBreaker.onSuccess(elapsedNanos, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(error -> circuitBreaker.onError(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS, error))
+                    .doOnCancel(circuitBreaker::releasePermission);
+        });
+    }
+
+    private Mono<ClientResponse> onResponse(ClientRequest request, ExchangeFunction next, ClientResponse response,
+                                            int retries, long previousDelayNanos) {
+        HttpStatusCode status = response.statusCode();
+        boolean retryable = status.value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                || RETRYABLE_SERVER_ERRORS.contains(status.value()) && isSafeToRepeat(request);
+        if (!retryable || retries >= resilienceConfig.getMaxRetries()) {
+            return Mono.just(response);
+        }
+        Duration retryAfter = retryAfter(response.headers().asHttpHeaders());
+        if (retryAfter != null && retryAfter.compareTo(resilienceConfig.getMaxRetryAfter()) > 0) {
+            log.warn("HUBSPOT ASKED TO RETRY {} {} AFTER {}. NOT WAITING THAT LONG.", request.method(), request.url().getPath(), retryAfter);
+            return Mono.just(response);
+        }
+        if (!retryBudget.tryWithdraw()) {
+            deniedRetries.increment();
+            log.warn("RETRY BUDGET OF {} IS SPENT. PASSING ON {} FOR {} {}.", name, status.value(), request.method(), request.url().getPath());
+            return Mono.just(response);
+        }
+        long delayNanos = Math.max(nextDelayNanos(previousDelayNanos), retryAfter == null ? 0 : retryAfter.toNanos());
+        statusRetries.increment();
+        log.warn("HUBSPOT ANSWERED {} TO {} {}. RETRY {} OF {} IN {}MS.", status.value(), request.method(), request.url().getPath(),
+                retries + 1, resilienceConfig.getMaxRetries(), TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        return response.releaseBody().then(retry(request, next, retries, delayNanos));
+    }
+
+    private Mono<ClientResponse> onError(ClientRequest request, ExchangeFunction next, Signal<ClientResponse> signal,
+                                         int retries, long previousDelayNanos) {
+        Throwable error = signal.getThrowable();
+        if (error == null) {
+            return Mono.empty();
+        }
+        boolean retryable = error instanceof WebClientRequestException
+                && (error.getCause() instanceof ConnectException || isSafeToRepeat(request));
+        if (!retryable || retries >= resilienceConfig.getMaxRetries()) {
+            return Mono.error(error);
+        }
+        if (!retryBudget.tryWithdraw()) {
+            deniedRetries.increment();
+            log.warn("RETRY BUDGET OF {} IS SPENT. FAILING {} {}: {}", name, request.method(), request.url().getPath(), error.getMessage());
+            return Mono.error(error);
+        }
+        long delayNanos = nextDelayNanos(previousDelayNanos);
+        transportRetries.increment();
+        log.warn("CALL TO {} {} FAILED: {}. RETRY {} OF {} IN {}MS.", request.method(), request.url().getPath(), error.getMessage(),
+                retries + 1, resilienceConfig.getMaxRetries(), TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        return retry(request, next, retries, delayNanos);
+    }
+
+    private Mono<ClientResponse> retry(ClientRequest request, ExchangeFunction next, int retries, long delayNanos) {
+        return Mono.delay(Duration.ofNanos(delayNanos))
+                .then(retryPermit.apply(request))
+                .then(Mono.defer(() -> attempt(request, next, retries + 1, delayNanos)));
+    }
+
+    private static boolean isSafeToRepeat(ClientRequest request) {
+        return IDEMPOTENT_METHODS.contains(request.method())
+                || Boolean.TRUE.equals(request.attribute(RETRYABLE_ATTRIBUTE).orElse(null));
+    }
+
+    private long nextDelayNanos(long previousDelayNanos) {
+        long baseNanos = resilienceConfig.getBaseDelay().toNanos();
+        long upperNanos = Math.max(baseNanos, previousDelayNanos * 3);
+        long delayNanos = upperNanos > baseNanos ? ThreadLocalRandom.current().nextLong(baseNanos, upperNanos + 1) : baseNanos;
+        return Math.min(resilienceConfig.getMaxDelay().toNanos(), delayNanos);
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date.
+    private static Duration retryAfter(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Duration untilDate = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException notDate) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Every call deposits {@code ratio} of a retry, up to what the last thousand calls would earn, and
+     * each retry spends one. A floor of {@code minPerSecond} retries keeps retrying possible when traffic
+     * is too low to earn any.
+     */
+    private static final class RetryBudget {
+
+        private static final long ONE_SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final double ratio;
+        private final double maxBalance;
+        private final int minPerSecond;
+        private double balance;
+        private long floorWindowStartNanos = System.nanoTime();
+        private int floorUsed;
+
+        private RetryBudget(double ratio, int minPerSecond) {
+            this.ratio = ratio;
+            this.maxBalance = ratio * 1000;
+            this.minPerSecond = minPerSecond;
+        }
+
+        private synchronized void deposit() {
+            balance = Math.min(maxBalance, balance + ratio);
+        }
+
+        private synchronized boolean tryWithdraw() {
+            if (balance >= 1) {
+                balance -= 1;
+                return true;
+            }
+            long nowNanos = System.nanoTime();
+            if (nowNanos - floorWindowStartNanos >= ONE_SECOND_NANOS) {
+                floorWindowStartNanos = nowNanos;
+                floorUsed = 0;
+            }
+            if (floorUsed < minPerSecond) {
+                floorUsed++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
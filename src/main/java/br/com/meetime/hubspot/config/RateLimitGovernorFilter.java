@@ -0,0 +1,286 @@
+package br.com.meetime.hubspot.config;
+
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adjusts the HubSpot call rate to what HubSpot actually grants, read from the {@code X-HubSpot-RateLimit-*}
+ * headers of every {@code hubSpotWebClient} response. The granted per-second rate ({@code -Secondly}, or
+ * {@code -Max} over {@code -Interval-Milliseconds}) times {@code safety-factor} is the target. When less
+ * than {@code slowdown-threshold} of a window is left, the rate ramps down linearly towards
+ * {@code min-limit-for-period}. When less than {@code daily-slowdown-threshold} of the daily quota is
+ * left, the rest is spread evenly until the next reset. So calls slow down before HubSpot starts
+ * answering {@code 429}.
+ * <p>
+ * HubSpot counts these limits per account, so a response to a portal's call caps only that portal's
+ * rate, through {@link PortalRateLimiter#limitRate}; other portals keep their share. Responses to calls
+ * made for no portal, or every response when {@code hubspot.portal-limits.enabled} is off, adjust the
+ * app-wide {@code hubspotApi} limiter instead. A {@code 429} halves the rate it applies to at once, and
+ * nothing raises it again until HubSpot's window has passed.
+ */
+@Component
+public class RateLimitGovernorFilter implements ExchangeFilterFunction {
+
+    static final String INTERVAL_MAX_HEADER = "X-HubSpot-RateLimit-Max";
+    static final String INTERVAL_REMAINING_HEADER = "X-HubSpot-RateLimit-Remaining";
+    static final String INTERVAL_MILLIS_HEADER = "X-HubSpot-RateLimit-Interval-Milliseconds";
+    static final String SECONDLY_MAX_HEADER = "X-HubSpot-RateLimit-Secondly";
+    static final String SECONDLY_REMAINING_HEADER = "X-HubSpot-RateLimit-Secondly-Remaining";
+    static final String DAILY_MAX_HEADER = "X-HubSpot-RateLimit-Daily";
+    static final String DAILY_REMAINING_HEADER = "X-HubSpot-RateLimit-Daily-Remaining";
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitGovernorFilter.class);
+    private static final String RATE_LIMITER_NAME = "hubspotApi";
+    // Hold after a 429 when HubSpot did not say how long its window is.
+    private static final long DEFAULT_HOLD_MILLIS = 10_000;
+
+    private final RateLimiter rateLimiter;
+    private final PortalRateLimiter portalRateLimiter;
+    private final HubSpotConfig.RateGovernorConfig governorConfig;
+    private final boolean perPortal;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final double periodSeconds;
+    private final AppRate appRate;
+    private final Cache<Long, PortalRate> portalRates;
+
+    @Autowired
+    public RateLimitGovernorFilter(RateLimiterRegistry rateLimiterRegistry, PortalRateLimiter portalRateLimiter,
+                                   HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry) {
+        this(rateLimiterRegistry, portalRateLimiter, hubSpotConfig, meterRegistry, Clock.systemUTC());
+    }
+
+    RateLimitGovernorFilter(RateLimiterRegistry rateLimiterRegistry, PortalRateLimiter portalRateLimiter,
+                            HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry, Clock clock) {
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(RATE_LIMITER_NAME);
+        this.portalRateLimiter = portalRateLimiter;
+        this.governorConfig = hubSpotConfig.getRateGovernor();
+        this.perPortal = hubSpotConfig.getPortalLimits().isEnabled();
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.periodSeconds = rateLimiter.getRateLimiterConfig().getLimitRefreshPeriod().toNanos() / 1e9;
+        this.appRate = new AppRate();
+        this.portalRates = Caffeine.newBuilder()
+                .expireAfterAccess(hubSpotConfig.getPortalLimits().getRateCapTtl())
+                // The listener only drops the portal's meters.
+                .executor(Runnable::run)
+                .removalListener((Long portalId, PortalRate portalRate, RemovalCause cause) -> {
+                    if (portalRate != null) {
+                        portalRate.meters.forEach(meterRegistry::remove);
+                        meterRegistry.remove(portalRate.rateGauge);
+                    }
+                })
+                .build();
+
+        Gauge.builder("hubspot.api.rate.limit", rateLimiter, limiter -> limiter.getRateLimiterConfig().getLimitForPeriod())
+                .description("Permits per refresh period currently granted by the hubspotApi rate limiter")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!governorConfig.isEnabled()) {
+            return next.exchange(request);
+        }
+        Long portalId = request.attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE)
+                .filter(Long.class::isInstance)
+                .map(Long.class::cast)
+                .orElse(null);
+        return next.exchange(request)
+                .doOnNext(response -> observe(portalId, response.statusCode().value(), response.headers().asHttpHeaders()));
+    }
+
+    void observe(Long portalId, int statusCode, HttpHeaders headers) {
+        GovernedRate governed = portalId != null && perPortal ? portalRates.get(portalId, PortalRate::new) : appRate;
+        long intervalMax = header(headers, INTERVAL_MAX_HEADER);
+        long intervalLeft = header(headers, INTERVAL_REMAINING_HEADER);
+        long intervalMillis = header(headers, INTERVAL_MILLIS_HEADER);
+        long secondlyMax = header(headers, SECONDLY_MAX_HEADER);
+        long secondlyLeft = header(headers, SECONDLY_REMAINING_HEADER);
+        long dailyMax = header(headers, DAILY_MAX_HEADER);
+        long dailyLeft = header(headers, DAILY_REMAINING_HEADER);
+        governed.remaining(intervalLeft, dailyLeft);
+
+        double minRate = governorConfig.getMinLimitForPeriod() / periodSeconds;
+        double currentRate = governed.rate();
+        if (statusCode == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            double halvedRate = Math.max(minRate, currentRate / 2);
+            governed.holdUntilMillis = clock.millis() + (intervalMillis > 0 ? intervalMillis : DEFAULT_HOLD_MILLIS);
+            log.warn("HUBSPOT ANSWERED 429 {}. LOWERING THE RATE FROM {} TO {} CALLS PER SECOND.", governed, currentRate, halvedRate);
+            governed.apply(halvedRate);
+            return;
+        }
+
+        double grantedRate = secondlyMax > 0 ? secondlyMax
+                : intervalMax > 0 && intervalMillis > 0 ? intervalMax * 1000.0 / intervalMillis
+                : -1;
+        if (grantedRate < 0) {
+            return;
+        }
+        double rate = grantedRate * governorConfig.getSafetyFactor()
+                * slowdown(intervalLeft, intervalMax)
+                * slowdown(secondlyLeft, secondlyMax);
+        if (dailyMax > 0 && dailyLeft >= 0 && dailyLeft < dailyMax * governorConfig.getDailySlowdownThreshold()) {
+            rate = Math.min(rate, dailyLeft / secondsUntilDailyReset());
+        }
+
+        double targetRate = Math.max(minRate, rate);
+        if (targetRate > currentRate && clock.millis() < governed.holdUntilMillis) {
+            return;
+        }
+        governed.apply(targetRate);
+    }
+
+    // 1 while more than slowdown-threshold of the window is left, then linearly down to 0 when it is empty.
+    private double slowdown(long remaining, long max) {
+        if (remaining < 0 || max <= 0 || governorConfig.getSlowdownThreshold() <= 0) {
+            return 1.0;
+        }
+        return Math.min(1.0, (double) remaining / (max * governorConfig.getSlowdownThreshold()));
+    }
+
+    private double secondsUntilDailyReset() {
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(governorConfig.getDailyResetZone()));
+        ZonedDateTime nextReset = LocalDate.now(now.getZone()).plusDays(1).atStartOfDay(now.getZone());
+        return Math.max(1.0, Duration.between(now, nextReset).toMillis() / 1000.0);
+    }
+
+    private static long header(HttpHeaders headers, String name) {
+        String value = headers.getFirst(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // What the governor adjusts for one response, with the state it keeps between responses.
+    private abstract class GovernedRate {
+
+        private final AtomicLong intervalRemaining = new AtomicLong(-1);
+        private final AtomicLong dailyRemaining = new AtomicLong(-1);
+        final List<Meter> meters;
+        volatile long holdUntilMillis;
+
+        // Calls for no portal are tagged portal=none.
+        GovernedRate(String portal) {
+            this.meters = List.of(
+                    remainingGauge(portal, "interval", intervalRemaining),
+                    remainingGauge(portal, "daily", dailyRemaining));
+        }
+
+        private Meter remainingGauge(String portal, String window, AtomicLong remaining) {
+            return Gauge.builder("hubspot.api.rate.remaining", remaining, AtomicLong::get)
+                    .description("Calls HubSpot reported left, -1 until reported")
+                    .tag("portal", portal)
+                    .tag("window", window)
+                    .register(meterRegistry);
+        }
+
+        abstract double rate();
+
+        abstract void apply(double callsPerSecond);
+
+        void remaining(long intervalLeft, long dailyLeft) {
+            if (intervalLeft >= 0) {
+                intervalRemaining.set(intervalLeft);
+            }
+            if (dailyLeft >= 0) {
+                dailyRemaining.set(dailyLeft);
+            }
+        }
+    }
+
+    private final class AppRate extends GovernedRate {
+
+        private AppRate() {
+            super("none");
+        }
+
+        @Override
+        double rate() {
+            return rateLimiter.getRateLimiterConfig().getLimitForPeriod() / periodSeconds;
+        }
+
+        @Override
+        void apply(double callsPerSecond) {
+            int currentLimit = rateLimiter.getRateLimiterConfig().getLimitForPeriod();
+            int targetLimit = Math.max(governorConfig.getMinLimitForPeriod(), (int) Math.floor(callsPerSecond * periodSeconds));
+            if (targetLimit != currentLimit) {
+                log.debug("HUBSPOT API LIMIT CHANGED FROM {} TO {} PER PERIOD.", currentLimit, targetLimit);
+                rateLimiter.changeLimitForPeriod(targetLimit);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TO A CALL FOR NO PORTAL";
+        }
+    }
+
+    private final class PortalRate extends GovernedRate {
+
+        private final long portalId;
+        private final Meter rateGauge;
+        // No cap until HubSpot reports one: the portal's share of the app rate applies.
+        private volatile double rate = Double.NaN;
+
+        private PortalRate(Long portalId) {
+            super(String.valueOf(portalId));
+            this.portalId = portalId;
+            this.rateGauge = Gauge.builder("hubspot.api.portal.rate.limit", this, portalRate -> portalRate.rate)
+                    .description("Calls per second HubSpot's rate-limit headers currently allow the portal, NaN until reported")
+                    .tag("portal", String.valueOf(portalId))
+                    .register(meterRegistry);
+        }
+
+        // Before the first cap, halving starts from the app rate.
+        @Override
+        double rate() {
+            return Double.isNaN(rate) ? appRate.rate() : rate;
+        }
+
+        @Override
+        void apply(double callsPerSecond) {
+            if (callsPerSecond != rate) {
+                log.debug("HUBSPOT API RATE OF PORTAL {} CHANGED FROM {} TO {} CALLS PER SECOND.", portalId, rate, callsPerSecond);
+                rate = callsPerSecond;
+            }
+            // Written every time, so the cap does not expire while the portal keeps calling.
+            portalRateLimiter.limitRate(portalId, callsPerSecond);
+        }
+
+        @Override
+        public String toString() {
+            return "TO A CALL FOR PORTAL " + portalId;
+        }
+    }
+}
@@ -3,27 +3,60 @@ package br.com.meetime.hubspot.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 
 @Configuration
 public class SecurityConfig {
 
+    private static final String ADMIN_ROLE = "ADMIN";
+
     @Bean
-    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, HubSpotConfig hubSpotConfig) {
+        boolean adminEnabled = !hubSpotConfig.getAdmin().getPassword().isBlank();
         http
                 .csrf(ServerHttpSecurity.CsrfSpec::disable)
-                .authorizeExchange(authz -> authz
-                        .pathMatchers(
-                                "/oauth/**",
-                                "/contacts/**",
-                                "/webhooks/**",
-                                "/actuator/**"
-                        ).permitAll()
-                        .anyExchange().denyAll()
-                )
+                .authorizeExchange(authz -> {
+                    // Re-driving the journal skips deduplication and costs HubSpot quota, so it is never public.
+                    if (adminEnabled) {
+                        authz.pathMatchers("/admin/**").hasRole(ADMIN_ROLE);
+                    } else {
+                        authz.pathMatchers("/admin/**").denyAll();
+                    }
+                    authz.pathMatchers(
+                                    "/oauth/**",
+                                    "/contacts/**",
+                                    "/webhooks/**",
+                                    "/actuator/**"
+                            ).permitAll()
+                            .anyExchange().denyAll();
+                })
                 .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
-                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable);
+                .httpBasic(httpBasic -> {
+                    if (!adminEnabled) {
+                        httpBasic.disable();
+                    }
+                });
 
         return http.build();
     }
+
+    @Bean
+    public MapReactiveUserDetailsService adminUserDetailsService(HubSpotConfig hubSpotConfig) {
+        HubSpotConfig.AdminConfig adminConfig = hubSpotConfig.getAdmin();
+        // Without a password no account exists, and /admin/** is denied to everyone.
+        if (adminConfig.getPassword().isBlank()) {
+            return new MapReactiveUserDetailsService(User.withUsername(adminConfig.getUsername())
+                    .password("{noop}")
+                    .disabled(true)
+                    .roles(ADMIN_ROLE)
+                    .build());
+        }
+        return new MapReactiveUserDetailsService(User.withUsername(adminConfig.getUsername())
+                .password(PasswordEncoderFactories.createDelegatingPasswordEncoder().encode(adminConfig.getPassword()))
+                .roles(ADMIN_ROLE)
+                .build());
+    }
 }
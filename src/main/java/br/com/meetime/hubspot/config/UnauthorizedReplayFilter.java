@@ -0,0 +1,99 @@
+package br.com.meetime.hubspot.config;
+
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Recovers from a {@code 401} on {@code hubSpotWebClient} when HubSpot revoked or rotated a token before
+ * our local expiry. Requests opt in by carrying the portal id in {@link #PORTAL_ID_ATTRIBUTE}. On a 401
+ * the filter takes the portal's current token if another call already replaced the rejected one, or
+ * otherwise forces a refresh through {@link HubSpotOAuthService#refreshToken(long)}, which concurrent
+ * failures share, and sends the request once more with the new bearer token. The body is replayed from
+ * the request's {@code BodyInserter}, so it must be a value ({@code bodyValue}), not a one-shot stream.
+ * <p>
+ * If the refresh fails, the original 401 is passed on; a replay that is rejected again is passed on as is.
+ */
+@Component
+public class UnauthorizedReplayFilter implements ExchangeFilterFunction {
+
+    public static final String PORTAL_ID_ATTRIBUTE = UnauthorizedReplayFilter.class.getName() + ".portalId";
+
+    private static final Logger log = LoggerFactory.getLogger(UnauthorizedReplayFilter.class);
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    // The OAuth service itself calls HubSpot through hubSpotWebClient, so it is looked up on first use.
+    private final ObjectProvider<HubSpotOAuthService> hubSpotOAuthService;
+    private final Counter successCounter;
+    private final Counter failureCounter;
+
+    public UnauthorizedReplayFilter(ObjectProvider<HubSpotOAuthService> hubSpotOAuthService, MeterRegistry meterRegistry) {
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.successCounter = Counter.builder("hubspot.api.unauthorized.replays")
+                .description("Requests replayed with a refreshed token after a 401")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("hubspot.api.unauthorized.replays")
+                .description("Requests replayed with a refreshed token after a 401")
+                .tag("result", "failure")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        Object portalId = request.attribute(PORTAL_ID_ATTRIBUTE).orElse(null);
+        String authorization = request.headers().getFirst(HttpHeaders.AUTHORIZATION);
+        if (!(portalId instanceof Long) || authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return next.exchange(request);
+        }
+        String rejectedToken = authorization.substring(BEARER_PREFIX.length());
+        return next.exchange(request)
+                .flatMap(response -> response.statusCode().value() == HttpStatus.UNAUTHORIZED.value()
+                        ? replay(request, next, response, (Long) portalId, rejectedToken)
+                        : Mono.just(response));
+    }
+
+    private Mono<ClientResponse> replay(ClientRequest request, ExchangeFunction next, ClientResponse unauthorized,
+                                        long portalId, String rejectedToken) {
+        log.warn("HUBSPOT REJECTED PORTAL {} TOKEN ON {} {}. REFRESHING AND REPLAYING ONCE.", portalId, request.method(), request.url().getPath());
+        return newerToken(portalId, rejectedToken)
+                .doOnError(error -> {
+                    failureCounter.increment();
+                    log.error("COULD NOT REFRESH PORTAL {} TOKEN AFTER A 401: {}", portalId, error.getMessage());
+                })
+                .onErrorResume(error -> Mono.empty())
+                .flatMap(accessToken -> unauthorized.releaseBody()
+                        .then(next.exchange(ClientRequest.from(request)
+                                .headers(headers -> headers.setBearerAuth(accessToken))
+                                .build()))
+                        .doOnNext(response -> {
+                            if (response.statusCode().value() == HttpStatus.UNAUTHORIZED.value()) {
+                                failureCounter.increment();
+                                log.error("REPLAYED REQUEST FOR PORTAL {} WAS REJECTED AGAIN.", portalId);
+                            } else {
+                                successCounter.increment();
+                            }
+                        }))
+                .switchIfEmpty(Mono.just(unauthorized));
+    }
+
+    private Mono<String> newerToken(long portalId, String rejectedToken) {
+        HubSpotOAuthService oauthService = hubSpotOAuthService.getObject();
+        return oauthService.getValidAccessToken(portalId)
+                .flatMap(currentToken -> currentToken.equals(rejectedToken)
+                        ? oauthService.refreshToken(portalId).map(HubSpotTokenResponse::getAccessToken)
+                        : Mono.just(currentToken));
+    }
+}
@@ -1,40 +1,96 @@
 package br.com.meetime.hubspot.config;
 
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import io.netty.resolver.DefaultAddressResolverGroup;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class WebClientConfig {
 
     @Bean
-    public WebClient hubSpotWebClient(WebClient.Builder builder, HubSpotConfig hubSpotConfig) {
+    public WebClient hubSpotWebClient(WebClient.Builder builder, HubSpotConfig hubSpotConfig,
+                                      UnauthorizedReplayFilter unauthorizedReplayFilter,
+                                      RateLimitGovernorFilter rateLimitGovernorFilter,
+                                      HubSpotRequestScheduler requestScheduler,
+                                      CircuitBreakerRegistry circuitBreakerRegistry,
+                                      MeterRegistry meterRegistry) {
 
-         HttpClient httpClient = HttpClient.create()
-                .resolver(DefaultAddressResolverGroup.INSTANCE);
+        HttpClient httpClient = httpClient("hubspotApi", hubSpotConfig.getHttpClient().getApi());
 
         return builder
                 .baseUrl(hubSpotConfig.getApi().getBaseUrl())
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .filter(unauthorizedReplayFilter)
+                .filter(new HubSpotResilienceFilter("hubspotApi", circuitBreakerRegistry, hubSpotConfig.getResilience(),
+                        meterRegistry, request -> retryPermit(request, requestScheduler)))
+                .filter(rateLimitGovernorFilter)
                 .build();
     }
 
     @Bean
-    public WebClient hubSpotOAuthWebClient(WebClient.Builder builder, HubSpotConfig hubSpotConfig) {
-         HttpClient httpClient = HttpClient.create()
-                .resolver(DefaultAddressResolverGroup.INSTANCE);
+    public WebClient hubSpotOAuthWebClient(WebClient.Builder builder, HubSpotConfig hubSpotConfig,
+                                           CircuitBreakerRegistry circuitBreakerRegistry, MeterRegistry meterRegistry) {
+        HttpClient httpClient = httpClient("hubspotOAuth", hubSpotConfig.getHttpClient().getOauth());
 
         return builder
                 .baseUrl(hubSpotConfig.getFullTokenUri())
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED_VALUE)
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                // Token calls are not rate limited, so retries need no permit.
+                .filter(new HubSpotResilienceFilter("hubspotOAuth", circuitBreakerRegistry, hubSpotConfig.getResilience(),
+                        meterRegistry, request -> Mono.empty()))
                 .build();
     }
+
+    /**
+     * A client with its own connection pool, named after the client so its
+     * {@code reactor.netty.connection.provider.*} metrics can be told apart. A response timeout fails the
+     * call with a {@code WebClientRequestException}, which {@link HubSpotResilienceFilter} retries when the
+     * request is safe to repeat.
+     */
+    static HttpClient httpClient(String name, HubSpotConfig.ConnectionProfile profile) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(profile.getMaxConnections())
+                .pendingAcquireMaxCount(profile.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(profile.getPendingAcquireTimeout())
+                .maxIdleTime(profile.getMaxIdleTime())
+                .maxLifeTime(profile.getMaxLifeTime())
+                .evictInBackground(profile.getEvictInBackground())
+                .metrics(true)
+                .build();
+        return HttpClient.create(connectionProvider)
+                .resolver(DefaultAddressResolverGroup.INSTANCE)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(profile.getConnectTimeout().toMillis()))
+                .option(ChannelOption.SO_KEEPALIVE, profile.isTcpKeepAlive())
+                .responseTimeout(profile.getResponseTimeout())
+                .protocol(profile.isHttp2()
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11});
+    }
+
+    // Retries of portal calls take a permit like the first attempt did; other calls never took one.
+    private static Mono<Void> retryPermit(ClientRequest request, HubSpotRequestScheduler requestScheduler) {
+        return request.attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE)
+                .filter(Long.class::isInstance)
+                .map(portalId -> requestScheduler.acquire((Long) portalId, request.attribute(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE)
+                        .filter(HubSpotRequestScheduler.Priority.class::isInstance)
+                        .map(HubSpotRequestScheduler.Priority.class::cast)
+                        .orElse(HubSpotRequestScheduler.Priority.INTERACTIVE)))
+                .orElse(Mono.empty());
+    }
 }
\ No newline at end of file
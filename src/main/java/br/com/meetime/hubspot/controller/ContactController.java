@@ -1,35 +1,118 @@
 package br.com.meetime.hubspot.controller;
 
 import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
+import br.com.meetime.hubspot.domain.response.ContactImportRowResult;
+import br.com.meetime.hubspot.domain.response.ContactImportStatusResponse;
 import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.service.ContactCacheService;
+import br.com.meetime.hubspot.service.ContactImportService;
 import br.com.meetime.hubspot.service.ContactService;
+import br.com.meetime.hubspot.service.IdempotencyService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+
 @RestController
 @RequestMapping("/contacts")
 public class ContactController {
 
     private static final Logger log = LoggerFactory.getLogger(ContactController.class);
+    private static final String PORTAL_ID_HEADER = "X-HubSpot-Portal-Id";
+    private static final String IMPORT_ID_HEADER = "X-Import-Id";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final String TEXT_CSV_VALUE = "text/csv";
     private final ContactService contactService;
+    private final ContactImportService contactImportService;
+    private final ContactCacheService contactCacheService;
+    private final IdempotencyService idempotencyService;
 
-    public ContactController(ContactService contactService) {
+    public ContactController(ContactService contactService,
+                             ContactImportService contactImportService,
+                             ContactCacheService contactCacheService,
+                             IdempotencyService idempotencyService) {
         this.contactService = contactService;
+        this.contactImportService = contactImportService;
+        this.contactCacheService = contactCacheService;
+        this.idempotencyService = idempotencyService;
     }
 
     @PostMapping
-    public Mono<ResponseEntity<ContactResponse>> createContact(@Valid @RequestBody ContactCreateRequest contactRequest) {
+    public Mono<ResponseEntity<ContactResponse>> createContact(@RequestHeader(name = PORTAL_ID_HEADER, required = false) Long portalId,
+                                                               @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                               @Valid @RequestBody ContactCreateRequest contactRequest) {
         log.info("REQUEST RECEIVED TO CREATE CONTACT: {}", contactRequest.getProperties().getEmail());
-        return contactService.createContact(contactRequest)
-                .map(createdContact -> ResponseEntity.status(HttpStatus.CREATED).body(createdContact));
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return create(portalId, contactRequest)
+                    .map(createdContact -> ResponseEntity.status(HttpStatus.CREATED).body(createdContact));
+        }
+        // The portal is part of the request: the same body sent to another portal is a different request.
+        return idempotencyService.execute(idempotencyKey, new ContactCreation(portalId, contactRequest),
+                        () -> create(portalId, contactRequest))
+                .map(result -> ResponseEntity.status(HttpStatus.CREATED)
+                        .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                        .body(result.value()));
+    }
+
+    private Mono<ContactResponse> create(Long portalId, ContactCreateRequest contactRequest) {
+        return portalId == null
+                ? contactService.createContact(contactRequest)
+                : contactService.createContact(portalId, contactRequest);
+    }
+
+    @GetMapping("/{contactId}")
+    public Mono<ResponseEntity<ContactResponse>> getContact(@RequestHeader(name = PORTAL_ID_HEADER, required = false) Long portalId,
+                                                            @PathVariable long contactId) {
+        log.debug("REQUEST RECEIVED TO READ CONTACT: {}", contactId);
+        return contactCacheService.getContact(portalId, contactId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(path = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<ContactImportRowResult>>> importNdjson(@RequestHeader(name = PORTAL_ID_HEADER, required = false) Long portalId,
+                                                                           @RequestBody Flux<String> lines) {
+        return startImport(portalId, ContactImportService.Format.NDJSON, lines);
+    }
+
+    @PostMapping(path = "/import", consumes = TEXT_CSV_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<ContactImportRowResult>>> importCsv(@RequestHeader(name = PORTAL_ID_HEADER, required = false) Long portalId,
+                                                                        @RequestBody Flux<String> lines) {
+        return startImport(portalId, ContactImportService.Format.CSV, lines);
+    }
+
+    @GetMapping("/import/{importId}")
+    public Mono<ResponseEntity<ContactImportStatusResponse>> getImportStatus(@PathVariable String importId) {
+        return Mono.just(contactImportService.getStatus(importId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    // The body is decoded line by line as the results are written, so the file is never held in memory.
+    private Mono<ResponseEntity<Flux<ContactImportRowResult>>> startImport(Long portalId, ContactImportService.Format format,
+                                                                           Flux<String> lines) {
+        log.info("REQUEST RECEIVED TO IMPORT CONTACTS ({}).", format);
+        return contactImportService.importContacts(portalId, format, lines)
+                .map(contactImport -> ResponseEntity.ok()
+                        .location(URI.create("/contacts/import/" + contactImport.id()))
+                        .header(IMPORT_ID_HEADER, contactImport.id())
+                        .body(contactImport.results()));
+    }
 
+    private record ContactCreation(Long portalId, ContactCreateRequest contactRequest) {
     }
-}
\ No newline at end of file
+}
@@ -34,7 +34,8 @@ public class OAuthController {
     public Mono<ResponseEntity<String>> handleCallback(@RequestParam("code") String code) {
         log.info("RECEIVED HUBSPOT CALLBACK WITH AUTHORIZATION CODE.");
         return hubSpotOAuthService.exchangeCodeForToken(code)
-                .map(tokenResponse -> ResponseEntity.ok("OAuth authorization completed successfully! Access token received."))
+                .map(tokenResponse -> ResponseEntity.ok("OAuth authorization completed successfully! Access token received for portal "
+                        + tokenResponse.getHubId() + "."))
                 .onErrorResume(e -> {
                     log.error("FAILED TO PROCESS HUBSPOT CALLBACK: {}", e.getMessage(), e);
                     return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,41 @@
+package br.com.meetime.hubspot.controller;
+
+import br.com.meetime.hubspot.domain.request.WebhookReplayRequest;
+import br.com.meetime.hubspot.domain.response.WebhookReplayResponse;
+import br.com.meetime.hubspot.service.WebhookIngestionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@RestController
+@RequestMapping("/admin/webhooks")
+public class WebhookAdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookAdminController.class);
+    private final WebhookIngestionService webhookIngestionService;
+
+    public WebhookAdminController(WebhookIngestionService webhookIngestionService) {
+        this.webhookIngestionService = webhookIngestionService;
+    }
+
+    @PostMapping("/replay")
+    public Mono<ResponseEntity<WebhookReplayResponse>> replay(@RequestParam(required = false) Long fromOccurredAt,
+                                                              @RequestParam(required = false) Long toOccurredAt,
+                                                              @RequestParam(required = false) Long fromEventId,
+                                                              @RequestParam(required = false) Long toEventId) {
+        WebhookReplayRequest replayRequest = new WebhookReplayRequest(fromOccurredAt, toOccurredAt, fromEventId, toEventId);
+        log.info("REQUEST RECEIVED TO RE-DRIVE WEBHOOK EVENTS: {}", replayRequest);
+
+        // The journal scan and the blocking queue hand-off must stay off the event loop.
+        return Mono.fromCallable(() -> webhookIngestionService.redrive(replayRequest))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(response -> ResponseEntity.status(HttpStatus.ACCEPTED).body(response));
+    }
+}
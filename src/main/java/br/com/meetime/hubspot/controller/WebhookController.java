@@ -1,10 +1,12 @@
 package br.com.meetime.hubspot.controller;
 
 import br.com.meetime.hubspot.exception.WebhookAuthenticationException;
+import br.com.meetime.hubspot.exception.WebhookDecodingException;
 import br.com.meetime.hubspot.security.WebhookSignatureVerifier;
-import br.com.meetime.hubspot.service.WebhookService;
+import br.com.meetime.hubspot.service.WebhookIngestionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -24,11 +26,11 @@ public class WebhookController {
     private static final String SIGNATURE_HEADER_V3 = "X-HubSpot-Signature-v3";
 
     private final WebhookSignatureVerifier signatureVerifier;
-    private final WebhookService webhookService;
+    private final WebhookIngestionService webhookIngestionService;
 
-    public WebhookController(WebhookSignatureVerifier signatureVerifier, WebhookService webhookService) {
+    public WebhookController(WebhookSignatureVerifier signatureVerifier, WebhookIngestionService webhookIngestionService) {
         this.signatureVerifier = signatureVerifier;
-        this.webhookService = webhookService;
+        this.webhookIngestionService = webhookIngestionService;
     }
 
     @PostMapping(value = "/contacts", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -42,26 +44,28 @@ public class WebhookController {
 
         return DataBufferUtils.join(exchange.getRequest().getBody())
                 .flatMap(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    String body = new String(bytes, StandardCharsets.UTF_8);
-                    DataBufferUtils.release(dataBuffer);
-
-                    LOG.debug("CAPTURED WEBHOOK BODY (UTF-8) FOR VALIDATION: [{}]", body);
-
-                    return processWebhookRequestV3(exchange, body);
+                    try {
+                        return processWebhookRequestV3(exchange, dataBuffer);
+                    } finally {
+                        DataBufferUtils.release(dataBuffer);
+                    }
                 })
                 .onErrorResume(e -> {
                     if (e instanceof WebhookAuthenticationException) {
                         LOG.warn("WEBHOOK V3 VALIDATION FAILED: {}", e.getMessage().toUpperCase());
                         return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
                     }
+                    if (e instanceof WebhookDecodingException) {
+                        // HubSpot shows the delivery as failed instead of the rest of the batch vanishing behind a 200.
+                        LOG.warn("WEBHOOK BODY IS MALFORMED: {}", e.getMessage().toUpperCase());
+                        return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+                    }
                     LOG.error("UNEXPECTED ERROR PROCESSING WEBHOOK: {}", e.getMessage().toUpperCase(), e);
                     return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
                 });
     }
 
-    private Mono<ResponseEntity<Void>> processWebhookRequestV3(ServerWebExchange exchange, String body) {
+    private Mono<ResponseEntity<Void>> processWebhookRequestV3(ServerWebExchange exchange, DataBuffer body) {
         String signatureV3 = exchange.getRequest().getHeaders().getFirst(SIGNATURE_HEADER_V3);
         String requestUri = exchange.getRequest().getURI().toString();
 
@@ -74,18 +78,26 @@ public class WebhookController {
         LOG.debug(">>> STARTING V3 SIGNATURE VALIDATION <<<");
         LOG.debug("URI: {}", requestUri);
         LOG.debug("RECEIVED SIGNATURE (X-HUBSPOT-SIGNATURE-V3): [{}]", signatureV3);
-        LOG.debug("REQUEST BODY FOR VALIDATION (LENGTH {}): [{}]", body.length(), body);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("REQUEST BODY FOR VALIDATION (LENGTH {}): [{}]", body.readableByteCount(), body.toString(StandardCharsets.UTF_8));
+        }
 
         try {
             signatureVerifier.validateSignatureV3(signatureV3, body);
 
             LOG.info(">>> V3 SIGNATURE VALIDATED SUCCESSFULLY <<< FOR URI: {}", requestUri);
 
-            LOG.debug("STARTING WEBHOOK BODY PROCESSING BY SERVICE LAYER...");
-            webhookService.processWebhookEvents(body);
-
-            LOG.info("WEBHOOK PROCESSED SUCCESSFULLY BY SERVICE LAYER FOR URI: {}", requestUri);
-            return Mono.just(ResponseEntity.ok().build());
+            byte[] bodyBytes = new byte[body.readableByteCount()];
+            body.read(bodyBytes);
+            return webhookIngestionService.ingest(bodyBytes)
+                    .map(accepted -> {
+                        if (!accepted) {
+                            LOG.warn("WEBHOOK QUEUE FULL. ASKING HUBSPOT TO RETRY LATER FOR URI: {}", requestUri);
+                            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<Void>build();
+                        }
+                        LOG.info("WEBHOOK JOURNALED AND ACCEPTED FOR ASYNCHRONOUS PROCESSING FOR URI: {}", requestUri);
+                        return ResponseEntity.ok().<Void>build();
+                    });
 
         } catch (WebhookAuthenticationException e) {
             LOG.warn(">>> V3 SIGNATURE VALIDATION FAILED <<< FOR URI {}: {}", requestUri, e.getMessage().toUpperCase());
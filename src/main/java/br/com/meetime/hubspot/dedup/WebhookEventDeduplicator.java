@@ -0,0 +1,23 @@
+package br.com.meetime.hubspot.dedup;
+
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+
+/**
+ * Remembers recently seen webhook events by {@code (portalId, eventId)} so that HubSpot
+ * redeliveries ({@code attemptNumber > 0}) are not processed twice.
+ */
+public interface WebhookEventDeduplicator {
+
+    /**
+     * Records the event as seen.
+     *
+     * @return {@code false} when the same event was already seen within the retention window
+     */
+    boolean firstDelivery(WebhookEventDTO event);
+
+    /**
+     * Forgets an event recorded by {@link #firstDelivery(WebhookEventDTO)} that could not be queued,
+     * so that its redelivery is processed.
+     */
+    void forget(WebhookEventDTO event);
+}
@@ -0,0 +1,97 @@
+package br.com.meetime.hubspot.dedup.impl;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity open-addressing set of {@code long} keys with linear probing.
+ * Keys are stored unboxed and must already be well mixed and non-zero: zero marks an empty slot
+ * and the low bits of the key select the slot. Not thread-safe.
+ */
+final class LongHashSet {
+
+    private static final long EMPTY = 0L;
+
+    private final long[] slots;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * @param maxSize number of keys the set accepts; the table is sized to keep the load factor at or below 0.5
+     */
+    LongHashSet(int maxSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+    }
+
+    boolean contains(long key) {
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            long current = slots[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} when the key was already present
+     * @throws IllegalStateException when the set is full
+     */
+    boolean add(long key) {
+        int slot = (int) key & mask;
+        for (long current; (current = slots[slot]) != EMPTY; slot = (slot + 1) & mask) {
+            if (current == key) {
+                return false;
+            }
+        }
+        if (size == maxSize) {
+            throw new IllegalStateException("LongHashSet is full");
+        }
+        slots[slot] = key;
+        size++;
+        return true;
+    }
+
+    boolean remove(long key) {
+        int slot = (int) key & mask;
+        for (long current; (current = slots[slot]) != key; slot = (slot + 1) & mask) {
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+        // Backward-shift deletion: pull later keys of the same probe run into the hole so lookups never need tombstones.
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+            int home = (int) slots[next] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == maxSize;
+    }
+
+    long memoryBytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+}
@@ -0,0 +1,20 @@
+package br.com.meetime.hubspot.dedup.impl;
+
+import br.com.meetime.hubspot.dedup.WebhookEventDeduplicator;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(prefix = "hubspot.webhook.dedup", name = "enabled", havingValue = "false")
+public class NoOpWebhookEventDeduplicator implements WebhookEventDeduplicator {
+
+    @Override
+    public boolean firstDelivery(WebhookEventDTO event) {
+        return true;
+    }
+
+    @Override
+    public void forget(WebhookEventDTO event) {
+    }
+}
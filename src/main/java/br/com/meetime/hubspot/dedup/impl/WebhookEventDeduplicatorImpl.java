@@ -0,0 +1,186 @@
+package br.com.meetime.hubspot.dedup.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.dedup.WebhookEventDeduplicator;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generational implementation of {@link WebhookEventDeduplicator} with a fixed memory ceiling.
+ * <p>
+ * {@code (portalId, eventId)} is mixed into a single {@code long} and kept in unboxed open-addressing
+ * tables. Keys are spread over independently locked stripes; each stripe rotates through
+ * {@value #GENERATIONS} tables, moving to the next one (and clearing it) every {@code retention / 3}
+ * or as soon as the current one is full. An event is therefore remembered for at least
+ * {@code retention}, unless the configured {@code max-entries} is reached first, which shows up in
+ * {@code hubspot.webhook.dedup.rotations{reason=capacity}}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "hubspot.webhook.dedup", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class WebhookEventDeduplicatorImpl implements WebhookEventDeduplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookEventDeduplicatorImpl.class);
+    private static final int GENERATIONS = 4;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final long windowMillis;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter ageRotationCounter;
+    private final Counter capacityRotationCounter;
+
+    public WebhookEventDeduplicatorImpl(HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry) {
+        HubSpotConfig.DedupConfig dedupConfig = hubSpotConfig.getWebhook().getDedup();
+        int stripeCount = Integer.highestOneBit(dedupConfig.getStripes());
+        int entriesPerGeneration = Math.max(1, dedupConfig.getMaxEntries() / (stripeCount * GENERATIONS));
+        this.windowMillis = Math.max(1, dedupConfig.getRetention().toMillis() / (GENERATIONS - 1));
+        this.stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(entriesPerGeneration, now);
+        }
+
+        this.hitCounter = Counter.builder("hubspot.webhook.dedup")
+                .description("Webhook deliveries checked against recently seen events")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("hubspot.webhook.dedup")
+                .description("Webhook deliveries checked against recently seen events")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.ageRotationCounter = Counter.builder("hubspot.webhook.dedup.rotations")
+                .description("Dedup generations recycled")
+                .tag("reason", "age")
+                .register(meterRegistry);
+        this.capacityRotationCounter = Counter.builder("hubspot.webhook.dedup.rotations")
+                .description("Dedup generations recycled")
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.dedup.size", this, WebhookEventDeduplicatorImpl::size)
+                .description("Approximate number of remembered webhook events")
+                .register(meterRegistry);
+
+        long memoryBytes = (long) stripeCount * GENERATIONS * stripes[0].generations[0].memoryBytes();
+        log.info("WEBHOOK DEDUP STARTED. STRIPES: {}, ENTRIES PER GENERATION: {}, RETENTION: {}, MEMORY: {} KB",
+                stripeCount, entriesPerGeneration, dedupConfig.getRetention(), memoryBytes / 1024);
+    }
+
+    @Override
+    public boolean firstDelivery(WebhookEventDTO event) {
+        if (event.getEventId() == null) {
+            missCounter.increment();
+            return true;
+        }
+        long key = key(event);
+        if (stripeFor(key).markIfAbsent(key, System.currentTimeMillis())) {
+            missCounter.increment();
+            return true;
+        }
+        hitCounter.increment();
+        log.debug("DROPPING DUPLICATE WEBHOOK EVENT {} FROM PORTAL {} (ATTEMPT {}).",
+                event.getEventId(), event.getPortalId(), event.getAttemptNumber());
+        return false;
+    }
+
+    @Override
+    public void forget(WebhookEventDTO event) {
+        if (event.getEventId() == null) {
+            return;
+        }
+        long key = key(event);
+        stripeFor(key).forget(key);
+    }
+
+    private Stripe stripeFor(long key) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (key >>> stripeShift)];
+    }
+
+    private long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Mixes the pair with the MurmurHash3 finalizer, so low bits pick a slot and high bits pick a stripe.
+     * Zero is reserved for empty slots.
+     */
+    static long key(WebhookEventDTO event) {
+        long portalId = event.getPortalId() == null ? 0L : event.getPortalId();
+        long h = portalId * 0x9E3779B97F4A7C15L ^ event.getEventId();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0L ? 1L : h;
+    }
+
+    private final class Stripe {
+        private final LongHashSet[] generations = new LongHashSet[GENERATIONS];
+        private int current;
+        private long currentStartedAt;
+
+        private Stripe(int entriesPerGeneration, long now) {
+            for (int i = 0; i < GENERATIONS; i++) {
+                generations[i] = new LongHashSet(entriesPerGeneration);
+            }
+            this.currentStartedAt = now;
+        }
+
+        private synchronized boolean markIfAbsent(long key, long now) {
+            expire(now);
+            for (LongHashSet generation : generations) {
+                if (generation.contains(key)) {
+                    return false;
+                }
+            }
+            if (generations[current].isFull()) {
+                rotate(now);
+                capacityRotationCounter.increment();
+            }
+            generations[current].add(key);
+            return true;
+        }
+
+        private synchronized void forget(long key) {
+            for (LongHashSet generation : generations) {
+                if (generation.remove(key)) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized int size() {
+            int size = 0;
+            for (LongHashSet generation : generations) {
+                size += generation.size();
+            }
+            return size;
+        }
+
+        private void expire(long now) {
+            long elapsedWindows = (now - currentStartedAt) / windowMillis;
+            for (long i = 0; i < Math.min(elapsedWindows, GENERATIONS); i++) {
+                rotate(now);
+                ageRotationCounter.increment();
+            }
+        }
+
+        private void rotate(long now) {
+            current = (current + 1) % GENERATIONS;
+            generations[current].clear();
+            currentStartedAt = now;
+        }
+    }
+}
@@ -21,4 +21,6 @@ public class WebhookEventDTO {
     private String objectTypeId;
     private String changeFlag;
     private String sourceId;
+    private String propertyName;
+    private String propertyValue;
 }
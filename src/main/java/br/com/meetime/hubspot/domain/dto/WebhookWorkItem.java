@@ -0,0 +1,51 @@
+package br.com.meetime.hubspot.domain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One unit of work for a HubSpot object: the webhook events received for it within the coalescing
+ * window, merged. Subscription types and change flags keep their first-seen order and
+ * {@code changedProperties} holds the latest value received for each property.
+ */
+@Data
+@NoArgsConstructor
+public class WebhookWorkItem {
+
+    private Long portalId;
+    private Long objectId;
+    private Long lastOccurredAt;
+    private Set<String> subscriptionTypes = new LinkedHashSet<>();
+    private Set<String> changeFlags = new LinkedHashSet<>();
+    private Map<String, String> changedProperties = new LinkedHashMap<>();
+    private List<WebhookEventDTO> events = new ArrayList<>();
+
+    public WebhookWorkItem(WebhookEventDTO firstEvent) {
+        this.portalId = firstEvent.getPortalId();
+        this.objectId = firstEvent.getObjectId();
+        merge(firstEvent);
+    }
+
+    public void merge(WebhookEventDTO event) {
+        events.add(event);
+        if (event.getSubscriptionType() != null) {
+            subscriptionTypes.add(event.getSubscriptionType());
+        }
+        if (event.getChangeFlag() != null) {
+            changeFlags.add(event.getChangeFlag());
+        }
+        if (event.getPropertyName() != null) {
+            changedProperties.put(event.getPropertyName(), event.getPropertyValue());
+        }
+        if (event.getOccurredAt() != null && (lastOccurredAt == null || event.getOccurredAt() > lastOccurredAt)) {
+            lastOccurredAt = event.getOccurredAt();
+        }
+    }
+}
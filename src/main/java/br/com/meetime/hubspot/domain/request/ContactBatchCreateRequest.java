@@ -0,0 +1,15 @@
+package br.com.meetime.hubspot.domain.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContactBatchCreateRequest {
+
+    private List<ContactCreateRequest> inputs;
+}
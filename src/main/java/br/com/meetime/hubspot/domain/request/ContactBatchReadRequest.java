@@ -0,0 +1,23 @@
+package br.com.meetime.hubspot.domain.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContactBatchReadRequest {
+
+    private List<String> properties;
+    private List<ObjectIdInput> inputs;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ObjectIdInput {
+        private String id;
+    }
+}
@@ -0,0 +1,19 @@
+package br.com.meetime.hubspot.domain.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Range of journaled webhook events to re-drive. Times are epoch milliseconds compared with
+ * {@code occurredAt}; every bound is optional and inclusive.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookReplayRequest {
+    private Long fromOccurredAt;
+    private Long toOccurredAt;
+    private Long fromEventId;
+    private Long toEventId;
+}
@@ -0,0 +1,34 @@
+package br.com.meetime.hubspot.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of {@code POST /crm/v3/objects/contacts/batch/create}. HubSpot does not promise that
+ * {@code results} follow the order of the inputs. With 207 Multi-Status, {@code errors} holds one entry
+ * per input that could not be created.
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ContactBatchCreateResponse {
+    private String status;
+    private List<ContactResponse> results;
+    private List<BatchError> errors;
+
+    @Data
+    @NoArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class BatchError {
+        private String status;
+        private String category;
+        private String subCategory;
+        private String message;
+        // Values of the input the error is about, keyed by property (e.g. {"email": ["a@example.com"]}).
+        private Map<String, List<String>> context;
+    }
+}
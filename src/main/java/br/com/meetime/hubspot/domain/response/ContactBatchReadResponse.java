@@ -0,0 +1,19 @@
+package br.com.meetime.hubspot.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body of {@code POST /crm/v3/objects/contacts/batch/read}, returned with 200 or, when some ids
+ * could not be read, with 207 Multi-Status. Ids missing from {@code results} were not found.
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ContactBatchReadResponse {
+    private String status;
+    private List<ContactResponse> results;
+}
@@ -0,0 +1,30 @@
+package br.com.meetime.hubspot.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of one row of a bulk import. {@code line} is the row's line in the uploaded file, counting
+ * the CSV header.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ContactImportRowResult {
+    private long line;
+    private Status status;
+    private String email;
+    private String id;
+    private List<String> errors;
+
+    public enum Status {
+        CREATED,
+        INVALID,
+        FAILED
+    }
+}
@@ -0,0 +1,33 @@
+package br.com.meetime.hubspot.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ContactImportStatusResponse {
+    private String id;
+    private long portalId;
+    private State state;
+    private long rowsProcessed;
+    private long created;
+    private long invalid;
+    private long failed;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+}
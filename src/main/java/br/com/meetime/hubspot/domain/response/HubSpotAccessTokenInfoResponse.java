@@ -0,0 +1,27 @@
+package br.com.meetime.hubspot.domain.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body of {@code GET /oauth/v1/access-tokens/{token}}, used to find which portal a token belongs to.
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HubSpotAccessTokenInfoResponse {
+
+    @JsonProperty("hub_id")
+    private Long hubId;
+
+    @JsonProperty("hub_domain")
+    private String hubDomain;
+
+    private String user;
+
+    private List<String> scopes;
+}
@@ -21,4 +21,8 @@ public class HubSpotTokenResponse {
 
     @JsonProperty("token_type")
     private String tokenType;
+
+    // Not part of the token response; filled in from the access token metadata after the code exchange.
+    @JsonProperty("hub_id")
+    private Long hubId;
 }
\ No newline at end of file
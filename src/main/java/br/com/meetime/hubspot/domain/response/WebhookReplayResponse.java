@@ -0,0 +1,13 @@
+package br.com.meetime.hubspot.domain.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookReplayResponse {
+    private long batchesScanned;
+    private long eventsReplayed;
+}
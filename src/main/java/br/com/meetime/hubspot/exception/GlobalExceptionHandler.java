@@ -1,6 +1,7 @@
 package br.com.meetime.hubspot.exception;
 
 import br.com.meetime.hubspot.domain.response.ErrorResponse;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.ratelimiter.RequestNotPermitted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,7 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
-import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ServerWebExchange;
 
 import java.time.Instant;
 import java.util.List;
@@ -21,7 +22,7 @@ public class GlobalExceptionHandler {
     private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
     @ExceptionHandler(HubSpotApiException.class)
-    public ResponseEntity<ErrorResponse> handleHubSpotApiException(HubSpotApiException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleHubSpotApiException(HubSpotApiException ex, ServerWebExchange exchange) {
         String message = String.format("HUBSPOT API ERROR: %s (Status: %d)", ex.getMessage(), ex.getStatusCode().value());
         if (ex.getErrorBody() != null && ex.getErrorBody().getMessage() != null) {
             message = String.format("HUBSPOT API ERROR: %s (Status: %d, HubSpot Msg: %s)",
@@ -35,28 +36,28 @@ public class GlobalExceptionHandler {
                 ex.getStatusCode().value(),
                 HttpStatus.valueOf(ex.getStatusCode().value()).getReasonPhrase(),
                 message,
-                request.getDescription(false).replace("uri=", ""),
+                exchange.getRequest().getPath().value(),
                 null
         );
         return new ResponseEntity<>(errorResponse, ex.getStatusCode());
     }
 
     @ExceptionHandler(WebhookAuthenticationException.class)
-    public ResponseEntity<ErrorResponse> handleWebhookAuthenticationException(WebhookAuthenticationException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleWebhookAuthenticationException(WebhookAuthenticationException ex, ServerWebExchange exchange) {
         log.warn("WEBHOOK AUTHENTICATION FAILURE: {}", ex.getMessage());
         ErrorResponse errorResponse = new ErrorResponse(
                 Instant.now(),
                 HttpStatus.UNAUTHORIZED.value(),
                 HttpStatus.UNAUTHORIZED.getReasonPhrase(),
                 ex.getMessage(),
-                request.getDescription(false).replace("uri=", ""),
+                exchange.getRequest().getPath().value(),
                 null
         );
         return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex, ServerWebExchange exchange) {
         List<String> errors = ex.getBindingResult().getFieldErrors()
                 .stream()
                 .map(fieldError -> fieldError.getField() + ": " + fieldError.getDefaultMessage())
@@ -69,14 +70,14 @@ public class GlobalExceptionHandler {
                 HttpStatus.BAD_REQUEST.value(),
                 HttpStatus.BAD_REQUEST.getReasonPhrase(),
                 "Validation error in the request.",
-                request.getDescription(false).replace("uri=", ""),
+                exchange.getRequest().getPath().value(),
                 errors
         );
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(RequestNotPermitted.class)
-    public ResponseEntity<ErrorResponse> handleRateLimitExceeded(RequestNotPermitted ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleRateLimitExceeded(RequestNotPermitted ex, ServerWebExchange exchange) {
         log.warn("HUBSPOT API RATE LIMIT EXCEEDED: {}", ex.getMessage());
 
         ErrorResponse errorResponse = new ErrorResponse(
@@ -84,14 +85,29 @@ public class GlobalExceptionHandler {
                 HttpStatus.TOO_MANY_REQUESTS.value(),
                 HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
                 "Rate limit for the HubSpot API exceeded. Please try again later.",
-                request.getDescription(false).replace("uri=", ""),
+                exchange.getRequest().getPath().value(),
                 null
         );
         return new ResponseEntity<>(errorResponse, HttpStatus.TOO_MANY_REQUESTS);
     }
 
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<ErrorResponse> handleCircuitOpen(CallNotPermittedException ex, ServerWebExchange exchange) {
+        log.warn("HUBSPOT CIRCUIT OPEN: {}", ex.getMessage());
+
+        ErrorResponse errorResponse = new ErrorResponse(
+                Instant.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(),
+                "The HubSpot API is failing. Please try again later.",
+                exchange.getRequest().getPath().value(),
+                null
+        );
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorResponse> handleGenericException(Exception ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleGenericException(Exception ex, ServerWebExchange exchange) {
         log.error("UNEXPECTED SERVER ERROR: {}", ex.getMessage(), ex);
 
         ErrorResponse errorResponse = new ErrorResponse(
@@ -99,7 +115,7 @@ public class GlobalExceptionHandler {
                 HttpStatus.INTERNAL_SERVER_ERROR.value(),
                 HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase(),
                 "An internal server error occurred.",
-                request.getDescription(false).replace("uri=", ""),
+                exchange.getRequest().getPath().value(),
                 null
         );
         return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
@@ -0,0 +1,11 @@
+package br.com.meetime.hubspot.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class WebhookDecodingException extends RuntimeException {
+    public WebhookDecodingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package br.com.meetime.hubspot.journal;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class JournalEntry {
+    long sequence;
+    Instant recordedAt;
+    byte[] payload;
+}
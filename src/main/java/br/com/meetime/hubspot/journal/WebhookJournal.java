@@ -0,0 +1,26 @@
+package br.com.meetime.hubspot.journal;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of verified webhook batches. A batch is appended before the
+ * webhook is acknowledged and checkpointed once every event in it has been processed,
+ * so batches without a checkpoint can be replayed after a crash.
+ */
+public interface WebhookJournal {
+
+    long append(byte[] payload);
+
+    void checkpoint(long sequence);
+
+    /**
+     * Batches found without a checkpoint when the journal was opened.
+     */
+    List<JournalEntry> readUnfinished();
+
+    /**
+     * Visits every batch still retained in the journal, oldest first.
+     */
+    void scan(Consumer<JournalEntry> consumer);
+}
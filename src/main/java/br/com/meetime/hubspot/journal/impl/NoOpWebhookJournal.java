@@ -0,0 +1,35 @@
+package br.com.meetime.hubspot.journal.impl;
+
+import br.com.meetime.hubspot.journal.JournalEntry;
+import br.com.meetime.hubspot.journal.WebhookJournal;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(prefix = "hubspot.webhook.journal", name = "enabled", havingValue = "false")
+public class NoOpWebhookJournal implements WebhookJournal {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public long append(byte[] payload) {
+        return sequence.incrementAndGet();
+    }
+
+    @Override
+    public void checkpoint(long sequence) {
+    }
+
+    @Override
+    public List<JournalEntry> readUnfinished() {
+        return List.of();
+    }
+
+    @Override
+    public void scan(Consumer<JournalEntry> consumer) {
+    }
+}
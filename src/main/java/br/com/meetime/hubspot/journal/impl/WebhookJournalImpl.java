@@ -0,0 +1,318 @@
+package br.com.meetime.hubspot.journal.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.journal.JournalEntry;
+import br.com.meetime.hubspot.journal.WebhookJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped, segment-rotated implementation of {@link WebhookJournal}.
+ * <p>
+ * Record layout: {@code [int length][byte type][long sequence][long timestamp][int crc][payload]}.
+ * The type byte is written last and doubles as the commit marker, so a record torn by a crash
+ * is ignored when the segment is reopened. Writes land in the page cache as soon as they are
+ * copied into the mapping, which is enough to survive a process crash; {@code force-on-append}
+ * additionally flushes every record to disk to survive an OS crash.
+ * <p>
+ * Segments beyond {@code max-segments} are deleted once all their batches are checkpointed. A batch left
+ * unfinished for longer than {@code unfinished-max-age} stops holding its segment back: it is logged,
+ * counted and dropped with the segment.
+ */
+@Component
+@ConditionalOnProperty(prefix = "hubspot.webhook.journal", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class WebhookJournalImpl implements WebhookJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookJournalImpl.class);
+
+    private static final int HEADER_SIZE = 25;
+    private static final int TYPE_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 5;
+    private static final int TIMESTAMP_OFFSET = 13;
+    private static final int CRC_OFFSET = 21;
+    private static final byte TYPE_BATCH = 1;
+    private static final byte TYPE_CHECKPOINT = 2;
+    private static final String SEGMENT_PREFIX = "webhook-journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final boolean forceOnAppend;
+    private final long unfinishedMaxAgeMillis;
+    private final Counter droppedBatches;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<Long, Segment> pendingBatches = new ConcurrentHashMap<>();
+    private final List<JournalEntry> unfinishedAtStartup = new ArrayList<>();
+    private Segment activeSegment;
+    private long nextSequence = 1;
+    private long nextSegmentId = 1;
+
+    public WebhookJournalImpl(HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry) {
+        HubSpotConfig.JournalConfig journalConfig = hubSpotConfig.getWebhook().getJournal();
+        long configuredSegmentSize = journalConfig.getSegmentSize().toBytes();
+        if (configuredSegmentSize <= HEADER_SIZE || configuredSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Webhook journal segment size must be between " + HEADER_SIZE + " bytes and 2GB");
+        }
+        this.directory = Paths.get(journalConfig.getDirectory());
+        this.segmentSize = (int) configuredSegmentSize;
+        this.maxSegments = journalConfig.getMaxSegments();
+        this.forceOnAppend = journalConfig.isForceOnAppend();
+        this.unfinishedMaxAgeMillis = journalConfig.getUnfinishedMaxAge().toMillis();
+        this.droppedBatches = Counter.builder("hubspot.webhook.journal.dropped")
+                .description("Unfinished webhook batches dropped from the journal after unfinished-max-age")
+                .register(meterRegistry);
+        open();
+    }
+
+    @Override
+    public synchronized long append(byte[] payload) {
+        Segment segment = segmentWithRoomFor(HEADER_SIZE + payload.length);
+        long sequence = nextSequence++;
+        write(segment, TYPE_BATCH, sequence, payload);
+        segment.pending.incrementAndGet();
+        pendingBatches.put(sequence, segment);
+        return sequence;
+    }
+
+    @Override
+    public synchronized void checkpoint(long sequence) {
+        Segment owner = pendingBatches.remove(sequence);
+        if (owner == null) {
+            log.debug("WEBHOOK JOURNAL CHECKPOINT FOR UNKNOWN OR ALREADY FINISHED BATCH {}.", sequence);
+            return;
+        }
+        write(segmentWithRoomFor(HEADER_SIZE), TYPE_CHECKPOINT, sequence, NO_PAYLOAD);
+        owner.pending.decrementAndGet();
+    }
+
+    @Override
+    public synchronized List<JournalEntry> readUnfinished() {
+        return List.copyOf(unfinishedAtStartup);
+    }
+
+    @Override
+    public void scan(Consumer<JournalEntry> consumer) {
+        for (Segment segment : segments.values()) {
+            readRecords(segment, segment.writePosition, (type, entry) -> {
+                if (type == TYPE_BATCH) {
+                    consumer.accept(entry);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        log.info("WEBHOOK JOURNAL FLUSHED. {} BATCH(ES) STILL UNFINISHED.", pendingBatches.size());
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing
+                        .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .toList();
+            }
+
+            // A checkpoint is always written after its batch, so keeping only the batches not yet
+            // checkpointed while reading in order bounds memory by the unfinished set.
+            Map<Long, JournalEntry> unfinished = new TreeMap<>();
+            for (Path file : files) {
+                Segment segment = mapSegment(file, segmentIdOf(file), Files.size(file));
+                segments.put(segment.id, segment);
+                nextSegmentId = Math.max(nextSegmentId, segment.id + 1);
+                segment.writePosition = readRecords(segment, segment.buffer.capacity(), (type, entry) -> {
+                    segment.lastWriteMillis = Math.max(segment.lastWriteMillis, entry.getRecordedAt().toEpochMilli());
+                    if (type == TYPE_BATCH) {
+                        unfinished.put(entry.getSequence(), entry);
+                        pendingBatches.put(entry.getSequence(), segment);
+                        segment.pending.incrementAndGet();
+                    } else {
+                        unfinished.remove(entry.getSequence());
+                        Segment owner = pendingBatches.remove(entry.getSequence());
+                        if (owner != null) {
+                            owner.pending.decrementAndGet();
+                        }
+                    }
+                    nextSequence = Math.max(nextSequence, entry.getSequence() + 1);
+                });
+            }
+            unfinishedAtStartup.addAll(unfinished.values());
+            activeSegment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+
+            log.info("WEBHOOK JOURNAL OPENED AT {}. SEGMENTS: {}, UNFINISHED BATCHES: {}",
+                    directory.toAbsolutePath(), segments.size(), unfinishedAtStartup.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open webhook journal at " + directory.toAbsolutePath(), e);
+        }
+    }
+
+    private Segment segmentWithRoomFor(int recordSize) {
+        if (activeSegment != null && activeSegment.writePosition + recordSize <= activeSegment.buffer.capacity()) {
+            return activeSegment;
+        }
+        try {
+            if (activeSegment != null) {
+                activeSegment.buffer.force();
+            }
+            long id = nextSegmentId++;
+            Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            activeSegment = mapSegment(file, id, Math.max(segmentSize, recordSize));
+            segments.put(id, activeSegment);
+            log.debug("WEBHOOK JOURNAL ROTATED TO SEGMENT {}.", file.getFileName());
+            deleteExpiredSegments();
+            return activeSegment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rotate webhook journal segment", e);
+        }
+    }
+
+    private void deleteExpiredSegments() throws IOException {
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest.pending.get() > 0) {
+                if (System.currentTimeMillis() - oldest.lastWriteMillis < unfinishedMaxAgeMillis) {
+                    log.warn("WEBHOOK JOURNAL OVER RETENTION ({} SEGMENTS) BUT OLDEST SEGMENT STILL HAS {} UNFINISHED BATCH(ES).",
+                            segments.size(), oldest.pending.get());
+                    return;
+                }
+                dropUnfinished(oldest);
+            }
+            segments.remove(oldest.id);
+            Files.deleteIfExists(oldest.path);
+            log.debug("WEBHOOK JOURNAL SEGMENT {} DELETED.", oldest.path.getFileName());
+        }
+    }
+
+    // Every batch in the segment was appended before its last write, so all of them are past the maximum age.
+    private void dropUnfinished(Segment segment) {
+        List<Long> dropped = new ArrayList<>();
+        pendingBatches.entrySet().removeIf(pending -> {
+            if (pending.getValue() != segment) {
+                return false;
+            }
+            dropped.add(pending.getKey());
+            return true;
+        });
+        segment.pending.addAndGet(-dropped.size());
+        droppedBatches.increment(dropped.size());
+        log.error("WEBHOOK JOURNAL DROPPING {} BATCH(ES) UNFINISHED FOR OVER {} MS WITH SEGMENT {}. SEQUENCES: {}",
+                dropped.size(), unfinishedMaxAgeMillis, segment.path.getFileName(), dropped);
+    }
+
+    private void write(Segment segment, byte type, long sequence, byte[] payload) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        buffer.putInt(position, payload.length);
+        buffer.putLong(position + SEQUENCE_OFFSET, sequence);
+        long now = System.currentTimeMillis();
+        buffer.putLong(position + TIMESTAMP_OFFSET, now);
+        buffer.putInt(position + CRC_OFFSET, crc(payload));
+        buffer.put(position + HEADER_SIZE, payload);
+        buffer.put(position + TYPE_OFFSET, type);
+        if (forceOnAppend) {
+            buffer.force(position, HEADER_SIZE + payload.length);
+        }
+        segment.writePosition = position + HEADER_SIZE + payload.length;
+        segment.lastWriteMillis = now;
+    }
+
+    /**
+     * Reads committed records up to {@code limit} and returns the position after the last valid one.
+     */
+    private int readRecords(Segment segment, int limit, RecordVisitor visitor) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= limit) {
+            byte type = buffer.get(position + TYPE_OFFSET);
+            int length = buffer.getInt(position);
+            if ((type != TYPE_BATCH && type != TYPE_CHECKPOINT) || length < 0 || position + HEADER_SIZE + length > limit) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_SIZE, payload);
+            if (crc(payload) != buffer.getInt(position + CRC_OFFSET)) {
+                log.warn("WEBHOOK JOURNAL SEGMENT {} HAS A CORRUPT RECORD AT OFFSET {}. IGNORING THE REST OF THE SEGMENT.",
+                        segment.path.getFileName(), position);
+                break;
+            }
+            long sequence = buffer.getLong(position + SEQUENCE_OFFSET);
+            Instant recordedAt = Instant.ofEpochMilli(buffer.getLong(position + TIMESTAMP_OFFSET));
+            visitor.visit(type, new JournalEntry(sequence, recordedAt, payload));
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static Segment mapSegment(Path file, long id, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private static long segmentIdOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(byte type, JournalEntry entry);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile int writePosition;
+        private volatile long lastWriteMillis;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
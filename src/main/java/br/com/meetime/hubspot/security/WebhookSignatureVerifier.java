@@ -1,6 +1,11 @@
 package br.com.meetime.hubspot.security;
 
+import org.springframework.core.io.buffer.DataBuffer;
+
 public interface WebhookSignatureVerifier {
 
-    void validateSignatureV3(String receivedSignature, String requestBody);
+    /**
+     * Validates the signature against the raw request body. The buffer's read position is left untouched.
+     */
+    void validateSignatureV3(String receivedSignature, DataBuffer requestBody);
 }
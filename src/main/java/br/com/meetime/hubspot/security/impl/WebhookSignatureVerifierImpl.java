@@ -5,6 +5,7 @@ import br.com.meetime.hubspot.exception.WebhookAuthenticationException;
 import br.com.meetime.hubspot.security.WebhookSignatureVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Mac;
@@ -16,27 +17,39 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Objects;
 
+/**
+ * Computes HMAC-SHA256(clientSecret, clientSecret + body) directly over the body's buffers.
+ * Each thread keeps a {@link Mac} already initialised with the secret; {@code doFinal} resets it,
+ * so verifying a request allocates little more than the 32-byte digest.
+ */
 @Component
 public class WebhookSignatureVerifierImpl implements WebhookSignatureVerifier {
 
     private static final Logger log = LoggerFactory.getLogger(WebhookSignatureVerifierImpl.class);
     private static final String HMAC_ALGORITHM = "HmacSHA256";
 
-    private final String clientSecret;
+    private final byte[] secretBytes;
+    private final SecretKeySpec secretKeySpec;
+    private final ThreadLocal<Mac> keyedMac;
 
     public WebhookSignatureVerifierImpl(HubSpotConfig hubSpotConfig) {
-        this.clientSecret = Objects.requireNonNull(
+        String clientSecret = Objects.requireNonNull(
                 hubSpotConfig.getWebhook().getClientSecret(),
                 "HUBSPOT WEBHOOK CLIENT SECRET CANNOT BE NULL IN CONFIGURATION (HUBSPOTCONFIG)"
         );
-        if (this.clientSecret.isBlank()) {
+        if (clientSecret.isBlank()) {
             log.error("HUBSPOT WEBHOOK CLIENT SECRET IS BLANK IN CONFIGURATION!");
             throw new IllegalArgumentException("HubSpot Webhook Client Secret cannot be blank");
         }
+        this.secretBytes = clientSecret.getBytes(StandardCharsets.UTF_8);
+        this.secretKeySpec = new SecretKeySpec(secretBytes, HMAC_ALGORITHM);
+        this.keyedMac = ThreadLocal.withInitial(this::newKeyedMac);
+        // Fail at startup rather than on the first webhook if the algorithm or key is unusable.
+        this.keyedMac.get();
     }
 
     @Override
-    public void validateSignatureV3(String receivedSignature, String requestBody) {
+    public void validateSignatureV3(String receivedSignature, DataBuffer requestBody) {
         if (receivedSignature == null || receivedSignature.isBlank()) {
             log.warn("WEBHOOK REQUEST RECEIVED WITHOUT V3 SIGNATURE (X-HUBSPOT-SIGNATURE-V3).");
             throw new WebhookAuthenticationException("Webhook V3 signature is missing.");
@@ -46,43 +59,54 @@ public class WebhookSignatureVerifierImpl implements WebhookSignatureVerifier {
             throw new WebhookAuthenticationException("Request body cannot be null for V3 signature validation.");
         }
 
-        String computedSignature = computeSignatureV3(requestBody);
+        byte[] expectedSignature;
+        try {
+            expectedSignature = Base64.getDecoder().decode(receivedSignature);
+        } catch (IllegalArgumentException e) {
+            log.warn("WEBHOOK V3 SIGNATURE IS NOT VALID BASE64: [{}]", receivedSignature);
+            throw new WebhookAuthenticationException("Invalid webhook V3 signature.");
+        }
 
-        if (!TimingSafeComparator.isEqual(computedSignature.getBytes(StandardCharsets.UTF_8),
-                receivedSignature.getBytes(StandardCharsets.UTF_8))) {
-            log.warn("INVALID WEBHOOK V3 SIGNATURE. EXPECTED (COMPUTED): [{}], RECEIVED: [{}]", computedSignature, receivedSignature);
+        byte[] computedSignature = computeSignatureV3(requestBody);
+
+        if (!MessageDigest.isEqual(computedSignature, expectedSignature)) {
+            log.warn("INVALID WEBHOOK V3 SIGNATURE. EXPECTED (COMPUTED): [{}], RECEIVED: [{}]",
+                    Base64.getEncoder().encodeToString(computedSignature), receivedSignature);
             throw new WebhookAuthenticationException("Invalid webhook V3 signature.");
         }
 
         log.debug("WEBHOOK V3 SIGNATURE VALIDATED SUCCESSFULLY.");
     }
 
-    private String computeSignatureV3(String requestBody) {
+    private byte[] computeSignatureV3(DataBuffer requestBody) {
         try {
-            String sourceString = this.clientSecret + requestBody;
+            Mac hmac = keyedMac.get();
+            hmac.update(secretBytes);
+            try (DataBuffer.ByteBufferIterator chunks = requestBody.readableByteBuffers()) {
+                while (chunks.hasNext()) {
+                    hmac.update(chunks.next());
+                }
+            }
+            return hmac.doFinal();
+        } catch (Exception e) {
+            // Drop the thread's Mac, it may hold a partially updated state.
+            keyedMac.remove();
+            log.error("UNEXPECTED ERROR DURING V3 SIGNATURE CALCULATION.", e);
+            throw new WebhookAuthenticationException("INTERNAL FAILURE CALCULATING SIGNATURE.", e);
+        }
+    }
 
+    private Mac newKeyedMac() {
+        try {
             Mac hmac = Mac.getInstance(HMAC_ALGORITHM);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(this.clientSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
             hmac.init(secretKeySpec);
-            byte[] hash = hmac.doFinal(sourceString.getBytes(StandardCharsets.UTF_8));
-
-            return Base64.getEncoder().encodeToString(hash);
-
+            return hmac;
         } catch (NoSuchAlgorithmException e) {
             log.error("HMACSHA256 ALGORITHM NOT FOUND IN JVM.", e);
             throw new WebhookAuthenticationException("INTERNAL FAILURE CALCULATING SIGNATURE (ALGORITHM UNAVAILABLE).", e);
         } catch (InvalidKeyException e) {
             log.error("INVALID KEY FOR HMAC CALCULATION (CLIENT SECRET: '{}'). CHECK CONFIGURATION.", "****", e); // Mask secret
             throw new WebhookAuthenticationException("INTERNAL FAILURE CALCULATING SIGNATURE (INVALID KEY).", e);
-        } catch (Exception e) {
-            log.error("UNEXPECTED ERROR DURING V3 SIGNATURE CALCULATION.", e);
-            throw new WebhookAuthenticationException("INTERNAL FAILURE CALCULATING SIGNATURE.", e);
-        }
-    }
-
-    private static class TimingSafeComparator {
-        public static boolean isEqual(byte[] a, byte[] b) {
-            return MessageDigest.isEqual(a, b);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+public interface ContactCacheService {
+
+    /**
+     * Returns the contact from the cache, or reads it from HubSpot (batched with other lookups) and caches it.
+     * Concurrent misses for the same contact share one read. Uses the only connected portal when
+     * {@code portalId} is null. Completes empty when HubSpot does not know the contact; misses are not cached.
+     */
+    Mono<ContactResponse> getContact(Long portalId, long contactId);
+
+    /**
+     * Caches a contact that was just read from HubSpot, replacing any cached copy.
+     */
+    void put(long portalId, ContactResponse contact);
+
+    /**
+     * Applies the latest property values from webhooks to the cached copy, if there is one.
+     */
+    void applyPropertyChanges(long portalId, long contactId, Map<String, String> changedProperties);
+
+    void invalidate(long portalId, long contactId);
+}
@@ -0,0 +1,15 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import reactor.core.publisher.Mono;
+
+public interface ContactHydrationService {
+
+    /**
+     * Fetches the contact's properties together with other pending lookups in a single batch read.
+     * Lookups are batched per portal, each read with that portal's token.
+     * Completes empty when HubSpot does not know the contact. A batch is scheduled with the most urgent
+     * {@code priority} among its lookups.
+     */
+    Mono<ContactResponse> hydrate(long portalId, long contactId, HubSpotRequestScheduler.Priority priority);
+}
@@ -0,0 +1,30 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.response.ContactImportRowResult;
+import br.com.meetime.hubspot.domain.response.ContactImportStatusResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+public interface ContactImportService {
+
+    /**
+     * Registers an import of {@code lines} into the portal (the only connected one when {@code portalId}
+     * is null). Nothing is read until {@link ContactImport#results()} is subscribed; rows are then
+     * validated, created in batches and reported one result per non-blank row, in file order.
+     */
+    Mono<ContactImport> importContacts(Long portalId, Format format, Flux<String> lines);
+
+    Optional<ContactImportStatusResponse> getStatus(String importId);
+
+    enum Format {
+        // One ContactPropertiesRequest JSON object per line.
+        NDJSON,
+        // A header row naming the properties, then one contact per line.
+        CSV
+    }
+
+    record ContactImport(String id, Flux<ContactImportRowResult> results) {
+    }
+}
@@ -2,8 +2,26 @@ package br.com.meetime.hubspot.service;
 
 import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
 import br.com.meetime.hubspot.domain.response.ContactResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.util.List;
 
 public interface ContactService {
     public Mono<ContactResponse> createContact(ContactCreateRequest contactRequest);
+
+    public Mono<ContactResponse> createContact(long portalId, ContactCreateRequest contactRequest);
+
+    /**
+     * Creates up to 100 contacts in one batch call and emits one outcome per request, in request order:
+     * the created contact or the error for that contact. A batch rejected for its inputs is retried one
+     * contact at a time, so one bad row does not fail the others.
+     */
+    public Flux<Signal<ContactResponse>> createContacts(long portalId, List<ContactCreateRequest> contactRequests);
+
+    /**
+     * Forgets the email of a contact deleted in HubSpot, so it can be created again.
+     */
+    public void forgetContact(long portalId, long contactId);
 }
@@ -7,10 +7,24 @@ public interface HubSpotOAuthService {
 
     public String getAuthorizationUrl();
 
+    /**
+     * Exchanges the code and stores the token under the portal it was issued for, which is looked up
+     * from the token metadata and returned in {@link HubSpotTokenResponse#getHubId()}.
+     */
     public Mono<HubSpotTokenResponse> exchangeCodeForToken(String code);
 
-    public Mono<HubSpotTokenResponse> refreshToken();
+    public Mono<HubSpotTokenResponse> refreshToken(long portalId);
 
+    public Mono<String> getValidAccessToken(long portalId);
+
+    /**
+     * Access token of the only connected portal; fails when several portals are connected.
+     */
     public Mono<String> getValidAccessToken();
 
+    /**
+     * Id of the only connected portal; fails like {@link #getValidAccessToken()} when none or several are connected.
+     */
+    public Mono<Long> getConnectedPortalId();
+
 }
@@ -0,0 +1,26 @@
+package br.com.meetime.hubspot.service;
+
+import reactor.core.publisher.Mono;
+
+public interface HubSpotRequestScheduler {
+
+    // Priority of a hubSpotWebClient request, so retries of it are scheduled like the first attempt.
+    String PRIORITY_ATTRIBUTE = HubSpotRequestScheduler.class.getName() + ".priority";
+
+    /**
+     * Completes once the caller may send one call for the portal to the HubSpot API. The call first waits
+     * for the portal's share of the rate, then waiting calls get the {@code hubspotApi} permits earliest
+     * deadline first, the deadline being the moment of the call plus the deadline configured for its
+     * priority. Fails with {@code RequestNotPermitted} when the deadline passes first.
+     */
+    Mono<Void> acquire(long portalId, Priority priority);
+
+    enum Priority {
+        // A client is waiting on the response.
+        INTERACTIVE,
+        // Work triggered by HubSpot webhooks.
+        WEBHOOK,
+        // Imports and other background jobs.
+        BULK
+    }
+}
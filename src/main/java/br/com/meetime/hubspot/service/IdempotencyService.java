@@ -0,0 +1,20 @@
+package br.com.meetime.hubspot.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    /**
+     * Runs {@code operation} once per {@code idempotencyKey}. Requests with a key already seen share the
+     * first one's result, waiting for it while it is still in flight, instead of running the operation
+     * again. {@code fingerprint} identifies the request; reusing a key for a different request fails with
+     * {@code 422}. Failures that a retry could fix (throttling, server and network errors) are not kept,
+     * so the next request with the key runs the operation again.
+     */
+    <T> Mono<IdempotentResult<T>> execute(String idempotencyKey, Object fingerprint, Supplier<Mono<T>> operation);
+
+    record IdempotentResult<T>(T value, boolean replayed) {
+    }
+}
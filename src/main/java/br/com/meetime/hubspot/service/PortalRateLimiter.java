@@ -0,0 +1,18 @@
+package br.com.meetime.hubspot.service;
+
+public interface PortalRateLimiter {
+
+    /**
+     * Reserves one call out of the portal's share of the {@code hubspotApi} rate. Returns how many
+     * nanoseconds the caller has to wait before using it ({@code 0} for right away), or {@code -1}
+     * without reserving anything when that wait would exceed {@code maxWaitNanos}.
+     */
+    long reserve(long portalId, long maxWaitNanos);
+
+    /**
+     * Caps the portal's rate at {@code callsPerSecond}, whatever its share of the app rate. HubSpot counts
+     * its limits per account, so the rate governor sets this from each portal's own rate-limit headers.
+     * The cap lasts until the next call or until {@code hubspot.portal-limits.rate-cap-ttl} has passed.
+     */
+    void limitRate(long portalId, double callsPerSecond);
+}
@@ -0,0 +1,37 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+
+import java.util.Optional;
+
+/**
+ * Decides which instance refreshes a portal's token when several run against the same HubSpot app.
+ * The refreshing instance holds a time-bounded lease and publishes the new token when it is done;
+ * the others wait for the lease and take the published token instead of calling
+ * {@code /oauth/v1/token} themselves.
+ */
+public interface TokenRefreshCoordinator {
+
+    /**
+     * Takes the portal's refresh lease, or returns empty while another holder's lease is unexpired.
+     */
+    Optional<RefreshLease> tryAcquire(long portalId);
+
+    /**
+     * Publishes the token obtained under the lease and gives the lease up. Does nothing if the lease
+     * expired and was taken by someone else in the meantime.
+     */
+    void complete(RefreshLease lease, HubSpotTokenResponse token);
+
+    /**
+     * Gives the lease up without publishing anything, e.g. after a failed refresh.
+     */
+    void release(RefreshLease lease);
+
+    /**
+     * @param generation     number of tokens published for the portal so far; completing the lease publishes {@code generation + 1}
+     * @param publishedToken the last published token, with {@code expires_in} counted from now, or {@code null}
+     */
+    record RefreshLease(long portalId, long leaseId, long generation, HubSpotTokenResponse publishedToken) {
+    }
+}
@@ -0,0 +1,12 @@
+package br.com.meetime.hubspot.service;
+
+public interface TokenRefreshScheduler {
+
+    /**
+     * Plans the background refresh of a token that was just saved for the portal, replacing any
+     * refresh planned for its previous token.
+     */
+    void schedule(long portalId, long expiresInSeconds);
+
+    void cancel(long portalId);
+}
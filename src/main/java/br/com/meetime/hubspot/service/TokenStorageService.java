@@ -6,12 +6,20 @@ import java.util.Optional;
 
 public interface TokenStorageService {
 
-    public void saveToken(HubSpotTokenResponse tokenResponse);
-    public Optional<String> getAccessToken();
+    public void saveToken(long portalId, HubSpotTokenResponse tokenResponse);
 
-    public Optional<String> getRefreshToken();
+    public Optional<String> getAccessToken(long portalId);
 
-    public void clearToken();
+    public Optional<String> getRefreshToken(long portalId);
 
-    public boolean hasValidToken();
-}
\ No newline at end of file
+    public void clearToken(long portalId);
+
+    public boolean hasValidToken(long portalId);
+
+    /**
+     * @return the portal id when exactly one portal is connected, empty when none or several are
+     */
+    public Optional<Long> getSinglePortalId();
+
+    public int getPortalCount();
+}
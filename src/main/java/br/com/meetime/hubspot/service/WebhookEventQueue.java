@@ -0,0 +1,42 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+
+public interface WebhookEventQueue {
+
+    /**
+     * Starts a batch whose events are handed over one at a time as they are decoded.
+     * {@code onComplete} runs once the batch is closed and every accepted event of it has been processed.
+     */
+    Batch open(Runnable onComplete);
+
+    /**
+     * Same as {@link #open(Runnable)} for events re-driven on purpose: they are processed even when a
+     * newer event for the same object has already been processed.
+     */
+    Batch openRedrive(Runnable onComplete);
+
+    int size();
+
+    interface Batch extends AutoCloseable {
+
+        /**
+         * Queues an event without waiting for it to be processed, applying the overflow policy when the queue is full.
+         *
+         * @return {@code false} once the batch has been rejected because the queue is full
+         */
+        boolean offer(WebhookEventDTO event);
+
+        /**
+         * Same as {@link #offer(WebhookEventDTO)} but waits for room instead of applying the overflow policy.
+         * Used for replays, where nobody is waiting on an HTTP response.
+         */
+        void put(WebhookEventDTO event) throws InterruptedException;
+
+        /**
+         * Marks the end of the batch. No more events may be added afterwards.
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,20 @@
+package br.com.meetime.hubspot.service;
+
+import br.com.meetime.hubspot.domain.request.WebhookReplayRequest;
+import br.com.meetime.hubspot.domain.response.WebhookReplayResponse;
+import reactor.core.publisher.Mono;
+
+public interface WebhookIngestionService {
+
+    /**
+     * Journals a verified webhook body and queues its events for processing as they are decoded.
+     *
+     * @return {@code false} when the events could not be queued and HubSpot should redeliver them; a malformed
+     * body fails with a {@code WebhookDecodingException} after queueing the events read before the error
+     */
+    Mono<Boolean> ingest(byte[] requestBody);
+
+    void replayUnfinished();
+
+    WebhookReplayResponse redrive(WebhookReplayRequest replayRequest) throws InterruptedException;
+}
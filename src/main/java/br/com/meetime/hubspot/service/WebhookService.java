@@ -1,8 +1,22 @@
 package br.com.meetime.hubspot.service;
 
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 public interface WebhookService {
 
- void processWebhookEvents(String requestBody);
+ /**
+  * Decodes a webhook body lazily, emitting only events whose subscription type has a handler.
+  * A malformed body fails with a {@code WebhookDecodingException} after the events read before the error.
+  */
+ Flux<WebhookEventDTO> decodeEvents(byte[] requestBody);
 
-}
\ No newline at end of file
+ /**
+  * Runs the handler of every subscription type merged into the work item, one after another.
+  * Handlers may wait on HubSpot without holding the calling thread; handler errors are logged, not propagated.
+  */
+ Mono<Void> process(WebhookWorkItem workItem);
+
+}
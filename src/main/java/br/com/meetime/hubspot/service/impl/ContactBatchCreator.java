@@ -0,0 +1,305 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.UnauthorizedReplayFilter;
+import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
+import br.com.meetime.hubspot.domain.request.ContactBatchCreateRequest;
+import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
+import br.com.meetime.hubspot.domain.response.ContactBatchCreateResponse;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Gathers concurrent contact creations and sends them through
+ * {@code POST /crm/v3/objects/contacts/batch/create}, flushing when {@code max-batch-size} contacts are
+ * waiting or {@code max-wait} has passed since the first one. Each batch takes a single permit of the
+ * {@code hubspotApi} rate limiter per portal in it, scheduled with the most urgent priority of its contacts.
+ * <p>
+ * HubSpot does not return results in input order, so each one is matched to its caller by email, which
+ * HubSpot keeps unique per portal. Per-input errors of a 207 answer are matched the same way, through the
+ * email in their context or message, and fail their caller with the status and message HubSpot gave; a
+ * contact with neither a result nor an error it can be matched to is created on its own. A batch rejected for its inputs (a 4xx such as a 409 for an existing
+ * email) fails as a whole; its contacts are then created one by one, so each caller gets its own
+ * result or error instead of the batch's. {@link #createAll} sends a chunk the caller already gathered
+ * through the same path, bypassing the buffer. A creation not answered within {@code timeout} fails with a
+ * {@code TimeoutException}.
+ */
+final class ContactBatchCreator {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactBatchCreator.class);
+    private static final String BATCH_CREATE_API_PATH = "/crm/v3/objects/contacts/batch/create";
+
+    private final WebClient hubSpotWebClient;
+    private final HubSpotOAuthService hubSpotOAuthService;
+    private final HubSpotRequestScheduler requestScheduler;
+    private final SingleCreate createOne;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+    private final int maxConcurrentBatches;
+    private final Duration timeout;
+    private Sinks.Many<PendingContact> requests;
+    private Disposable pipeline;
+    private boolean shutdown;
+
+    ContactBatchCreator(WebClient hubSpotWebClient,
+                        HubSpotOAuthService hubSpotOAuthService,
+                        HubSpotRequestScheduler requestScheduler,
+                        HubSpotConfig.BatchCreateConfig batchCreateConfig,
+                        SingleCreate createOne) {
+        this.hubSpotWebClient = hubSpotWebClient;
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.requestScheduler = requestScheduler;
+        this.createOne = createOne;
+        this.maxBatchSize = batchCreateConfig.getMaxBatchSize();
+        this.maxWait = batchCreateConfig.getMaxWait();
+        this.maxConcurrentBatches = batchCreateConfig.getMaxConcurrentBatches();
+        this.timeout = batchCreateConfig.getTimeout();
+        start();
+    }
+
+    // Fair backpressure: without it bufferTimeout fails with an OverflowException when max-wait passes
+    // while max-concurrent-batches are still in flight.
+    private synchronized void start() {
+        requests = Sinks.many().unicast().onBackpressureBuffer();
+        pipeline = requests.asFlux()
+                .bufferTimeout(maxBatchSize, maxWait, true)
+                .flatMap(this::createBatch, maxConcurrentBatches)
+                .subscribe(null, this::restart);
+    }
+
+    // Creations still buffered in the failed pipeline are lost with it; their timeout fails them.
+    private synchronized void restart(Throwable error) {
+        if (shutdown) {
+            return;
+        }
+        log.error("CONTACT BATCH CREATE PIPELINE FAILED. STARTING A NEW ONE.", error);
+        start();
+    }
+
+    Mono<ContactResponse> create(long portalId, ContactCreateRequest contactRequest) {
+        return Mono.defer(() -> {
+            Sinks.One<ContactResponse> result = Sinks.one();
+            emit(new PendingContact(portalId, contactRequest, HubSpotRequestScheduler.Priority.INTERACTIVE, result));
+            return result.asMono().timeout(timeout);
+        });
+    }
+
+    Flux<Signal<ContactResponse>> createAll(long portalId, List<ContactCreateRequest> contactRequests) {
+        return Flux.defer(() -> {
+            List<PendingContact> pending = contactRequests.stream()
+                    .map(contactRequest -> new PendingContact(portalId, contactRequest, HubSpotRequestScheduler.Priority.BULK,
+                            Sinks.<ContactResponse>one()))
+                    .toList();
+            // Contacts retried one by one complete their sinks later, so each one is awaited in order.
+            return createPortalBatch(portalId, pending)
+                    .thenMany(Flux.fromIterable(pending))
+                    .concatMap(contact -> contact.result().asMono().timeout(timeout).materialize());
+        });
+    }
+
+    // The unicast sink only accepts one producer at a time, and requests arrive on many threads.
+    private synchronized void emit(PendingContact pending) {
+        requests.emitNext(pending, Sinks.EmitFailureHandler.FAIL_FAST);
+    }
+
+    private Mono<Void> createBatch(List<PendingContact> batch) {
+        Map<Long, List<PendingContact>> pendingByPortal = new LinkedHashMap<>();
+        for (PendingContact pending : batch) {
+            pendingByPortal.computeIfAbsent(pending.portalId(), portalId -> new ArrayList<>()).add(pending);
+        }
+        return Flux.fromIterable(pendingByPortal.entrySet())
+                .concatMap(portalBatch -> createPortalBatch(portalBatch.getKey(), portalBatch.getValue()))
+                .then();
+    }
+
+    private Mono<Void> createPortalBatch(long portalId, List<PendingContact> pending) {
+        List<ContactCreateRequest> inputs = pending.stream().map(PendingContact::request).toList();
+        HubSpotRequestScheduler.Priority priority = pending.stream()
+                .map(PendingContact::priority)
+                .min(Comparator.naturalOrder())
+                .orElse(HubSpotRequestScheduler.Priority.INTERACTIVE);
+        log.debug("CREATING {} CONTACT(S) IN PORTAL {} IN ONE BATCH.", inputs.size(), portalId);
+
+        return requestScheduler.acquire(portalId, priority)
+                .then(hubSpotOAuthService.getValidAccessToken(portalId))
+                .flatMap(accessToken -> hubSpotWebClient.post()
+                        .uri(BATCH_CREATE_API_PATH)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                        .attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE, portalId)
+                        .attribute(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE, priority)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new ContactBatchCreateRequest(inputs))
+                        .retrieve()
+                        .onStatus(HttpStatusCode::isError, clientResponse ->
+                                clientResponse.bodyToMono(HubSpotErrorDTO.class)
+                                        .flatMap(errorBody -> buildHubSpotError(clientResponse, errorBody))
+                                        .switchIfEmpty(Mono.error(buildEmptyError(clientResponse)))
+                        )
+                        .bodyToMono(ContactBatchCreateResponse.class))
+                .doOnNext(response -> fanOut(response, pending))
+                .onErrorResume(error -> {
+                    if (pending.size() > 1 && isRejectedInput(error)) {
+                        log.warn("BATCH OF {} CONTACT(S) IN PORTAL {} WAS REJECTED ({}). CREATING THEM ONE BY ONE.",
+                                pending.size(), portalId, error.getMessage());
+                        pending.forEach(this::createIndividually);
+                    } else {
+                        log.error("FAILED TO CREATE {} CONTACT(S) IN PORTAL {} IN BATCH: {}", pending.size(), portalId, error.getMessage());
+                        pending.forEach(contact -> contact.result().tryEmitError(error));
+                    }
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void fanOut(ContactBatchCreateResponse response, List<PendingContact> pending) {
+        Map<String, ContactResponse> createdByEmail = new HashMap<>();
+        if (response.getResults() != null) {
+            for (ContactResponse contact : response.getResults()) {
+                String email = contact.getProperties() == null ? null : contact.getProperties().get("email");
+                if (email != null) {
+                    createdByEmail.put(email.toLowerCase(Locale.ROOT), contact);
+                }
+            }
+        }
+        List<ContactBatchCreateResponse.BatchError> errors = response.getErrors() == null ? List.of() : response.getErrors();
+        List<PendingContact> unmatched = new ArrayList<>();
+        int failed = 0;
+        for (PendingContact contact : pending) {
+            ContactResponse created = createdByEmail.get(contact.email());
+            ContactBatchCreateResponse.BatchError error = created == null ? errorFor(contact, errors) : null;
+            if (created != null) {
+                contact.result().tryEmitValue(created);
+            } else if (error != null) {
+                failed++;
+                contact.result().tryEmitError(itemError(error));
+            } else {
+                unmatched.add(contact);
+            }
+        }
+        log.info("BATCH CREATE RETURNED {} OF {} CONTACT(S) AND {} ERROR(S). STATUS: {}",
+                createdByEmail.size(), pending.size(), errors.size(), response.getStatus());
+        if (unmatched.isEmpty()) {
+            return;
+        }
+        if (errors.size() > failed) {
+            // HubSpot reported errors it did not tie to an email: only individual calls can tell whose they are.
+            log.warn("{} BATCH CREATE ERROR(S) COULD NOT BE MATCHED. CREATING {} CONTACT(S) ONE BY ONE.",
+                    errors.size() - failed, unmatched.size());
+            unmatched.forEach(this::createIndividually);
+            return;
+        }
+        unmatched.forEach(contact -> contact.result().tryEmitError(new HubSpotApiException(
+                "BATCH CREATE RETURNED NO RESULT FOR CONTACT.", HttpStatusCode.valueOf(502))));
+    }
+
+    private static ContactBatchCreateResponse.BatchError errorFor(PendingContact contact,
+                                                                  List<ContactBatchCreateResponse.BatchError> errors) {
+        for (ContactBatchCreateResponse.BatchError error : errors) {
+            if (error.getContext() != null && error.getContext().values().stream()
+                    .filter(Objects::nonNull)
+                    .flatMap(List::stream)
+                    .anyMatch(value -> value != null && value.trim().equalsIgnoreCase(contact.email()))) {
+                return error;
+            }
+            if (error.getMessage() != null && error.getMessage().toLowerCase(Locale.ROOT).contains(contact.email())) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    // Same shape as the error of a single create, so callers and imports handle both alike.
+    private static HubSpotApiException itemError(ContactBatchCreateResponse.BatchError error) {
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(statusOf(error.getCategory()));
+        HubSpotErrorDTO errorBody = new HubSpotErrorDTO();
+        errorBody.setStatus(error.getStatus());
+        errorBody.setCategory(error.getCategory());
+        errorBody.setSubCategory(error.getSubCategory());
+        errorBody.setMessage(error.getMessage());
+        return new HubSpotApiException(String.format("FAILED TO CREATE CONTACT IN BATCH: %d", statusCode.value()), statusCode, errorBody);
+    }
+
+    // Batch errors carry HubSpot's error category rather than an HTTP status; these are the ones a single create answers with.
+    private static int statusOf(String category) {
+        if (category == null) {
+            return 400;
+        }
+        return switch (category) {
+            case "CONFLICT", "OBJECT_ALREADY_EXISTS" -> 409;
+            case "OBJECT_NOT_FOUND" -> 404;
+            case "RATE_LIMITS" -> 429;
+            default -> 400;
+        };
+    }
+
+    private void createIndividually(PendingContact contact) {
+        createOne.create(contact.portalId(), contact.request(), contact.priority())
+                .subscribe(contact.result()::tryEmitValue,
+                        contact.result()::tryEmitError,
+                        contact.result()::tryEmitEmpty);
+    }
+
+    // Throttling and server errors would fail the individual calls just the same.
+    private static boolean isRejectedInput(Throwable error) {
+        return error instanceof HubSpotApiException hubSpotError
+                && hubSpotError.getStatusCode().is4xxClientError()
+                && hubSpotError.getStatusCode().value() != 401
+                && hubSpotError.getStatusCode().value() != 429;
+    }
+
+    private Mono<? extends Throwable> buildHubSpotError(ClientResponse response, HubSpotErrorDTO errorBody) {
+        HttpStatusCode statusCode = response.statusCode();
+        String errorMsg = String.format("FAILED TO CREATE CONTACTS IN BATCH: %d", statusCode.value());
+        log.error("{} - BODY: {}", errorMsg, errorBody);
+        return Mono.just(new HubSpotApiException(errorMsg, statusCode, errorBody));
+    }
+
+    private Throwable buildEmptyError(ClientResponse response) {
+        HttpStatusCode statusCode = response.statusCode();
+        String errorMsg = String.format("FAILED TO CREATE CONTACTS IN BATCH: %d (NO ERROR BODY)", statusCode.value());
+        log.error(errorMsg);
+        return new HubSpotApiException(errorMsg, statusCode);
+    }
+
+    synchronized void shutdown() {
+        shutdown = true;
+        pipeline.dispose();
+    }
+
+    @FunctionalInterface
+    interface SingleCreate {
+        Mono<ContactResponse> create(long portalId, ContactCreateRequest contactRequest, HubSpotRequestScheduler.Priority priority);
+    }
+
+    private record PendingContact(long portalId, ContactCreateRequest request, HubSpotRequestScheduler.Priority priority,
+                                  Sinks.One<ContactResponse> result) {
+
+        String email() {
+            return request.getProperties().getEmail().toLowerCase(Locale.ROOT);
+        }
+    }
+}
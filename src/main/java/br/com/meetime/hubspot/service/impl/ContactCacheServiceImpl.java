@@ -0,0 +1,151 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.service.ContactCacheService;
+import br.com.meetime.hubspot.service.ContactHydrationService;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-through cache of contacts in front of {@link ContactHydrationService}, so repeated reads do not
+ * spend HubSpot API calls. Caffeine's W-TinyLFU policy keeps the contacts read most often, within a
+ * {@code maximum-weight} budget on the estimated heap the entries take. Webhook handlers keep entries
+ * current: a creation caches the contact it just read, a property change patches the cached copy and a
+ * deletion drops it; {@code ttl} only bounds staleness for events that never arrive.
+ * <p>
+ * Hits, misses, evictions and size are published as the {@code cache.*} meters tagged
+ * {@code cache=hubspot.contacts}, with the estimated footprint in {@code hubspot.contacts.cache.weight}.
+ */
+@Service
+public class ContactCacheServiceImpl implements ContactCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactCacheServiceImpl.class);
+    private static final String CACHE_NAME = "hubspot.contacts";
+    // Rough heap cost of the cache node, the key, the future and an empty ContactResponse.
+    private static final int ENTRY_OVERHEAD_BYTES = 320;
+    // Object header, hash field and backing array header of a compact (Latin-1) String.
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    private static final int MAP_ENTRY_OVERHEAD_BYTES = 48;
+
+    private final ContactHydrationService contactHydrationService;
+    private final HubSpotOAuthService hubSpotOAuthService;
+    private final AsyncCache<ContactKey, ContactResponse> cache;
+
+    public ContactCacheServiceImpl(ContactHydrationService contactHydrationService,
+                                   HubSpotOAuthService hubSpotOAuthService,
+                                   HubSpotConfig hubSpotConfig,
+                                   MeterRegistry meterRegistry) {
+        HubSpotConfig.ContactCacheConfig cacheConfig = hubSpotConfig.getContacts().getCache();
+        this.contactHydrationService = contactHydrationService;
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getMaximumWeight().toBytes())
+                .weigher(ContactCacheServiceImpl::estimateBytes)
+                .expireAfterWrite(cacheConfig.getTtl())
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("hubspot.contacts.cache.weight", cache, ContactCacheServiceImpl::weightedSize)
+                .description("Estimated heap taken by cached contacts")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.contacts.cache.hit.ratio", cache, contacts -> contacts.synchronous().stats().hitRate())
+                .description("Share of contact reads served from the cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ContactResponse> getContact(Long portalId, long contactId) {
+        Mono<Long> resolvedPortalId = portalId == null ? hubSpotOAuthService.getConnectedPortalId() : Mono.just(portalId);
+        // The future is shared by every caller of the same contact, so one caller leaving must not cancel it.
+        return resolvedPortalId.flatMap(targetPortalId -> Mono.fromFuture(
+                cache.get(new ContactKey(targetPortalId, contactId),
+                        (key, executor) -> contactHydrationService.hydrate(key.portalId(), key.contactId(),
+                                HubSpotRequestScheduler.Priority.INTERACTIVE).toFuture()),
+                true));
+    }
+
+    @Override
+    public void put(long portalId, ContactResponse contact) {
+        if (contact.getId() == null) {
+            return;
+        }
+        cache.put(new ContactKey(portalId, Long.parseLong(contact.getId())), CompletableFuture.completedFuture(contact));
+    }
+
+    @Override
+    public void applyPropertyChanges(long portalId, long contactId, Map<String, String> changedProperties) {
+        // A read still in flight may have started before the change, so it is dropped rather than patched.
+        cache.asMap().computeIfPresent(new ContactKey(portalId, contactId), (key, cached) ->
+                cached.isDone() && !cached.isCompletedExceptionally() && cached.join() != null
+                        ? CompletableFuture.completedFuture(withProperties(cached.join(), changedProperties))
+                        : null);
+    }
+
+    @Override
+    public void invalidate(long portalId, long contactId) {
+        log.debug("INVALIDATING CACHED CONTACT {} OF PORTAL {}.", contactId, portalId);
+        cache.synchronous().invalidate(new ContactKey(portalId, contactId));
+    }
+
+    // Cached contacts are shared with readers, so a change is applied to a copy.
+    private static ContactResponse withProperties(ContactResponse cached, Map<String, String> changedProperties) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        if (cached.getProperties() != null) {
+            properties.putAll(cached.getProperties());
+        }
+        properties.putAll(changedProperties);
+
+        ContactResponse patched = new ContactResponse();
+        patched.setId(cached.getId());
+        patched.setProperties(properties);
+        patched.setCreatedAt(cached.getCreatedAt());
+        patched.setUpdatedAt(cached.getUpdatedAt());
+        patched.setArchived(cached.isArchived());
+        return patched;
+    }
+
+    private static int estimateBytes(ContactKey key, ContactResponse contact) {
+        long bytes = ENTRY_OVERHEAD_BYTES + stringBytes(contact.getId());
+        if (contact.getProperties() != null) {
+            for (Map.Entry<String, String> property : contact.getProperties().entrySet()) {
+                bytes += MAP_ENTRY_OVERHEAD_BYTES + stringBytes(property.getKey()) + stringBytes(property.getValue());
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    // Runs Caffeine's pending maintenance now, so sizes read right after a write are settled.
+    void cleanUp() {
+        cache.synchronous().cleanUp();
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length();
+    }
+
+    // Caffeine updates the weight during its deferred maintenance, so a new entry may show up a moment later.
+    private static double weightedSize(AsyncCache<ContactKey, ContactResponse> contacts) {
+        return contacts.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    private record ContactKey(long portalId, long contactId) {
+    }
+}
@@ -0,0 +1,218 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.HubSpotResilienceFilter;
+import br.com.meetime.hubspot.config.UnauthorizedReplayFilter;
+import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
+import br.com.meetime.hubspot.domain.request.ContactBatchReadRequest;
+import br.com.meetime.hubspot.domain.response.ContactBatchReadResponse;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.ContactHydrationService;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+/**
+ * Collects contact ids requested by webhook handlers and reads them through
+ * {@code POST /crm/v3/objects/contacts/batch/read}, flushing when {@code max-batch-size} ids are
+ * waiting or {@code max-wait} has passed since the first one. Each batch takes a single permit of the
+ * {@code hubspotApi} rate limiter per portal in it, scheduled with the most urgent priority of its lookups, and the results are handed back to every caller waiting on an id.
+ * Interactive lookups are batched apart from webhook and bulk ones, so they never wait behind those batches
+ * for a permit, and each pipeline keeps up to {@code max-concurrent-batches} batches going at once.
+ * A lookup not answered within {@code timeout} fails with a {@code TimeoutException}.
+ */
+@Service
+public class ContactHydrationServiceImpl implements ContactHydrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactHydrationServiceImpl.class);
+    private static final String BATCH_READ_API_PATH = "/crm/v3/objects/contacts/batch/read";
+
+    private final WebClient hubSpotWebClient;
+    private final HubSpotOAuthService hubSpotOAuthService;
+    private final HubSpotRequestScheduler requestScheduler;
+    private final List<String> properties;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+    private final int maxConcurrentBatches;
+    private final Duration timeout;
+    private final Pipeline interactive = new Pipeline("INTERACTIVE");
+    private final Pipeline background = new Pipeline("BACKGROUND");
+
+    public ContactHydrationServiceImpl(@Qualifier("hubSpotWebClient") WebClient hubSpotWebClient,
+                                       HubSpotOAuthService hubSpotOAuthService,
+                                       HubSpotRequestScheduler requestScheduler,
+                                       HubSpotConfig hubSpotConfig) {
+        HubSpotConfig.HydrationConfig hydrationConfig = hubSpotConfig.getHydration();
+        this.hubSpotWebClient = hubSpotWebClient;
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.requestScheduler = requestScheduler;
+        this.properties = List.copyOf(hydrationConfig.getProperties());
+        this.maxBatchSize = hydrationConfig.getMaxBatchSize();
+        this.maxWait = hydrationConfig.getMaxWait();
+        this.maxConcurrentBatches = hydrationConfig.getMaxConcurrentBatches();
+        this.timeout = hydrationConfig.getTimeout();
+        interactive.start();
+        background.start();
+    }
+
+    @Override
+    public Mono<ContactResponse> hydrate(long portalId, long contactId, HubSpotRequestScheduler.Priority priority) {
+        return Mono.defer(() -> {
+            Sinks.One<ContactResponse> result = Sinks.one();
+            Pipeline pipeline = priority == HubSpotRequestScheduler.Priority.INTERACTIVE ? interactive : background;
+            pipeline.emit(new HydrationRequest(portalId, contactId, priority, result));
+            return result.asMono().timeout(timeout);
+        });
+    }
+
+    private Mono<Void> readBatch(List<HydrationRequest> batch) {
+        Map<Long, Map<Long, List<Sinks.One<ContactResponse>>>> waitingByPortal = new LinkedHashMap<>();
+        Map<Long, HubSpotRequestScheduler.Priority> priorityByPortal = new LinkedHashMap<>();
+        for (HydrationRequest request : batch) {
+            waitingByPortal.computeIfAbsent(request.portalId(), portalId -> new LinkedHashMap<>())
+                    .computeIfAbsent(request.contactId(), id -> new ArrayList<>(1))
+                    .add(request.result());
+            priorityByPortal.merge(request.portalId(), request.priority(), BinaryOperator.minBy(Comparator.naturalOrder()));
+        }
+        return Flux.fromIterable(waitingByPortal.entrySet())
+                .concatMap(portalBatch -> readPortalBatch(portalBatch.getKey(), priorityByPortal.get(portalBatch.getKey()),
+                        portalBatch.getValue()))
+                .then();
+    }
+
+    private Mono<Void> readPortalBatch(long portalId, HubSpotRequestScheduler.Priority priority,
+                                       Map<Long, List<Sinks.One<ContactResponse>>> waiting) {
+        List<ContactBatchReadRequest.ObjectIdInput> inputs = waiting.keySet().stream()
+                .map(id -> new ContactBatchReadRequest.ObjectIdInput(String.valueOf(id)))
+                .toList();
+        log.debug("READING {} CONTACT(S) OF PORTAL {} IN ONE BATCH.", inputs.size(), portalId);
+
+        return requestScheduler.acquire(portalId, priority)
+                .then(hubSpotOAuthService.getValidAccessToken(portalId))
+                .flatMap(accessToken -> hubSpotWebClient.post()
+                        .uri(BATCH_READ_API_PATH)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                        .attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE, portalId)
+                        .attribute(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE, priority)
+                        // A read is safe to send twice, though it is a POST.
+                        .attribute(HubSpotResilienceFilter.RETRYABLE_ATTRIBUTE, true)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new ContactBatchReadRequest(properties, inputs))
+                        .retrieve()
+                        .onStatus(HttpStatusCode::isError, clientResponse ->
+                                clientResponse.bodyToMono(HubSpotErrorDTO.class)
+                                        .flatMap(errorBody -> buildHubSpotError(clientResponse, errorBody))
+                                        .switchIfEmpty(Mono.error(buildEmptyError(clientResponse)))
+                        )
+                        .bodyToMono(ContactBatchReadResponse.class))
+                .doOnNext(response -> fanOut(response, waiting))
+                .doOnError(error -> {
+                    log.error("FAILED TO READ {} CONTACT(S) OF PORTAL {} IN BATCH: {}", inputs.size(), portalId, error.getMessage());
+                    waiting.values().forEach(results -> results.forEach(result -> result.tryEmitError(error)));
+                })
+                .onErrorResume(error -> Mono.empty())
+                // Ids HubSpot did not return (or an empty body) complete empty.
+                .doFinally(signal -> waiting.values().forEach(results -> results.forEach(Sinks.One::tryEmitEmpty)))
+                .then();
+    }
+
+    private void fanOut(ContactBatchReadResponse response, Map<Long, List<Sinks.One<ContactResponse>>> waiting) {
+        if (response.getResults() == null) {
+            return;
+        }
+        for (ContactResponse contact : response.getResults()) {
+            List<Sinks.One<ContactResponse>> results = contact.getId() == null ? null : waiting.get(Long.valueOf(contact.getId()));
+            if (results != null) {
+                results.forEach(result -> result.tryEmitValue(contact));
+            }
+        }
+        log.info("BATCH READ RETURNED {} OF {} CONTACT(S). STATUS: {}",
+                response.getResults().size(), waiting.size(), response.getStatus());
+    }
+
+    private Mono<? extends Throwable> buildHubSpotError(ClientResponse response, HubSpotErrorDTO errorBody) {
+        HttpStatusCode statusCode = response.statusCode();
+        String errorMsg = String.format("FAILED TO READ CONTACTS IN BATCH: %d", statusCode.value());
+        log.error("{} - BODY: {}", errorMsg, errorBody);
+        return Mono.just(new HubSpotApiException(errorMsg, statusCode, errorBody));
+    }
+
+    private Throwable buildEmptyError(ClientResponse response) {
+        HttpStatusCode statusCode = response.statusCode();
+        String errorMsg = String.format("FAILED TO READ CONTACTS IN BATCH: %d (NO ERROR BODY)", statusCode.value());
+        log.error(errorMsg);
+        return new HubSpotApiException(errorMsg, statusCode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        interactive.shutdown();
+        background.shutdown();
+    }
+
+    private final class Pipeline {
+        private final String name;
+        private Sinks.Many<HydrationRequest> requests;
+        private Disposable subscription;
+        private boolean shutdown;
+
+        private Pipeline(String name) {
+            this.name = name;
+        }
+
+        // Fair backpressure: without it bufferTimeout fails with an OverflowException when max-wait passes
+        // while the batches already handed out are still waiting for permits.
+        private synchronized void start() {
+            requests = Sinks.many().unicast().onBackpressureBuffer();
+            subscription = requests.asFlux()
+                    .bufferTimeout(maxBatchSize, maxWait, true)
+                    .flatMap(ContactHydrationServiceImpl.this::readBatch, maxConcurrentBatches)
+                    .subscribe(null, this::restart);
+        }
+
+        // Lookups still buffered in the failed pipeline are lost with it; their timeout fails them.
+        private synchronized void restart(Throwable error) {
+            if (shutdown) {
+                return;
+            }
+            log.error("{} CONTACT HYDRATION PIPELINE FAILED. STARTING A NEW ONE.", name, error);
+            start();
+        }
+
+        // The unicast sink only accepts one producer at a time, and handlers call hydrate from every lane.
+        private synchronized void emit(HydrationRequest request) {
+            requests.emitNext(request, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
+
+        private synchronized void shutdown() {
+            shutdown = true;
+            subscription.dispose();
+        }
+    }
+
+    private record HydrationRequest(long portalId, long contactId, HubSpotRequestScheduler.Priority priority,
+                                    Sinks.One<ContactResponse> result) {
+    }
+}
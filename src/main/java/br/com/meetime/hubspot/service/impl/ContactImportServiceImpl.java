@@ -0,0 +1,316 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
+import br.com.meetime.hubspot.domain.request.ContactPropertiesRequest;
+import br.com.meetime.hubspot.domain.response.ContactImportRowResult;
+import br.com.meetime.hubspot.domain.response.ContactImportStatusResponse;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.ContactImportService;
+import br.com.meetime.hubspot.service.ContactService;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a bulk import straight from the request body to HubSpot: rows are parsed and validated as they
+ * arrive, gathered into chunks of {@code chunk-size} and created through one batch call per chunk (one
+ * {@code hubspotApi} permit each). At most {@code max-concurrent-chunks} chunks are in flight and results
+ * are emitted in file order as soon as their chunk completes, so demand from the response, not the size of
+ * the file, decides how many rows are held in memory.
+ * <p>
+ * CSV rows are split on commas, with double-quoted fields and {@code ""} escapes; a field cannot span lines.
+ */
+@Service
+public class ContactImportServiceImpl implements ContactImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContactImportServiceImpl.class);
+    private static final char UTF8_BOM = '\uFEFF';
+
+    private final ContactService contactService;
+    private final HubSpotOAuthService hubSpotOAuthService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final HubSpotConfig.BulkImportConfig bulkImportConfig;
+    private final Map<ContactImportRowResult.Status, Counter> rowCounters = new EnumMap<>(ContactImportRowResult.Status.class);
+    // Insertion order, so the oldest finished imports are dropped first.
+    private final Map<String, ImportJob> imports = new LinkedHashMap<>();
+
+    public ContactImportServiceImpl(ContactService contactService,
+                                    HubSpotOAuthService hubSpotOAuthService,
+                                    ObjectMapper objectMapper,
+                                    Validator validator,
+                                    HubSpotConfig hubSpotConfig,
+                                    MeterRegistry meterRegistry) {
+        this.contactService = contactService;
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.bulkImportConfig = hubSpotConfig.getContacts().getBulkImport();
+        for (ContactImportRowResult.Status status : ContactImportRowResult.Status.values()) {
+            rowCounters.put(status, Counter.builder("hubspot.contacts.import.rows")
+                    .description("Bulk import rows by outcome")
+                    .tag("result", status.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public Mono<ContactImport> importContacts(Long portalId, Format format, Flux<String> lines) {
+        Mono<Long> resolvedPortalId = portalId == null ? hubSpotOAuthService.getConnectedPortalId() : Mono.just(portalId);
+        return resolvedPortalId.map(targetPortalId -> {
+            ImportJob job = register(new ImportJob(UUID.randomUUID().toString(), targetPortalId));
+            log.info("CONTACT IMPORT {} REGISTERED FOR PORTAL {} ({}).", job.id, targetPortalId, format);
+
+            Flux<ContactImportRowResult> results = parse(format, lines)
+                    .buffer(bulkImportConfig.getChunkSize())
+                    .flatMapSequential(chunk -> importChunk(targetPortalId, chunk), bulkImportConfig.getMaxConcurrentChunks(), 1)
+                    .concatMapIterable(chunkResults -> chunkResults)
+                    .doOnSubscribe(subscription -> job.start())
+                    .doOnNext(job::record)
+                    .doOnComplete(job::complete)
+                    .doOnError(job::fail)
+                    .doOnCancel(job::cancel);
+            return new ContactImport(job.id, results);
+        });
+    }
+
+    @Override
+    public synchronized Optional<ContactImportStatusResponse> getStatus(String importId) {
+        return Optional.ofNullable(imports.get(importId)).map(ImportJob::toResponse);
+    }
+
+    private synchronized ImportJob register(ImportJob job) {
+        imports.put(job.id, job);
+        Iterator<ImportJob> oldest = imports.values().iterator();
+        while (imports.size() > bulkImportConfig.getRetainedImports() && oldest.hasNext()) {
+            if (oldest.next().state != ContactImportStatusResponse.State.RUNNING) {
+                oldest.remove();
+            }
+        }
+        return job;
+    }
+
+    private Flux<ImportRow> parse(Format format, Flux<String> lines) {
+        Flux<Line> numbered = lines
+                .index((index, text) -> new Line(index + 1, text))
+                .filter(line -> !line.text().isBlank());
+        if (format == Format.NDJSON) {
+            return numbered.map(this::parseJsonRow);
+        }
+        return numbered.switchOnFirst((first, rows) -> {
+            List<String> header = first.hasValue() ? parseCsvHeader(first.get().text()) : List.of();
+            return rows.skip(1).map(line -> parseCsvRow(header, line));
+        });
+    }
+
+    private ImportRow parseJsonRow(Line line) {
+        try {
+            ContactPropertiesRequest properties = objectMapper.readValue(line.text(), ContactPropertiesRequest.class);
+            return properties == null
+                    ? ImportRow.invalid(line.number(), null, List.of("Contact properties are required"))
+                    : validate(line.number(), properties);
+        } catch (JsonProcessingException e) {
+            return ImportRow.invalid(line.number(), null, List.of("MALFORMED ROW: " + e.getOriginalMessage()));
+        }
+    }
+
+    private ImportRow parseCsvRow(List<String> header, Line line) {
+        List<String> fields = parseCsvFields(line.text());
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < header.size() && i < fields.size(); i++) {
+            String value = fields.get(i).trim();
+            if (!value.isEmpty()) {
+                properties.put(header.get(i), value);
+            }
+        }
+        try {
+            return validate(line.number(), objectMapper.convertValue(properties, ContactPropertiesRequest.class));
+        } catch (IllegalArgumentException e) {
+            return ImportRow.invalid(line.number(), properties.get("email"), List.of("MALFORMED ROW: " + e.getMessage()));
+        }
+    }
+
+    private ImportRow validate(long lineNumber, ContactPropertiesRequest properties) {
+        List<String> errors = validator.validate(properties).stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .toList();
+        return errors.isEmpty()
+                ? new ImportRow(lineNumber, properties, null)
+                : ImportRow.invalid(lineNumber, properties.getEmail(), errors);
+    }
+
+    private static List<String> parseCsvHeader(String text) {
+        String header = !text.isEmpty() && text.charAt(0) == UTF8_BOM ? text.substring(1) : text;
+        return parseCsvFields(header).stream()
+                .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    private static List<String> parseCsvFields(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private Mono<List<ContactImportRowResult>> importChunk(long portalId, List<ImportRow> chunk) {
+        List<ContactCreateRequest> contactRequests = chunk.stream()
+                .filter(ImportRow::isValid)
+                .map(row -> new ContactCreateRequest(row.properties()))
+                .toList();
+        if (contactRequests.isEmpty()) {
+            return Mono.just(chunk.stream().map(ImportRow::invalidResult).toList());
+        }
+        return contactService.createContacts(portalId, contactRequests)
+                .collectList()
+                .map(outcomes -> {
+                    Iterator<Signal<ContactResponse>> outcome = outcomes.iterator();
+                    List<ContactImportRowResult> results = new ArrayList<>(chunk.size());
+                    for (ImportRow row : chunk) {
+                        results.add(row.isValid() ? row.result(outcome.next()) : row.invalidResult());
+                    }
+                    return results;
+                });
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof HubSpotApiException hubSpotError
+                && hubSpotError.getErrorBody() != null
+                && hubSpotError.getErrorBody().getMessage() != null) {
+            return hubSpotError.getMessage() + " - " + hubSpotError.getErrorBody().getMessage();
+        }
+        return error.getMessage();
+    }
+
+    private record Line(long number, String text) {
+    }
+
+    private record ImportRow(long line, ContactPropertiesRequest properties, ContactImportRowResult invalidResult) {
+
+        static ImportRow invalid(long line, String email, List<String> errors) {
+            return new ImportRow(line, null, new ContactImportRowResult(line, ContactImportRowResult.Status.INVALID, email, null, errors));
+        }
+
+        boolean isValid() {
+            return invalidResult == null;
+        }
+
+        ContactImportRowResult result(Signal<ContactResponse> outcome) {
+            String email = properties.getEmail();
+            if (outcome.hasValue()) {
+                return new ContactImportRowResult(line, ContactImportRowResult.Status.CREATED, email, outcome.get().getId(), null);
+            }
+            String error = outcome.hasError() ? describe(outcome.getThrowable()) : "HUBSPOT RETURNED NO CONTACT.";
+            return new ContactImportRowResult(line, ContactImportRowResult.Status.FAILED, email, null, List.of(error));
+        }
+    }
+
+    private final class ImportJob {
+
+        private final String id;
+        private final long portalId;
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong invalid = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile ContactImportStatusResponse.State state = ContactImportStatusResponse.State.PENDING;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private ImportJob(String id, long portalId) {
+            this.id = id;
+            this.portalId = portalId;
+        }
+
+        void start() {
+            startedAt = Instant.now();
+            state = ContactImportStatusResponse.State.RUNNING;
+            log.info("CONTACT IMPORT {} STARTED.", id);
+        }
+
+        void record(ContactImportRowResult result) {
+            rowCounters.get(result.getStatus()).increment();
+            switch (result.getStatus()) {
+                case CREATED -> created.incrementAndGet();
+                case INVALID -> invalid.incrementAndGet();
+                case FAILED -> failed.incrementAndGet();
+            }
+        }
+
+        void complete() {
+            finish(ContactImportStatusResponse.State.COMPLETED);
+        }
+
+        void fail(Throwable cause) {
+            error = cause.getMessage();
+            log.error("CONTACT IMPORT {} FAILED: {}", id, cause.getMessage());
+            finish(ContactImportStatusResponse.State.FAILED);
+        }
+
+        void cancel() {
+            log.warn("CONTACT IMPORT {} CANCELLED BY THE CLIENT.", id);
+            finish(ContactImportStatusResponse.State.CANCELLED);
+        }
+
+        private void finish(ContactImportStatusResponse.State finalState) {
+            finishedAt = Instant.now();
+            state = finalState;
+            log.info("CONTACT IMPORT {} {}: {} CREATED, {} INVALID, {} FAILED.",
+                    id, finalState, created.get(), invalid.get(), failed.get());
+        }
+
+        ContactImportStatusResponse toResponse() {
+            long createdRows = created.get();
+            long invalidRows = invalid.get();
+            long failedRows = failed.get();
+            return new ContactImportStatusResponse(id, portalId, state, createdRows + invalidRows + failedRows,
+                    createdRows, invalidRows, failedRows, startedAt, finishedAt, error);
+        }
+    }
+}
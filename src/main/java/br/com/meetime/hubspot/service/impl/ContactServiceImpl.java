@@ -1,49 +1,228 @@
 package br.com.meetime.hubspot.service.impl;
 
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.UnauthorizedReplayFilter;
 import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
+import br.com.meetime.hubspot.domain.request.ContactPropertiesRequest;
 import br.com.meetime.hubspot.domain.response.ContactResponse;
 import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
 import br.com.meetime.hubspot.exception.HubSpotApiException;
 import br.com.meetime.hubspot.service.ContactService;
 import br.com.meetime.hubspot.service.HubSpotOAuthService;
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates contacts in HubSpot, each call taking a permit of the {@code hubspotApi} rate limiter. With
+ * {@code hubspot.contacts.batch-create.enabled}, concurrent calls are gathered by {@link ContactBatchCreator}
+ * and share one permit and one HubSpot call per batch. {@link #createContacts} always goes through a batch.
+ * <p>
+ * HubSpot keeps emails unique per portal, so single creations are keyed by portal and normalized email:
+ * concurrent creations of the same email and properties share one upstream call, a concurrent creation of the
+ * same email with other properties gets the {@code 409} HubSpot would answer once the first one succeeds, and
+ * an email already known to belong to a
+ * contact (from a successful create or a {@code 409} naming the existing id) fails with the same {@code 409}
+ * without calling HubSpot. Known emails are bounded by {@code hubspot.contacts.conflict-cache} and forgotten
+ * when the contact is deleted.
+ */
 @Service
 public class ContactServiceImpl implements ContactService {
 
     private static final Logger log = LoggerFactory.getLogger(ContactServiceImpl.class);
     private static final String CONTACTS_API_PATH = "/crm/v3/objects/contacts";
+    private static final Pattern EXISTING_ID_PATTERN = Pattern.compile("Existing ID: (\\d+)");
 
     private final WebClient hubSpotWebClient;
     private final HubSpotOAuthService hubSpotOAuthService;
+    private final HubSpotRequestScheduler requestScheduler;
+    private final ContactBatchCreator contactBatchCreator;
+    private final boolean batchCreateEnabled;
+    private final ConcurrentHashMap<ContactEmailKey, InFlightCreate> createsInFlight = new ConcurrentHashMap<>();
+    private final Cache<ContactEmailKey, Long> knownContacts;
+    private final Counter inFlightDuplicates;
+    private final Counter knownContactDuplicates;
+    private final Counter inFlightConflicts;
 
     public ContactServiceImpl(@Qualifier("hubSpotWebClient") WebClient hubSpotWebClient,
-                              HubSpotOAuthService hubSpotOAuthService) {
+                              HubSpotOAuthService hubSpotOAuthService,
+                              HubSpotRequestScheduler requestScheduler,
+                              HubSpotConfig hubSpotConfig,
+                              MeterRegistry meterRegistry) {
         this.hubSpotWebClient = hubSpotWebClient;
         this.hubSpotOAuthService = hubSpotOAuthService;
+        this.requestScheduler = requestScheduler;
+        HubSpotConfig.BatchCreateConfig batchCreateConfig = hubSpotConfig.getContacts().getBatchCreate();
+        this.contactBatchCreator = new ContactBatchCreator(hubSpotWebClient, hubSpotOAuthService, requestScheduler,
+                batchCreateConfig, this::createIndividually);
+        this.batchCreateEnabled = batchCreateConfig.isEnabled();
+        HubSpotConfig.ConflictCacheConfig conflictCacheConfig = hubSpotConfig.getContacts().getConflictCache();
+        this.knownContacts = Caffeine.newBuilder()
+                .maximumSize(conflictCacheConfig.getMaximumSize())
+                .expireAfterWrite(conflictCacheConfig.getTtl())
+                .build();
+        this.inFlightDuplicates = Counter.builder("hubspot.contacts.create.deduplicated")
+                .description("Contact creations answered without their own HubSpot call")
+                .tag("reason", "in_flight")
+                .register(meterRegistry);
+        this.knownContactDuplicates = Counter.builder("hubspot.contacts.create.deduplicated")
+                .description("Contact creations answered without their own HubSpot call")
+                .tag("reason", "known_contact")
+                .register(meterRegistry);
+        this.inFlightConflicts = Counter.builder("hubspot.contacts.create.deduplicated")
+                .description("Contact creations answered without their own HubSpot call")
+                .tag("reason", "in_flight_conflict")
+                .register(meterRegistry);
     }
 
-    @RateLimiter(name = "hubspotApi")
     public Mono<ContactResponse> createContact(ContactCreateRequest contactRequest) {
         log.info("ATTEMPTING TO CREATE CONTACT IN HUBSPOT: {}", contactRequest.getProperties().getEmail());
+        return hubSpotOAuthService.getConnectedPortalId()
+                .flatMap(portalId -> create(portalId, contactRequest))
+                .doOnError(ContactServiceImpl::logCreateContactError);
+    }
+
+    public Mono<ContactResponse> createContact(long portalId, ContactCreateRequest contactRequest) {
+        log.info("ATTEMPTING TO CREATE CONTACT IN HUBSPOT PORTAL {}: {}", portalId, contactRequest.getProperties().getEmail());
+        return create(portalId, contactRequest)
+                .doOnError(ContactServiceImpl::logCreateContactError);
+    }
+
+    public Flux<Signal<ContactResponse>> createContacts(long portalId, List<ContactCreateRequest> contactRequests) {
+        log.info("ATTEMPTING TO CREATE {} CONTACT(S) IN HUBSPOT PORTAL {} IN ONE BATCH.", contactRequests.size(), portalId);
+        return contactBatchCreator.createAll(portalId, contactRequests);
+    }
+
+    public void forgetContact(long portalId, long contactId) {
+        // Keyed by email, so a deletion has to scan; deletions are rare next to creations.
+        knownContacts.asMap().entrySet().removeIf(known ->
+                known.getKey().portalId() == portalId && known.getValue() == contactId);
+    }
+
+    private Mono<ContactResponse> create(long portalId, ContactCreateRequest contactRequest) {
+        String email = contactRequest.getProperties().getEmail();
+        if (email == null) {
+            return send(portalId, contactRequest);
+        }
+        return Mono.defer(() -> {
+            ContactEmailKey key = new ContactEmailKey(portalId, email.trim().toLowerCase(Locale.ROOT));
+            Long existingContactId = knownContacts.getIfPresent(key);
+            if (existingContactId != null) {
+                knownContactDuplicates.increment();
+                log.info("CONTACT {} ALREADY EXISTS IN PORTAL {} WITH ID {}. NOT CALLING HUBSPOT.", key.email(), portalId, existingContactId);
+                return Mono.error(contactExists(existingContactId));
+            }
+            ContactCreateRequest body = normalized(contactRequest, key.email());
+            AtomicBoolean started = new AtomicBoolean();
+            InFlightCreate creation = createsInFlight.computeIfAbsent(key, inFlightKey -> {
+                started.set(true);
+                return new InFlightCreate(body, send(portalId, contactRequest)
+                        .doOnNext(contact -> rememberContact(inFlightKey, contact.getId()))
+                        .doOnError(error -> rememberConflict(inFlightKey, error))
+                        // Only this call can be mapped to the email until it terminates, so removing by key is safe.
+                        .doFinally(signal -> createsInFlight.remove(inFlightKey))
+                        .cache());
+            });
+            if (started.get()) {
+                return creation.result();
+            }
+            if (creation.body().equals(body)) {
+                inFlightDuplicates.increment();
+                log.info("CONTACT {} IS ALREADY BEING CREATED IN PORTAL {}. SHARING THAT CALL.", key.email(), portalId);
+                return creation.result();
+            }
+            // Other properties for the same email: HubSpot would create the first one and answer this one with a 409.
+            // Should the first one fail, this one is sent on its own instead.
+            inFlightConflicts.increment();
+            log.info("CONTACT {} IS ALREADY BEING CREATED IN PORTAL {} WITH OTHER PROPERTIES. WAITING FOR THAT CALL.", key.email(), portalId);
+            return creation.result()
+                    .onErrorResume(error -> Mono.empty())
+                    .filter(contact -> contact.getId() != null)
+                    .flatMap(contact -> Mono.<ContactResponse>error(contactExists(Long.parseLong(contact.getId()))))
+                    .switchIfEmpty(Mono.defer(() -> send(portalId, contactRequest)));
+        });
+    }
+
+    // The request as HubSpot would see it for uniqueness: same properties, with the email normalized like the key.
+    private static ContactCreateRequest normalized(ContactCreateRequest contactRequest, String email) {
+        ContactPropertiesRequest properties = contactRequest.getProperties();
+        return new ContactCreateRequest(new ContactPropertiesRequest(email, properties.getFirstname(),
+                properties.getLastname(), properties.getPhone(), properties.getCompany()));
+    }
+
+    private Mono<ContactResponse> send(long portalId, ContactCreateRequest contactRequest) {
+        return batchCreateEnabled
+                ? contactBatchCreator.create(portalId, contactRequest)
+                : createIndividually(portalId, contactRequest, HubSpotRequestScheduler.Priority.INTERACTIVE);
+    }
+
+    private void rememberContact(ContactEmailKey key, String contactId) {
+        if (contactId != null) {
+            knownContacts.put(key, Long.parseLong(contactId));
+        }
+    }
+
+    private void rememberConflict(ContactEmailKey key, Throwable error) {
+        if (error instanceof HubSpotApiException hubSpotError
+                && hubSpotError.getStatusCode().value() == HttpStatus.CONFLICT.value()
+                && hubSpotError.getErrorBody() != null
+                && hubSpotError.getErrorBody().getMessage() != null) {
+            Matcher existingId = EXISTING_ID_PATTERN.matcher(hubSpotError.getErrorBody().getMessage());
+            if (existingId.find()) {
+                knownContacts.put(key, Long.parseLong(existingId.group(1)));
+            }
+        }
+    }
+
+    // Same shape as HubSpot's own CONTACT_EXISTS answer, so callers handle both alike.
+    private static HubSpotApiException contactExists(long existingContactId) {
+        HubSpotErrorDTO errorBody = new HubSpotErrorDTO();
+        errorBody.setStatus("error");
+        errorBody.setCategory("CONFLICT");
+        errorBody.setMessage("Contact already exists. Existing ID: " + existingContactId);
+        return new HubSpotApiException("FAILED TO CREATE CONTACT: 409", HttpStatus.CONFLICT, errorBody);
+    }
+
+    private Mono<ContactResponse> createIndividually(long portalId, ContactCreateRequest contactRequest,
+                                                     HubSpotRequestScheduler.Priority priority) {
+        return requestScheduler.acquire(portalId, priority)
+                .then(sendCreateContact(portalId, contactRequest, priority));
+    }
 
-        return hubSpotOAuthService.getValidAccessToken()
+    private Mono<ContactResponse> sendCreateContact(long portalId, ContactCreateRequest contactRequest,
+                                                    HubSpotRequestScheduler.Priority priority) {
+        return hubSpotOAuthService.getValidAccessToken(portalId)
                 .flatMap(accessToken -> {
                     log.debug("USING ACCESS TOKEN TO CREATE CONTACT");
 
                     return hubSpotWebClient.post()
                             .uri(CONTACTS_API_PATH)
                             .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                            .attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE, portalId)
+                            .attribute(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE, priority)
                             .contentType(MediaType.APPLICATION_JSON)
                             .bodyValue(contactRequest)
                             .retrieve()
@@ -65,20 +244,21 @@ public class ContactServiceImpl implements ContactService {
                                     log.error("UNEXPECTED ERROR WHILE CREATING CONTACT: {}", error.getMessage(), error);
                                 }
                             });
-                })
-                .doOnError(error -> {
-                    if (error instanceof HubSpotApiException hubspotError) {
-                        if (hubspotError.getStatusCode().value() == 401) {
-                            log.error("FAILED TO CREATE CONTACT: OAUTH AUTHORIZATION REQUIRED OR INVALID.");
-                        } else {
-                            log.error("FAILED TO CREATE CONTACT: HUBSPOT API ERROR: {}", hubspotError.getMessage());
-                        }
-                    } else {
-                        log.error("FAILED TO CREATE CONTACT: ERROR WHILE FETCHING ACCESS TOKEN: {}", error.getMessage());
-                    }
                 });
     }
 
+    private static void logCreateContactError(Throwable error) {
+        if (error instanceof HubSpotApiException hubspotError) {
+            if (hubspotError.getStatusCode().value() == 401) {
+                log.error("FAILED TO CREATE CONTACT: OAUTH AUTHORIZATION REQUIRED OR INVALID.");
+            } else {
+                log.error("FAILED TO CREATE CONTACT: HUBSPOT API ERROR: {}", hubspotError.getMessage());
+            }
+        } else {
+            log.error("FAILED TO CREATE CONTACT: ERROR WHILE FETCHING ACCESS TOKEN: {}", error.getMessage());
+        }
+    }
+
     private Mono<? extends Throwable> buildHubSpotError(ClientResponse response, HubSpotErrorDTO errorBody) {
         HttpStatusCode statusCode = response.statusCode();
         String errorMsg = String.format("FAILED TO CREATE CONTACT: %d", statusCode.value());
@@ -92,4 +272,15 @@ public class ContactServiceImpl implements ContactService {
         log.error(errorMsg);
         return new HubSpotApiException(errorMsg, statusCode);
     }
+
+    @PreDestroy
+    public void shutdown() {
+        contactBatchCreator.shutdown();
+    }
+
+    private record ContactEmailKey(long portalId, String email) {
+    }
+
+    private record InFlightCreate(ContactCreateRequest body, Mono<ContactResponse> result) {
+    }
 }
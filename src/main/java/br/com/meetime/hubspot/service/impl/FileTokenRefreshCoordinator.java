@@ -0,0 +1,183 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Leases kept in one small file per portal in {@code hubspot.oauth.coordination.directory}, which every
+ * instance mounts. Each operation takes an exclusive OS lock on the portal's file, reads the lease
+ * state, changes it and writes it back, so instances on different hosts agree as long as the volume
+ * honours advisory locks (local disks, NFSv4). The OS lock is only held for that read-modify-write;
+ * the lease itself is bounded by {@code lease-ttl}, so a holder that dies frees the portal when it expires.
+ * <p>
+ * File layout: {@code [int magic][byte version][long leaseId][long leaseExpiresAtMillis][long generation]
+ * [long tokenExpiresAtMillis][int length][tokens sealed by TokenCipher]}.
+ */
+@Service
+@ConditionalOnProperty(prefix = "hubspot.oauth.coordination", name = "type", havingValue = "file")
+public class FileTokenRefreshCoordinator implements TokenRefreshCoordinator {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTokenRefreshCoordinator.class);
+
+    private static final int MAGIC = 0x48534C45;
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES + 1 + 4 * Long.BYTES + Integer.BYTES;
+    // FileChannel locks are held per JVM, not per thread, so threads of this instance also need to take turns.
+    private static final int STRIPES = 64;
+
+    private final Path directory;
+    private final TokenCipher cipher;
+    private final long leaseTtlMillis;
+    private final LongSupplier currentTimeMillis;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    @Autowired
+    public FileTokenRefreshCoordinator(HubSpotConfig hubSpotConfig) {
+        this(hubSpotConfig, System::currentTimeMillis);
+    }
+
+    FileTokenRefreshCoordinator(HubSpotConfig hubSpotConfig, LongSupplier currentTimeMillis) {
+        HubSpotConfig.CoordinationConfig coordinationConfig = hubSpotConfig.getOauth().getCoordination();
+        this.directory = Paths.get(coordinationConfig.getDirectory()).toAbsolutePath();
+        this.cipher = TokenCipher.fromBase64Key(hubSpotConfig.getTokenStore().getEncryptionKey());
+        this.leaseTtlMillis = coordinationConfig.getLeaseTtl().toMillis();
+        this.currentTimeMillis = currentTimeMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("FAILED TO CREATE TOKEN LEASE DIRECTORY " + directory, e);
+        }
+    }
+
+    @Override
+    public Optional<RefreshLease> tryAcquire(long portalId) {
+        long now = currentTimeMillis.getAsLong();
+        long leaseId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        LeaseState state = update(portalId, current ->
+                current.isLeased(now) ? current : current.acquire(leaseId, now + leaseTtlMillis));
+        return state.leaseId() == leaseId ? Optional.of(state.toLease(portalId, now)) : Optional.empty();
+    }
+
+    @Override
+    public void complete(RefreshLease lease, HubSpotTokenResponse token) {
+        long now = currentTimeMillis.getAsLong();
+        boolean[] published = {false};
+        update(lease.portalId(), current -> {
+            LeaseState next = current.complete(lease.leaseId(), token, now);
+            published[0] = next != current;
+            return next;
+        });
+        if (!published[0]) {
+            log.warn("REFRESH LEASE OF PORTAL {} EXPIRED BEFORE ITS TOKEN WAS PUBLISHED.", lease.portalId());
+        }
+    }
+
+    @Override
+    public void release(RefreshLease lease) {
+        update(lease.portalId(), current -> current.release(lease.leaseId()));
+    }
+
+    private LeaseState update(long portalId, UnaryOperator<LeaseState> change) {
+        Path file = directory.resolve("portal-" + portalId + ".lease");
+        ReentrantLock stripe = stripes[Math.floorMod(portalId, STRIPES)];
+        stripe.lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            LeaseState current = read(portalId, channel);
+            LeaseState next = change.apply(current);
+            if (next != current) {
+                write(portalId, channel, next);
+            }
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException("FAILED TO UPDATE TOKEN LEASE FILE " + file, e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("FAILED TO ENCRYPT TOKEN LEASE FILE " + file + ": " + e.getMessage(), e);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private LeaseState read(long portalId, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return LeaseState.EMPTY;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            log.warn("IGNORING UNREADABLE TOKEN LEASE FILE OF PORTAL {}.", portalId);
+            return LeaseState.EMPTY;
+        }
+        long leaseId = buffer.getLong();
+        long leaseExpiresAtMillis = buffer.getLong();
+        long generation = buffer.getLong();
+        long tokenExpiresAtMillis = buffer.getLong();
+        byte[] sealed = new byte[buffer.getInt()];
+        buffer.get(sealed);
+
+        String accessToken = null;
+        String refreshToken = null;
+        if (sealed.length > 0) {
+            try {
+                TokenCipher.Tokens tokens = cipher.open(portalId, tokenExpiresAtMillis, sealed);
+                accessToken = tokens.accessToken();
+                refreshToken = tokens.refreshToken();
+            } catch (GeneralSecurityException e) {
+                log.error("PUBLISHED TOKEN OF PORTAL {} COULD NOT BE DECRYPTED. CHECK hubspot.token-store.encryption-key.", portalId);
+            }
+        }
+        return new LeaseState(leaseId, leaseExpiresAtMillis, generation, accessToken, refreshToken, tokenExpiresAtMillis);
+    }
+
+    private void write(long portalId, FileChannel channel, LeaseState state) throws IOException, GeneralSecurityException {
+        byte[] sealed = state.accessToken() == null
+                ? new byte[0]
+                : cipher.seal(portalId, state.tokenExpiresAtMillis(), state.accessToken(), state.refreshToken());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + sealed.length)
+                .putInt(MAGIC)
+                .put(VERSION)
+                .putLong(state.leaseId())
+                .putLong(state.leaseExpiresAtMillis())
+                .putLong(state.generation())
+                .putLong(state.tokenExpiresAtMillis())
+                .putInt(sealed.length)
+                .put(sealed)
+                .flip();
+        channel.truncate(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+    }
+}
@@ -0,0 +1,243 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
+import br.com.meetime.hubspot.service.TokenStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link TokenStorageService} that survives restarts. Reads are served by an in-memory
+ * {@link TokenStorageServiceImpl}; every change marks it dirty and a single writer thread rewrites the
+ * whole snapshot to a temporary file, forces it to disk and renames it over {@code token-store.file},
+ * so the file on disk is always a complete snapshot. Changes made while a write is running are
+ * picked up by one follow-up write.
+ * <p>
+ * File layout: {@code [int magic][byte version][int count]} followed by {@code count} records of
+ * {@code [long portalId][long expiresAtEpochMillis][int length][sealed tokens]}, sealed by
+ * {@link TokenCipher}.
+ */
+@Service
+@ConditionalOnProperty(prefix = "hubspot.token-store", name = "type", havingValue = "file")
+public class FileTokenStorageServiceImpl implements TokenStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTokenStorageServiceImpl.class);
+
+    private static final int MAGIC = 0x4853544B;
+    private static final byte VERSION = 1;
+
+    private final TokenStorageServiceImpl cache = new TokenStorageServiceImpl();
+    private final Path file;
+    private final Path tempFile;
+    private final TokenCipher cipher;
+    private final ExecutorService writer;
+    private final AtomicBoolean writeQueued = new AtomicBoolean();
+    private final Counter writeCounter;
+    private final Counter writeFailureCounter;
+
+    public FileTokenStorageServiceImpl(HubSpotConfig hubSpotConfig,
+                                       TokenRefreshScheduler tokenRefreshScheduler,
+                                       MeterRegistry meterRegistry) {
+        HubSpotConfig.TokenStoreConfig tokenStoreConfig = hubSpotConfig.getTokenStore();
+        this.file = Paths.get(tokenStoreConfig.getFile()).toAbsolutePath();
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.cipher = TokenCipher.fromBase64Key(tokenStoreConfig.getEncryptionKey());
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeCounter = Counter.builder("hubspot.oauth.token.store.writes")
+                .description("Token snapshots written to disk")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.writeFailureCounter = Counter.builder("hubspot.oauth.token.store.writes")
+                .description("Token snapshots written to disk")
+                .tag("result", "failure")
+                .register(meterRegistry);
+
+        try {
+            Files.createDirectories(file.getParent());
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("FAILED TO OPEN TOKEN STORE " + file, e);
+        }
+        // Tokens that expired while the service was down are refreshed on first use instead of all at once.
+        cache.forEachToken((portalId, accessToken, refreshToken, validForNanos) -> {
+            if (validForNanos > 0) {
+                tokenRefreshScheduler.schedule(portalId, TimeUnit.NANOSECONDS.toSeconds(validForNanos));
+            }
+        });
+    }
+
+    @Override
+    public void saveToken(long portalId, HubSpotTokenResponse tokenResponse) {
+        cache.saveToken(portalId, tokenResponse);
+        queueWrite();
+    }
+
+    @Override
+    public Optional<String> getAccessToken(long portalId) {
+        return cache.getAccessToken(portalId);
+    }
+
+    @Override
+    public Optional<String> getRefreshToken(long portalId) {
+        return cache.getRefreshToken(portalId);
+    }
+
+    @Override
+    public void clearToken(long portalId) {
+        cache.clearToken(portalId);
+        queueWrite();
+    }
+
+    @Override
+    public boolean hasValidToken(long portalId) {
+        return cache.hasValidToken(portalId);
+    }
+
+    @Override
+    public Optional<Long> getSinglePortalId() {
+        return cache.getSinglePortalId();
+    }
+
+    @Override
+    public int getPortalCount() {
+        return cache.getPortalCount();
+    }
+
+    private void queueWrite() {
+        if (writeQueued.compareAndSet(false, true)) {
+            writer.execute(this::write);
+        }
+    }
+
+    private void write() {
+        // Cleared before reading the cache, so a change made during this write queues another one.
+        writeQueued.set(false);
+        try {
+            writeSnapshot();
+            writeCounter.increment();
+        } catch (IOException | UncheckedIOException | GeneralSecurityException e) {
+            writeFailureCounter.increment();
+            log.error("FAILED TO WRITE TOKEN STORE {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    private void writeSnapshot() throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        int[] count = {0};
+        long nowMillis = System.currentTimeMillis();
+        GeneralSecurityException[] failure = {null};
+        cache.forEachToken((portalId, accessToken, refreshToken, validForNanos) -> {
+            if (failure[0] != null) {
+                return;
+            }
+            try {
+                long expiresAtMillis = nowMillis + TimeUnit.NANOSECONDS.toMillis(validForNanos);
+                byte[] sealed = cipher.seal(portalId, expiresAtMillis, accessToken, refreshToken);
+                records.writeLong(portalId);
+                records.writeLong(expiresAtMillis);
+                records.writeInt(sealed.length);
+                records.write(sealed);
+                count[0]++;
+            } catch (GeneralSecurityException e) {
+                failure[0] = e;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(9).putInt(MAGIC).put(VERSION).putInt(count[0]).flip();
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            ByteBuffer body = ByteBuffer.wrap(bytes.toByteArray());
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("TOKEN STORE WRITTEN WITH {} PORTAL(S).", count[0]);
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            log.info("NO TOKEN STORE FOUND AT {}. STARTING EMPTY.", file);
+            return;
+        }
+        long start = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        int loaded = 0;
+        int unreadable = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("NOT A TOKEN STORE FILE: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long portalId = in.readLong();
+                long expiresAtMillis = in.readLong();
+                byte[] sealed = new byte[in.readInt()];
+                in.readFully(sealed);
+                try {
+                    TokenCipher.Tokens tokens = cipher.open(portalId, expiresAtMillis, sealed);
+                    cache.restoreToken(portalId, tokens.accessToken(), tokens.refreshToken(),
+                            TimeUnit.MILLISECONDS.toNanos(expiresAtMillis - nowMillis));
+                    loaded++;
+                } catch (GeneralSecurityException e) {
+                    unreadable++;
+                }
+            }
+        }
+        if (unreadable > 0) {
+            log.error("{} TOKEN(S) IN {} COULD NOT BE DECRYPTED. CHECK hubspot.token-store.encryption-key.", unreadable, file);
+        }
+        log.info("LOADED {} PORTAL TOKEN(S) FROM {} IN {} MS.", loaded, file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("TOKEN STORE WRITER DID NOT FINISH IN TIME.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
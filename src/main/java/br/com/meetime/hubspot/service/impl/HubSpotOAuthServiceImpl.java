@@ -1,11 +1,18 @@
 package br.com.meetime.hubspot.service.impl;
 
 import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.HubSpotResilienceFilter;
 import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
+import br.com.meetime.hubspot.domain.response.HubSpotAccessTokenInfoResponse;
 import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
 import br.com.meetime.hubspot.exception.HubSpotApiException;
 import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator.RefreshLease;
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
 import br.com.meetime.hubspot.service.TokenStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -18,24 +25,46 @@ import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class HubSpotOAuthServiceImpl implements HubSpotOAuthService {
 
     private static final Logger log = LoggerFactory.getLogger(HubSpotOAuthServiceImpl.class);
+    private static final String ACCESS_TOKEN_INFO_API_PATH = "/oauth/v1/access-tokens/{token}";
+    // A token published by another instance is only taken if it is still good for a while.
+    private static final long MIN_ADOPTED_LIFETIME_SECONDS = 120;
 
     private final WebClient hubSpotOAuthWebClient;
+    private final WebClient hubSpotWebClient;
     private final HubSpotConfig hubSpotConfig;
     private final TokenStorageService tokenStorageService;
+    private final TokenRefreshScheduler tokenRefreshScheduler;
+    private final TokenRefreshCoordinator tokenRefreshCoordinator;
+    private final ConcurrentHashMap<Long, Mono<HubSpotTokenResponse>> refreshesInFlight = new ConcurrentHashMap<>();
+    // Generation of the coordinator-published token each portal's stored token came from (absent: not from one).
+    private final ConcurrentHashMap<Long, Long> tokenGenerations = new ConcurrentHashMap<>();
+    private final Counter refreshWaitCounter;
 
     public HubSpotOAuthServiceImpl(@Qualifier("hubSpotOAuthWebClient") WebClient hubSpotOAuthWebClient,
+                                   @Qualifier("hubSpotWebClient") WebClient hubSpotWebClient,
                                    HubSpotConfig hubSpotConfig,
-                                   TokenStorageService tokenStorageService) {
+                                   TokenStorageService tokenStorageService,
+                                   TokenRefreshScheduler tokenRefreshScheduler,
+                                   TokenRefreshCoordinator tokenRefreshCoordinator,
+                                   MeterRegistry meterRegistry) {
         this.hubSpotOAuthWebClient = hubSpotOAuthWebClient;
+        this.hubSpotWebClient = hubSpotWebClient;
         this.hubSpotConfig = hubSpotConfig;
         this.tokenStorageService = tokenStorageService;
+        this.tokenRefreshScheduler = tokenRefreshScheduler;
+        this.tokenRefreshCoordinator = tokenRefreshCoordinator;
+        this.refreshWaitCounter = Counter.builder("hubspot.oauth.refresh.waits")
+                .description("Requests that found the token expired and had to wait for a refresh")
+                .register(meterRegistry);
     }
 
     public String getAuthorizationUrl() {
@@ -69,18 +98,104 @@ public class HubSpotOAuthServiceImpl implements HubSpotOAuthService {
                 )
 
                 .bodyToMono(HubSpotTokenResponse.class)
-                .doOnSuccess(token -> {
-                    log.info("ACCESS TOKEN RECEIVED SUCCESSFULLY.");
-                    tokenStorageService.saveToken(token);
-                })
+                .flatMap(token -> fetchHubId(token.getAccessToken())
+                        .map(hubId -> {
+                            log.info("ACCESS TOKEN RECEIVED SUCCESSFULLY FOR PORTAL {}.", hubId);
+                            token.setHubId(hubId);
+                            tokenStorageService.saveToken(hubId, token);
+                            tokenRefreshScheduler.schedule(hubId, token.getExpiresIn());
+                            return token;
+                        }))
                 .doOnError(error -> log.error("ERROR WHILE EXCHANGING CODE FOR TOKEN: {}", error.getMessage()));
     }
 
-    public Mono<HubSpotTokenResponse> refreshToken() {
-        log.info("ATTEMPTING TO REFRESH ACCESS TOKEN...");
+    private Mono<Long> fetchHubId(String accessToken) {
+        return hubSpotWebClient.get()
+                .uri(ACCESS_TOKEN_INFO_API_PATH, accessToken)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response ->
+                        response.bodyToMono(HubSpotErrorDTO.class)
+                                .flatMap(errorBody -> Mono.<Throwable>error(buildTokenError(response, errorBody)))
+                                .switchIfEmpty(Mono.<Throwable>error(buildTokenError(response)))
+                )
+                .bodyToMono(HubSpotAccessTokenInfoResponse.class)
+                .flatMap(tokenInfo -> tokenInfo.getHubId() == null
+                        ? Mono.error(new HubSpotApiException("ACCESS TOKEN METADATA HAS NO HUB ID.", HttpStatusCode.valueOf(502)))
+                        : Mono.just(tokenInfo.getHubId()));
+    }
+
+    /**
+     * Concurrent callers for the same portal share a single refresh request. The shared call is released
+     * once the new token is saved (or the refresh fails), so the next expiry starts a fresh one.
+     */
+    public Mono<HubSpotTokenResponse> refreshToken(long portalId) {
+        return Mono.defer(() -> refreshesInFlight.computeIfAbsent(portalId, id -> requestRefresh(id)
+                // Only this call can be mapped to the portal until it terminates, so removing by key is safe.
+                .doFinally(signal -> refreshesInFlight.remove(id))
+                .cache()));
+    }
 
-        String refreshToken = tokenStorageService.getRefreshToken()
-                .orElseThrow(() -> new IllegalStateException("NO REFRESH TOKEN AVAILABLE FOR RENEWAL."));
+    /**
+     * Refreshes under the portal's lease from {@link TokenRefreshCoordinator}. While another instance holds
+     * it this one polls; once it gets the lease, a token published since its own is taken as is, and only
+     * otherwise is {@code /oauth/v1/token} called, preferring the published refresh token in case HubSpot
+     * rotated it.
+     */
+    private Mono<HubSpotTokenResponse> requestRefresh(long portalId) {
+        HubSpotConfig.CoordinationConfig coordination = hubSpotConfig.getOauth().getCoordination();
+        long maxPolls = Math.max(1, coordination.getMaxWait().toMillis() / Math.max(1, coordination.getPollInterval().toMillis()));
+        return Mono.fromCallable(() -> tokenRefreshCoordinator.tryAcquire(portalId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                .repeatWhenEmpty(polls -> polls
+                        .doOnNext(poll -> {
+                            if (poll == 0) {
+                                log.info("PORTAL {} TOKEN IS BEING REFRESHED BY ANOTHER INSTANCE. WAITING FOR IT...", portalId);
+                            }
+                        })
+                        .take(maxPolls)
+                        .concatMap(poll -> Mono.delay(coordination.getPollInterval())))
+                .switchIfEmpty(Mono.error(() -> new HubSpotApiException(
+                        String.format("TIMED OUT WAITING FOR ANOTHER INSTANCE TO REFRESH PORTAL %d TOKEN.", portalId),
+                        HttpStatusCode.valueOf(503))))
+                .flatMap(lease -> refreshUnderLease(portalId, lease));
+    }
+
+    private Mono<HubSpotTokenResponse> refreshUnderLease(long portalId, RefreshLease lease) {
+        HubSpotTokenResponse publishedToken = lease.publishedToken();
+        if (publishedToken != null
+                && lease.generation() > tokenGenerations.getOrDefault(portalId, 0L)
+                && publishedToken.getExpiresIn() > MIN_ADOPTED_LIFETIME_SECONDS) {
+            return Mono.fromCallable(() -> {
+                        tokenRefreshCoordinator.release(lease);
+                        log.info("USING PORTAL {} TOKEN REFRESHED BY ANOTHER INSTANCE.", portalId);
+                        tokenStorageService.saveToken(portalId, publishedToken);
+                        tokenGenerations.put(portalId, lease.generation());
+                        tokenRefreshScheduler.schedule(portalId, publishedToken.getExpiresIn());
+                        return publishedToken;
+                    })
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+
+        log.info("ATTEMPTING TO REFRESH ACCESS TOKEN FOR PORTAL {}...", portalId);
+        Optional<String> refreshToken = Optional.ofNullable(publishedToken)
+                .map(HubSpotTokenResponse::getRefreshToken)
+                .or(() -> tokenStorageService.getRefreshToken(portalId));
+        Mono<HubSpotTokenResponse> refresh = refreshToken.isEmpty()
+                ? Mono.error(new IllegalStateException("NO REFRESH TOKEN AVAILABLE FOR RENEWAL OF PORTAL " + portalId + "."))
+                : requestRefresh(portalId, refreshToken.get());
+        return refresh
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(token -> {
+                    tokenRefreshCoordinator.complete(lease, token);
+                    tokenGenerations.put(portalId, lease.generation() + 1);
+                })
+                .onErrorResume(error -> Mono.<Void>fromRunnable(() -> tokenRefreshCoordinator.release(lease))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then(Mono.error(error)));
+    }
+
+    private Mono<HubSpotTokenResponse> requestRefresh(long portalId, String refreshToken) {
 
         MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
         formData.add("grant_type", "refresh_token");
@@ -89,6 +204,8 @@ public class HubSpotOAuthServiceImpl implements HubSpotOAuthService {
         formData.add("client_secret", hubSpotConfig.getOauth().getClientSecret());
 
         return hubSpotOAuthWebClient.post()
+                // HubSpot refresh tokens stay valid after use, so a refresh is safe to send twice.
+                .attribute(HubSpotResilienceFilter.RETRYABLE_ATTRIBUTE, true)
                 .body(BodyInserters.fromFormData(formData))
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, response ->
@@ -99,28 +216,53 @@ public class HubSpotOAuthServiceImpl implements HubSpotOAuthService {
 
                 .bodyToMono(HubSpotTokenResponse.class)
                 .doOnSuccess(newToken -> {
-                    log.info("ACCESS TOKEN REFRESHED SUCCESSFULLY.");
-                    newToken.setRefreshToken(refreshToken);
-                    tokenStorageService.saveToken(newToken);
+                    log.info("ACCESS TOKEN REFRESHED SUCCESSFULLY FOR PORTAL {}.", portalId);
+                    if (newToken.getRefreshToken() == null) {
+                        newToken.setRefreshToken(refreshToken);
+                    }
+                    newToken.setHubId(portalId);
+                    tokenStorageService.saveToken(portalId, newToken);
+                    tokenRefreshScheduler.schedule(portalId, newToken.getExpiresIn());
                 })
-                .doOnError(error -> log.error("ERROR DURING TOKEN REFRESH: {}", error.getMessage()));
+                .doOnError(error -> log.error("ERROR DURING TOKEN REFRESH FOR PORTAL {}: {}", portalId, error.getMessage()));
     }
 
-    public Mono<String> getValidAccessToken() {
+    public Mono<String> getValidAccessToken(long portalId) {
         return Mono.defer(() -> {
-            Optional<String> currentToken = tokenStorageService.getAccessToken();
+            Optional<String> currentToken = tokenStorageService.getAccessToken(portalId);
             if (currentToken.isPresent()) {
-                log.debug("USING EXISTING ACCESS TOKEN FROM MEMORY.");
+                log.debug("USING EXISTING ACCESS TOKEN FROM MEMORY FOR PORTAL {}.", portalId);
                 return Mono.just(currentToken.get());
-            } else if (tokenStorageService.getRefreshToken().isPresent()) {
-                log.info("ACCESS TOKEN EXPIRED OR MISSING. TRYING TO REFRESH...");
-                return refreshToken()
+            } else if (tokenStorageService.getRefreshToken(portalId).isPresent()) {
+                log.info("ACCESS TOKEN FOR PORTAL {} EXPIRED OR MISSING. TRYING TO REFRESH...", portalId);
+                refreshWaitCounter.increment();
+                return refreshToken(portalId)
                         .map(HubSpotTokenResponse::getAccessToken)
-                        .doOnError(err -> log.error("FAILED TO REFRESH TOKEN. REAUTHENTICATION MAY BE REQUIRED.", err));
+                        .doOnError(err -> log.error("FAILED TO REFRESH TOKEN FOR PORTAL {}. REAUTHENTICATION MAY BE REQUIRED.", portalId, err));
             } else {
-                log.warn("NO ACCESS OR REFRESH TOKEN FOUND. AUTHORIZATION REQUIRED.");
+                log.warn("NO ACCESS OR REFRESH TOKEN FOUND FOR PORTAL {}. AUTHORIZATION REQUIRED.", portalId);
+                return Mono.error(new HubSpotApiException("OAUTH AUTHORIZATION REQUIRED.", HttpStatusCode.valueOf(401)));
+            }
+        });
+    }
+
+    public Mono<String> getValidAccessToken() {
+        return getConnectedPortalId().flatMap(this::getValidAccessToken);
+    }
+
+    public Mono<Long> getConnectedPortalId() {
+        return Mono.defer(() -> {
+            Optional<Long> portalId = tokenStorageService.getSinglePortalId();
+            if (portalId.isPresent()) {
+                return Mono.just(portalId.get());
+            }
+            int portalCount = tokenStorageService.getPortalCount();
+            if (portalCount == 0) {
+                log.warn("NO PORTAL CONNECTED. AUTHORIZATION REQUIRED.");
                 return Mono.error(new HubSpotApiException("OAUTH AUTHORIZATION REQUIRED.", HttpStatusCode.valueOf(401)));
             }
+            return Mono.error(new HubSpotApiException(
+                    String.format("HUBSPOT PORTAL ID REQUIRED: %d PORTALS CONNECTED.", portalCount), HttpStatusCode.valueOf(400)));
         });
     }
 
@@ -0,0 +1,241 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the permits of the {@code hubspotApi} rate limiter to the waiting calls earliest deadline
+ * first, instead of in arrival order. A call's deadline is the moment it asked plus the
+ * {@code hubspot.scheduler.*-deadline} of its priority, so an interactive call arriving behind a queue of
+ * bulk work is served first, while bulk work that has waited long enough still gets its turn.
+ * <p>
+ * Before joining the queue, a call waits for its portal's share of the rate ({@link PortalRateLimiter}),
+ * which counts against the same deadline. Only one permit is reserved at a time, and it goes to whichever
+ * call is first in the queue when it becomes usable, so a call arriving during the wait can still overtake.
+ * A call whose deadline passes first fails with {@link RequestNotPermitted}, like a limiter timeout. Wait
+ * times are published as {@code hubspot.api.scheduler.wait{priority}} and the queue length as
+ * {@code hubspot.api.scheduler.queued}. Calls that are cancelled or time out are only marked as such and
+ * skipped when they reach the head of the queue, so leaving it never scans the queue under the lock.
+ */
+@Service
+public class HubSpotRequestSchedulerImpl implements HubSpotRequestScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(HubSpotRequestSchedulerImpl.class);
+    private static final String RATE_LIMITER_NAME = "hubspotApi";
+
+    private final RateLimiter rateLimiter;
+    private final PortalRateLimiter portalRateLimiter;
+    private final Scheduler timer = Schedulers.parallel();
+    private final int maxQueued;
+    private final Map<Priority, Duration> deadlines = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> expired = new EnumMap<>(Priority.class);
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(Comparator.<Waiter>comparingLong(waiter -> waiter.deadlineNanos)
+            .thenComparing(waiter -> waiter.priority)
+            .thenComparingLong(waiter -> waiter.sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    // Waiters in the queue that are not cancelled; the queue may also hold cancelled ones not yet skipped.
+    private int waiting;
+    // A permit is reserved and its grant is scheduled.
+    private boolean reserving;
+    // A permit became usable while nobody was waiting; the next call takes it.
+    private boolean permitHeld;
+
+    public HubSpotRequestSchedulerImpl(RateLimiterRegistry rateLimiterRegistry,
+                                       PortalRateLimiter portalRateLimiter,
+                                       HubSpotConfig hubSpotConfig,
+                                       MeterRegistry meterRegistry) {
+        HubSpotConfig.SchedulerConfig schedulerConfig = hubSpotConfig.getScheduler();
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(RATE_LIMITER_NAME);
+        this.portalRateLimiter = portalRateLimiter;
+        this.maxQueued = schedulerConfig.getMaxQueued();
+        deadlines.put(Priority.INTERACTIVE, schedulerConfig.getInteractiveDeadline());
+        deadlines.put(Priority.WEBHOOK, schedulerConfig.getWebhookDeadline());
+        deadlines.put(Priority.BULK, schedulerConfig.getBulkDeadline());
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            waitTimers.put(priority, Timer.builder("hubspot.api.scheduler.wait")
+                    .description("Time calls waited for a hubspotApi permit")
+                    .tag("priority", tag)
+                    .register(meterRegistry));
+            expired.put(priority, Counter.builder("hubspot.api.scheduler.expired")
+                    .description("Calls that did not get a hubspotApi permit before their deadline")
+                    .tag("priority", tag)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("hubspot.api.scheduler.queued", this, HubSpotRequestSchedulerImpl::queued)
+                .description("Calls waiting for a hubspotApi permit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> acquire(long portalId, Priority priority) {
+        Duration deadline = deadlines.get(priority);
+        return Mono.defer(() -> {
+                    long now = System.nanoTime();
+                    long portalWaitNanos = portalRateLimiter.reserve(portalId, deadline.toNanos());
+                    if (portalWaitNanos < 0) {
+                        log.warn("PORTAL {} IS OVER ITS SHARE OF THE HUBSPOT API RATE FOR {} WITHIN {}.", portalId, priority, deadline);
+                        return Mono.error(RequestNotPermitted.createRequestNotPermitted(rateLimiter));
+                    }
+                    Mono<Void> permit = permit(priority, now, now + deadline.toNanos());
+                    return portalWaitNanos == 0 ? permit : Mono.delay(Duration.ofNanos(portalWaitNanos), timer).then(permit);
+                })
+                .timeout(deadline, Mono.<Void>defer(() -> {
+                    expired.get(priority).increment();
+                    log.warn("NO HUBSPOT API PERMIT FOR {} CALL WITHIN {}.", priority, deadline);
+                    return Mono.error(RequestNotPermitted.createRequestNotPermitted(rateLimiter));
+                }), timer);
+    }
+
+    private Mono<Void> permit(Priority priority, long askedNanos, long deadlineNanos) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(priority, askedNanos, deadlineNanos, sequence.getAndIncrement(), sink);
+            if (!enqueue(waiter)) {
+                sink.error(RequestNotPermitted.createRequestNotPermitted(rateLimiter));
+                return;
+            }
+            sink.onDispose(() -> cancel(waiter));
+            dispatch();
+        });
+    }
+
+    private synchronized boolean enqueue(Waiter waiter) {
+        if (waiting >= maxQueued) {
+            log.warn("{} CALLS ALREADY WAITING FOR A HUBSPOT API PERMIT. REJECTING {} CALL.", waiting, waiter.priority);
+            return false;
+        }
+        if (queue.size() >= 2 * maxQueued) {
+            // Cancelled waiters far from the head would otherwise pile up. At this size at least half are cancelled,
+            // so each purge frees max-queued slots and its cost is spread over the cancellations that caused it.
+            queue.removeIf(queued -> queued.cancelled);
+        }
+        queue.add(waiter);
+        waiter.queued = true;
+        waiting++;
+        return true;
+    }
+
+    // Runs on every termination, including after the permit was granted, when the waiter is no longer queued.
+    private synchronized void cancel(Waiter waiter) {
+        if (waiter.queued && !waiter.cancelled) {
+            waiter.cancelled = true;
+            waiting--;
+        }
+    }
+
+    // Must hold the lock. Drops cancelled waiters at the head and returns the first live one, if any.
+    private Waiter pollWaiting() {
+        Waiter waiter;
+        while ((waiter = queue.poll()) != null) {
+            waiter.queued = false;
+            if (!waiter.cancelled) {
+                waiting--;
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    private synchronized int queued() {
+        return waiting;
+    }
+
+    // Sinks are completed outside the lock, since the callers go on to send their request synchronously.
+    private void dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            if (permitHeld && waiting > 0) {
+                permitHeld = false;
+                granted.add(pollWaiting());
+            }
+            while (!reserving && waiting > 0) {
+                long waitNanos = rateLimiter.reservePermission();
+                if (waitNanos == 0) {
+                    granted.add(pollWaiting());
+                    continue;
+                }
+                reserving = true;
+                if (waitNanos > 0) {
+                    timer.schedule(this::grant, waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    // Nothing could be reserved within the limiter's timeout; try again next period.
+                    timer.schedule(this::retry, rateLimiter.getRateLimiterConfig().getLimitRefreshPeriod().toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        granted.forEach(this::complete);
+    }
+
+    private void grant() {
+        Waiter waiter;
+        synchronized (this) {
+            reserving = false;
+            waiter = pollWaiting();
+            if (waiter == null) {
+                permitHeld = true;
+            }
+        }
+        if (waiter != null) {
+            complete(waiter);
+        }
+        dispatch();
+    }
+
+    private void retry() {
+        synchronized (this) {
+            reserving = false;
+        }
+        dispatch();
+    }
+
+    private void complete(Waiter waiter) {
+        waitTimers.get(waiter.priority).record(System.nanoTime() - waiter.askedNanos, TimeUnit.NANOSECONDS);
+        waiter.sink.success();
+    }
+
+    private static final class Waiter {
+        private final Priority priority;
+        private final long askedNanos;
+        private final long deadlineNanos;
+        private final long sequence;
+        private final MonoSink<Void> sink;
+        // Guarded by the scheduler's lock.
+        private boolean queued;
+        private boolean cancelled;
+
+        private Waiter(Priority priority, long askedNanos, long deadlineNanos, long sequence, MonoSink<Void> sink) {
+            this.priority = priority;
+            this.askedNanos = askedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.IdempotencyService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the outcome of each idempotent request in a Caffeine cache bounded by
+ * {@code hubspot.idempotency.maximum-size} and expired after {@code ttl}. The entry is stored before the
+ * operation starts, holding the operation's cached {@code Mono}, so concurrent requests with the same key
+ * subscribe to the call in flight and later ones replay its outcome. An outcome that is not worth replaying
+ * removes its entry once it completes.
+ */
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyServiceImpl.class);
+    private static final String CACHE_NAME = "hubspot.idempotency";
+
+    private final Cache<String, StoredOutcome> outcomes;
+    private final Counter replayCounter;
+
+    public IdempotencyServiceImpl(HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry) {
+        HubSpotConfig.IdempotencyConfig idempotencyConfig = hubSpotConfig.getIdempotency();
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(idempotencyConfig.getMaximumSize())
+                .expireAfterWrite(idempotencyConfig.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, outcomes, CACHE_NAME);
+        this.replayCounter = Counter.builder("hubspot.idempotency.replays")
+                .description("Requests answered with the outcome of an earlier request with the same Idempotency-Key")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Mono<IdempotentResult<T>> execute(String idempotencyKey, Object fingerprint, Supplier<Mono<T>> operation) {
+        return Mono.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            StoredOutcome stored = outcomes.get(idempotencyKey, key -> {
+                started.set(true);
+                return new StoredOutcome(fingerprint, Mono.defer(operation)
+                        .doOnError(error -> forgetUnlessFinal(key, error))
+                        .cache());
+            });
+            if (!started.get()) {
+                if (!stored.fingerprint().equals(fingerprint)) {
+                    log.warn("IDEMPOTENCY KEY {} REUSED FOR A DIFFERENT REQUEST.", idempotencyKey);
+                    return Mono.error(new HubSpotApiException("IDEMPOTENCY KEY ALREADY USED FOR A DIFFERENT REQUEST.",
+                            HttpStatus.UNPROCESSABLE_ENTITY));
+                }
+                replayCounter.increment();
+                log.info("REPLAYING OUTCOME OF IDEMPOTENCY KEY {}.", idempotencyKey);
+            }
+            return ((Mono<T>) stored.outcome()).map(value -> new IdempotentResult<>(value, !started.get()));
+        });
+    }
+
+    // HubSpot rejecting the request itself is final; throttling, auth, server and network failures are not.
+    private void forgetUnlessFinal(String idempotencyKey, Throwable error) {
+        boolean isFinal = error instanceof HubSpotApiException hubSpotError
+                && hubSpotError.getStatusCode().is4xxClientError()
+                && hubSpotError.getStatusCode().value() != HttpStatus.UNAUTHORIZED.value()
+                && hubSpotError.getStatusCode().value() != HttpStatus.REQUEST_TIMEOUT.value()
+                && hubSpotError.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value();
+        if (!isFinal) {
+            log.debug("NOT KEEPING FAILED OUTCOME OF IDEMPOTENCY KEY {}: {}", idempotencyKey, error.getMessage());
+            outcomes.invalidate(idempotencyKey);
+        }
+    }
+
+    private record StoredOutcome(Object fingerprint, Mono<?> outcome) {
+    }
+}
@@ -0,0 +1,58 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Leases held in this JVM only. Enough for a single instance, and it lets tests run several
+ * {@link HubSpotOAuthServiceImpl}s against one coordinator as if they were separate replicas.
+ */
+@Service
+@ConditionalOnProperty(prefix = "hubspot.oauth.coordination", name = "type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryTokenRefreshCoordinator implements TokenRefreshCoordinator {
+
+    private final ConcurrentHashMap<Long, LeaseState> states = new ConcurrentHashMap<>();
+    private final long leaseTtlMillis;
+    private final LongSupplier currentTimeMillis;
+
+    @Autowired
+    public InMemoryTokenRefreshCoordinator(HubSpotConfig hubSpotConfig) {
+        this(hubSpotConfig, System::currentTimeMillis);
+    }
+
+    InMemoryTokenRefreshCoordinator(HubSpotConfig hubSpotConfig, LongSupplier currentTimeMillis) {
+        this.leaseTtlMillis = hubSpotConfig.getOauth().getCoordination().getLeaseTtl().toMillis();
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public Optional<RefreshLease> tryAcquire(long portalId) {
+        long now = currentTimeMillis.getAsLong();
+        long leaseId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        LeaseState state = states.compute(portalId, (id, current) -> {
+            LeaseState previous = current != null ? current : LeaseState.EMPTY;
+            return previous.isLeased(now) ? previous : previous.acquire(leaseId, now + leaseTtlMillis);
+        });
+        return state.leaseId() == leaseId ? Optional.of(state.toLease(portalId, now)) : Optional.empty();
+    }
+
+    @Override
+    public void complete(RefreshLease lease, HubSpotTokenResponse token) {
+        long now = currentTimeMillis.getAsLong();
+        states.computeIfPresent(lease.portalId(), (id, state) -> state.complete(lease.leaseId(), token, now));
+    }
+
+    @Override
+    public void release(RefreshLease lease) {
+        states.computeIfPresent(lease.portalId(), (id, state) -> state.release(lease.leaseId()));
+    }
+}
@@ -0,0 +1,53 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator.RefreshLease;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A portal's refresh lease and last published token, as kept by the coordinators. Times are
+ * wall-clock milliseconds, the only clock instances on different hosts share. A {@code leaseId} of
+ * zero means nobody holds the lease.
+ */
+record LeaseState(long leaseId, long leaseExpiresAtMillis, long generation,
+                  String accessToken, String refreshToken, long tokenExpiresAtMillis) {
+
+    static final LeaseState EMPTY = new LeaseState(0, 0, 0, null, null, 0);
+
+    boolean isLeased(long nowMillis) {
+        return leaseId != 0 && leaseExpiresAtMillis > nowMillis;
+    }
+
+    LeaseState acquire(long newLeaseId, long leaseExpiresAtMillis) {
+        return new LeaseState(newLeaseId, leaseExpiresAtMillis, generation, accessToken, refreshToken, tokenExpiresAtMillis);
+    }
+
+    LeaseState complete(long heldLeaseId, HubSpotTokenResponse token, long nowMillis) {
+        if (leaseId != heldLeaseId) {
+            return this;
+        }
+        return new LeaseState(0, 0, generation + 1, token.getAccessToken(), token.getRefreshToken(),
+                nowMillis + TimeUnit.SECONDS.toMillis(token.getExpiresIn()));
+    }
+
+    LeaseState release(long heldLeaseId) {
+        if (leaseId != heldLeaseId) {
+            return this;
+        }
+        return new LeaseState(0, 0, generation, accessToken, refreshToken, tokenExpiresAtMillis);
+    }
+
+    RefreshLease toLease(long portalId, long nowMillis) {
+        HubSpotTokenResponse publishedToken = null;
+        if (accessToken != null) {
+            publishedToken = new HubSpotTokenResponse();
+            publishedToken.setHubId(portalId);
+            publishedToken.setAccessToken(accessToken);
+            publishedToken.setRefreshToken(refreshToken);
+            publishedToken.setTokenType("bearer");
+            publishedToken.setExpiresIn(TimeUnit.MILLISECONDS.toSeconds(tokenExpiresAtMillis - nowMillis));
+        }
+        return new RefreshLease(portalId, leaseId, generation, publishedToken);
+    }
+}
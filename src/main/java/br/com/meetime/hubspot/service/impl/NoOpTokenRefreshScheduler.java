@@ -0,0 +1,18 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+@Service
+@ConditionalOnProperty(prefix = "hubspot.oauth.proactive-refresh", name = "enabled", havingValue = "false")
+public class NoOpTokenRefreshScheduler implements TokenRefreshScheduler {
+
+    @Override
+    public void schedule(long portalId, long expiresInSeconds) {
+    }
+
+    @Override
+    public void cancel(long portalId) {
+    }
+}
@@ -0,0 +1,155 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits the {@code hubspotApi} rate between the portals that are calling HubSpot, so one busy portal
+ * cannot starve the others. Each portal gets {@code weight / (sum of the active weights)} of the app
+ * rate the limiter currently allows (which the rate governor keeps adjusting). A portal is active until
+ * it has made no call for {@code hubspot.portal-limits.idle-ttl}; a lone portal gets the whole rate.
+ * <p>
+ * Each portal's bucket is a single {@link AtomicLong} holding the time its next call is due (the generic
+ * cell rate algorithm), so a reservation is one map lookup and one CAS. A portal that has been quiet may
+ * spend up to {@code burst} of its share at once. Buckets live in a Caffeine cache that drops them after
+ * {@code idle-ttl}, together with their meters. Delayed and rejected calls are counted per portal in
+ * {@code hubspot.api.portal.throttled{portal,outcome}}.
+ * <p>
+ * A portal's rate is also capped at what HubSpot grants that account, as set through {@link #limitRate}
+ * by the rate governor. Caps are kept apart from the buckets, for {@code rate-cap-ttl}, so they outlive
+ * short idle periods.
+ */
+@Service
+public class PortalRateLimiterImpl implements PortalRateLimiter {
+
+    private static final String RATE_LIMITER_NAME = "hubspotApi";
+
+    private final RateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long burstNanos;
+    private final int defaultWeight;
+    private final Map<Long, Integer> weights;
+    private final Ticker ticker;
+    private final Cache<Long, PortalBucket> buckets;
+    private final Cache<Long, Double> rateCaps;
+    private final AtomicLong activeWeight = new AtomicLong();
+
+    @Autowired
+    public PortalRateLimiterImpl(RateLimiterRegistry rateLimiterRegistry, HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry) {
+        this(rateLimiterRegistry, hubSpotConfig, meterRegistry, Ticker.systemTicker());
+    }
+
+    PortalRateLimiterImpl(RateLimiterRegistry rateLimiterRegistry, HubSpotConfig hubSpotConfig, MeterRegistry meterRegistry,
+                          Ticker ticker) {
+        HubSpotConfig.PortalLimitsConfig portalLimitsConfig = hubSpotConfig.getPortalLimits();
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(RATE_LIMITER_NAME);
+        this.meterRegistry = meterRegistry;
+        this.enabled = portalLimitsConfig.isEnabled();
+        this.burstNanos = portalLimitsConfig.getBurst().toNanos();
+        this.defaultWeight = portalLimitsConfig.getDefaultWeight();
+        this.weights = Map.copyOf(portalLimitsConfig.getWeights());
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(portalLimitsConfig.getIdleTtl())
+                .ticker(ticker)
+                // Idle portals should stop counting towards the share even when no other portal calls.
+                .scheduler(Scheduler.systemScheduler())
+                // The listener only adjusts a counter and drops two meters.
+                .executor(Runnable::run)
+                .removalListener((Long portalId, PortalBucket bucket, RemovalCause cause) -> {
+                    if (bucket != null) {
+                        activeWeight.addAndGet(-bucket.weight());
+                        meterRegistry.remove(bucket.delayed());
+                        meterRegistry.remove(bucket.rejected());
+                    }
+                })
+                .build();
+        this.rateCaps = Caffeine.newBuilder()
+                .expireAfterWrite(portalLimitsConfig.getRateCapTtl())
+                .ticker(ticker)
+                .build();
+
+        Gauge.builder("hubspot.api.portal.active", buckets, Cache::estimatedSize)
+                .description("Portals currently sharing the hubspotApi rate")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.api.portal.active.weight", activeWeight, AtomicLong::get)
+                .description("Sum of the weights of the portals currently sharing the hubspotApi rate")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long reserve(long portalId, long maxWaitNanos) {
+        if (!enabled) {
+            return 0;
+        }
+        PortalBucket bucket = buckets.get(portalId, this::newBucket);
+        RateLimiterConfig limiterConfig = rateLimiter.getRateLimiterConfig();
+        // Nanoseconds between two calls of this portal at its current share of the app rate.
+        double intervalNanos = (double) limiterConfig.getLimitRefreshPeriod().toNanos() * Math.max(1, activeWeight.get())
+                / ((double) limiterConfig.getLimitForPeriod() * bucket.weight());
+        Double rateCap = rateCaps.getIfPresent(portalId);
+        if (rateCap != null) {
+            intervalNanos = Math.max(intervalNanos, 1e9 / rateCap);
+        }
+        long waitNanos = bucket.reserve(ticker.read(), (long) intervalNanos, burstNanos, maxWaitNanos);
+        if (waitNanos < 0) {
+            bucket.rejected().increment();
+        } else if (waitNanos > 0) {
+            bucket.delayed().increment();
+        }
+        return waitNanos;
+    }
+
+    @Override
+    public void limitRate(long portalId, double callsPerSecond) {
+        rateCaps.put(portalId, callsPerSecond);
+    }
+
+    private PortalBucket newBucket(Long portalId) {
+        int weight = weights.getOrDefault(portalId, defaultWeight);
+        activeWeight.addAndGet(weight);
+        return new PortalBucket(weight, new AtomicLong(ticker.read()), throttled(portalId, "delayed"), throttled(portalId, "rejected"));
+    }
+
+    private Counter throttled(long portalId, String outcome) {
+        return Counter.builder("hubspot.api.portal.throttled")
+                .description("Calls held back to keep a portal within its share of the hubspotApi rate")
+                .tag("portal", String.valueOf(portalId))
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record PortalBucket(int weight, AtomicLong nextDueNanos, Counter delayed, Counter rejected) {
+
+        // A call is due at nextDue - burst; taking it pushes nextDue one interval further.
+        long reserve(long nowNanos, long intervalNanos, long burstNanos, long maxWaitNanos) {
+            while (true) {
+                long nextDue = nextDueNanos.get();
+                long waitNanos = Math.max(0, nextDue - burstNanos - nowNanos);
+                if (waitNanos > maxWaitNanos) {
+                    return -1;
+                }
+                if (nextDueNanos.compareAndSet(nextDue, Math.max(nextDue, nowNanos) + intervalNanos)) {
+                    return waitNanos;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package br.com.meetime.hubspot.service.impl;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts a portal's access and refresh tokens with AES-GCM for storage on disk. The portal id and
+ * expiry travel in clear text next to the record and are authenticated as associated data, so a
+ * record cannot be moved to another portal or have its expiry changed without failing to open.
+ * Sealed layout: {@code [12-byte nonce][ciphertext + 128-bit tag]}.
+ */
+final class TokenCipher {
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private TokenCipher(SecretKey key) {
+        this.key = key;
+    }
+
+    static TokenCipher fromBase64Key(String encodedKey) {
+        if (encodedKey == null || encodedKey.isBlank()) {
+            throw new IllegalStateException("hubspot.token-store.encryption-key IS REQUIRED TO KEEP TOKENS ON DISK.");
+        }
+        byte[] keyBytes = Base64.getDecoder().decode(encodedKey.trim());
+        if (keyBytes.length != 16 && keyBytes.length != 24 && keyBytes.length != 32) {
+            throw new IllegalStateException("hubspot.token-store.encryption-key MUST BE A BASE64 AES KEY OF 16, 24 OR 32 BYTES.");
+        }
+        return new TokenCipher(new SecretKeySpec(keyBytes, "AES"));
+    }
+
+    byte[] seal(long portalId, long expiresAtMillis, String accessToken, String refreshToken)
+            throws GeneralSecurityException, IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(plain);
+        writeNullable(out, accessToken);
+        writeNullable(out, refreshToken);
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(associatedData(portalId, expiresAtMillis));
+        byte[] ciphertext = cipher.doFinal(plain.toByteArray());
+        return ByteBuffer.allocate(NONCE_LENGTH + ciphertext.length).put(nonce).put(ciphertext).array();
+    }
+
+    /**
+     * @throws GeneralSecurityException if the record was sealed with another key or altered
+     */
+    Tokens open(long portalId, long expiresAtMillis, byte[] sealed) throws GeneralSecurityException, IOException {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, NONCE_LENGTH));
+        cipher.updateAAD(associatedData(portalId, expiresAtMillis));
+        byte[] plain = cipher.doFinal(sealed, NONCE_LENGTH, sealed.length - NONCE_LENGTH);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+        return new Tokens(readNullable(in), readNullable(in));
+    }
+
+    private static byte[] associatedData(long portalId, long expiresAtMillis) {
+        return ByteBuffer.allocate(2 * Long.BYTES).putLong(portalId).putLong(expiresAtMillis).array();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    record Tokens(String accessToken, String refreshToken) {
+    }
+}
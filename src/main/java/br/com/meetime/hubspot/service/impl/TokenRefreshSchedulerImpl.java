@@ -0,0 +1,173 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes every portal's token in the background once {@code lifetime-fraction} of its lifetime has
+ * passed, minus a random share of up to {@code jitter} of the lifetime, so requests find a valid token
+ * instead of waiting on {@code /oauth/v1/token}. A failed refresh is retried with exponential backoff;
+ * when the retries run out, or HubSpot rejects the refresh token, the token is left to be refreshed
+ * on demand.
+ * <p>
+ * {@code hubspot.oauth.refresh.lead.time} records how long the previous token still had to live when a
+ * new one replaced it; values close to zero mean requests were the ones refreshing.
+ */
+@Service
+@ConditionalOnProperty(prefix = "hubspot.oauth.proactive-refresh", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class TokenRefreshSchedulerImpl implements TokenRefreshScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRefreshSchedulerImpl.class);
+    private static final long MIN_DELAY_MILLIS = 1_000;
+
+    private final HubSpotOAuthService hubSpotOAuthService;
+    private final HubSpotConfig.ProactiveRefreshConfig refreshConfig;
+    private final Scheduler scheduler;
+    private final ConcurrentHashMap<Long, PlannedRefresh> planned = new ConcurrentHashMap<>();
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final Timer leadTimer;
+
+    // Lazy: the OAuth service schedules the next refresh every time it saves a token.
+    @Autowired
+    public TokenRefreshSchedulerImpl(@Lazy HubSpotOAuthService hubSpotOAuthService,
+                                     HubSpotConfig hubSpotConfig,
+                                     MeterRegistry meterRegistry) {
+        this(hubSpotOAuthService, hubSpotConfig, meterRegistry, Schedulers.parallel());
+    }
+
+    TokenRefreshSchedulerImpl(HubSpotOAuthService hubSpotOAuthService,
+                              HubSpotConfig hubSpotConfig,
+                              MeterRegistry meterRegistry,
+                              Scheduler scheduler) {
+        this.hubSpotOAuthService = hubSpotOAuthService;
+        this.refreshConfig = hubSpotConfig.getOauth().getProactiveRefresh();
+        this.scheduler = scheduler;
+
+        this.successCounter = Counter.builder("hubspot.oauth.refresh")
+                .description("Background token refresh attempts")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("hubspot.oauth.refresh")
+                .description("Background token refresh attempts")
+                .tag("result", "failure")
+                .register(meterRegistry);
+        this.leadTimer = Timer.builder("hubspot.oauth.refresh.lead.time")
+                .description("Remaining lifetime of a token when it was replaced by a refreshed one")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.oauth.refresh.planned", planned, ConcurrentHashMap::size)
+                .description("Portals with a background token refresh planned")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void schedule(long portalId, long expiresInSeconds) {
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        long lifetimeMillis = TimeUnit.SECONDS.toMillis(expiresInSeconds);
+        long delayMillis = refreshDelayMillis(lifetimeMillis);
+
+        PlannedRefresh refresh = new PlannedRefresh(now + lifetimeMillis);
+        PlannedRefresh previous = planned.put(portalId, refresh);
+        if (previous != null) {
+            leadTimer.record(Math.max(0, previous.expiresAtMillis - now), TimeUnit.MILLISECONDS);
+            // A running refresh is the one saving this token; cancelling it would only drop its bookkeeping.
+            if (!previous.running) {
+                previous.task.dispose();
+            }
+        }
+        refresh.task.update(Mono.delay(Duration.ofMillis(delayMillis), scheduler)
+                .then(Mono.defer(() -> refresh(portalId, refresh)))
+                .subscribe());
+        log.debug("BACKGROUND REFRESH OF PORTAL {} TOKEN PLANNED IN {} MS.", portalId, delayMillis);
+    }
+
+    @Override
+    public void cancel(long portalId) {
+        PlannedRefresh refresh = planned.remove(portalId);
+        if (refresh != null) {
+            refresh.task.dispose();
+        }
+    }
+
+    private long refreshDelayMillis(long lifetimeMillis) {
+        long delayMillis = (long) (lifetimeMillis * refreshConfig.getLifetimeFraction());
+        long maxJitterMillis = (long) (lifetimeMillis * refreshConfig.getJitter());
+        if (maxJitterMillis > 0) {
+            delayMillis -= ThreadLocalRandom.current().nextLong(maxJitterMillis + 1);
+        }
+        return Math.max(MIN_DELAY_MILLIS, delayMillis);
+    }
+
+    private Mono<Void> refresh(long portalId, PlannedRefresh refresh) {
+        refresh.running = true;
+        log.info("REFRESHING PORTAL {} TOKEN IN THE BACKGROUND.", portalId);
+        return Mono.defer(() -> hubSpotOAuthService.refreshToken(portalId))
+                .doOnError(error -> {
+                    failureCounter.increment();
+                    log.warn("BACKGROUND REFRESH OF PORTAL {} TOKEN FAILED: {}", portalId, error.getMessage());
+                })
+                .retryWhen(Retry.backoff(refreshConfig.getRetryMaxAttempts(), refreshConfig.getRetryInitialBackoff())
+                        .maxBackoff(refreshConfig.getRetryMaxBackoff())
+                        .filter(TokenRefreshSchedulerImpl::isRetryable)
+                        .scheduler(scheduler)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .doOnNext(token -> successCounter.increment())
+                .onErrorResume(error -> {
+                    log.error("GAVE UP BACKGROUND REFRESH OF PORTAL {} TOKEN; IT WILL BE REFRESHED ON DEMAND.", portalId);
+                    return Mono.empty();
+                })
+                // Unless the refresh scheduled a newer one, nothing is planned for this portal any more.
+                .doFinally(signal -> planned.remove(portalId, refresh))
+                .then();
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof IllegalStateException) {
+            return false;
+        }
+        // The refresh token itself was rejected: only a new authorization helps.
+        return !(error instanceof HubSpotApiException hubSpotError)
+                || !hubSpotError.getStatusCode().is4xxClientError()
+                || hubSpotError.getStatusCode().value() == 429;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        planned.values().forEach(refresh -> refresh.task.dispose());
+        planned.clear();
+    }
+
+    private static final class PlannedRefresh {
+        private final long expiresAtMillis;
+        private final Disposable.Swap task = Disposables.swap();
+        private volatile boolean running;
+
+        private PlannedRefresh(long expiresAtMillis) {
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
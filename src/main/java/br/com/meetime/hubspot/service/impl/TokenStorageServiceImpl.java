@@ -4,80 +4,116 @@ import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
 import br.com.meetime.hubspot.service.TokenStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
+/**
+ * Tokens of every connected HubSpot portal, keyed by portal (hub) id. Each portal is a single immutable
+ * snapshot (access token, refresh token, expiry) replaced atomically on save, so a reader sees either
+ * the old or the new token, never a mix, without taking a lock; portals never contend with each other.
+ * Expiry is kept in {@link System#nanoTime()} terms, so wall-clock adjustments do not expire or revive tokens.
+ * An expired access token is reported as missing but its entry is kept, so the refresh token survives.
+ */
 @Service
+@ConditionalOnProperty(prefix = "hubspot.token-store", name = "type", havingValue = "memory", matchIfMissing = true)
 public class TokenStorageServiceImpl implements TokenStorageService {
 
     private static final Logger log = LoggerFactory.getLogger(TokenStorageServiceImpl.class);
+    private static final long EXPIRY_MARGIN_SECONDS = 60;
 
-    private HubSpotTokenResponse currentToken;
-    private Instant tokenExpiryTime;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentHashMap<Long, PortalToken> tokens = new ConcurrentHashMap<>();
+    private final LongSupplier nanoTime;
 
-    @Override
-    public void saveToken(HubSpotTokenResponse tokenResponse) {
-        lock.writeLock().lock();
-        try {
-            this.currentToken = tokenResponse;
-            this.tokenExpiryTime = Instant.now().plusSeconds(tokenResponse.getExpiresIn() - 60);
-            log.info("ACCESS TOKEN STORED. EXPIRATION TIME SET TO: {}", tokenExpiryTime);
-        } finally {
-            lock.writeLock().unlock();
-        }
+    public TokenStorageServiceImpl() {
+        this(System::nanoTime);
+    }
+
+    TokenStorageServiceImpl(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
     }
 
     @Override
-    public Optional<String> getAccessToken() {
-        lock.readLock().lock();
-        try {
-            if (currentToken != null && Instant.now().isBefore(tokenExpiryTime)) {
-                log.debug("VALID ACCESS TOKEN FOUND IN MEMORY.");
-                return Optional.of(currentToken.getAccessToken());
-            }
-
-            if (currentToken != null) {
-                log.warn("EXPIRED OR INVALID ACCESS TOKEN DETECTED. CLEARING FROM MEMORY.");
-                clearToken();
-            } else {
-                log.debug("NO ACCESS TOKEN FOUND IN MEMORY.");
-            }
+    public void saveToken(long portalId, HubSpotTokenResponse tokenResponse) {
+        long validForSeconds = tokenResponse.getExpiresIn() - EXPIRY_MARGIN_SECONDS;
+        long expiresAtNanos = nanoTime.getAsLong() + TimeUnit.SECONDS.toNanos(validForSeconds);
+        tokens.put(portalId, new PortalToken(tokenResponse.getAccessToken(), tokenResponse.getRefreshToken(), expiresAtNanos));
+        log.info("ACCESS TOKEN STORED FOR PORTAL {}. EXPIRATION TIME SET TO: {}", portalId, Instant.now().plusSeconds(validForSeconds));
+    }
+
+    /**
+     * Puts back a token read from persistent storage, {@code validForNanos} from now (negative if it
+     * has already expired). No expiry margin is applied; it was applied when the token was first saved.
+     */
+    void restoreToken(long portalId, String accessToken, String refreshToken, long validForNanos) {
+        tokens.put(portalId, new PortalToken(accessToken, refreshToken, nanoTime.getAsLong() + validForNanos));
+    }
+
+    void forEachToken(TokenVisitor visitor) {
+        long now = nanoTime.getAsLong();
+        tokens.forEach((portalId, token) ->
+                visitor.visit(portalId, token.accessToken(), token.refreshToken(), token.expiresAtNanos() - now));
+    }
 
+    @Override
+    public Optional<String> getAccessToken(long portalId) {
+        PortalToken token = tokens.get(portalId);
+        if (token == null) {
+            log.debug("NO ACCESS TOKEN FOUND IN MEMORY FOR PORTAL {}.", portalId);
+            return Optional.empty();
+        }
+        // Compared as a difference: nanoTime values may overflow.
+        if (token.accessToken() == null || nanoTime.getAsLong() - token.expiresAtNanos() >= 0) {
+            log.debug("ACCESS TOKEN FOR PORTAL {} IS EXPIRED OR INVALID.", portalId);
             return Optional.empty();
-        } finally {
-            lock.readLock().unlock();
         }
+        return Optional.of(token.accessToken());
     }
 
     @Override
-    public Optional<String> getRefreshToken() {
-        lock.readLock().lock();
-        try {
-            return Optional.ofNullable(currentToken)
-                    .map(HubSpotTokenResponse::getRefreshToken);
-        } finally {
-            lock.readLock().unlock();
+    public Optional<String> getRefreshToken(long portalId) {
+        return Optional.ofNullable(tokens.get(portalId))
+                .map(PortalToken::refreshToken);
+    }
+
+    @Override
+    public void clearToken(long portalId) {
+        if (tokens.remove(portalId) != null) {
+            log.info("ACCESS TOKEN CLEARED FROM MEMORY FOR PORTAL {}.", portalId);
         }
     }
 
     @Override
-    public void clearToken() {
-        lock.writeLock().lock();
-        try {
-            currentToken = null;
-            tokenExpiryTime = null;
-            log.info("ACCESS TOKEN CLEARED FROM MEMORY.");
-        } finally {
-            lock.writeLock().unlock();
+    public boolean hasValidToken(long portalId) {
+        return getAccessToken(portalId).isPresent();
+    }
+
+    @Override
+    public Optional<Long> getSinglePortalId() {
+        Iterator<Long> portalIds = tokens.keySet().iterator();
+        if (!portalIds.hasNext()) {
+            return Optional.empty();
         }
+        Long portalId = portalIds.next();
+        return portalIds.hasNext() ? Optional.empty() : Optional.of(portalId);
     }
 
     @Override
-    public boolean hasValidToken() {
-        return getAccessToken().isPresent();
+    public int getPortalCount() {
+        return tokens.size();
+    }
+
+    @FunctionalInterface
+    interface TokenVisitor {
+        void visit(long portalId, String accessToken, String refreshToken, long validForNanos);
+    }
+
+    private record PortalToken(String accessToken, String refreshToken, long expiresAtNanos) {
     }
 }
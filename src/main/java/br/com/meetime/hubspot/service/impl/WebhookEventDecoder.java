@@ -0,0 +1,213 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.exception.WebhookDecodingException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Reads a webhook batch (a JSON array of events) token by token, producing one {@link WebhookEventDTO}
+ * per array element on demand. Elements whose {@code subscriptionType} is not wanted are skipped as soon
+ * as the type is read, so memory per request does not grow with the size of the batch. Elements with a
+ * numeric field (ids, {@code occurredAt}) that is not an integer are rejected and counted rather than read as
+ * {@code 0}, which would merge them with unrelated events downstream.
+ */
+final class WebhookEventDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookEventDecoder.class);
+
+    private final JsonFactory jsonFactory;
+    private final Predicate<String> wantedSubscriptionType;
+    private final Counter rejectedEvents;
+    private final Counter malformedBatches;
+
+    WebhookEventDecoder(JsonFactory jsonFactory, Predicate<String> wantedSubscriptionType, Counter rejectedEvents,
+                        Counter malformedBatches) {
+        this.jsonFactory = jsonFactory;
+        this.wantedSubscriptionType = wantedSubscriptionType;
+        this.rejectedEvents = rejectedEvents;
+        this.malformedBatches = malformedBatches;
+    }
+
+    /**
+     * Events are decoded synchronously on the subscriber's thread as they are requested.
+     * A malformed body fails the stream with a {@link WebhookDecodingException} after the events decoded so far.
+     */
+    Flux<WebhookEventDTO> decode(byte[] requestBody) {
+        return Flux.<WebhookEventDTO, DecodingState>generate(
+                        () -> new DecodingState(jsonFactory.createParser(requestBody)),
+                        (state, sink) -> {
+                            try {
+                                WebhookEventDTO event = state.next();
+                                if (event == null) {
+                                    log.info("DECODED {} WEBHOOK EVENT(S), SKIPPED {} WITHOUT A HANDLER, REJECTED {} INVALID.",
+                                            state.emitted, state.skipped, state.rejected);
+                                    sink.complete();
+                                } else {
+                                    sink.next(event);
+                                }
+                            } catch (IOException e) {
+                                sink.error(e);
+                            }
+                            return state;
+                        },
+                        DecodingState::close)
+                .onErrorMap(IOException.class, e -> {
+                    malformedBatches.increment();
+                    log.error("FAILED TO PARSE WEBHOOK EVENTS: {}", e.getMessage(), e);
+                    return new WebhookDecodingException("Malformed webhook body: " + e.getMessage(), e);
+                });
+    }
+
+    private final class DecodingState {
+        private final JsonParser parser;
+        private boolean started;
+        private int emitted;
+        private int skipped;
+        private int rejected;
+        // Set while reading an event whose numeric field could not be read as an integer.
+        private String invalidField;
+
+        private DecodingState(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * @return the next wanted event, or {@code null} at the end of the array
+         */
+        private WebhookEventDTO next() throws IOException {
+            if (!started) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected a JSON array of webhook events");
+                }
+                started = true;
+            }
+            while (true) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of webhook events array");
+                }
+                WebhookEventDTO event = token == JsonToken.START_OBJECT ? readEvent() : skipValue();
+                if (event != null) {
+                    emitted++;
+                    return event;
+                }
+                if (invalidField != null) {
+                    rejected++;
+                    invalidField = null;
+                } else {
+                    skipped++;
+                }
+            }
+        }
+
+        private WebhookEventDTO readEvent() throws IOException {
+            WebhookEventDTO event = new WebhookEventDTO();
+            String fieldName;
+            while ((fieldName = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (fieldName) {
+                    case "subscriptionType" -> {
+                        String subscriptionType = textValue(value);
+                        if (!wantedSubscriptionType.test(subscriptionType)) {
+                            invalidField = null;
+                            return skipRestOfObject();
+                        }
+                        event.setSubscriptionType(subscriptionType);
+                    }
+                    case "eventId" -> event.setEventId(longValue(fieldName, value));
+                    case "objectId" -> event.setObjectId(longValue(fieldName, value));
+                    case "portalId" -> event.setPortalId(longValue(fieldName, value));
+                    case "occurredAt" -> event.setOccurredAt(longValue(fieldName, value));
+                    case "appId" -> event.setAppId(longValue(fieldName, value));
+                    case "subscriptionId" -> event.setSubscriptionId(longValue(fieldName, value));
+                    case "attemptNumber" -> {
+                        Long attemptNumber = longValue(fieldName, value);
+                        event.setAttemptNumber(attemptNumber == null ? null : attemptNumber.intValue());
+                    }
+                    case "changeSource" -> event.setChangeSource(textValue(value));
+                    case "objectTypeId" -> event.setObjectTypeId(textValue(value));
+                    case "changeFlag" -> event.setChangeFlag(textValue(value));
+                    case "sourceId" -> event.setSourceId(textValue(value));
+                    case "propertyName" -> event.setPropertyName(textValue(value));
+                    case "propertyValue" -> event.setPropertyValue(textValue(value));
+                    default -> parser.skipChildren();
+                }
+            }
+            // An event without a subscription type has no handler either.
+            if (event.getSubscriptionType() == null) {
+                invalidField = null;
+                return null;
+            }
+            if (invalidField != null) {
+                rejectedEvents.increment();
+                log.warn("REJECTING WEBHOOK EVENT {} OF TYPE {}: {} IS NOT AN INTEGER.",
+                        event.getEventId(), event.getSubscriptionType(), invalidField);
+                return null;
+            }
+            return event;
+        }
+
+        private WebhookEventDTO skipRestOfObject() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of webhook event");
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+
+        private WebhookEventDTO skipValue() throws IOException {
+            parser.skipChildren();
+            return null;
+        }
+
+        private Long longValue(String fieldName, JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                return parser.getLongValue();
+            }
+            if (token == JsonToken.VALUE_STRING) {
+                try {
+                    return Long.parseLong(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    // Falls through to reject the event.
+                }
+            }
+            if (token != JsonToken.VALUE_NULL) {
+                invalidField = fieldName;
+            }
+            parser.skipChildren();
+            return null;
+        }
+
+        private String textValue(JsonToken token) throws IOException {
+            if (token != null && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                return parser.getValueAsString();
+            }
+            parser.skipChildren();
+            return null;
+        }
+
+        private void close() {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                log.debug("FAILED TO CLOSE WEBHOOK EVENTS PARSER: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import br.com.meetime.hubspot.service.WebhookEventQueue;
+import br.com.meetime.hubspot.service.WebhookService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-memory queue between the webhook endpoint and {@link WebhookService}, split into lanes.
+ * <p>
+ * Each event goes to the lane chosen by its {@code (portalId, objectId)}, and every lane has its own
+ * bounded queue drained by a single worker. Events for the same object are therefore processed in
+ * arrival order while different objects are processed in parallel. A lane remembers the latest
+ * {@code occurredAt} processed per object, subscription type and property, and drops older events for
+ * the same change as stale; creations and deletions are never dropped.
+ * When an event's lane is full the rest of the batch is handled according to the overflow policy.
+ * <p>
+ * Before reaching the handlers, events for the same object that arrive within the coalescing window
+ * are merged into a single {@link WebhookWorkItem}; the window starts with the object's first event.
+ * Handlers run asynchronously (they may be waiting on HubSpot); a lane keeps up to
+ * {@code max-in-flight-per-lane} work items running, never two for the same object.
+ */
+@Service
+public class WebhookEventQueueImpl implements WebhookEventQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookEventQueueImpl.class);
+    private static final long IN_FLIGHT_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final WebhookService webhookService;
+    private final HubSpotConfig.OverflowPolicy overflowPolicy;
+    private final Lane[] lanes;
+    private final ExecutorService workers;
+    private final Counter acceptedCounter;
+    private final Counter droppedCounter;
+    private final Counter rejectedCounter;
+    private final Counter staleCounter;
+    private final DistributionSummary mergedEvents;
+    private final long windowNanos;
+    private final int maxPendingObjects;
+
+    public WebhookEventQueueImpl(HubSpotConfig hubSpotConfig, WebhookService webhookService, MeterRegistry meterRegistry) {
+        HubSpotConfig.QueueConfig queueConfig = hubSpotConfig.getWebhook().getQueue();
+        HubSpotConfig.CoalescingConfig coalescingConfig = hubSpotConfig.getWebhook().getCoalescing();
+        this.webhookService = webhookService;
+        this.windowNanos = coalescingConfig.getWindow().toNanos();
+        this.maxPendingObjects = coalescingConfig.getMaxPendingObjectsPerLane();
+        this.overflowPolicy = queueConfig.getOverflowPolicy();
+        int laneCount = queueConfig.getLanes();
+        int laneCapacity = queueConfig.getLaneCapacity();
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(laneCapacity, queueConfig.getTrackedObjectsPerLane(), queueConfig.getMaxInFlightPerLane());
+            Gauge.builder("hubspot.webhook.queue.lane.depth", lanes[i].queue, BlockingQueue::size)
+                    .description("Webhook events waiting in a processing lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+
+        this.acceptedCounter = Counter.builder("hubspot.webhook.queue.accepted")
+                .description("Webhook events accepted into the ingestion queue")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("hubspot.webhook.queue.dropped")
+                .description("Webhook events discarded because the ingestion queue was full")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("hubspot.webhook.queue.rejected")
+                .description("Webhook batches rejected because the ingestion queue was full")
+                .register(meterRegistry);
+        this.staleCounter = Counter.builder("hubspot.webhook.queue.stale")
+                .description("Webhook events dropped because a newer event for the same object and property was already processed")
+                .register(meterRegistry);
+        this.mergedEvents = DistributionSummary.builder("hubspot.webhook.coalescing.merged")
+                .description("Webhook events merged into each unit of work; the mean is the coalescing ratio")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.coalescing.pending", this, WebhookEventQueueImpl::pendingObjects)
+                .description("Objects whose coalescing window is still open (approximate)")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.inflight", this, WebhookEventQueueImpl::inFlight)
+                .description("Work items whose handlers are still running")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.queue.depth", this, WebhookEventQueueImpl::size)
+                .description("Webhook events waiting to be processed")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.queue.capacity", () -> laneCount * laneCapacity)
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.workers.active", this, WebhookEventQueueImpl::activeLanes)
+                .description("Webhook lanes with at least one work item whose handlers are still running")
+                .register(meterRegistry);
+        Gauge.builder("hubspot.webhook.workers.utilization", this, WebhookEventQueueImpl::utilization)
+                .description("Fraction of the lanes' in-flight slots (max-in-flight-per-lane) in use")
+                .register(meterRegistry);
+
+        this.workers = Executors.newFixedThreadPool(laneCount, new CustomizableThreadFactory("webhook-lane-"));
+        for (Lane lane : lanes) {
+            workers.execute(() -> drain(lane));
+        }
+        log.info("WEBHOOK QUEUE STARTED. LANES: {}, CAPACITY PER LANE: {}, OVERFLOW POLICY: {}, COALESCING WINDOW: {}",
+                laneCount, laneCapacity, overflowPolicy, coalescingConfig.getWindow());
+    }
+
+    @Override
+    public Batch open(Runnable onComplete) {
+        return new BatchTracker(onComplete, true);
+    }
+
+    @Override
+    public Batch openRedrive(Runnable onComplete) {
+        return new BatchTracker(onComplete, false);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane lane : lanes) {
+            size += lane.queue.size();
+        }
+        return size;
+    }
+
+    private int pendingObjects() {
+        int pending = 0;
+        for (Lane lane : lanes) {
+            pending += lane.pending.size();
+        }
+        return pending;
+    }
+
+    private int inFlight() {
+        int inFlight = 0;
+        for (Lane lane : lanes) {
+            inFlight += lane.inFlightCount();
+        }
+        return inFlight;
+    }
+
+    private int activeLanes() {
+        int active = 0;
+        for (Lane lane : lanes) {
+            if (lane.inFlightCount() > 0) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    private double utilization() {
+        double used = 0;
+        for (Lane lane : lanes) {
+            used += (double) lane.inFlightCount() / lane.maxInFlight;
+        }
+        return used / lanes.length;
+    }
+
+    private Lane laneFor(WebhookEventDTO event) {
+        if (lanes.length == 1) {
+            return lanes[0];
+        }
+        // Events without an object have nothing to stay ordered with, so they are spread by event id.
+        int hash = event.getObjectId() != null ? ObjectKey.of(event).hashCode() : Long.hashCode(event.getEventId() == null ? 0L : event.getEventId());
+        return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+    }
+
+    private void drain(Lane lane) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                QueuedEvent queued = lane.pending.isEmpty()
+                        ? lane.queue.take()
+                        : lane.queue.poll(lane.nanosUntilNextFlush(), TimeUnit.NANOSECONDS);
+                if (queued != null) {
+                    accept(lane, queued);
+                }
+                flushDue(lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void accept(Lane lane, QueuedEvent queued) throws InterruptedException {
+        WebhookEventDTO event = queued.event();
+        if (queued.batch().checkStaleness && lane.isStale(event)) {
+            staleCounter.increment();
+            log.debug("DROPPING STALE WEBHOOK EVENT {} ({} {}) FOR OBJECT {} (OCCURRED AT {}).",
+                    event.getEventId(), event.getSubscriptionType(), event.getPropertyName(), event.getObjectId(), event.getOccurredAt());
+            queued.batch().eventDone();
+            return;
+        }
+        if (event.getObjectId() == null) {
+            process(lane, new PendingWork(event, queued.batch(), null, 0));
+            return;
+        }
+
+        ObjectKey key = ObjectKey.of(event);
+        PendingWork pending = lane.pending.get(key);
+        if (pending != null) {
+            pending.add(event, queued.batch());
+            return;
+        }
+        if (windowNanos == 0 && !lane.inFlight.contains(key)) {
+            process(lane, new PendingWork(event, queued.batch(), key, 0));
+            return;
+        }
+        lane.pending.put(key, new PendingWork(event, queued.batch(), key, System.nanoTime() + Math.max(windowNanos, IN_FLIGHT_RECHECK_NANOS)));
+        while (lane.pending.size() > maxPendingObjects) {
+            // Too many open windows: hand over the oldest one that can start rather than growing without bound.
+            PendingWork work = lane.removeOldestStartable();
+            if (work == null) {
+                // Every open window belongs to an object still in flight: stop reading the lane until one finishes.
+                TimeUnit.NANOSECONDS.sleep(IN_FLIGHT_RECHECK_NANOS);
+            } else {
+                process(lane, work);
+            }
+        }
+    }
+
+    private void flushDue(Lane lane) throws InterruptedException {
+        long now = System.nanoTime();
+        List<PendingWork> deferred = null;
+        // Windows are opened in arrival order, so the map is also ordered by deadline.
+        Iterator<PendingWork> pending = lane.pending.values().iterator();
+        while (pending.hasNext()) {
+            PendingWork work = pending.next();
+            if (work.deadline - now > 0) {
+                break;
+            }
+            pending.remove();
+            if (lane.inFlight.contains(work.key)) {
+                // The object's previous work item is still running: keep collecting and try again later.
+                if (deferred == null) {
+                    deferred = new ArrayList<>();
+                }
+                deferred.add(work);
+            } else {
+                process(lane, work);
+            }
+        }
+        if (deferred != null) {
+            for (PendingWork work : deferred) {
+                work.deadline = now + Math.max(windowNanos, IN_FLIGHT_RECHECK_NANOS);
+                lane.pending.put(work.key, work);
+            }
+        }
+    }
+
+    /**
+     * Hands a work item to the handlers without waiting for them. The object stays in flight until its
+     * handlers finish, so the lane never runs two work items for the same object at once.
+     */
+    private void process(Lane lane, PendingWork work) throws InterruptedException {
+        lane.inFlightPermits.acquire();
+        if (work.key != null) {
+            lane.inFlight.add(work.key);
+        }
+        mergedEvents.record(work.item.getEvents().size());
+
+        Mono<Void> handling;
+        try {
+            handling = webhookService.process(work.item);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            handling = Mono.error(e);
+        }
+
+        handling.onErrorResume(e -> {
+                    log.error("UNEXPECTED ERROR IN WEBHOOK WORKER: {}", e.getMessage(), e);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    if (work.key != null) {
+                        lane.inFlight.remove(work.key);
+                    }
+                    lane.inFlightPermits.release();
+                    for (BatchTracker batch : work.batches) {
+                        batch.eventDone();
+                    }
+                })
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("STOPPING WEBHOOK QUEUE. {} EVENT(S) STILL PENDING.", size());
+        workers.shutdownNow();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("WEBHOOK WORKERS DID NOT STOP WITHIN 5 SECONDS.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record QueuedEvent(WebhookEventDTO event, BatchTracker batch) {
+    }
+
+    private record ObjectKey(long portalId, long objectId) {
+        private static ObjectKey of(WebhookEventDTO event) {
+            return new ObjectKey(event.getPortalId() == null ? 0L : event.getPortalId(), event.getObjectId());
+        }
+    }
+
+    // A later change to another property, or of another kind, says nothing about whether this one is outdated.
+    private record StalenessKey(long portalId, long objectId, String subscriptionType, String propertyName) {
+        private static StalenessKey of(WebhookEventDTO event) {
+            return new StalenessKey(event.getPortalId() == null ? 0L : event.getPortalId(), event.getObjectId(),
+                    event.getSubscriptionType().toLowerCase(Locale.ROOT), event.getPropertyName());
+        }
+    }
+
+    private static final class PendingWork {
+        private final WebhookWorkItem item;
+        private final ObjectKey key;
+        // One entry per merged event, so each batch is completed once per event it contributed.
+        private final List<BatchTracker> batches = new ArrayList<>(1);
+        private long deadline;
+
+        private PendingWork(WebhookEventDTO event, BatchTracker batch, ObjectKey key, long deadline) {
+            this.item = new WebhookWorkItem(event);
+            this.key = key;
+            this.batches.add(batch);
+            this.deadline = deadline;
+        }
+
+        private void add(WebhookEventDTO event, BatchTracker batch) {
+            item.merge(event);
+            batches.add(batch);
+        }
+    }
+
+    private static final class Lane {
+        private final BlockingQueue<QueuedEvent> queue;
+        // Only touched by the lane's worker thread. Insertion-ordered, so the first entry closes first.
+        private final Map<ObjectKey, PendingWork> pending = new LinkedHashMap<>();
+        // Only touched by the lane's worker thread. Access-ordered, so the least recently seen change is evicted first.
+        private final Map<StalenessKey, Long> lastOccurredAt;
+        // Objects whose handlers are still running; released from whatever thread completes them.
+        private final Set<ObjectKey> inFlight = ConcurrentHashMap.newKeySet();
+        private final Semaphore inFlightPermits;
+        private final int maxInFlight;
+
+        private Lane(int capacity, int trackedObjects, int maxInFlight) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.inFlightPermits = new Semaphore(maxInFlight);
+            this.maxInFlight = maxInFlight;
+            this.lastOccurredAt = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<StalenessKey, Long> eldest) {
+                    return size() > trackedObjects;
+                }
+            };
+        }
+
+        private int inFlightCount() {
+            return maxInFlight - inFlightPermits.availablePermits();
+        }
+
+        private long nanosUntilNextFlush() {
+            return Math.max(0, pending.values().iterator().next().deadline - System.nanoTime());
+        }
+
+        private PendingWork removeOldestStartable() {
+            Iterator<PendingWork> oldest = pending.values().iterator();
+            while (oldest.hasNext()) {
+                PendingWork work = oldest.next();
+                if (!inFlight.contains(work.key)) {
+                    oldest.remove();
+                    return work;
+                }
+            }
+            return null;
+        }
+
+        private boolean isStale(WebhookEventDTO event) {
+            if (event.getObjectId() == null || event.getOccurredAt() == null || event.getSubscriptionType() == null
+                    || isLifecycle(event.getSubscriptionType())) {
+                return false;
+            }
+            Long latest = lastOccurredAt.merge(StalenessKey.of(event), event.getOccurredAt(), Math::max);
+            return event.getOccurredAt() < latest;
+        }
+
+        // A creation or deletion is never superseded by a later change, so it is always handed on.
+        private static boolean isLifecycle(String subscriptionType) {
+            String type = subscriptionType.toLowerCase(Locale.ROOT);
+            return type.endsWith(".creation") || type.endsWith(".deletion");
+        }
+    }
+
+    /**
+     * Counts the batch itself as one outstanding unit until {@link #close()}, so the completion
+     * callback cannot fire while events are still being decoded and added.
+     */
+    private final class BatchTracker implements Batch {
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private final Runnable onComplete;
+        private final boolean checkStaleness;
+        private boolean rejected;
+        private boolean closed;
+
+        private BatchTracker(Runnable onComplete, boolean checkStaleness) {
+            this.onComplete = onComplete;
+            this.checkStaleness = checkStaleness;
+        }
+
+        @Override
+        public boolean offer(WebhookEventDTO event) {
+            ensureOpen();
+            if (rejected) {
+                return false;
+            }
+            remaining.incrementAndGet();
+            if (!laneFor(event).queue.offer(new QueuedEvent(event, this))) {
+                remaining.decrementAndGet();
+                if (overflowPolicy == HubSpotConfig.OverflowPolicy.REJECT) {
+                    rejected = true;
+                    rejectedCounter.increment();
+                    log.warn("WEBHOOK QUEUE FULL. REJECTING BATCH AT EVENT {}.", event.getEventId());
+                    return false;
+                }
+                droppedCounter.increment();
+                log.warn("WEBHOOK QUEUE FULL. DROPPING EVENT {}.", event.getEventId());
+                return true;
+            }
+            accepted(event);
+            return true;
+        }
+
+        @Override
+        public void put(WebhookEventDTO event) throws InterruptedException {
+            ensureOpen();
+            remaining.incrementAndGet();
+            try {
+                laneFor(event).queue.put(new QueuedEvent(event, this));
+            } catch (InterruptedException e) {
+                remaining.decrementAndGet();
+                throw e;
+            }
+            accepted(event);
+        }
+
+        private void accepted(WebhookEventDTO event) {
+            acceptedCounter.increment();
+            log.debug("WEBHOOK EVENT {} ENQUEUED. QUEUE DEPTH: {}", event.getEventId(), size());
+        }
+
+        private void ensureOpen() {
+            if (closed) {
+                throw new IllegalStateException("Webhook batch is already closed");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            eventDone();
+        }
+
+        private void eventDone() {
+            if (remaining.decrementAndGet() == 0) {
+                try {
+                    onComplete.run();
+                } catch (Exception e) {
+                    log.error("FAILED TO COMPLETE WEBHOOK BATCH: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
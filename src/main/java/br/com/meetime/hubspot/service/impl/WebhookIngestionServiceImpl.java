@@ -0,0 +1,190 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.dedup.WebhookEventDeduplicator;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.request.WebhookReplayRequest;
+import br.com.meetime.hubspot.domain.response.WebhookReplayResponse;
+import br.com.meetime.hubspot.exception.WebhookDecodingException;
+import br.com.meetime.hubspot.journal.JournalEntry;
+import br.com.meetime.hubspot.journal.WebhookJournal;
+import br.com.meetime.hubspot.service.WebhookEventQueue;
+import br.com.meetime.hubspot.service.WebhookIngestionService;
+import br.com.meetime.hubspot.service.WebhookService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class WebhookIngestionServiceImpl implements WebhookIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookIngestionServiceImpl.class);
+    private static final Runnable NO_CHECKPOINT = () -> { };
+    // Decoded events buffered ahead of a blocking replay hand-off.
+    private static final int REPLAY_PREFETCH = 32;
+
+    private final WebhookJournal webhookJournal;
+    private final WebhookService webhookService;
+    private final WebhookEventQueue webhookEventQueue;
+    private final WebhookEventDeduplicator webhookEventDeduplicator;
+
+    public WebhookIngestionServiceImpl(WebhookJournal webhookJournal, WebhookService webhookService,
+                                       WebhookEventQueue webhookEventQueue, WebhookEventDeduplicator webhookEventDeduplicator) {
+        this.webhookJournal = webhookJournal;
+        this.webhookService = webhookService;
+        this.webhookEventQueue = webhookEventQueue;
+        this.webhookEventDeduplicator = webhookEventDeduplicator;
+    }
+
+    @Override
+    public Mono<Boolean> ingest(byte[] requestBody) {
+        // The journal writes to a memory-mapped file under a lock (and may rotate or force segments), so it
+        // runs off the event loop serving the request.
+        return Mono.fromCallable(() -> webhookJournal.append(requestBody))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(sequence -> {
+                    WebhookEventQueue.Batch batch = webhookEventQueue.open(() -> checkpoint(sequence));
+
+                    return webhookService.decodeEvents(requestBody)
+                            .all(event -> offerFirstDelivery(batch, event))
+                            .doFinally(signal -> batch.close())
+                            .doOnNext(accepted -> {
+                                if (!accepted) {
+                                    // HubSpot redelivers rejected batches, so they must not be replayed from the journal too.
+                                    checkpoint(sequence);
+                                }
+                            });
+                });
+    }
+
+    /**
+     * Batches complete on whatever thread finishes their last handler, often an event loop, so the
+     * checkpoint is written from a blocking-friendly thread.
+     */
+    private void checkpoint(long sequence) {
+        Mono.fromRunnable(() -> webhookJournal.checkpoint(sequence))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("FAILED TO CHECKPOINT WEBHOOK BATCH {}: {}", sequence, error.getMessage(), error));
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayUnfinished() {
+        List<JournalEntry> unfinished = webhookJournal.readUnfinished();
+        if (unfinished.isEmpty()) {
+            return;
+        }
+
+        log.info("REPLAYING {} UNFINISHED WEBHOOK BATCH(ES) FROM THE JOURNAL.", unfinished.size());
+        try {
+            for (JournalEntry entry : unfinished) {
+                long sequence = entry.getSequence();
+                putAll(decodeJournaled(entry).filter(webhookEventDeduplicator::firstDelivery),
+                        webhookEventQueue.open(() -> checkpoint(sequence)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("WEBHOOK JOURNAL REPLAY INTERRUPTED. REMAINING BATCHES WILL BE REPLAYED ON NEXT START.");
+        }
+    }
+
+    /**
+     * Redeliveries already seen count as accepted. An event that does not fit is forgotten again,
+     * otherwise the redelivery HubSpot sends after the 503 would be dropped as a duplicate.
+     */
+    private boolean offerFirstDelivery(WebhookEventQueue.Batch batch, WebhookEventDTO event) {
+        if (!webhookEventDeduplicator.firstDelivery(event)) {
+            return true;
+        }
+        if (batch.offer(event)) {
+            return true;
+        }
+        webhookEventDeduplicator.forget(event);
+        return false;
+    }
+
+    /**
+     * Re-drives bypass deduplication and the stale-event check: replaying already processed events is the point.
+     */
+    @Override
+    public WebhookReplayResponse redrive(WebhookReplayRequest replayRequest) throws InterruptedException {
+        log.info("RE-DRIVING JOURNALED WEBHOOK EVENTS FOR RANGE: {}", replayRequest);
+        AtomicLong batches = new AtomicLong();
+        AtomicLong replayed = new AtomicLong();
+
+        try {
+            webhookJournal.scan(entry -> {
+                batches.incrementAndGet();
+                Flux<WebhookEventDTO> matching = decodeJournaled(entry)
+                        .filter(event -> matches(event, replayRequest));
+                try {
+                    replayed.addAndGet(putAll(matching, webhookEventQueue.openRedrive(NO_CHECKPOINT)));
+                } catch (InterruptedException e) {
+                    throw new ReplayInterruptedException(e);
+                }
+            });
+        } catch (ReplayInterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e.getCause();
+        }
+
+        log.info("RE-DRIVE FINISHED. BATCHES SCANNED: {}, EVENTS REPLAYED: {}", batches.get(), replayed.get());
+        return new WebhookReplayResponse(batches.get(), replayed.get());
+    }
+
+    /**
+     * A journaled body that turns out to be malformed still yields the events read before the error; it was
+     * answered with a 400 when received, and replaying it must not stop the replay of the other batches.
+     */
+    private Flux<WebhookEventDTO> decodeJournaled(JournalEntry entry) {
+        return webhookService.decodeEvents(entry.getPayload())
+                .onErrorResume(WebhookDecodingException.class, e -> {
+                    log.warn("JOURNALED WEBHOOK BATCH {} IS MALFORMED. REPLAYING ONLY THE EVENTS BEFORE THE ERROR.", entry.getSequence());
+                    return Flux.empty();
+                });
+    }
+
+    /**
+     * Blocking hand-off used by replays: events are decoded only as fast as the queue takes them.
+     */
+    private long putAll(Flux<WebhookEventDTO> events, WebhookEventQueue.Batch batch) throws InterruptedException {
+        long count = 0;
+        try (batch) {
+            for (WebhookEventDTO event : events.toIterable(REPLAY_PREFETCH)) {
+                batch.put(event);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean matches(WebhookEventDTO event, WebhookReplayRequest range) {
+        return within(event.getOccurredAt(), range.getFromOccurredAt(), range.getToOccurredAt())
+                && within(event.getEventId(), range.getFromEventId(), range.getToEventId());
+    }
+
+    private static boolean within(Long value, Long from, Long to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        return value != null && (from == null || value >= from) && (to == null || value <= to);
+    }
+
+    private static final class ReplayInterruptedException extends RuntimeException {
+        private ReplayInterruptedException(InterruptedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InterruptedException getCause() {
+            return (InterruptedException) super.getCause();
+        }
+    }
+}
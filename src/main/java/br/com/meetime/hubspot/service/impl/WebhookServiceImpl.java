@@ -1,51 +1,148 @@
 package br.com.meetime.hubspot.service.impl;
 
 import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import br.com.meetime.hubspot.service.ContactCacheService;
+import br.com.meetime.hubspot.service.ContactHydrationService;
+import br.com.meetime.hubspot.service.ContactService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
 import br.com.meetime.hubspot.service.WebhookService;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
 
 @Service
 public class WebhookServiceImpl implements WebhookService {
 
     private static final Logger log = LoggerFactory.getLogger(WebhookServiceImpl.class);
-    private final ObjectMapper objectMapper;
+    // Keyed by lower-case subscription type.
+    private final Map<String, Function<WebhookWorkItem, Mono<Void>>> handlers;
+    private final WebhookEventDecoder eventDecoder;
+    private final ContactHydrationService contactHydrationService;
+    private final ContactCacheService contactCacheService;
+    private final ContactService contactService;
 
-    public WebhookServiceImpl(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    public WebhookServiceImpl(ObjectMapper objectMapper,
+                              ContactHydrationService contactHydrationService,
+                              ContactCacheService contactCacheService,
+                              ContactService contactService,
+                              MeterRegistry meterRegistry) {
+        this.contactHydrationService = contactHydrationService;
+        this.contactCacheService = contactCacheService;
+        this.contactService = contactService;
+        this.handlers = Map.of(
+                "contact.creation", this::processContactCreationEvent,
+                "contact.propertychange", this::processContactPropertyChangeEvent,
+                "contact.deletion", this::processContactDeletionEvent);
+        this.eventDecoder = new WebhookEventDecoder(objectMapper.getFactory(), this::hasHandler,
+                Counter.builder("hubspot.webhook.events.rejected")
+                        .description("Webhook events rejected because a numeric field was not an integer")
+                        .register(meterRegistry),
+                Counter.builder("hubspot.webhook.batches.malformed")
+                        .description("Webhook bodies that are not a valid JSON array of events")
+                        .register(meterRegistry));
     }
 
     @Override
-    public void processWebhookEvents(String requestBody) {
-        try {
-            List<WebhookEventDTO> events = objectMapper.readValue(requestBody, new TypeReference<List<WebhookEventDTO>>() {});
-            log.info("RECEIVED {} WEBHOOK EVENT(S).", events.size());
+    public Flux<WebhookEventDTO> decodeEvents(byte[] requestBody) {
+        return eventDecoder.decode(requestBody);
+    }
+
+    @Override
+    public Mono<Void> process(WebhookWorkItem workItem) {
+        return Flux.fromIterable(workItem.getSubscriptionTypes())
+                .concatMap(subscriptionType -> {
+                    Function<WebhookWorkItem, Mono<Void>> handler = handlerFor(subscriptionType);
+                    if (handler == null) {
+                        log.debug("IGNORING WEBHOOK EVENT WITH SUBSCRIPTION TYPE: {}", subscriptionType);
+                        return Mono.empty();
+                    }
+                    return Mono.defer(() -> handler.apply(workItem))
+                            .onErrorResume(e -> {
+                                log.error("FAILED TO PROCESS {} WEBHOOK EVENT(S) OF TYPE {} FOR OBJECT {}: {}",
+                                        workItem.getEvents().size(), subscriptionType, workItem.getObjectId(), e.getMessage(), e);
+                                return Mono.empty();
+                            });
+                })
+                .then();
+    }
 
-            events.stream()
-                    .filter(event -> "contact.creation".equalsIgnoreCase(event.getSubscriptionType()))
-                    .forEach(this::processContactCreationEvent);
+    private boolean hasHandler(String subscriptionType) {
+        return handlerFor(subscriptionType) != null;
+    }
+
+    private Function<WebhookWorkItem, Mono<Void>> handlerFor(String subscriptionType) {
+        return subscriptionType == null ? null : handlers.get(subscriptionType.toLowerCase(Locale.ROOT));
+    }
 
-        } catch (Exception e) {
-            log.error("FAILED TO PARSE OR PROCESS WEBHOOK EVENTS: {}", e.getMessage(), e);
+    private Mono<Void> processContactCreationEvent(WebhookWorkItem workItem) {
+        if (workItem.getObjectId() == null) {
+            log.warn("RECEIVED CONTACT.CREATION EVENT WITHOUT OBJECT ID: {}", workItem.getEvents());
+            return Mono.empty();
+        }
+        if (workItem.getPortalId() == null) {
+            log.warn("RECEIVED CONTACT.CREATION EVENT WITHOUT PORTAL ID: {}", workItem.getEvents());
+            return Mono.empty();
         }
+
+        log.info("PROCESSING CONTACT.CREATION EVENT. PORTAL: {}, HUBSPOT CONTACT ID: {}", workItem.getPortalId(), workItem.getObjectId());
+
+        return contactHydrationService.hydrate(workItem.getPortalId(), workItem.getObjectId(), HubSpotRequestScheduler.Priority.WEBHOOK)
+                .doOnNext(contact -> {
+                    contactCacheService.put(workItem.getPortalId(), contact);
+                    // Future business logic placeholder
+                    // e.g., sync with CRM, enrich internal database, trigger messaging system, etc.
+                    log.info("CONTACT.CREATION EVENT FOR ID {} PROCESSED (LOG ONLY). PROPERTIES: {}",
+                            workItem.getObjectId(), contact.getProperties());
+                })
+                .switchIfEmpty(Mono.fromRunnable(() ->
+                        log.warn("CONTACT {} FROM CONTACT.CREATION EVENT NOT FOUND IN HUBSPOT.", workItem.getObjectId())))
+                .then();
     }
 
-    private void processContactCreationEvent(WebhookEventDTO event) {
-        if (event.getObjectId() == null) {
-            log.warn("RECEIVED CONTACT.CREATION EVENT WITHOUT OBJECT ID: {}", event);
-            return;
+    private Mono<Void> processContactPropertyChangeEvent(WebhookWorkItem workItem) {
+        if (workItem.getObjectId() == null) {
+            log.warn("RECEIVED CONTACT.PROPERTYCHANGE EVENT WITHOUT OBJECT ID: {}", workItem.getEvents());
+            return Mono.empty();
         }
 
-        log.info("PROCESSING CONTACT.CREATION EVENT. HUBSPOT CONTACT ID: {}", event.getObjectId());
+        return Mono.fromRunnable(() -> {
+            log.info("PROCESSING CONTACT.PROPERTYCHANGE EVENT. HUBSPOT CONTACT ID: {}, CHANGED PROPERTIES: {}",
+                    workItem.getObjectId(), workItem.getChangedProperties().keySet());
+
+            if (workItem.getPortalId() != null) {
+                if (workItem.getChangedProperties().isEmpty()) {
+                    contactCacheService.invalidate(workItem.getPortalId(), workItem.getObjectId());
+                } else {
+                    contactCacheService.applyPropertyChanges(workItem.getPortalId(), workItem.getObjectId(), workItem.getChangedProperties());
+                }
+            }
+
+            // Future business logic placeholder, same as contact.creation.
 
-        // Future business logic placeholder
-        // e.g., sync with CRM, enrich internal database, trigger messaging system, etc.
+            log.info("CONTACT.PROPERTYCHANGE EVENT FOR ID {} PROCESSED (LOG ONLY).", workItem.getObjectId());
+        });
+    }
+
+    private Mono<Void> processContactDeletionEvent(WebhookWorkItem workItem) {
+        if (workItem.getObjectId() == null || workItem.getPortalId() == null) {
+            log.warn("RECEIVED CONTACT.DELETION EVENT WITHOUT OBJECT OR PORTAL ID: {}", workItem.getEvents());
+            return Mono.empty();
+        }
 
-        log.info("CONTACT.CREATION EVENT FOR ID {} PROCESSED (LOG ONLY).", event.getObjectId());
+        return Mono.fromRunnable(() -> {
+            log.info("PROCESSING CONTACT.DELETION EVENT. PORTAL: {}, HUBSPOT CONTACT ID: {}", workItem.getPortalId(), workItem.getObjectId());
+            contactCacheService.invalidate(workItem.getPortalId(), workItem.getObjectId());
+            contactService.forgetContact(workItem.getPortalId(), workItem.getObjectId());
+        });
     }
 }
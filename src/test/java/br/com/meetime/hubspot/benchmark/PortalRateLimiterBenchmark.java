@@ -0,0 +1,94 @@
+package br.com.meetime.hubspot.benchmark;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.service.impl.PortalRateLimiterImpl;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@link PortalRateLimiterImpl#reserve} with 1 and 10k active portals, against one
+ * reservation on the global Resilience4j limiter alone. The limiter allows far more calls than are made,
+ * so this measures bookkeeping, not waiting. {@link #main} runs it with 1 and 8 threads:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath br.com.meetime.hubspot.benchmark.PortalRateLimiterBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortalRateLimiterBenchmark {
+
+    @Param({"1", "10000"})
+    private int portals;
+
+    private PortalRateLimiterImpl portalRateLimiter;
+    private RateLimiter globalLimiter;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private long calls;
+
+        private long nextPortal(int portals) {
+            return calls++ % portals;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(Integer.MAX_VALUE)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ZERO)
+                .build());
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getPortalLimits().setIdleTtl(Duration.ofHours(1));
+        portalRateLimiter = new PortalRateLimiterImpl(rateLimiterRegistry, hubSpotConfig, new SimpleMeterRegistry());
+        globalLimiter = rateLimiterRegistry.rateLimiter("hubspotApi");
+        for (long portalId = 0; portalId < portals; portalId++) {
+            portalRateLimiter.reserve(portalId, Long.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public long portalBuckets(Caller caller) {
+        return portalRateLimiter.reserve(caller.nextPortal(portals), Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long globalLimiterOnly() {
+        return globalLimiter.reservePermission();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 8}) {
+            new Runner(new OptionsBuilder()
+                    .include(PortalRateLimiterBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
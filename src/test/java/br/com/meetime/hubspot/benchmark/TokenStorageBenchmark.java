@@ -0,0 +1,147 @@
+package br.com.meetime.hubspot.benchmark;
+
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.impl.TokenStorageServiceImpl;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Token lookups under contention, as every HubSpot call does one, with a token save every
+ * {@value #WRITE_EVERY} operations. Compares {@link TokenStorageServiceImpl} (immutable per-portal
+ * snapshots, lock-free reads) with the read/write-lock design it replaced, extended to several portals.
+ * {@link #main} runs it with 1, 4, 16 and 64 threads; with the JMH runner use {@code -t}:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath br.com.meetime.hubspot.benchmark.TokenStorageBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenStorageBenchmark {
+
+    private static final int WRITE_EVERY = 1000;
+
+    @Param({"1", "1000"})
+    private int portals;
+
+    private TokenStorageServiceImpl snapshotStore;
+    private LockingTokenStore lockingStore;
+    private HubSpotTokenResponse token;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private long operations;
+
+        private long nextPortal(int portals) {
+            return operations++ % portals;
+        }
+
+        private boolean writes() {
+            return operations % WRITE_EVERY == 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger("br.com.meetime.hubspot")).setLevel(Level.WARN);
+
+        token = new HubSpotTokenResponse();
+        token.setAccessToken("access-token");
+        token.setRefreshToken("refresh-token");
+        token.setExpiresIn(1800);
+
+        snapshotStore = new TokenStorageServiceImpl();
+        lockingStore = new LockingTokenStore();
+        for (long portalId = 0; portalId < portals; portalId++) {
+            snapshotStore.saveToken(portalId, token);
+            lockingStore.saveToken(portalId, token);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> snapshot(Caller caller) {
+        long portalId = caller.nextPortal(portals);
+        if (caller.writes()) {
+            snapshotStore.saveToken(portalId, token);
+        }
+        return snapshotStore.getAccessToken(portalId);
+    }
+
+    @Benchmark
+    public Optional<String> readWriteLock(Caller caller) {
+        long portalId = caller.nextPortal(portals);
+        if (caller.writes()) {
+            lockingStore.saveToken(portalId, token);
+        }
+        return lockingStore.getAccessToken(portalId);
+    }
+
+    /**
+     * The previous store: one lock around mutable state, with the expired-token branch that tried to
+     * take the write lock under the read lock left out.
+     */
+    private static final class LockingTokenStore {
+        private final Map<Long, HubSpotTokenResponse> tokens = new HashMap<>();
+        private final Map<Long, Instant> expiryTimes = new HashMap<>();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private void saveToken(long portalId, HubSpotTokenResponse tokenResponse) {
+            lock.writeLock().lock();
+            try {
+                tokens.put(portalId, tokenResponse);
+                expiryTimes.put(portalId, Instant.now().plusSeconds(tokenResponse.getExpiresIn() - 60));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private Optional<String> getAccessToken(long portalId) {
+            lock.readLock().lock();
+            try {
+                HubSpotTokenResponse currentToken = tokens.get(portalId);
+                if (currentToken != null && Instant.now().isBefore(expiryTimes.get(portalId))) {
+                    return Optional.of(currentToken.getAccessToken());
+                }
+                return Optional.empty();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            new Runner(new OptionsBuilder()
+                    .include(TokenStorageBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package br.com.meetime.hubspot.benchmark;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import br.com.meetime.hubspot.service.WebhookEventQueue;
+import br.com.meetime.hubspot.service.WebhookService;
+import br.com.meetime.hubspot.service.impl.WebhookEventQueueImpl;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second pushed through the lanes of {@link WebhookEventQueueImpl} when each event costs a
+ * fixed amount of CPU in the handler. Throughput should grow close to linearly with {@code lanes}
+ * up to the number of cores.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath br.com.meetime.hubspot.benchmark.WebhookLanesBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookLanesBenchmark {
+
+    private static final int EVENTS_PER_BATCH = 4096;
+    private static final int OBJECTS = 1024;
+
+    @Param({"1", "2", "4", "8"})
+    private int lanes;
+
+    @Param({"20000"})
+    private long handlerCpuTokens;
+
+    private WebhookEventQueueImpl webhookEventQueue;
+    private WebhookEventDTO[] events;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger("br.com.meetime.hubspot")).setLevel(Level.WARN);
+
+        HubSpotConfig.QueueConfig queueConfig = new HubSpotConfig.QueueConfig();
+        queueConfig.setLanes(lanes);
+        queueConfig.setLaneCapacity(EVENTS_PER_BATCH);
+        HubSpotConfig.CoalescingConfig coalescingConfig = new HubSpotConfig.CoalescingConfig();
+        coalescingConfig.setWindow(Duration.ZERO);
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setQueue(queueConfig);
+        webhookConfig.setCoalescing(coalescingConfig);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+
+        WebhookService cpuBoundService = new WebhookService() {
+            @Override
+            public Flux<WebhookEventDTO> decodeEvents(byte[] requestBody) {
+                return Flux.empty();
+            }
+
+            @Override
+            public Mono<Void> process(WebhookWorkItem workItem) {
+                Blackhole.consumeCPU(handlerCpuTokens);
+                return Mono.empty();
+            }
+        };
+        webhookEventQueue = new WebhookEventQueueImpl(hubSpotConfig, cpuBoundService, new SimpleMeterRegistry());
+
+        events = new WebhookEventDTO[EVENTS_PER_BATCH];
+        for (int i = 0; i < EVENTS_PER_BATCH; i++) {
+            WebhookEventDTO event = new WebhookEventDTO();
+            event.setEventId((long) i);
+            event.setPortalId(1L);
+            event.setObjectId((long) (i % OBJECTS));
+            event.setOccurredAt((long) i);
+            event.setSubscriptionType("contact.creation");
+            events[i] = event;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        webhookEventQueue.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_BATCH)
+    public void processBatch() throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(1);
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.openRedrive(completed::countDown)) {
+            for (WebhookEventDTO event : events) {
+                batch.put(event);
+            }
+        }
+        completed.await();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookLanesBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,128 @@
+package br.com.meetime.hubspot.benchmark;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.security.impl.WebhookSignatureVerifierImpl;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous String-based signature check (join, decode to String, concatenate,
+ * re-encode, fresh Mac per request) with the streaming verifier over Netty buffers.
+ * <p>
+ * Run with the GC profiler to see allocation per request ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath br.com.meetime.hubspot.benchmark.WebhookSignatureVerifierBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookSignatureVerifierBenchmark {
+
+    private static final String CLIENT_SECRET = "6761be26-f65c-448d-96b8-d115a1596d1b";
+    private static final int NETTY_CHUNK_SIZE = 8192;
+
+    @Param({"1024", "16384", "262144", "1048576"})
+    private int payloadSize;
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+    private WebhookSignatureVerifierImpl streamingVerifier;
+    private DataBuffer body;
+    private String signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        ((Logger) LoggerFactory.getLogger("br.com.meetime.hubspot")).setLevel(Level.WARN);
+
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setClientSecret(CLIENT_SECRET);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+        streamingVerifier = new WebhookSignatureVerifierImpl(hubSpotConfig);
+
+        byte[] payload = new byte[payloadSize];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + (i % 26));
+        }
+        // Same shape as a request body read by Reactor Netty: several chunks joined into a composite buffer.
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int offset = 0; offset < payload.length; offset += NETTY_CHUNK_SIZE) {
+            int length = Math.min(NETTY_CHUNK_SIZE, payload.length - offset);
+            DataBuffer chunk = bufferFactory.allocateBuffer(length);
+            chunk.write(payload, offset, length);
+            chunks.add(chunk);
+        }
+        body = bufferFactory.join(chunks);
+        signature = legacySignature(CLIENT_SECRET, new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        DataBufferUtils.release(body);
+    }
+
+    @Benchmark
+    public boolean stringBased() throws Exception {
+        byte[] bytes = new byte[body.readableByteCount()];
+        body.read(bytes);
+        body.readPosition(0);
+        String requestBody = new String(bytes, StandardCharsets.UTF_8);
+        String computed = legacySignature(CLIENT_SECRET, requestBody);
+        return MessageDigest.isEqual(computed.getBytes(StandardCharsets.UTF_8), signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public DataBuffer streaming() {
+        streamingVerifier.validateSignatureV3(signature, body);
+        return body;
+    }
+
+    private static String legacySignature(String clientSecret, String requestBody) throws Exception {
+        String sourceString = clientSecret + requestBody;
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(clientSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(hmac.doFinal(sourceString.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookSignatureVerifierBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
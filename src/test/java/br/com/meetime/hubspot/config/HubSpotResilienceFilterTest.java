@@ -0,0 +1,139 @@
+package br.com.meetime.hubspot.config;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HubSpotResilienceFilterTest {
+
+    private static final URI CONTACTS_URI = URI.create("https://api.hubapi.com/crm/v3/objects/contacts");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger retryPermits = new AtomicInteger();
+    private final AtomicInteger exchanges = new AtomicInteger();
+    private HubSpotConfig.ResilienceConfig resilienceConfig;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @BeforeEach
+    void setUp() {
+        resilienceConfig = new HubSpotConfig.ResilienceConfig();
+        resilienceConfig.setBaseDelay(Duration.ofMillis(1));
+        resilienceConfig.setMaxDelay(Duration.ofMillis(5));
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    }
+
+    private HubSpotResilienceFilter filter() {
+        return new HubSpotResilienceFilter("hubspotApi", circuitBreakerRegistry, resilienceConfig, meterRegistry,
+                request -> Mono.fromRunnable(retryPermits::incrementAndGet));
+    }
+
+    // Answers each attempt with the next response, repeating the last one when they run out.
+    private ExchangeFunction hubSpot(ClientResponse... responses) {
+        Queue<ClientResponse> pending = new ArrayDeque<>(List.of(responses));
+        return request -> {
+            exchanges.incrementAndGet();
+            return Mono.just(pending.size() > 1 ? pending.poll() : pending.peek());
+        };
+    }
+
+    private static ClientResponse response(HttpStatus status) {
+        return ClientResponse.create(status).build();
+    }
+
+    private static ClientRequest post(boolean retryable) {
+        ClientRequest.Builder request = ClientRequest.create(HttpMethod.POST, CONTACTS_URI);
+        if (retryable) {
+            request.attribute(HubSpotResilienceFilter.RETRYABLE_ATTRIBUTE, true);
+        }
+        return request.build();
+    }
+
+    @Test
+    @DisplayName("filter should retry a 429 after Retry-After, taking a permit for the retry")
+    void filter_shouldRetry_whenRateLimited() {
+        ClientResponse rateLimited = ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "0").build();
+
+        StepVerifier.create(filter().filter(post(false), hubSpot(rateLimited, response(HttpStatus.CREATED))))
+                .assertNext(response -> assertEquals(HttpStatus.CREATED, response.statusCode()))
+                .verifyComplete();
+
+        assertEquals(2, exchanges.get());
+        assertEquals(1, retryPermits.get());
+        assertEquals(1.0, meterRegistry.get("hubspot.api.retries").tag("reason", "status").counter().count());
+    }
+
+    @Test
+    @DisplayName("filter should retry a 503 on POST only when the request is marked retryable")
+    void filter_shouldRetryServerError_onlyWhenSafeToRepeat() {
+        StepVerifier.create(filter().filter(post(false), hubSpot(response(HttpStatus.SERVICE_UNAVAILABLE), response(HttpStatus.CREATED))))
+                .assertNext(response -> assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.statusCode()))
+                .verifyComplete();
+        assertEquals(1, exchanges.get());
+
+        exchanges.set(0);
+        StepVerifier.create(filter().filter(post(true), hubSpot(response(HttpStatus.SERVICE_UNAVAILABLE), response(HttpStatus.CREATED))))
+                .assertNext(response -> assertEquals(HttpStatus.CREATED, response.statusCode()))
+                .verifyComplete();
+        assertEquals(2, exchanges.get());
+    }
+
+    @Test
+    @DisplayName("filter should fail fast with CallNotPermittedException once the circuit opens")
+    void filter_shouldFailFast_whenCircuitOpens() {
+        resilienceConfig.setMaxRetries(0);
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .build());
+        HubSpotResilienceFilter filter = filter();
+        ExchangeFunction failing = hubSpot(response(HttpStatus.INTERNAL_SERVER_ERROR));
+        ClientRequest get = ClientRequest.create(HttpMethod.GET, CONTACTS_URI).build();
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(filter.filter(get, failing)).expectNextCount(1).verifyComplete();
+        }
+        StepVerifier.create(filter.filter(get, failing))
+                .expectError(CallNotPermittedException.class)
+                .verify();
+
+        assertEquals(2, exchanges.get());
+    }
+
+    @Test
+    @DisplayName("filter should stop retrying once the retry budget is spent")
+    void filter_shouldStopRetrying_whenBudgetSpent() {
+        resilienceConfig.setRetryBudgetRatio(0);
+        resilienceConfig.setMinRetriesPerSecond(1);
+        ClientResponse rateLimited = response(HttpStatus.TOO_MANY_REQUESTS);
+
+        StepVerifier.create(filter().filter(post(false), hubSpot(rateLimited)))
+                .assertNext(response -> assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.statusCode()))
+                .verifyComplete();
+
+        assertEquals(2, exchanges.get());
+        assertEquals(1.0, meterRegistry.get("hubspot.api.retries.denied").counter().count());
+    }
+}
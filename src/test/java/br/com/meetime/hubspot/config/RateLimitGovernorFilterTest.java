@@ -0,0 +1,157 @@
+package br.com.meetime.hubspot.config;
+
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RateLimitGovernorFilterTest {
+
+    // One hour before the daily reset at midnight UTC.
+    private static final Instant NOW = Instant.parse("2026-10-18T23:00:00Z");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RateLimiter rateLimiter;
+    private final PortalRateLimiter portalRateLimiter = mock(PortalRateLimiter.class);
+    private RateLimitGovernorFilter rateLimitGovernorFilter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(5)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofSeconds(2))
+                .build());
+        rateLimiter = rateLimiterRegistry.rateLimiter("hubspotApi");
+        rateLimitGovernorFilter = new RateLimitGovernorFilter(rateLimiterRegistry, portalRateLimiter, new HubSpotConfig(), meterRegistry,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    // A response to a call made for no portal.
+    private void respond(HttpStatus status, String... headers) {
+        respond(null, status, headers);
+    }
+
+    private void respond(Long portalId, HttpStatus status, String... headers) {
+        ClientResponse.Builder response = ClientResponse.create(status);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.header(headers[i], headers[i + 1]);
+        }
+        ClientRequest.Builder requestBuilder = ClientRequest.create(HttpMethod.GET, URI.create("https://api.hubapi.com/crm/v3/objects/contacts/1"));
+        if (portalId != null) {
+            requestBuilder.attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE, portalId);
+        }
+        ClientRequest request = requestBuilder.build();
+        StepVerifier.create(rateLimitGovernorFilter.filter(request, ignored -> Mono.just(response.build())))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    private int limitForPeriod() {
+        return rateLimiter.getRateLimiterConfig().getLimitForPeriod();
+    }
+
+    @Test
+    @DisplayName("filter should raise the limit to the granted rate times the safety factor when plenty is left")
+    void filter_shouldFollowGrantedRate_whenPlentyLeft() {
+        respond(HttpStatus.OK,
+                RateLimitGovernorFilter.SECONDLY_MAX_HEADER, "10",
+                RateLimitGovernorFilter.SECONDLY_REMAINING_HEADER, "8",
+                RateLimitGovernorFilter.DAILY_MAX_HEADER, "250000",
+                RateLimitGovernorFilter.DAILY_REMAINING_HEADER, "200000");
+
+        assertEquals(9, limitForPeriod());
+        assertEquals(9.0, meterRegistry.get("hubspot.api.rate.limit").gauge().value());
+        assertEquals(200000.0, meterRegistry.get("hubspot.api.rate.remaining").tag("window", "daily").gauge().value());
+    }
+
+    @Test
+    @DisplayName("filter should slow down proportionally when the window is nearly exhausted")
+    void filter_shouldSlowDown_whenWindowNearlyExhausted() {
+        respond(HttpStatus.OK,
+                RateLimitGovernorFilter.INTERVAL_MAX_HEADER, "100",
+                RateLimitGovernorFilter.INTERVAL_REMAINING_HEADER, "10",
+                RateLimitGovernorFilter.INTERVAL_MILLIS_HEADER, "10000");
+
+        // 10/s * 0.9, scaled by 10 left / (100 * 0.25)
+        assertEquals(3, limitForPeriod());
+
+        respond(HttpStatus.OK,
+                RateLimitGovernorFilter.INTERVAL_MAX_HEADER, "100",
+                RateLimitGovernorFilter.INTERVAL_REMAINING_HEADER, "0",
+                RateLimitGovernorFilter.INTERVAL_MILLIS_HEADER, "10000");
+
+        assertEquals(1, limitForPeriod());
+    }
+
+    @Test
+    @DisplayName("filter should halve the limit on 429 and hold it until HubSpot's window has passed")
+    void filter_shouldHalveAndHold_whenTooManyRequests() {
+        respond(HttpStatus.TOO_MANY_REQUESTS,
+                RateLimitGovernorFilter.INTERVAL_MILLIS_HEADER, "10000");
+
+        assertEquals(2, limitForPeriod());
+
+        respond(HttpStatus.OK,
+                RateLimitGovernorFilter.SECONDLY_MAX_HEADER, "10",
+                RateLimitGovernorFilter.SECONDLY_REMAINING_HEADER, "10");
+
+        assertEquals(2, limitForPeriod());
+    }
+
+    @Test
+    @DisplayName("filter should spread the rest of the daily quota until the reset when it runs low")
+    void filter_shouldSpreadDailyQuota_whenDailyQuotaLow() {
+        respond(HttpStatus.OK,
+                RateLimitGovernorFilter.SECONDLY_MAX_HEADER, "10",
+                RateLimitGovernorFilter.SECONDLY_REMAINING_HEADER, "10",
+                RateLimitGovernorFilter.DAILY_MAX_HEADER, "250000",
+                RateLimitGovernorFilter.DAILY_REMAINING_HEADER, "14400");
+
+        // 14400 calls left over the 3600s until midnight
+        assertEquals(4, limitForPeriod());
+    }
+
+    @Test
+    @DisplayName("filter should cap only the responding portal's rate, leaving the app limiter alone")
+    void filter_shouldCapOnlyThatPortal_whenPortalQuotaLow() {
+        respond(1L, HttpStatus.OK,
+                RateLimitGovernorFilter.SECONDLY_MAX_HEADER, "10",
+                RateLimitGovernorFilter.SECONDLY_REMAINING_HEADER, "10",
+                RateLimitGovernorFilter.DAILY_MAX_HEADER, "250000",
+                RateLimitGovernorFilter.DAILY_REMAINING_HEADER, "7200");
+
+        // 7200 calls left over the 3600s until midnight
+        verify(portalRateLimiter).limitRate(1L, 2.0);
+        assertEquals(5, limitForPeriod());
+        assertEquals(7200.0, meterRegistry.get("hubspot.api.rate.remaining")
+                .tag("portal", "1").tag("window", "daily").gauge().value());
+
+        respond(1L, HttpStatus.TOO_MANY_REQUESTS, RateLimitGovernorFilter.INTERVAL_MILLIS_HEADER, "10000");
+
+        verify(portalRateLimiter).limitRate(1L, 1.0);
+        assertEquals(5, limitForPeriod());
+        verify(portalRateLimiter, never()).limitRate(eq(2L), anyDouble());
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.meetime.hubspot.config;
+
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UnauthorizedReplayFilterTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    @Mock
+    private ObjectProvider<HubSpotOAuthService> hubSpotOAuthServiceProvider;
+    @Mock
+    private HubSpotOAuthService hubSpotOAuthService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> sentTokens = new ArrayList<>();
+    private UnauthorizedReplayFilter unauthorizedReplayFilter;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(hubSpotOAuthServiceProvider.getObject()).thenReturn(hubSpotOAuthService);
+        unauthorizedReplayFilter = new UnauthorizedReplayFilter(hubSpotOAuthServiceProvider, meterRegistry);
+    }
+
+    // HubSpot stand-in that only accepts the given token.
+    private ExchangeFunction hubSpotAccepting(String acceptedToken) {
+        return request -> {
+            String token = request.headers().getFirst(HttpHeaders.AUTHORIZATION).substring("Bearer ".length());
+            sentTokens.add(token);
+            return Mono.just(ClientResponse.create(token.equals(acceptedToken) ? HttpStatus.CREATED : HttpStatus.UNAUTHORIZED).build());
+        };
+    }
+
+    private static ClientRequest request(String accessToken, boolean withPortal) {
+        ClientRequest.Builder builder = ClientRequest.create(HttpMethod.POST, URI.create("https://api.hubapi.com/crm/v3/objects/contacts"))
+                .headers(headers -> headers.setBearerAuth(accessToken));
+        if (withPortal) {
+            builder.attribute(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE, PORTAL_ID);
+        }
+        return builder.build();
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("hubspot.api.unauthorized.replays").tag("result", result).counter().count();
+    }
+
+    @Test
+    @DisplayName("a 401 should force a refresh and replay the request once with the new token")
+    void filter_shouldRefreshAndReplay_whenUnauthorized() {
+        HubSpotTokenResponse refreshed = new HubSpotTokenResponse();
+        refreshed.setAccessToken("new-token");
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just("revoked-token"));
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID)).thenReturn(Mono.just(refreshed));
+
+        StepVerifier.create(unauthorizedReplayFilter.filter(request("revoked-token", true), hubSpotAccepting("new-token")))
+                .expectNextMatches(response -> response.statusCode() == HttpStatus.CREATED)
+                .verifyComplete();
+
+        assertEquals(List.of("revoked-token", "new-token"), sentTokens);
+        assertEquals(1.0, counter("success"));
+    }
+
+    @Test
+    @DisplayName("a token already replaced by another call should be reused without refreshing again")
+    void filter_shouldReuseNewerToken_whenAlreadyRefreshed() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just("new-token"));
+
+        StepVerifier.create(unauthorizedReplayFilter.filter(request("revoked-token", true), hubSpotAccepting("new-token")))
+                .expectNextMatches(response -> response.statusCode() == HttpStatus.CREATED)
+                .verifyComplete();
+
+        verify(hubSpotOAuthService, never()).refreshToken(anyLong());
+        assertEquals(List.of("revoked-token", "new-token"), sentTokens);
+    }
+
+    @Test
+    @DisplayName("the original 401 should be passed on when the refresh fails")
+    void filter_shouldPassOn401_whenRefreshFails() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just("revoked-token"));
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO REFRESH TOKEN: 400", HttpStatus.BAD_REQUEST)));
+
+        StepVerifier.create(unauthorizedReplayFilter.filter(request("revoked-token", true), hubSpotAccepting("new-token")))
+                .expectNextMatches(response -> response.statusCode() == HttpStatus.UNAUTHORIZED)
+                .verifyComplete();
+
+        assertEquals(List.of("revoked-token"), sentTokens);
+        assertEquals(1.0, counter("failure"));
+    }
+
+    @Test
+    @DisplayName("a replay rejected again should be passed on without another attempt")
+    void filter_shouldReplayOnlyOnce() {
+        HubSpotTokenResponse refreshed = new HubSpotTokenResponse();
+        refreshed.setAccessToken("also-rejected");
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just("revoked-token"));
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID)).thenReturn(Mono.just(refreshed));
+
+        StepVerifier.create(unauthorizedReplayFilter.filter(request("revoked-token", true), hubSpotAccepting("new-token")))
+                .expectNextMatches(response -> response.statusCode() == HttpStatus.UNAUTHORIZED)
+                .verifyComplete();
+
+        assertEquals(List.of("revoked-token", "also-rejected"), sentTokens);
+        assertEquals(1.0, counter("failure"));
+    }
+
+    @Test
+    @DisplayName("requests without a portal id should not be replayed")
+    void filter_shouldPassThrough_withoutPortal() {
+        StepVerifier.create(unauthorizedReplayFilter.filter(request("revoked-token", false), hubSpotAccepting("new-token")))
+                .expectNextMatches(response -> response.statusCode() == HttpStatus.UNAUTHORIZED)
+                .verifyComplete();
+
+        verifyNoInteractions(hubSpotOAuthService);
+        assertEquals(List.of("revoked-token"), sentTokens);
+    }
+}
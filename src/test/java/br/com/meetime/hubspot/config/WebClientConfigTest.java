@@ -0,0 +1,66 @@
+package br.com.meetime.hubspot.config;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebClientConfigTest {
+
+    @Test
+    @DisplayName("httpClient should apply the profile's timeouts, keep-alive and protocols")
+    void httpClient_shouldApplyProfile() {
+        HubSpotConfig.ConnectionProfile profile = new HubSpotConfig.ConnectionProfile();
+        profile.setConnectTimeout(Duration.ofMillis(1500));
+        profile.setResponseTimeout(Duration.ofSeconds(7));
+
+        HttpClient httpClient = WebClientConfig.httpClient("hubspotApi", profile);
+
+        assertEquals(1500, httpClient.configuration().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS));
+        assertEquals(Boolean.TRUE, httpClient.configuration().options().get(ChannelOption.SO_KEEPALIVE));
+        assertEquals(Duration.ofSeconds(7), httpClient.configuration().responseTimeout());
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}, httpClient.configuration().protocols());
+
+        profile.setHttp2(false);
+        assertArrayEquals(new HttpProtocol[]{HttpProtocol.HTTP11}, WebClientConfig.httpClient("hubspotApi", profile).configuration().protocols());
+    }
+
+    @Test
+    @DisplayName("httpClient should export the metrics of its pool under the client's name")
+    void httpClient_shouldExportPoolMetrics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Metrics.addRegistry(meterRegistry);
+        HubSpotConfig.ConnectionProfile profile = new HubSpotConfig.ConnectionProfile();
+        profile.setMaxConnections(7);
+        DisposableServer server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> response.sendString(Mono.just("ok")))
+                .bindNow();
+        try {
+            HttpClient httpClient = WebClientConfig.httpClient("hubspotMetricsTest", profile);
+
+            StepVerifier.create(httpClient.get().uri("http://localhost:" + server.port() + "/").responseContent().aggregate().asString())
+                    .expectNext("ok")
+                    .verifyComplete();
+
+            assertEquals(7.0, meterRegistry.get("reactor.netty.connection.provider.max.connections")
+                    .tag("name", "hubspotMetricsTest").gauge().value());
+            assertEquals(1.0, meterRegistry.get("reactor.netty.connection.provider.total.connections")
+                    .tag("name", "hubspotMetricsTest").gauge().value());
+        } finally {
+            server.disposeNow();
+            Metrics.removeRegistry(meterRegistry);
+        }
+    }
+}
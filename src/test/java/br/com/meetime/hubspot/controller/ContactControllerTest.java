@@ -2,9 +2,16 @@ package br.com.meetime.hubspot.controller;
 
 import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
 import br.com.meetime.hubspot.domain.request.ContactPropertiesRequest;
+import br.com.meetime.hubspot.domain.response.ContactImportRowResult;
 import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.GlobalExceptionHandler;
 import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.ContactCacheService;
+import br.com.meetime.hubspot.service.ContactImportService;
 import br.com.meetime.hubspot.service.ContactService;
+import br.com.meetime.hubspot.service.IdempotencyService;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,10 +21,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.Optional;
+
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,6 +37,12 @@ class ContactControllerTest {
 
     @Mock
     private ContactService contactService;
+    @Mock
+    private ContactImportService contactImportService;
+    @Mock
+    private ContactCacheService contactCacheService;
+    @Mock
+    private IdempotencyService idempotencyService;
 
     @InjectMocks
     private ContactController contactController;
@@ -50,7 +68,7 @@ class ContactControllerTest {
         when(contactService.createContact(any(ContactCreateRequest.class)))
                 .thenReturn(Mono.just(successResponse));
 
-        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(validRequest);
+        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(null, null, validRequest);
 
         StepVerifier.create(result)
                 .expectNextMatches(responseEntity ->
@@ -68,7 +86,7 @@ class ContactControllerTest {
         when(contactService.createContact(any(ContactCreateRequest.class)))
                 .thenReturn(Mono.error(serviceException));
 
-        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(validRequest);
+        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(null, null, validRequest);
 
         StepVerifier.create(result)
                 .expectErrorMatches(throwable ->
@@ -85,10 +103,80 @@ class ContactControllerTest {
         when(contactService.createContact(any(ContactCreateRequest.class)))
                 .thenReturn(Mono.error(validationException));
 
-        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(validRequest);
+        Mono<ResponseEntity<ContactResponse>> result = contactController.createContact(null, null, validRequest);
 
         StepVerifier.create(result)
                 .expectErrorMatches(throwable -> throwable == validationException)
                 .verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("importCsv should stream the results and point to the import status")
+    void importCsv_shouldStreamResultsWithStatusLocation() {
+        Flux<String> lines = Flux.just("email", "test@example.com");
+        Flux<ContactImportRowResult> results = Flux.just(
+                new ContactImportRowResult(2, ContactImportRowResult.Status.CREATED, "test@example.com", "contact123", null));
+        when(contactImportService.importContacts(null, ContactImportService.Format.CSV, lines))
+                .thenReturn(Mono.just(new ContactImportService.ContactImport("import-1", results)));
+
+        StepVerifier.create(contactController.importCsv(null, lines))
+                .expectNextMatches(responseEntity ->
+                        responseEntity.getStatusCode() == HttpStatus.OK &&
+                                "/contacts/import/import-1".equals(String.valueOf(responseEntity.getHeaders().getLocation())) &&
+                                "import-1".equals(responseEntity.getHeaders().getFirst("X-Import-Id")) &&
+                                responseEntity.getBody() == results
+                )
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getImportStatus should return NOT_FOUND for an unknown import")
+    void getImportStatus_shouldReturnNotFound_whenUnknown() {
+        when(contactImportService.getStatus(eq("missing"))).thenReturn(Optional.empty());
+
+        StepVerifier.create(contactController.getImportStatus("missing"))
+                .expectNextMatches(responseEntity -> responseEntity.getStatusCode() == HttpStatus.NOT_FOUND)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("an open HubSpot circuit should be answered with SERVICE_UNAVAILABLE by the exception handler")
+    void getContact_shouldReturnServiceUnavailable_whenCircuitOpen() {
+        when(contactCacheService.getContact(null, 42L)).thenReturn(Mono.error(
+                CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("hubspotApi"))));
+        WebTestClient webTestClient = WebTestClient.bindToController(contactController)
+                .controllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        webTestClient.get().uri("/contacts/42")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody()
+                .jsonPath("$.path").isEqualTo("/contacts/42");
+    }
+
+    @Test
+    @DisplayName("getContact should return NOT_FOUND when HubSpot does not know the contact")
+    void getContact_shouldReturnNotFound_whenUnknown() {
+        when(contactCacheService.getContact(null, 42L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(contactController.getContact(null, 42L))
+                .expectNextMatches(responseEntity -> responseEntity.getStatusCode() == HttpStatus.NOT_FOUND)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("createContact should mark a response replayed for an Idempotency-Key already seen")
+    void createContact_shouldMarkReplay_whenIdempotencyKeyWasSeen() {
+        when(idempotencyService.<ContactResponse>execute(eq("key-1"), any(), any()))
+                .thenReturn(Mono.just(new IdempotencyService.IdempotentResult<>(successResponse, true)));
+
+        StepVerifier.create(contactController.createContact(null, "key-1", validRequest))
+                .expectNextMatches(responseEntity ->
+                        responseEntity.getStatusCode() == HttpStatus.CREATED &&
+                                "true".equals(responseEntity.getHeaders().getFirst("Idempotent-Replayed")) &&
+                                responseEntity.getBody() == successResponse
+                )
+                .verifyComplete();
+    }
+}
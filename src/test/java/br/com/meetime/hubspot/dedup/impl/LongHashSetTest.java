@@ -0,0 +1,47 @@
+package br.com.meetime.hubspot.dedup.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    @DisplayName("add, contains and remove should agree with java.util.HashSet under colliding keys")
+    void operations_shouldMatchHashSet() {
+        LongHashSet set = new LongHashSet(64);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            // Few distinct low bits so probe runs wrap around and overlap.
+            long key = ((long) random.nextInt(16) << 32) | random.nextInt(8) | 1L;
+            if (random.nextBoolean() && expected.size() < 64) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long key : expected) {
+            assertTrue(set.contains(key));
+        }
+    }
+
+    @Test
+    @DisplayName("add should refuse new keys once the set is full")
+    void add_shouldThrow_whenFull() {
+        LongHashSet set = new LongHashSet(2);
+        assertTrue(set.add(1));
+        assertTrue(set.add(2));
+        assertFalse(set.add(2));
+
+        assertTrue(set.isFull());
+        assertThrows(IllegalStateException.class, () -> set.add(3));
+    }
+}
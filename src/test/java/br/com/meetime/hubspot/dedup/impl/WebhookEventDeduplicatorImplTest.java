@@ -0,0 +1,91 @@
+package br.com.meetime.hubspot.dedup.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookEventDeduplicatorImplTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private WebhookEventDeduplicatorImpl deduplicator(int maxEntries, Duration retention, int stripes) {
+        HubSpotConfig.DedupConfig dedupConfig = new HubSpotConfig.DedupConfig();
+        dedupConfig.setMaxEntries(maxEntries);
+        dedupConfig.setRetention(retention);
+        dedupConfig.setStripes(stripes);
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setDedup(dedupConfig);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+        return new WebhookEventDeduplicatorImpl(hubSpotConfig, meterRegistry);
+    }
+
+    private static WebhookEventDTO event(long portalId, long eventId) {
+        WebhookEventDTO event = new WebhookEventDTO();
+        event.setPortalId(portalId);
+        event.setEventId(eventId);
+        return event;
+    }
+
+    private double dedupCount(String result) {
+        return meterRegistry.counter("hubspot.webhook.dedup", "result", result).count();
+    }
+
+    @Test
+    @DisplayName("firstDelivery should drop a redelivered event and tell portals apart")
+    void firstDelivery_shouldDropRedelivery_perPortal() {
+        WebhookEventDeduplicatorImpl deduplicator = deduplicator(10_000, Duration.ofHours(1), 4);
+
+        assertTrue(deduplicator.firstDelivery(event(1, 100)));
+        assertFalse(deduplicator.firstDelivery(event(1, 100)));
+        assertTrue(deduplicator.firstDelivery(event(2, 100)));
+        assertTrue(deduplicator.firstDelivery(new WebhookEventDTO()));
+        assertTrue(deduplicator.firstDelivery(new WebhookEventDTO()));
+
+        assertEquals(1.0, dedupCount("hit"));
+        assertEquals(4.0, dedupCount("miss"));
+    }
+
+    @Test
+    @DisplayName("forget should let the next delivery of the event through")
+    void forget_shouldAllowRedelivery() {
+        WebhookEventDeduplicatorImpl deduplicator = deduplicator(10_000, Duration.ofHours(1), 1);
+
+        assertTrue(deduplicator.firstDelivery(event(1, 100)));
+        deduplicator.forget(event(1, 100));
+
+        assertTrue(deduplicator.firstDelivery(event(1, 100)));
+    }
+
+    @Test
+    @DisplayName("memory should stay bounded by evicting the oldest generation when full")
+    void firstDelivery_shouldEvictOldestGeneration_whenCapacityReached() {
+        WebhookEventDeduplicatorImpl deduplicator = deduplicator(400, Duration.ofHours(1), 1);
+
+        for (long eventId = 1; eventId <= 1_000; eventId++) {
+            assertTrue(deduplicator.firstDelivery(event(1, eventId)));
+        }
+
+        assertFalse(deduplicator.firstDelivery(event(1, 1_000)));
+        assertTrue(deduplicator.firstDelivery(event(1, 1)));
+        assertTrue(meterRegistry.counter("hubspot.webhook.dedup.rotations", "reason", "capacity").count() > 0);
+        assertTrue(meterRegistry.get("hubspot.webhook.dedup.size").gauge().value() <= 400);
+    }
+
+    @Test
+    @DisplayName("events should be forgotten once the retention window has passed")
+    void firstDelivery_shouldForgetEvents_afterRetention() throws InterruptedException {
+        WebhookEventDeduplicatorImpl deduplicator = deduplicator(10_000, Duration.ofMillis(30), 1);
+
+        assertTrue(deduplicator.firstDelivery(event(1, 100)));
+        Thread.sleep(100);
+
+        assertTrue(deduplicator.firstDelivery(event(1, 100)));
+    }
+}
@@ -0,0 +1,128 @@
+package br.com.meetime.hubspot.journal.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.journal.JournalEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookJournalImplTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private WebhookJournalImpl openJournal(DataSize segmentSize, int maxSegments) {
+        return openJournal(segmentSize, maxSegments, Duration.ofHours(1));
+    }
+
+    private WebhookJournalImpl openJournal(DataSize segmentSize, int maxSegments, Duration unfinishedMaxAge) {
+        HubSpotConfig.JournalConfig journalConfig = new HubSpotConfig.JournalConfig();
+        journalConfig.setDirectory(directory.toString());
+        journalConfig.setSegmentSize(segmentSize);
+        journalConfig.setMaxSegments(maxSegments);
+        journalConfig.setUnfinishedMaxAge(unfinishedMaxAge);
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setJournal(journalConfig);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+        return new WebhookJournalImpl(hubSpotConfig, meterRegistry);
+    }
+
+    private static byte[] payload(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("reopening the journal should return only batches without a checkpoint")
+    void reopen_shouldReturnUnfinishedBatches() {
+        WebhookJournalImpl journal = openJournal(DataSize.ofKilobytes(64), 4);
+        long first = journal.append(payload("[{\"eventId\":1}]"));
+        long second = journal.append(payload("[{\"eventId\":2}]"));
+        journal.checkpoint(first);
+        journal.close();
+
+        WebhookJournalImpl reopened = openJournal(DataSize.ofKilobytes(64), 4);
+        List<JournalEntry> unfinished = reopened.readUnfinished();
+
+        assertEquals(1, unfinished.size());
+        assertEquals(second, unfinished.get(0).getSequence());
+        assertEquals("[{\"eventId\":2}]", new String(unfinished.get(0).getPayload(), StandardCharsets.UTF_8));
+        assertTrue(reopened.append(payload("[]")) > second);
+    }
+
+    @Test
+    @DisplayName("append should rotate segments and scan should visit batches in order")
+    void append_shouldRotateSegments_andScanInOrder() throws IOException {
+        WebhookJournalImpl journal = openJournal(DataSize.ofBytes(128), 100);
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sequences.add(journal.append(payload("[{\"eventId\":" + i + "}]")));
+        }
+
+        List<Long> scanned = new ArrayList<>();
+        journal.scan(entry -> scanned.add(entry.getSequence()));
+
+        assertEquals(sequences, scanned);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    @DisplayName("rotation should delete fully checkpointed segments beyond the retention limit")
+    void rotation_shouldDeleteCheckpointedSegmentsBeyondRetention() throws IOException {
+        WebhookJournalImpl journal = openJournal(DataSize.ofBytes(128), 2);
+        for (int i = 0; i < 10; i++) {
+            journal.checkpoint(journal.append(payload("[{\"eventId\":" + i + "}]")));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() <= 2);
+        }
+        journal.close();
+        assertTrue(openJournal(DataSize.ofBytes(128), 2).readUnfinished().isEmpty());
+    }
+
+    @Test
+    @DisplayName("rotation should keep a segment with unfinished batches, then drop them once they pass the maximum age")
+    void rotation_shouldDropUnfinishedBatches_pastMaxAge() throws IOException {
+        WebhookJournalImpl patient = openJournal(DataSize.ofBytes(128), 2);
+        patient.append(payload("[{\"eventId\":0}]"));
+        for (int i = 1; i < 10; i++) {
+            patient.checkpoint(patient.append(payload("[{\"eventId\":" + i + "}]")));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 2);
+        }
+        patient.close();
+
+        WebhookJournalImpl journal = openJournal(DataSize.ofBytes(128), 2, Duration.ZERO);
+        long stuck = journal.readUnfinished().get(0).getSequence();
+        for (int i = 10; i < 20; i++) {
+            journal.checkpoint(journal.append(payload("[{\"eventId\":" + i + "}]")));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() <= 2);
+        }
+        assertEquals(1.0, meterRegistry.get("hubspot.webhook.journal.dropped").counter().count());
+        journal.checkpoint(stuck);
+        journal.close();
+        assertTrue(openJournal(DataSize.ofBytes(128), 2).readUnfinished().isEmpty());
+    }
+}
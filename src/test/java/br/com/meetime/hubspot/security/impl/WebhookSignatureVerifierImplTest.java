@@ -0,0 +1,84 @@
+package br.com.meetime.hubspot.security.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.exception.WebhookAuthenticationException;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookSignatureVerifierImplTest {
+
+    private static final String CLIENT_SECRET = "test-client-secret";
+    private static final String BODY = "[{\"eventId\":1,\"subscriptionType\":\"contact.creation\",\"objectId\":42}]";
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+    private WebhookSignatureVerifierImpl signatureVerifier;
+
+    @BeforeEach
+    void setUp() {
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setClientSecret(CLIENT_SECRET);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+        signatureVerifier = new WebhookSignatureVerifierImpl(hubSpotConfig);
+    }
+
+    private static String sign(String body) throws Exception {
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(CLIENT_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(hmac.doFinal((CLIENT_SECRET + body).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private DataBuffer chunked(String body, int chunkSize) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - offset);
+            DataBuffer chunk = bufferFactory.allocateBuffer(length);
+            chunk.write(bytes, offset, length);
+            chunks.add(chunk);
+        }
+        return bufferFactory.join(chunks);
+    }
+
+    @Test
+    @DisplayName("validateSignatureV3 should accept a valid signature over a multi-chunk body")
+    void validateSignatureV3_shouldAcceptValidSignature_whenBodyIsChunked() throws Exception {
+        String signature = sign(BODY);
+        DataBuffer body = chunked(BODY, 7);
+
+        assertDoesNotThrow(() -> signatureVerifier.validateSignatureV3(signature, body));
+        assertDoesNotThrow(() -> signatureVerifier.validateSignatureV3(signature, body));
+        assertEquals(0, body.readPosition());
+    }
+
+    @Test
+    @DisplayName("validateSignatureV3 should reject a signature computed over a different body")
+    void validateSignatureV3_shouldReject_whenBodyWasTampered() throws Exception {
+        String signature = sign(BODY);
+
+        assertThrows(WebhookAuthenticationException.class,
+                () -> signatureVerifier.validateSignatureV3(signature, chunked(BODY.replace("42", "43"), 16)));
+    }
+
+    @Test
+    @DisplayName("validateSignatureV3 should reject missing or malformed signatures")
+    void validateSignatureV3_shouldReject_whenSignatureMissingOrMalformed() {
+        DataBuffer body = chunked(BODY, 16);
+
+        assertThrows(WebhookAuthenticationException.class, () -> signatureVerifier.validateSignatureV3(" ", body));
+        assertThrows(WebhookAuthenticationException.class, () -> signatureVerifier.validateSignatureV3("not base64 !", body));
+    }
+}
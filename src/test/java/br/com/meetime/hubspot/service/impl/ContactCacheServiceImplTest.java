@@ -0,0 +1,116 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.service.ContactHydrationService;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContactCacheServiceImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+    private static final long CONTACT_ID = 42L;
+
+    @Mock
+    private ContactHydrationService contactHydrationService;
+    @Mock
+    private HubSpotOAuthService hubSpotOAuthService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ContactCacheServiceImpl contactCacheService;
+
+    @BeforeEach
+    void setUp() {
+        contactCacheService = new ContactCacheServiceImpl(contactHydrationService, hubSpotOAuthService, new HubSpotConfig(), meterRegistry);
+    }
+
+    private static ContactResponse contact(String firstname) {
+        ContactResponse contact = new ContactResponse();
+        contact.setId(String.valueOf(CONTACT_ID));
+        contact.setProperties(Map.of("email", "one@example.com", "firstname", firstname));
+        return contact;
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "hubspot.contacts").tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    @DisplayName("a second read of the same contact should be served from the cache")
+    void getContact_shouldReadThroughOnce() {
+        when(contactHydrationService.hydrate(PORTAL_ID, CONTACT_ID, HubSpotRequestScheduler.Priority.INTERACTIVE)).thenReturn(Mono.just(contact("One")));
+
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .assertNext(contact -> assertEquals("One", contact.getProperties().get("firstname")))
+                .verifyComplete();
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .assertNext(contact -> assertEquals("One", contact.getProperties().get("firstname")))
+                .verifyComplete();
+
+        verify(contactHydrationService, times(1)).hydrate(PORTAL_ID, CONTACT_ID, HubSpotRequestScheduler.Priority.INTERACTIVE);
+        assertEquals(1.0, gets("hit"));
+        assertEquals(1.0, gets("miss"));
+        contactCacheService.cleanUp();
+        assertTrue(meterRegistry.get("hubspot.contacts.cache.weight").gauge().value() > 0);
+    }
+
+    @Test
+    @DisplayName("a contact HubSpot does not know should not be cached")
+    void getContact_shouldNotCacheMisses() {
+        when(contactHydrationService.hydrate(PORTAL_ID, CONTACT_ID, HubSpotRequestScheduler.Priority.INTERACTIVE)).thenReturn(Mono.empty(), Mono.just(contact("Late")));
+
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .verifyComplete();
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(contactHydrationService, times(2)).hydrate(PORTAL_ID, CONTACT_ID, HubSpotRequestScheduler.Priority.INTERACTIVE);
+    }
+
+    @Test
+    @DisplayName("property changes should patch a copy of the cached contact without another read")
+    void applyPropertyChanges_shouldPatchCachedCopy() {
+        ContactResponse cached = contact("One");
+        contactCacheService.put(PORTAL_ID, cached);
+
+        contactCacheService.applyPropertyChanges(PORTAL_ID, CONTACT_ID, Map.of("firstname", "Uno"));
+
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .assertNext(contact -> {
+                    assertEquals("Uno", contact.getProperties().get("firstname"));
+                    assertEquals("one@example.com", contact.getProperties().get("email"));
+                })
+                .verifyComplete();
+        assertEquals("One", cached.getProperties().get("firstname"));
+        verifyNoInteractions(contactHydrationService);
+    }
+
+    @Test
+    @DisplayName("an invalidated contact should be read from HubSpot again")
+    void invalidate_shouldForceReload() {
+        contactCacheService.put(PORTAL_ID, contact("One"));
+        when(contactHydrationService.hydrate(PORTAL_ID, CONTACT_ID, HubSpotRequestScheduler.Priority.INTERACTIVE)).thenReturn(Mono.just(contact("Fresh")));
+
+        contactCacheService.invalidate(PORTAL_ID, CONTACT_ID);
+
+        StepVerifier.create(contactCacheService.getContact(PORTAL_ID, CONTACT_ID))
+                .assertNext(contact -> assertEquals("Fresh", contact.getProperties().get("firstname")))
+                .verifyComplete();
+    }
+}
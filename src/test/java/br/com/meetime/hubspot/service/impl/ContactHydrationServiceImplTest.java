@@ -0,0 +1,239 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.HubSpotResilienceFilter;
+import br.com.meetime.hubspot.config.UnauthorizedReplayFilter;
+import br.com.meetime.hubspot.domain.request.ContactBatchReadRequest;
+import br.com.meetime.hubspot.domain.response.ContactBatchReadResponse;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class ContactHydrationServiceImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    @Mock
+    private WebClient hubSpotWebClient;
+    @Mock
+    private HubSpotOAuthService hubSpotOAuthService;
+
+    @Mock private WebClient.RequestBodyUriSpec requestBodyUriSpec;
+    @Mock private WebClient.RequestBodySpec requestBodySpec;
+    @Mock private WebClient.RequestHeadersSpec requestHeadersSpec;
+    @Mock private WebClient.ResponseSpec responseSpec;
+
+    @Captor ArgumentCaptor<ContactBatchReadRequest> batchRequestCaptor;
+
+    private ContactHydrationServiceImpl contactHydrationService;
+    private final String validAccessToken = "valid-access-token";
+
+    @BeforeEach
+    void setUp() {
+        HubSpotConfig.HydrationConfig hydrationConfig = new HubSpotConfig.HydrationConfig();
+        hydrationConfig.setMaxBatchSize(100);
+        hydrationConfig.setMaxWait(Duration.ofMillis(100));
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setHydration(hydrationConfig);
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(100)
+                .limitRefreshPeriod(Duration.ofSeconds(10))
+                .timeoutDuration(Duration.ZERO)
+                .build());
+
+        when(hubSpotOAuthService.getValidAccessToken(anyLong())).thenReturn(Mono.just(validAccessToken));
+        when(hubSpotWebClient.post()).thenReturn(requestBodyUriSpec);
+        when(requestBodyUriSpec.uri(eq("/crm/v3/objects/contacts/batch/read"))).thenReturn(requestBodySpec);
+        when(requestBodySpec.header(eq(HttpHeaders.AUTHORIZATION), eq("Bearer " + validAccessToken))).thenReturn(requestBodySpec);
+        when(requestBodySpec.attribute(eq(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE), anyLong())).thenReturn(requestBodySpec);
+        when(requestBodySpec.attribute(eq(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE), any())).thenReturn(requestBodySpec);
+        when(requestBodySpec.attribute(eq(HubSpotResilienceFilter.RETRYABLE_ATTRIBUTE), eq(true))).thenReturn(requestBodySpec);
+        when(requestBodySpec.contentType(eq(MediaType.APPLICATION_JSON))).thenReturn(requestBodySpec);
+        when(requestBodySpec.bodyValue(any(ContactBatchReadRequest.class))).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+
+        contactHydrationService = new ContactHydrationServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), hubSpotConfig, new SimpleMeterRegistry()), hubSpotConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        contactHydrationService.shutdown();
+    }
+
+    private static ContactResponse contact(String id, String email) {
+        ContactResponse contact = new ContactResponse();
+        contact.setId(id);
+        contact.setProperties(Map.of("email", email));
+        return contact;
+    }
+
+    @Test
+    @DisplayName("hydrate should read concurrent ids in a single batch and hand each caller its contact")
+    void hydrate_shouldReadConcurrentIdsInOneBatch() {
+        ContactBatchReadResponse response = new ContactBatchReadResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of(contact("2", "two@example.com"), contact("1", "one@example.com")));
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class)).thenReturn(Mono.just(response));
+
+        Mono<List<String>> emails = Mono.zip(
+                contactHydrationService.hydrate(PORTAL_ID, 1L, HubSpotRequestScheduler.Priority.WEBHOOK),
+                contactHydrationService.hydrate(PORTAL_ID, 2L, HubSpotRequestScheduler.Priority.WEBHOOK),
+                contactHydrationService.hydrate(PORTAL_ID, 1L, HubSpotRequestScheduler.Priority.WEBHOOK)
+        ).map(contacts -> List.of(
+                contacts.getT1().getProperties().get("email"),
+                contacts.getT2().getProperties().get("email"),
+                contacts.getT3().getProperties().get("email")));
+
+        StepVerifier.create(emails)
+                .expectNext(List.of("one@example.com", "two@example.com", "one@example.com"))
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
+        verify(requestBodySpec).bodyValue(batchRequestCaptor.capture());
+        assertEquals(List.of("1", "2"), batchRequestCaptor.getValue().getInputs().stream()
+                .map(ContactBatchReadRequest.ObjectIdInput::getId)
+                .toList());
+        assertTrue(batchRequestCaptor.getValue().getProperties().contains("email"));
+    }
+
+    @Test
+    @DisplayName("hydrate should complete empty when the contact is not in the batch result")
+    void hydrate_shouldCompleteEmpty_whenContactNotFound() {
+        ContactBatchReadResponse response = new ContactBatchReadResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of());
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class)).thenReturn(Mono.just(response));
+
+        StepVerifier.create(contactHydrationService.hydrate(PORTAL_ID, 404L, HubSpotRequestScheduler.Priority.WEBHOOK))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("hydrate should propagate the batch error to every waiting caller")
+    void hydrate_shouldPropagateError_toEveryCaller() {
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO READ CONTACTS IN BATCH: 500", HttpStatusCode.valueOf(500))));
+
+        StepVerifier.create(Mono.zip(contactHydrationService.hydrate(PORTAL_ID, 1L, HubSpotRequestScheduler.Priority.WEBHOOK), contactHydrationService.hydrate(PORTAL_ID, 2L, HubSpotRequestScheduler.Priority.WEBHOOK)))
+                .expectError(HubSpotApiException.class)
+                .verify(Duration.ofSeconds(5));
+
+        StepVerifier.create(contactHydrationService.hydrate(PORTAL_ID, 3L, HubSpotRequestScheduler.Priority.WEBHOOK))
+                .expectError(HubSpotApiException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("hydrate should read each portal's contacts in its own batch with that portal's token")
+    void hydrate_shouldSplitBatchByPortal() {
+        ContactBatchReadResponse response = new ContactBatchReadResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of(contact("1", "one@example.com")));
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class)).thenReturn(Mono.just(response));
+
+        StepVerifier.create(Mono.zip(contactHydrationService.hydrate(PORTAL_ID, 1L, HubSpotRequestScheduler.Priority.WEBHOOK), contactHydrationService.hydrate(67890L, 1L, HubSpotRequestScheduler.Priority.WEBHOOK)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(2)).post();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
+        verify(hubSpotOAuthService).getValidAccessToken(67890L);
+    }
+
+    @Test
+    @DisplayName("hydrate should keep serving lookups when max-wait passes while earlier batches are stalled")
+    void hydrate_shouldKeepBatching_whenDownstreamStallsPastMaxWait() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getHydration().setMaxBatchSize(3);
+        hubSpotConfig.getHydration().setMaxWait(Duration.ofMillis(5));
+        hubSpotConfig.getHydration().setTimeout(Duration.ofSeconds(5));
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(1000)
+                .limitRefreshPeriod(Duration.ofSeconds(10))
+                .build());
+        ContactHydrationServiceImpl stalledService = new ContactHydrationServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), hubSpotConfig, new SimpleMeterRegistry()),
+                hubSpotConfig);
+        ContactBatchReadResponse response = new ContactBatchReadResponse();
+        response.setResults(List.of());
+        // The first read holds the pipeline while every later lookup is flushed by max-wait.
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class))
+                .thenReturn(Mono.just(response).delayElement(Duration.ofSeconds(1)), Mono.just(response));
+
+        try {
+            StepVerifier.create(Flux.range(1, 100)
+                            .delayElements(Duration.ofMillis(4))
+                            .flatMap(id -> stalledService.hydrate(PORTAL_ID, id, HubSpotRequestScheduler.Priority.WEBHOOK))
+                            .then())
+                    .verifyComplete();
+        } finally {
+            stalledService.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("an interactive lookup should not wait behind a stalled webhook batch")
+    void hydrate_shouldNotQueueInteractiveBehindWebhookBatches() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getHydration().setMaxWait(Duration.ofMillis(5));
+        hubSpotConfig.getHydration().setMaxConcurrentBatches(1);
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(100)
+                .limitRefreshPeriod(Duration.ofSeconds(10))
+                .build());
+        ContactHydrationServiceImpl service = new ContactHydrationServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), hubSpotConfig, new SimpleMeterRegistry()),
+                hubSpotConfig);
+        ContactBatchReadResponse response = new ContactBatchReadResponse();
+        response.setResults(List.of(contact("2", "two@example.com")));
+        when(responseSpec.bodyToMono(ContactBatchReadResponse.class)).thenReturn(Mono.never(), Mono.just(response));
+
+        try {
+            service.hydrate(PORTAL_ID, 1L, HubSpotRequestScheduler.Priority.WEBHOOK).subscribe();
+            verify(hubSpotWebClient, timeout(1000)).post();
+
+            StepVerifier.create(service.hydrate(PORTAL_ID, 2L, HubSpotRequestScheduler.Priority.INTERACTIVE))
+                    .assertNext(contact -> assertEquals("2", contact.getId()))
+                    .verifyComplete();
+        } finally {
+            service.shutdown();
+        }
+    }
+}
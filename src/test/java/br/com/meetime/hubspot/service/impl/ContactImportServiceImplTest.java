@@ -0,0 +1,168 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
+import br.com.meetime.hubspot.domain.response.ContactImportRowResult;
+import br.com.meetime.hubspot.domain.response.ContactImportStatusResponse;
+import br.com.meetime.hubspot.domain.response.ContactResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.ContactImportService;
+import br.com.meetime.hubspot.service.ContactService;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContactImportServiceImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    @Mock
+    private ContactService contactService;
+    @Mock
+    private HubSpotOAuthService hubSpotOAuthService;
+
+    private final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+    private final List<List<String>> chunksSent = new ArrayList<>();
+    private ContactImportServiceImpl contactImportService;
+
+    @BeforeEach
+    void setUp() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getContacts().getBulkImport().setChunkSize(2);
+        contactImportService = new ContactImportServiceImpl(contactService, hubSpotOAuthService,
+                Jackson2ObjectMapperBuilder.json().build(), validatorFactory.getValidator(), hubSpotConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    // HubSpot stand-in that creates every contact except the given email, which already exists.
+    private void hubSpotRejecting(String existingEmail) {
+        when(contactService.createContacts(eq(PORTAL_ID), anyList())).thenAnswer(invocation -> {
+            List<ContactCreateRequest> contactRequests = invocation.getArgument(1);
+            chunksSent.add(contactRequests.stream().map(contactRequest -> contactRequest.getProperties().getEmail()).toList());
+            return Flux.fromIterable(contactRequests).map(contactRequest -> {
+                String email = contactRequest.getProperties().getEmail();
+                if (email.equals(existingEmail)) {
+                    return Signal.<ContactResponse>error(new HubSpotApiException("FAILED TO CREATE CONTACT: 409", HttpStatus.CONFLICT));
+                }
+                ContactResponse contact = new ContactResponse();
+                contact.setId("id-" + email);
+                return Signal.next(contact);
+            });
+        });
+    }
+
+    private List<ContactImportRowResult> runImport(ContactImportService.Format format, String... lines) {
+        ContactImportService.ContactImport contactImport = contactImportService
+                .importContacts(PORTAL_ID, format, Flux.just(lines))
+                .block();
+        assertNotNull(contactImport);
+        return contactImport.results().collectList().block();
+    }
+
+    @Test
+    @DisplayName("NDJSON rows should be validated, created in chunks and reported in file order")
+    void importContacts_shouldCreateValidRowsInChunks_whenNdjson() {
+        hubSpotRejecting("taken@example.com");
+
+        List<ContactImportRowResult> results = runImport(ContactImportService.Format.NDJSON,
+                "{\"email\":\"one@example.com\",\"firstname\":\"One\"}",
+                "{\"email\":\"not-an-email\"}",
+                "",
+                "{\"email\":\"taken@example.com\"}",
+                "{not json",
+                "{\"email\":\"two@example.com\"}");
+
+        assertEquals(List.of(1L, 2L, 4L, 5L, 6L), results.stream().map(ContactImportRowResult::getLine).toList());
+        assertEquals(List.of(ContactImportRowResult.Status.CREATED, ContactImportRowResult.Status.INVALID,
+                        ContactImportRowResult.Status.FAILED, ContactImportRowResult.Status.INVALID, ContactImportRowResult.Status.CREATED),
+                results.stream().map(ContactImportRowResult::getStatus).toList());
+        assertEquals("id-one@example.com", results.get(0).getId());
+        assertEquals(List.of("Invalid email format"), results.get(1).getErrors());
+        assertTrue(results.get(3).getErrors().get(0).startsWith("MALFORMED ROW"));
+        // Chunks of two rows each; invalid rows never reach HubSpot.
+        assertEquals(List.of(List.of("one@example.com"), List.of("taken@example.com"), List.of("two@example.com")), chunksSent);
+    }
+
+    @Test
+    @DisplayName("CSV rows should be mapped by the header, with quoted fields")
+    void importContacts_shouldMapColumnsByHeader_whenCsv() {
+        hubSpotRejecting("none");
+
+        List<ContactImportRowResult> results = runImport(ContactImportService.Format.CSV,
+                "\uFEFFEmail,Company,firstname",
+                "one@example.com,\"Acme, \"\"Inc\"\"\",One",
+                ",Nobody,");
+
+        assertEquals(2, results.size());
+        assertEquals(ContactImportRowResult.Status.CREATED, results.get(0).getStatus());
+        assertEquals(2L, results.get(0).getLine());
+        assertEquals(ContactImportRowResult.Status.INVALID, results.get(1).getStatus());
+        assertEquals(List.of("Email is required"), results.get(1).getErrors());
+        verify(contactService).createContacts(eq(PORTAL_ID), argThat(contactRequests ->
+                contactRequests.size() == 1 && "Acme, \"Inc\"".equals(contactRequests.get(0).getProperties().getCompany())));
+    }
+
+    @Test
+    @DisplayName("the import status should be pollable and report the row counts")
+    void getStatus_shouldReportProgress() {
+        hubSpotRejecting("taken@example.com");
+        ContactImportService.ContactImport contactImport = contactImportService.importContacts(PORTAL_ID, ContactImportService.Format.NDJSON,
+                        Flux.just("{\"email\":\"one@example.com\"}", "{\"email\":\"taken@example.com\"}", "{}"))
+                .block();
+        assertNotNull(contactImport);
+
+        assertEquals(ContactImportStatusResponse.State.PENDING, contactImportService.getStatus(contactImport.id()).orElseThrow().getState());
+
+        StepVerifier.create(contactImport.results())
+                .expectNextCount(3)
+                .verifyComplete();
+
+        ContactImportStatusResponse status = contactImportService.getStatus(contactImport.id()).orElseThrow();
+        assertEquals(ContactImportStatusResponse.State.COMPLETED, status.getState());
+        assertEquals(PORTAL_ID, status.getPortalId());
+        assertEquals(3, status.getRowsProcessed());
+        assertEquals(1, status.getCreated());
+        assertEquals(1, status.getFailed());
+        assertEquals(1, status.getInvalid());
+        assertTrue(contactImportService.getStatus("unknown").isEmpty());
+    }
+
+    @Test
+    @DisplayName("without a portal id the import should target the connected portal")
+    void importContacts_shouldUseConnectedPortal_whenNoPortalGiven() {
+        when(hubSpotOAuthService.getConnectedPortalId())
+                .thenReturn(Mono.error(new HubSpotApiException("MORE THAN ONE PORTAL IS CONNECTED", HttpStatus.BAD_REQUEST)));
+
+        StepVerifier.create(contactImportService.importContacts(null, ContactImportService.Format.NDJSON, Flux.empty()))
+                .expectError(HubSpotApiException.class)
+                .verify();
+
+        verifyNoInteractions(contactService);
+    }
+}
@@ -1,18 +1,27 @@
 package br.com.meetime.hubspot.service.impl;
 
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.UnauthorizedReplayFilter;
 import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
+import br.com.meetime.hubspot.domain.request.ContactBatchCreateRequest;
 import br.com.meetime.hubspot.domain.request.ContactCreateRequest;
 import br.com.meetime.hubspot.domain.request.ContactPropertiesRequest;
+import br.com.meetime.hubspot.domain.response.ContactBatchCreateResponse;
 import br.com.meetime.hubspot.domain.response.ContactResponse;
 import br.com.meetime.hubspot.exception.HubSpotApiException;
 import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler;
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -23,9 +32,14 @@ import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.nio.charset.StandardCharsets;
@@ -39,13 +53,15 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ContactServiceImplTest {
 
+    private static final long PORTAL_ID = 12345L;
+
     @Mock
     private WebClient hubSpotWebClient;
     @Mock
     private HubSpotOAuthService hubSpotOAuthService;
 
-    @InjectMocks
     private ContactServiceImpl contactService;
+    private ContactServiceImpl batchingContactService;
 
     @Mock private WebClient.RequestBodyUriSpec requestBodyUriSpec;
     @Mock private WebClient.RequestBodySpec requestBodySpec;
@@ -53,7 +69,9 @@ class ContactServiceImplTest {
     @Mock private WebClient.ResponseSpec responseSpec;
 
     @Captor ArgumentCaptor<ContactCreateRequest> contactRequestCaptor;
+    @Captor ArgumentCaptor<ContactBatchCreateRequest> batchRequestCaptor;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     private ContactCreateRequest validContactRequest;
     private final String validAccessToken = "valid-access-token";
 
@@ -70,9 +88,49 @@ class ContactServiceImplTest {
         when(hubSpotWebClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(eq("/crm/v3/objects/contacts"))).thenReturn(requestBodySpec);
         when(requestBodySpec.header(eq(HttpHeaders.AUTHORIZATION), eq("Bearer " + validAccessToken))).thenReturn(requestBodySpec);
+        when(requestBodySpec.attribute(eq(UnauthorizedReplayFilter.PORTAL_ID_ATTRIBUTE), eq(PORTAL_ID))).thenReturn(requestBodySpec);
+        when(requestBodySpec.attribute(eq(HubSpotRequestScheduler.PRIORITY_ATTRIBUTE), any())).thenReturn(requestBodySpec);
         when(requestBodySpec.contentType(eq(MediaType.APPLICATION_JSON))).thenReturn(requestBodySpec);
+        when(hubSpotOAuthService.getConnectedPortalId()).thenReturn(Mono.just(PORTAL_ID));
         when(requestBodySpec.bodyValue(any(ContactCreateRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(requestBodyUriSpec.uri(eq("/crm/v3/objects/contacts/batch/create"))).thenReturn(requestBodySpec);
+        when(requestBodySpec.bodyValue(any(ContactBatchCreateRequest.class))).thenReturn(requestHeadersSpec);
+
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(100)
+                .limitRefreshPeriod(Duration.ofSeconds(10))
+                .timeoutDuration(Duration.ZERO)
+                .build());
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        contactService = new ContactServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), hubSpotConfig, meterRegistry), hubSpotConfig, meterRegistry);
+
+        HubSpotConfig.BatchCreateConfig batchCreateConfig = new HubSpotConfig.BatchCreateConfig();
+        batchCreateConfig.setEnabled(true);
+        batchCreateConfig.setMaxWait(Duration.ofMillis(100));
+        HubSpotConfig batchingConfig = new HubSpotConfig();
+        batchingConfig.getContacts().setBatchCreate(batchCreateConfig);
+        batchingContactService = new ContactServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), batchingConfig, new SimpleMeterRegistry()), batchingConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchingContactService.shutdown();
+    }
+
+    private static ContactCreateRequest contactRequest(String email) {
+        ContactPropertiesRequest properties = new ContactPropertiesRequest();
+        properties.setEmail(email);
+        return new ContactCreateRequest(properties);
+    }
+
+    private static ContactResponse contact(String id, String email) {
+        ContactResponse contact = new ContactResponse();
+        contact.setId(id);
+        contact.setProperties(Map.of("email", email));
+        return contact;
     }
 
     @Test
@@ -81,7 +139,7 @@ class ContactServiceImplTest {
         ContactResponse mockResponse = new ContactResponse();
         mockResponse.setId("12345");
 
-        when(hubSpotOAuthService.getValidAccessToken()).thenReturn(Mono.just(validAccessToken));
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
         when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
         when(responseSpec.bodyToMono(ContactResponse.class)).thenReturn(Mono.just(mockResponse));
 
@@ -94,13 +152,13 @@ class ContactServiceImplTest {
         verify(requestBodySpec).bodyValue(contactRequestCaptor.capture());
         assertNotNull(contactRequestCaptor.getValue().getProperties());
         assertEquals("test@example.com", contactRequestCaptor.getValue().getProperties().getEmail());
-        verify(hubSpotOAuthService).getValidAccessToken();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
     }
 
     @Test
     @DisplayName("createContact should return error when OAuth fails")
     void createContact_shouldReturnError_whenOAuthFails() {
-        when(hubSpotOAuthService.getValidAccessToken())
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID))
                 .thenReturn(Mono.error(new HubSpotApiException("OAuth failed", HttpStatusCode.valueOf(401))));
 
         Mono<ContactResponse> result = contactService.createContact(validContactRequest);
@@ -129,7 +187,7 @@ class ContactServiceImplTest {
                 errorDTO
         );
 
-        when(hubSpotOAuthService.getValidAccessToken()).thenReturn(Mono.just(validAccessToken));
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
         when(responseSpec.bodyToMono(ContactResponse.class)).thenReturn(Mono.error(expectedException));
         when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
 
@@ -142,7 +200,7 @@ class ContactServiceImplTest {
                 )
                 .verify();
 
-        verify(hubSpotOAuthService).getValidAccessToken();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
         verify(requestHeadersSpec).retrieve();
     }
 
@@ -154,7 +212,7 @@ class ContactServiceImplTest {
                 HttpStatus.INTERNAL_SERVER_ERROR
         );
 
-        when(hubSpotOAuthService.getValidAccessToken()).thenReturn(Mono.just(validAccessToken));
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
         when(responseSpec.bodyToMono(ContactResponse.class)).thenReturn(Mono.error(expectedException));
         when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
 
@@ -167,7 +225,7 @@ class ContactServiceImplTest {
                 )
                 .verify();
 
-        verify(hubSpotOAuthService).getValidAccessToken();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
         verify(requestHeadersSpec).retrieve();
     }
 
@@ -175,7 +233,7 @@ class ContactServiceImplTest {
     @DisplayName("createContact should return generic error when WebClient throws unexpected")
     void createContact_shouldReturnGenericError_whenWebClientThrowsUnexpected() {
         RuntimeException webClientException = new RuntimeException("Network Error");
-        when(hubSpotOAuthService.getValidAccessToken()).thenReturn(Mono.just(validAccessToken));
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
         when(responseSpec.bodyToMono(ContactResponse.class)).thenReturn(Mono.error(webClientException));
         when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
 
@@ -189,7 +247,221 @@ class ContactServiceImplTest {
                 )
                 .verify();
 
-        verify(hubSpotOAuthService).getValidAccessToken();
+        verify(hubSpotOAuthService).getValidAccessToken(PORTAL_ID);
         verify(requestHeadersSpec).retrieve();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("concurrent creations should go out as one batch and each caller should get its own contact")
+    void createContact_shouldSendConcurrentContactsInOneBatch() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        ContactBatchCreateResponse response = new ContactBatchCreateResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of(contact("2", "two@example.com"), contact("1", "one@example.com")));
+        when(responseSpec.bodyToMono(ContactBatchCreateResponse.class)).thenReturn(Mono.just(response));
+
+        Mono<List<String>> ids = Mono.zip(
+                batchingContactService.createContact(PORTAL_ID, contactRequest("One@Example.com")),
+                batchingContactService.createContact(PORTAL_ID, contactRequest("two@example.com"))
+        ).map(contacts -> List.of(contacts.getT1().getId(), contacts.getT2().getId()));
+
+        StepVerifier.create(ids)
+                .expectNext(List.of("1", "2"))
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+        verify(requestBodySpec).bodyValue(batchRequestCaptor.capture());
+        assertEquals(2, batchRequestCaptor.getValue().getInputs().size());
+    }
+
+    @Test
+    @DisplayName("batching should keep serving creations when max-wait passes while every batch slot is busy")
+    void createContact_shouldKeepBatching_whenBatchesStallPastMaxWait() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        HubSpotApiException unavailable = new HubSpotApiException("FAILED TO CREATE CONTACTS IN BATCH: 503", HttpStatus.SERVICE_UNAVAILABLE);
+        // The first batch holds the only slot while every later creation is flushed by max-wait.
+        when(responseSpec.bodyToMono(ContactBatchCreateResponse.class))
+                .thenReturn(Mono.<ContactBatchCreateResponse>error(unavailable).delaySubscription(Duration.ofSeconds(1)), Mono.error(unavailable));
+        HubSpotConfig.BatchCreateConfig batchCreateConfig = new HubSpotConfig.BatchCreateConfig();
+        batchCreateConfig.setEnabled(true);
+        batchCreateConfig.setMaxBatchSize(3);
+        batchCreateConfig.setMaxWait(Duration.ofMillis(5));
+        batchCreateConfig.setMaxConcurrentBatches(1);
+        batchCreateConfig.setTimeout(Duration.ofSeconds(5));
+        HubSpotConfig stalledConfig = new HubSpotConfig();
+        stalledConfig.getContacts().setBatchCreate(batchCreateConfig);
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(1000)
+                .limitRefreshPeriod(Duration.ofSeconds(10))
+                .build());
+        ContactServiceImpl stalledService = new ContactServiceImpl(hubSpotWebClient, hubSpotOAuthService,
+                new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), stalledConfig, new SimpleMeterRegistry()),
+                stalledConfig, new SimpleMeterRegistry());
+
+        try {
+            StepVerifier.create(Flux.range(1, 60)
+                            .delayElements(Duration.ofMillis(4))
+                            .flatMap(i -> stalledService.createContact(PORTAL_ID, contactRequest("contact" + i + "@example.com")).materialize())
+                            .filter(signal -> signal.getThrowable() == unavailable)
+                            .count())
+                    .expectNext(60L)
+                    .verifyComplete();
+        } finally {
+            stalledService.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("a batch rejected for its inputs should be retried one by one so each caller gets its own outcome")
+    void createContact_shouldCreateIndividually_whenBatchRejected() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        HubSpotApiException conflict = new HubSpotApiException("FAILED TO CREATE CONTACT: 409", HttpStatus.CONFLICT);
+        when(responseSpec.bodyToMono(ContactBatchCreateResponse.class))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO CREATE CONTACTS IN BATCH: 409", HttpStatus.CONFLICT)));
+        when(responseSpec.bodyToMono(ContactResponse.class))
+                .thenReturn(Mono.just(contact("1", "one@example.com")), Mono.error(conflict));
+
+        Mono<List<Signal<ContactResponse>>> outcomes = Mono.zip(
+                batchingContactService.createContact(PORTAL_ID, contactRequest("one@example.com")).materialize(),
+                batchingContactService.createContact(PORTAL_ID, contactRequest("existing@example.com")).materialize()
+        ).map(signals -> List.of(signals.getT1(), signals.getT2()));
+
+        StepVerifier.create(outcomes)
+                .assertNext(signals -> {
+                    assertEquals("1", signals.get(0).get().getId());
+                    assertSame(conflict, signals.get(1).getThrowable());
+                })
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(3)).post();
+    }
+
+    @Test
+    @DisplayName("a 207 batch answer should fail each contact it reports an error for with HubSpot's status and message")
+    void createContact_shouldFailWithItemError_whenBatchReportsErrors() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        ContactBatchCreateResponse.BatchError conflict = new ContactBatchCreateResponse.BatchError();
+        conflict.setStatus("error");
+        conflict.setCategory("CONFLICT");
+        conflict.setMessage("Contact already exists. Existing ID: 777");
+        conflict.setContext(Map.of("email", List.of("Existing@Example.com")));
+        ContactBatchCreateResponse response = new ContactBatchCreateResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of(contact("1", "one@example.com")));
+        response.setErrors(List.of(conflict));
+        when(responseSpec.bodyToMono(ContactBatchCreateResponse.class)).thenReturn(Mono.just(response));
+
+        StepVerifier.create(batchingContactService.createContacts(PORTAL_ID,
+                        List.of(contactRequest("one@example.com"), contactRequest("existing@example.com"))))
+                .assertNext(outcome -> assertEquals("1", outcome.get().getId()))
+                .assertNext(outcome -> {
+                    HubSpotApiException error = assertInstanceOf(HubSpotApiException.class, outcome.getThrowable());
+                    assertEquals(409, error.getStatusCode().value());
+                    assertEquals("Contact already exists. Existing ID: 777", error.getErrorBody().getMessage());
+                })
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+    }
+
+    @Test
+    @DisplayName("createContacts should send one batch and emit one outcome per request, in request order")
+    void createContacts_shouldEmitOutcomesInRequestOrder() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        ContactBatchCreateResponse response = new ContactBatchCreateResponse();
+        response.setStatus("COMPLETE");
+        response.setResults(List.of(contact("2", "two@example.com"), contact("1", "one@example.com")));
+        when(responseSpec.bodyToMono(ContactBatchCreateResponse.class)).thenReturn(Mono.just(response));
+
+        StepVerifier.create(contactService.createContacts(PORTAL_ID,
+                        List.of(contactRequest("one@example.com"), contactRequest("two@example.com"), contactRequest("lost@example.com"))))
+                .assertNext(outcome -> assertEquals("1", outcome.get().getId()))
+                .assertNext(outcome -> assertEquals("2", outcome.get().getId()))
+                .assertNext(outcome -> assertInstanceOf(HubSpotApiException.class, outcome.getThrowable()))
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+    }
+
+    @Test
+    @DisplayName("concurrent creations of the same email should share one HubSpot call")
+    void createContact_shouldShareInFlightCall_whenSameEmail() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(ContactResponse.class))
+                .thenReturn(Mono.just(contact("1", "one@example.com")).delayElement(Duration.ofMillis(100)));
+
+        Mono<List<String>> ids = Mono.zip(
+                contactService.createContact(PORTAL_ID, contactRequest("one@example.com")),
+                contactService.createContact(PORTAL_ID, contactRequest(" One@Example.com"))
+        ).map(contacts -> List.of(contacts.getT1().getId(), contacts.getT2().getId()));
+
+        StepVerifier.create(ids)
+                .expectNext(List.of("1", "1"))
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+        assertEquals(1.0, meterRegistry.get("hubspot.contacts.create.deduplicated").tag("reason", "in_flight").counter().count());
+    }
+
+    @Test
+    @DisplayName("a concurrent creation of the same email with other properties should get HubSpot's 409 instead of the other contact")
+    void createContact_shouldAnswerConflict_whenSameEmailWithOtherProperties() {
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(ContactResponse.class))
+                .thenReturn(Mono.just(contact("1", "one@example.com")).delayElement(Duration.ofMillis(100)));
+        ContactCreateRequest otherProperties = contactRequest("one@example.com");
+        otherProperties.getProperties().setFirstname("Other");
+
+        Mono<ContactResponse> first = contactService.createContact(PORTAL_ID, contactRequest("one@example.com"));
+        Mono<ContactResponse> second = contactService.createContact(PORTAL_ID, otherProperties);
+
+        StepVerifier.create(first.zipWith(second.map(ContactResponse::getId).onErrorResume(error -> Mono.just(
+                        error instanceof HubSpotApiException hubSpotError && hubSpotError.getStatusCode().value() == 409
+                                ? hubSpotError.getErrorBody().getMessage() : error.toString()))))
+                .assertNext(outcomes -> {
+                    assertEquals("1", outcomes.getT1().getId());
+                    assertEquals("Contact already exists. Existing ID: 1", outcomes.getT2());
+                })
+                .verifyComplete();
+
+        verify(hubSpotWebClient, times(1)).post();
+        assertEquals(1.0, meterRegistry.get("hubspot.contacts.create.deduplicated").tag("reason", "in_flight_conflict").counter().count());
+        assertEquals(0.0, meterRegistry.get("hubspot.contacts.create.deduplicated").tag("reason", "in_flight").counter().count());
+    }
+
+    @Test
+    @DisplayName("an email HubSpot reported as existing should be rejected again without calling HubSpot until the contact is deleted")
+    void createContact_shouldShortCircuitKnownDuplicates() {
+        HubSpotErrorDTO conflictBody = new HubSpotErrorDTO();
+        conflictBody.setCategory("CONFLICT");
+        conflictBody.setMessage("Contact already exists. Existing ID: 777");
+        when(hubSpotOAuthService.getValidAccessToken(PORTAL_ID)).thenReturn(Mono.just(validAccessToken));
+        when(responseSpec.onStatus(any(Predicate.class), any())).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(ContactResponse.class))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO CREATE CONTACT: 409", HttpStatus.CONFLICT, conflictBody)));
+
+        StepVerifier.create(contactService.createContact(PORTAL_ID, contactRequest("taken@example.com")))
+                .expectError(HubSpotApiException.class)
+                .verify();
+        StepVerifier.create(contactService.createContact(PORTAL_ID, contactRequest("TAKEN@example.com")))
+                .expectErrorMatches(error -> error instanceof HubSpotApiException hubSpotError
+                        && hubSpotError.getStatusCode().value() == 409
+                        && hubSpotError.getErrorBody().getMessage().endsWith("Existing ID: 777"))
+                .verify();
+        verify(hubSpotWebClient, times(1)).post();
+
+        contactService.forgetContact(PORTAL_ID, 777L);
+
+        StepVerifier.create(contactService.createContact(PORTAL_ID, contactRequest("taken@example.com")))
+                .expectError(HubSpotApiException.class)
+                .verify();
+        verify(hubSpotWebClient, times(2)).post();
+    }
+}
@@ -0,0 +1,112 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator.RefreshLease;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTokenRefreshCoordinatorTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private HubSpotConfig hubSpotConfig;
+
+    @BeforeEach
+    void setUp() {
+        HubSpotConfig.CoordinationConfig coordinationConfig = new HubSpotConfig.CoordinationConfig();
+        coordinationConfig.setType(HubSpotConfig.CoordinationType.FILE);
+        coordinationConfig.setDirectory(directory.toString());
+        coordinationConfig.setLeaseTtl(Duration.ofSeconds(30));
+        HubSpotConfig.OAuthConfig oauthConfig = new HubSpotConfig.OAuthConfig();
+        oauthConfig.setCoordination(coordinationConfig);
+        HubSpotConfig.TokenStoreConfig tokenStoreConfig = new HubSpotConfig.TokenStoreConfig();
+        tokenStoreConfig.setEncryptionKey(Base64.getEncoder().encodeToString(new byte[32]));
+        hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setOauth(oauthConfig);
+        hubSpotConfig.setTokenStore(tokenStoreConfig);
+    }
+
+    // Each coordinator stands for a separate instance; they only share the directory.
+    private FileTokenRefreshCoordinator instance() {
+        return new FileTokenRefreshCoordinator(hubSpotConfig, now::get);
+    }
+
+    private static HubSpotTokenResponse token(String accessToken) {
+        HubSpotTokenResponse token = new HubSpotTokenResponse();
+        token.setAccessToken(accessToken);
+        token.setRefreshToken("refresh-token");
+        token.setExpiresIn(1800);
+        return token;
+    }
+
+    @Test
+    @DisplayName("only one instance should hold a portal's lease, and the next holder should see the published token")
+    void tryAcquire_shouldGrantOneHolder_andHandOverPublishedToken() throws Exception {
+        FileTokenRefreshCoordinator first = instance();
+        FileTokenRefreshCoordinator second = instance();
+
+        RefreshLease lease = first.tryAcquire(PORTAL_ID).orElseThrow();
+        assertEquals(0, lease.generation());
+        assertNull(lease.publishedToken());
+        assertEquals(Optional.empty(), second.tryAcquire(PORTAL_ID));
+        assertTrue(second.tryAcquire(67890L).isPresent());
+
+        now.addAndGet(10_000);
+        first.complete(lease, token("published-access-token"));
+        now.addAndGet(60_000);
+
+        RefreshLease next = second.tryAcquire(PORTAL_ID).orElseThrow();
+        assertEquals(1, next.generation());
+        assertEquals("published-access-token", next.publishedToken().getAccessToken());
+        assertEquals("refresh-token", next.publishedToken().getRefreshToken());
+        assertEquals(1740, next.publishedToken().getExpiresIn());
+        assertFalse(new String(Files.readAllBytes(directory.resolve("portal-" + PORTAL_ID + ".lease"))).contains("published-access-token"));
+    }
+
+    @Test
+    @DisplayName("an expired lease should be taken over and its late completion ignored")
+    void tryAcquire_shouldTakeOverExpiredLease() {
+        FileTokenRefreshCoordinator first = instance();
+        FileTokenRefreshCoordinator second = instance();
+
+        RefreshLease stale = first.tryAcquire(PORTAL_ID).orElseThrow();
+        now.addAndGet(Duration.ofSeconds(31).toMillis());
+        RefreshLease current = second.tryAcquire(PORTAL_ID).orElseThrow();
+
+        first.complete(stale, token("late-access-token"));
+        second.complete(current, token("current-access-token"));
+
+        RefreshLease next = first.tryAcquire(PORTAL_ID).orElseThrow();
+        assertEquals(1, next.generation());
+        assertEquals("current-access-token", next.publishedToken().getAccessToken());
+    }
+
+    @Test
+    @DisplayName("release should free the lease without publishing anything")
+    void release_shouldFreeLease() {
+        FileTokenRefreshCoordinator first = instance();
+        FileTokenRefreshCoordinator second = instance();
+
+        first.release(first.tryAcquire(PORTAL_ID).orElseThrow());
+
+        RefreshLease next = second.tryAcquire(PORTAL_ID).orElseThrow();
+        assertEquals(0, next.generation());
+        assertNull(next.publishedToken());
+    }
+}
@@ -0,0 +1,115 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileTokenStorageServiceImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+    private static final long OTHER_PORTAL_ID = 67890L;
+    private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private TokenRefreshScheduler tokenRefreshScheduler;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FileTokenStorageServiceImpl open(String key) {
+        HubSpotConfig.TokenStoreConfig tokenStoreConfig = new HubSpotConfig.TokenStoreConfig();
+        tokenStoreConfig.setType(HubSpotConfig.TokenStoreType.FILE);
+        tokenStoreConfig.setFile(directory.resolve("tokens.dat").toString());
+        tokenStoreConfig.setEncryptionKey(key);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setTokenStore(tokenStoreConfig);
+        return new FileTokenStorageServiceImpl(hubSpotConfig, tokenRefreshScheduler, meterRegistry);
+    }
+
+    private static HubSpotTokenResponse token(String accessToken, String refreshToken, long expiresIn) {
+        HubSpotTokenResponse token = new HubSpotTokenResponse();
+        token.setAccessToken(accessToken);
+        token.setRefreshToken(refreshToken);
+        token.setExpiresIn(expiresIn);
+        return token;
+    }
+
+    @Test
+    @DisplayName("tokens should be loaded by the next instance and their background refresh rescheduled")
+    void open_shouldRestoreTokensSavedByPreviousInstance() throws Exception {
+        FileTokenStorageServiceImpl first = open(KEY);
+        first.saveToken(PORTAL_ID, token("access-1", "refresh-1", 1800));
+        first.saveToken(OTHER_PORTAL_ID, token("access-2", "refresh-2", 1800));
+        first.shutdown();
+
+        assertFalse(Files.exists(directory.resolve("tokens.dat.tmp")));
+        assertFalse(new String(Files.readAllBytes(directory.resolve("tokens.dat"))).contains("refresh-1"));
+
+        FileTokenStorageServiceImpl second = open(KEY);
+
+        assertEquals(Optional.of("access-1"), second.getAccessToken(PORTAL_ID));
+        assertEquals(Optional.of("refresh-2"), second.getRefreshToken(OTHER_PORTAL_ID));
+        assertEquals(2, second.getPortalCount());
+        verify(tokenRefreshScheduler).schedule(eq(PORTAL_ID), longThat(seconds -> seconds > 1700 && seconds <= 1740));
+        verify(tokenRefreshScheduler).schedule(eq(OTHER_PORTAL_ID), anyLong());
+        second.shutdown();
+    }
+
+    @Test
+    @DisplayName("clearing a token should remove it from the file")
+    void clearToken_shouldBePersisted() {
+        FileTokenStorageServiceImpl first = open(KEY);
+        first.saveToken(PORTAL_ID, token("access-1", "refresh-1", 1800));
+        first.clearToken(PORTAL_ID);
+        first.shutdown();
+
+        FileTokenStorageServiceImpl second = open(KEY);
+
+        assertEquals(0, second.getPortalCount());
+        assertEquals(Optional.empty(), second.getRefreshToken(PORTAL_ID));
+        second.shutdown();
+    }
+
+    @Test
+    @DisplayName("records that cannot be decrypted with the configured key should be skipped")
+    void open_shouldSkipRecords_whenKeyDiffers() {
+        FileTokenStorageServiceImpl first = open(KEY);
+        first.saveToken(PORTAL_ID, token("access-1", "refresh-1", 1800));
+        first.shutdown();
+
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        FileTokenStorageServiceImpl second = open(Base64.getEncoder().encodeToString(otherKey));
+
+        assertEquals(0, second.getPortalCount());
+        verifyNoInteractions(tokenRefreshScheduler);
+        second.shutdown();
+    }
+
+    @Test
+    @DisplayName("a missing or malformed encryption key should be rejected at startup")
+    void open_shouldFail_whenKeyInvalid() {
+        assertThrows(IllegalStateException.class, () -> open(""));
+        assertThrows(IllegalStateException.class, () -> open(Base64.getEncoder().encodeToString(new byte[10])));
+    }
+}
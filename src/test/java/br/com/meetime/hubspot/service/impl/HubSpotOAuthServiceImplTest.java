@@ -1,17 +1,21 @@
 package br.com.meetime.hubspot.service.impl;
 
 import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.config.HubSpotResilienceFilter;
 import br.com.meetime.hubspot.domain.dto.HubSpotErrorDTO;
+import br.com.meetime.hubspot.domain.response.HubSpotAccessTokenInfoResponse;
 import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
 import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.TokenRefreshCoordinator;
+import br.com.meetime.hubspot.service.TokenRefreshScheduler;
 import br.com.meetime.hubspot.service.TokenStorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -19,9 +23,12 @@ import org.mockito.quality.Strictness;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,25 +39,34 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class HubSpotOAuthServiceImplTest {
 
+    private static final long PORTAL_ID = 12345L;
+
     @Mock
     private WebClient hubSpotOAuthWebClient;
     @Mock
+    private WebClient hubSpotWebClient;
+    @Mock
     private HubSpotConfig hubSpotConfig;
     @Mock
     private TokenStorageService tokenStorageService;
+    @Mock
+    private TokenRefreshScheduler tokenRefreshScheduler;
 
-    @InjectMocks
     private HubSpotOAuthServiceImpl hubSpotOAuthService;
 
     @Mock private WebClient.RequestBodyUriSpec requestBodyUriSpec;
     @Mock private WebClient.RequestBodySpec requestBodySpec;
     @Mock private WebClient.RequestHeadersSpec requestHeadersSpec;
     @Mock private WebClient.ResponseSpec responseSpec;
+    @Mock private WebClient.RequestHeadersUriSpec tokenInfoUriSpec;
+    @Mock private WebClient.RequestHeadersSpec tokenInfoHeadersSpec;
+    @Mock private WebClient.ResponseSpec tokenInfoResponseSpec;
 
 
     @Captor ArgumentCaptor<HubSpotTokenResponse> tokenCaptor;
 
     private HubSpotConfig.OAuthConfig oauthConfig;
+    private InMemoryTokenRefreshCoordinator tokenRefreshCoordinator;
 
     @BeforeEach
     void setUp() {
@@ -65,11 +81,32 @@ class HubSpotOAuthServiceImplTest {
         when(hubSpotConfig.getOauth()).thenReturn(oauthConfig);
         when(hubSpotConfig.getFullAuthorizationUri()).thenReturn(oauthConfig.getAuthorizationUri());
 
+        tokenRefreshCoordinator = new InMemoryTokenRefreshCoordinator(hubSpotConfig);
+        hubSpotOAuthService = newInstance();
+
         when(hubSpotOAuthWebClient.post()).thenReturn(requestBodyUriSpec);
+        when(requestBodyUriSpec.attribute(eq(HubSpotResilienceFilter.RETRYABLE_ATTRIBUTE), eq(true))).thenReturn(requestBodyUriSpec);
         // Use any() para o BodyInserter
         when(requestBodyUriSpec.body(any(BodyInserter.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
         when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
+
+        when(hubSpotWebClient.get()).thenReturn(tokenInfoUriSpec);
+        when(tokenInfoUriSpec.uri(eq("/oauth/v1/access-tokens/{token}"), any(Object[].class))).thenReturn(tokenInfoHeadersSpec);
+        when(tokenInfoHeadersSpec.retrieve()).thenReturn(tokenInfoResponseSpec);
+        when(tokenInfoResponseSpec.onStatus(any(), any())).thenReturn(tokenInfoResponseSpec);
+    }
+
+    // Another replica: same HubSpot mocks and coordinator, its own in-flight and generation bookkeeping.
+    private HubSpotOAuthServiceImpl newInstance() {
+        return new HubSpotOAuthServiceImpl(hubSpotOAuthWebClient, hubSpotWebClient, hubSpotConfig,
+                tokenStorageService, tokenRefreshScheduler, tokenRefreshCoordinator, new SimpleMeterRegistry());
+    }
+
+    private void mockHubId(Long hubId) {
+        HubSpotAccessTokenInfoResponse tokenInfo = new HubSpotAccessTokenInfoResponse();
+        tokenInfo.setHubId(hubId);
+        when(tokenInfoResponseSpec.bodyToMono(HubSpotAccessTokenInfoResponse.class)).thenReturn(Mono.just(tokenInfo));
     }
 
     @Test
@@ -93,17 +130,38 @@ class HubSpotOAuthServiceImplTest {
         mockTokenResponse.setExpiresIn(3600);
 
         when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.just(mockTokenResponse));
+        mockHubId(PORTAL_ID);
 
         Mono<HubSpotTokenResponse> result = hubSpotOAuthService.exchangeCodeForToken(authCode);
 
         StepVerifier.create(result)
                 .expectNextMatches(token ->
                         "new-access-token".equals(token.getAccessToken()) &&
-                                "new-refresh-token".equals(token.getRefreshToken()))
+                                "new-refresh-token".equals(token.getRefreshToken()) &&
+                                Long.valueOf(PORTAL_ID).equals(token.getHubId()))
                 .verifyComplete();
 
         verify(requestBodyUriSpec).body(any(BodyInserter.class));
-        verify(tokenStorageService).saveToken(mockTokenResponse);
+        verify(tokenInfoUriSpec).uri("/oauth/v1/access-tokens/{token}", "new-access-token");
+        verify(tokenStorageService).saveToken(PORTAL_ID, mockTokenResponse);
+        verify(tokenRefreshScheduler).schedule(PORTAL_ID, 3600);
+    }
+
+    @Test
+    @DisplayName("exchangeCodeForToken should not save the token when the hub id is missing")
+    void exchangeCodeForToken_shouldReturnError_whenHubIdMissing() {
+        HubSpotTokenResponse mockTokenResponse = new HubSpotTokenResponse();
+        mockTokenResponse.setAccessToken("new-access-token");
+        mockTokenResponse.setExpiresIn(3600);
+
+        when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.just(mockTokenResponse));
+        mockHubId(null);
+
+        StepVerifier.create(hubSpotOAuthService.exchangeCodeForToken("valid-auth-code"))
+                .expectError(HubSpotApiException.class)
+                .verify();
+
+        verify(tokenStorageService, never()).saveToken(anyLong(), any());
     }
 
     @Test
@@ -128,7 +186,7 @@ class HubSpotOAuthServiceImplTest {
                 )
                 .verify();
 
-        verify(tokenStorageService, never()).saveToken(any());
+        verify(tokenStorageService, never()).saveToken(anyLong(), any());
     }
 
 
@@ -136,7 +194,7 @@ class HubSpotOAuthServiceImplTest {
     @DisplayName("refreshToken should succeed and save token")
     void refreshToken_shouldSucceedAndSaveToken() {
         String existingRefreshToken = "old-refresh-token";
-        when(tokenStorageService.getRefreshToken()).thenReturn(Optional.of(existingRefreshToken));
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of(existingRefreshToken));
 
         HubSpotTokenResponse mockTokenResponse = new HubSpotTokenResponse();
         mockTokenResponse.setAccessToken("refreshed-access-token");
@@ -144,7 +202,7 @@ class HubSpotOAuthServiceImplTest {
 
         when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.just(mockTokenResponse));
 
-        Mono<HubSpotTokenResponse> result = hubSpotOAuthService.refreshToken();
+        Mono<HubSpotTokenResponse> result = hubSpotOAuthService.refreshToken(PORTAL_ID);
 
         StepVerifier.create(result)
                 .expectNextMatches(token ->
@@ -153,16 +211,17 @@ class HubSpotOAuthServiceImplTest {
                 .verifyComplete();
 
         verify(requestBodyUriSpec).body(any(BodyInserter.class));
-        verify(tokenStorageService).saveToken(tokenCaptor.capture());
+        verify(tokenStorageService).saveToken(eq(PORTAL_ID), tokenCaptor.capture());
         assertEquals("refreshed-access-token", tokenCaptor.getValue().getAccessToken());
         assertEquals(existingRefreshToken, tokenCaptor.getValue().getRefreshToken());
+        verify(tokenRefreshScheduler).schedule(PORTAL_ID, 1800);
     }
 
     @Test
     @DisplayName("refreshToken should return error when API fails")
     void refreshToken_shouldReturnError_whenApiFails() {
         String existingRefreshToken = "invalid-refresh-token";
-        when(tokenStorageService.getRefreshToken()).thenReturn(Optional.of(existingRefreshToken));
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of(existingRefreshToken));
 
         HubSpotErrorDTO errorDTO = new HubSpotErrorDTO();
         errorDTO.setMessage("Token expired");
@@ -171,7 +230,7 @@ class HubSpotOAuthServiceImplTest {
 
         when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.error(expectedException));
 
-        Mono<HubSpotTokenResponse> result = hubSpotOAuthService.refreshToken();
+        Mono<HubSpotTokenResponse> result = hubSpotOAuthService.refreshToken(PORTAL_ID);
 
         StepVerifier.create(result)
                 .expectErrorMatches(throwable ->
@@ -180,7 +239,7 @@ class HubSpotOAuthServiceImplTest {
                 )
                 .verify();
 
-        verify(tokenStorageService, never()).saveToken(any());
+        verify(tokenStorageService, never()).saveToken(anyLong(), any());
     }
 
 
@@ -188,15 +247,15 @@ class HubSpotOAuthServiceImplTest {
     @DisplayName("getValidAccessToken should return existing token when valid")
     void getValidAccessToken_shouldReturnExistingToken_whenValid() {
         String validToken = "valid-token";
-        when(tokenStorageService.getAccessToken()).thenReturn(Optional.of(validToken));
+        when(tokenStorageService.getAccessToken(PORTAL_ID)).thenReturn(Optional.of(validToken));
 
-        Mono<String> result = hubSpotOAuthService.getValidAccessToken();
+        Mono<String> result = hubSpotOAuthService.getValidAccessToken(PORTAL_ID);
 
         StepVerifier.create(result)
                 .expectNext(validToken)
                 .verifyComplete();
 
-        verify(tokenStorageService, never()).getRefreshToken();
+        verify(tokenStorageService, never()).getRefreshToken(anyLong());
         verify(hubSpotOAuthWebClient, never()).post();
     }
 
@@ -204,8 +263,8 @@ class HubSpotOAuthServiceImplTest {
     @DisplayName("getValidAccessToken should refresh token when existing invalid and refresh available")
     void getValidAccessToken_shouldRefreshToken_whenExistingInvalidAndRefreshAvailable() {
         String existingRefreshToken = "old-refresh-token";
-        when(tokenStorageService.getAccessToken()).thenReturn(Optional.empty());
-        when(tokenStorageService.getRefreshToken()).thenReturn(Optional.of(existingRefreshToken));
+        when(tokenStorageService.getAccessToken(PORTAL_ID)).thenReturn(Optional.empty());
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of(existingRefreshToken));
 
         HubSpotTokenResponse refreshedTokenResponse = new HubSpotTokenResponse();
         refreshedTokenResponse.setAccessToken("refreshed-access-token");
@@ -213,14 +272,129 @@ class HubSpotOAuthServiceImplTest {
 
         when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.just(refreshedTokenResponse));
 
-        Mono<String> result = hubSpotOAuthService.getValidAccessToken();
+        Mono<String> result = hubSpotOAuthService.getValidAccessToken(PORTAL_ID);
 
         StepVerifier.create(result)
                 .expectNext("refreshed-access-token")
                 .verifyComplete();
 
         verify(hubSpotOAuthWebClient).post();
-        verify(tokenStorageService).saveToken(any(HubSpotTokenResponse.class));
+        verify(tokenStorageService).saveToken(eq(PORTAL_ID), any(HubSpotTokenResponse.class));
+    }
+
+    @Test
+    @DisplayName("getValidAccessToken without a portal should use the only connected portal")
+    void getValidAccessToken_shouldUseSinglePortal_whenNoPortalGiven() {
+        when(tokenStorageService.getSinglePortalId()).thenReturn(Optional.of(PORTAL_ID));
+        when(tokenStorageService.getAccessToken(PORTAL_ID)).thenReturn(Optional.of("valid-token"));
+
+        StepVerifier.create(hubSpotOAuthService.getValidAccessToken())
+                .expectNext("valid-token")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getValidAccessToken without a portal should fail when several portals are connected")
+    void getValidAccessToken_shouldFail_whenSeveralPortalsConnected() {
+        when(tokenStorageService.getSinglePortalId()).thenReturn(Optional.empty());
+        when(tokenStorageService.getPortalCount()).thenReturn(2);
+
+        StepVerifier.create(hubSpotOAuthService.getValidAccessToken())
+                .expectErrorMatches(throwable ->
+                        throwable instanceof HubSpotApiException &&
+                                ((HubSpotApiException) throwable).getStatusCode().value() == 400)
+                .verify();
+
+        verify(tokenStorageService, never()).getAccessToken(anyLong());
+    }
+
+    @Test
+    @DisplayName("concurrent callers with an expired token should share a single refresh request")
+    void getValidAccessToken_shouldRefreshOnce_forConcurrentCallers() {
+        int callers = 64;
+        when(tokenStorageService.getAccessToken(PORTAL_ID)).thenReturn(Optional.empty());
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of("old-refresh-token"));
+
+        HubSpotTokenResponse refreshedTokenResponse = new HubSpotTokenResponse();
+        refreshedTokenResponse.setAccessToken("refreshed-access-token");
+        refreshedTokenResponse.setExpiresIn(1800);
+        when(responseSpec.bodyToMono(HubSpotTokenResponse.class))
+                .thenReturn(Mono.just(refreshedTokenResponse).delayElement(Duration.ofMillis(200)));
+
+        Flux<String> accessTokens = Flux.range(0, callers)
+                .flatMap(i -> Mono.defer(() -> hubSpotOAuthService.getValidAccessToken(PORTAL_ID))
+                        .subscribeOn(Schedulers.parallel()), callers);
+
+        StepVerifier.create(accessTokens)
+                .expectNextCount(callers)
+                .verifyComplete();
+
+        verify(hubSpotOAuthWebClient, times(1)).post();
+        verify(tokenStorageService, times(1)).saveToken(eq(PORTAL_ID), any(HubSpotTokenResponse.class));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("a failed refresh should be released so the next caller retries")
+    void refreshToken_shouldStartNewRequest_afterSharedRefreshFails() {
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of("old-refresh-token"));
+        HubSpotTokenResponse refreshedTokenResponse = new HubSpotTokenResponse();
+        refreshedTokenResponse.setAccessToken("refreshed-access-token");
+        when(responseSpec.bodyToMono(HubSpotTokenResponse.class))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO REFRESH TOKEN: 502", HttpStatus.BAD_GATEWAY)))
+                .thenReturn(Mono.just(refreshedTokenResponse));
+
+        StepVerifier.create(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .expectError(HubSpotApiException.class)
+                .verify();
+        StepVerifier.create(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .expectNextMatches(token -> "refreshed-access-token".equals(token.getAccessToken()))
+                .verifyComplete();
+
+        verify(hubSpotOAuthWebClient, times(2)).post();
+    }
+
+    @Test
+    @DisplayName("a token refreshed by another instance should be taken instead of refreshing again")
+    void refreshToken_shouldUseTokenPublishedByAnotherInstance() {
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of("old-refresh-token"));
+        HubSpotTokenResponse refreshedTokenResponse = new HubSpotTokenResponse();
+        refreshedTokenResponse.setAccessToken("refreshed-access-token");
+        refreshedTokenResponse.setRefreshToken("rotated-refresh-token");
+        refreshedTokenResponse.setExpiresIn(1800);
+        when(responseSpec.bodyToMono(HubSpotTokenResponse.class)).thenReturn(Mono.just(refreshedTokenResponse));
+
+        StepVerifier.create(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(newInstance().refreshToken(PORTAL_ID))
+                .expectNextMatches(token -> "refreshed-access-token".equals(token.getAccessToken())
+                        && "rotated-refresh-token".equals(token.getRefreshToken()))
+                .verifyComplete();
+
+        verify(hubSpotOAuthWebClient, times(1)).post();
+        verify(tokenStorageService, times(2)).saveToken(eq(PORTAL_ID), tokenCaptor.capture());
+        assertEquals("refreshed-access-token", tokenCaptor.getValue().getAccessToken());
+    }
+
+    @Test
+    @DisplayName("an instance should wait for the lease holder's token instead of refreshing alongside it")
+    void refreshToken_shouldWaitForLeaseHolder() {
+        oauthConfig.getCoordination().setPollInterval(Duration.ofMillis(20));
+        when(tokenStorageService.getRefreshToken(PORTAL_ID)).thenReturn(Optional.of("old-refresh-token"));
+        TokenRefreshCoordinator.RefreshLease otherInstanceLease = tokenRefreshCoordinator.tryAcquire(PORTAL_ID).orElseThrow();
+
+        HubSpotTokenResponse refreshedTokenResponse = new HubSpotTokenResponse();
+        refreshedTokenResponse.setAccessToken("refreshed-elsewhere");
+        refreshedTokenResponse.setRefreshToken("old-refresh-token");
+        refreshedTokenResponse.setExpiresIn(1800);
+        Mono.delay(Duration.ofMillis(200))
+                .subscribe(tick -> tokenRefreshCoordinator.complete(otherInstanceLease, refreshedTokenResponse));
+
+        StepVerifier.create(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .expectNextMatches(token -> "refreshed-elsewhere".equals(token.getAccessToken()))
+                .verifyComplete();
+
+        verify(hubSpotOAuthWebClient, never()).post();
+        verify(tokenRefreshScheduler).schedule(eq(PORTAL_ID), longThat(seconds -> seconds > 1790));
+    }
+}
@@ -0,0 +1,108 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.service.HubSpotRequestScheduler.Priority;
+import br.com.meetime.hubspot.service.PortalRateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class HubSpotRequestSchedulerImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HubSpotRequestSchedulerImpl scheduler(int limitForPeriod, Duration refreshPeriod, HubSpotConfig hubSpotConfig) {
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(limitForPeriod)
+                .limitRefreshPeriod(refreshPeriod)
+                .timeoutDuration(Duration.ofSeconds(10))
+                .build());
+        return new HubSpotRequestSchedulerImpl(rateLimiterRegistry, mock(PortalRateLimiter.class), hubSpotConfig, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("acquire should serve an interactive call before bulk calls that were queued earlier")
+    void acquire_shouldServeEarliestDeadlineFirst_whenBulkCallsAreQueued() {
+        HubSpotRequestSchedulerImpl scheduler = scheduler(1, Duration.ofMillis(200), new HubSpotConfig());
+        List<String> served = new CopyOnWriteArrayList<>();
+
+        Mono<Void> calls = Mono.when(
+                scheduler.acquire(PORTAL_ID, Priority.BULK).doOnSuccess(ignored -> served.add("bulk-1")),
+                scheduler.acquire(PORTAL_ID, Priority.BULK).doOnSuccess(ignored -> served.add("bulk-2")),
+                scheduler.acquire(PORTAL_ID, Priority.BULK).doOnSuccess(ignored -> served.add("bulk-3")),
+                scheduler.acquire(PORTAL_ID, Priority.INTERACTIVE).doOnSuccess(ignored -> served.add("interactive")));
+
+        StepVerifier.create(calls).expectComplete().verify(Duration.ofSeconds(5));
+        assertEquals(List.of("bulk-1", "interactive", "bulk-2", "bulk-3"), served);
+        assertEquals(4, meterRegistry.get("hubspot.api.scheduler.wait").timers().stream().mapToLong(timer -> timer.count()).sum());
+    }
+
+    @Test
+    @DisplayName("acquire should fail with RequestNotPermitted when the call's deadline passes while queued")
+    void acquire_shouldFail_whenDeadlinePasses() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getScheduler().setInteractiveDeadline(Duration.ofMillis(100));
+        HubSpotRequestSchedulerImpl scheduler = scheduler(1, Duration.ofSeconds(10), hubSpotConfig);
+
+        StepVerifier.create(scheduler.acquire(PORTAL_ID, Priority.INTERACTIVE)).verifyComplete();
+        StepVerifier.create(scheduler.acquire(PORTAL_ID, Priority.INTERACTIVE))
+                .expectError(RequestNotPermitted.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1.0, meterRegistry.get("hubspot.api.scheduler.expired").tag("priority", "interactive").counter().count());
+        assertEquals(0.0, meterRegistry.get("hubspot.api.scheduler.queued").gauge().value());
+    }
+
+    @Test
+    @DisplayName("acquire should reject right away when max-queued calls are already waiting")
+    void acquire_shouldReject_whenQueueIsFull() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getScheduler().setMaxQueued(1);
+        HubSpotRequestSchedulerImpl scheduler = scheduler(1, Duration.ofSeconds(10), hubSpotConfig);
+
+        StepVerifier.create(scheduler.acquire(PORTAL_ID, Priority.BULK)).verifyComplete();
+        scheduler.acquire(PORTAL_ID, Priority.BULK).subscribe();
+
+        StepVerifier.create(scheduler.acquire(PORTAL_ID, Priority.INTERACTIVE))
+                .expectError(RequestNotPermitted.class)
+                .verify(Duration.ofMillis(500));
+    }
+
+    @Test
+    @DisplayName("acquire should skip cancelled calls and free their queue slot right away")
+    void acquire_shouldSkipCancelledCalls_andFreeTheirSlot() {
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getScheduler().setMaxQueued(2);
+        HubSpotRequestSchedulerImpl scheduler = scheduler(1, Duration.ofMillis(300), hubSpotConfig);
+        List<String> served = new CopyOnWriteArrayList<>();
+
+        StepVerifier.create(scheduler.acquire(PORTAL_ID, Priority.BULK)).verifyComplete();
+        Disposable cancelled = scheduler.acquire(PORTAL_ID, Priority.INTERACTIVE)
+                .doOnSuccess(ignored -> served.add("cancelled")).subscribe();
+        Mono<Void> first = scheduler.acquire(PORTAL_ID, Priority.BULK).doOnSuccess(ignored -> served.add("bulk-1")).cache();
+        first.subscribe();
+        cancelled.dispose();
+
+        assertEquals(1.0, meterRegistry.get("hubspot.api.scheduler.queued").gauge().value());
+        Mono<Void> second = scheduler.acquire(PORTAL_ID, Priority.BULK).doOnSuccess(ignored -> served.add("bulk-2"));
+
+        StepVerifier.create(Mono.when(first, second)).expectComplete().verify(Duration.ofSeconds(5));
+        assertEquals(List.of("bulk-1", "bulk-2"), served);
+        assertEquals(0.0, meterRegistry.get("hubspot.api.scheduler.queued").gauge().value());
+    }
+}
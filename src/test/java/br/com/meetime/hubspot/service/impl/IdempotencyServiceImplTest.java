@@ -0,0 +1,96 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.IdempotencyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyServiceImplTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IdempotencyServiceImpl idempotencyService = new IdempotencyServiceImpl(new HubSpotConfig(), meterRegistry);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Mono<String> counted(Mono<String> outcome) {
+        return Mono.defer(() -> {
+            calls.incrementAndGet();
+            return outcome;
+        });
+    }
+
+    @Test
+    @DisplayName("a retry with the same key should replay the first response without running the operation again")
+    void execute_shouldReplayStoredResponse() {
+        StepVerifier.create(idempotencyService.execute("key-1", "request", () -> counted(Mono.just("contact-1"))))
+                .expectNext(new IdempotencyService.IdempotentResult<>("contact-1", false))
+                .verifyComplete();
+        StepVerifier.create(idempotencyService.execute("key-1", "request", () -> counted(Mono.just("contact-2"))))
+                .expectNext(new IdempotencyService.IdempotentResult<>("contact-1", true))
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("hubspot.idempotency.replays").counter().count());
+    }
+
+    @Test
+    @DisplayName("a request arriving while the first one is in flight should wait for its result")
+    void execute_shouldShareInFlightOperation() {
+        Sinks.One<String> hubSpot = Sinks.one();
+        Mono<IdempotencyService.IdempotentResult<String>> first =
+                idempotencyService.execute("key-1", "request", () -> counted(hubSpot.asMono()));
+        Mono<IdempotencyService.IdempotentResult<String>> second =
+                idempotencyService.execute("key-1", "request", () -> counted(Mono.just("duplicate")));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> hubSpot.tryEmitValue("contact-1"))
+                .assertNext(results -> {
+                    assertEquals("contact-1", results.getT1().value());
+                    assertEquals("contact-1", results.getT2().value());
+                    assertTrue(results.getT2().replayed());
+                })
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("reusing a key for a different request should fail with 422")
+    void execute_shouldRejectKeyReuse_whenRequestDiffers() {
+        idempotencyService.execute("key-1", "request", () -> counted(Mono.just("contact-1"))).block();
+
+        StepVerifier.create(idempotencyService.execute("key-1", "other request", () -> counted(Mono.just("contact-2"))))
+                .expectErrorMatches(error -> error instanceof HubSpotApiException hubSpotError
+                        && hubSpotError.getStatusCode().value() == 422)
+                .verify();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("a retryable failure should not be stored, while a rejection by HubSpot should be replayed")
+    void execute_shouldOnlyStoreFinalFailures() {
+        HubSpotApiException throttled = new HubSpotApiException("FAILED TO CREATE CONTACT: 429", HttpStatus.TOO_MANY_REQUESTS);
+        HubSpotApiException conflict = new HubSpotApiException("FAILED TO CREATE CONTACT: 409", HttpStatus.CONFLICT);
+
+        StepVerifier.create(idempotencyService.execute("key-1", "request", () -> counted(Mono.error(throttled))))
+                .expectErrorMatches(error -> error == throttled)
+                .verify();
+        StepVerifier.create(idempotencyService.execute("key-1", "request", () -> counted(Mono.error(conflict))))
+                .expectErrorMatches(error -> error == conflict)
+                .verify();
+        StepVerifier.create(idempotencyService.execute("key-1", "request", () -> counted(Mono.just("contact-1"))))
+                .expectErrorMatches(error -> error == conflict)
+                .verify();
+
+        assertEquals(2, calls.get());
+    }
+}
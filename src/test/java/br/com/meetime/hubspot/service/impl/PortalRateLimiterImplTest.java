@@ -0,0 +1,106 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortalRateLimiterImplTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+    private HubSpotConfig hubSpotConfig;
+
+    @BeforeEach
+    void setUp() {
+        hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.getPortalLimits().setBurst(Duration.ZERO);
+    }
+
+    // 10 calls a second for the whole app.
+    private PortalRateLimiterImpl portalRateLimiter() {
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(10)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .build());
+        return new PortalRateLimiterImpl(rateLimiterRegistry, hubSpotConfig, meterRegistry, nanos::get);
+    }
+
+    @Test
+    @DisplayName("reserve should give a lone portal the whole app rate")
+    void reserve_shouldGiveWholeRate_whenPortalIsAlone() {
+        PortalRateLimiterImpl portalRateLimiter = portalRateLimiter();
+
+        assertEquals(0, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(100 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(1.0, meterRegistry.get("hubspot.api.portal.throttled")
+                .tag("portal", "1").tag("outcome", "delayed").counter().count());
+    }
+
+    @Test
+    @DisplayName("reserve should split the app rate between active portals by weight")
+    void reserve_shouldSplitRateByWeight_whenSeveralPortalsAreActive() {
+        hubSpotConfig.getPortalLimits().setWeights(Map.of(2L, 3));
+        PortalRateLimiterImpl portalRateLimiter = portalRateLimiter();
+
+        assertEquals(0, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(0, portalRateLimiter.reserve(2L, Long.MAX_VALUE));
+        // Portal 1 was alone for its first call; from then on it gets 1/4 of the rate, portal 2 gets 3/4.
+        assertEquals(100 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(500 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(133_333_333L, portalRateLimiter.reserve(2L, Long.MAX_VALUE));
+        assertEquals(4.0, meterRegistry.get("hubspot.api.portal.active.weight").gauge().value());
+    }
+
+    @Test
+    @DisplayName("reserve should refuse without reserving when the wait would exceed the maximum")
+    void reserve_shouldRefuse_whenWaitExceedsMaximum() {
+        PortalRateLimiterImpl portalRateLimiter = portalRateLimiter();
+
+        assertEquals(0, portalRateLimiter.reserve(1L, 50 * MILLIS));
+        assertEquals(-1, portalRateLimiter.reserve(1L, 50 * MILLIS));
+        assertEquals(100 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(1.0, meterRegistry.get("hubspot.api.portal.throttled")
+                .tag("portal", "1").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("reserve should stop counting portals that have been idle for idle-ttl")
+    void reserve_shouldForgetPortal_whenIdle() {
+        PortalRateLimiterImpl portalRateLimiter = portalRateLimiter();
+        portalRateLimiter.reserve(1L, Long.MAX_VALUE);
+        portalRateLimiter.reserve(2L, Long.MAX_VALUE);
+
+        nanos.addAndGet(Duration.ofSeconds(11).toNanos());
+        portalRateLimiter.reserve(3L, Long.MAX_VALUE);
+
+        assertEquals(1.0, meterRegistry.get("hubspot.api.portal.active.weight").gauge().value());
+        assertEquals(100 * MILLIS, portalRateLimiter.reserve(3L, Long.MAX_VALUE));
+        assertNull(meterRegistry.find("hubspot.api.portal.throttled").tag("portal", "1").counter());
+    }
+
+    @Test
+    @DisplayName("reserve should hold a portal to the rate HubSpot grants it, below its share")
+    void reserve_shouldApplyRateCap_whenPortalIsCapped() {
+        PortalRateLimiterImpl portalRateLimiter = portalRateLimiter();
+        portalRateLimiter.limitRate(1L, 2.0);
+
+        assertEquals(0, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+        assertEquals(500 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+        portalRateLimiter.reserve(1L, Long.MAX_VALUE);
+        assertEquals(100 * MILLIS, portalRateLimiter.reserve(1L, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,139 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.response.HubSpotTokenResponse;
+import br.com.meetime.hubspot.exception.HubSpotApiException;
+import br.com.meetime.hubspot.service.HubSpotOAuthService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRefreshSchedulerImplTest {
+
+    private static final long PORTAL_ID = 12345L;
+
+    @Mock
+    private HubSpotOAuthService hubSpotOAuthService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private VirtualTimeScheduler virtualTime;
+    private TokenRefreshSchedulerImpl tokenRefreshScheduler;
+
+    @BeforeEach
+    void setUp() {
+        HubSpotConfig.ProactiveRefreshConfig refreshConfig = new HubSpotConfig.ProactiveRefreshConfig();
+        refreshConfig.setLifetimeFraction(0.75);
+        refreshConfig.setJitter(0.0);
+        refreshConfig.setRetryInitialBackoff(Duration.ofSeconds(2));
+        refreshConfig.setRetryMaxBackoff(Duration.ofSeconds(30));
+        refreshConfig.setRetryMaxAttempts(3);
+        HubSpotConfig.OAuthConfig oauthConfig = new HubSpotConfig.OAuthConfig();
+        oauthConfig.setProactiveRefresh(refreshConfig);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setOauth(oauthConfig);
+
+        virtualTime = VirtualTimeScheduler.create();
+        tokenRefreshScheduler = new TokenRefreshSchedulerImpl(hubSpotOAuthService, hubSpotConfig, meterRegistry, virtualTime);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tokenRefreshScheduler.shutdown();
+        virtualTime.dispose();
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("hubspot.oauth.refresh").tag("result", result).counter().count();
+    }
+
+    @Test
+    @DisplayName("the token should be refreshed once the configured fraction of its lifetime has passed")
+    void schedule_shouldRefreshAtLifetimeFraction() {
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID)).thenReturn(Mono.just(new HubSpotTokenResponse()));
+
+        tokenRefreshScheduler.schedule(PORTAL_ID, 1800);
+
+        virtualTime.advanceTimeBy(Duration.ofSeconds(1349));
+        verify(hubSpotOAuthService, never()).refreshToken(PORTAL_ID);
+
+        virtualTime.advanceTimeBy(Duration.ofSeconds(1));
+        verify(hubSpotOAuthService, times(1)).refreshToken(PORTAL_ID);
+        assertEquals(1.0, counter("success"));
+        assertEquals(0.0, meterRegistry.get("hubspot.oauth.refresh.planned").gauge().value());
+    }
+
+    @Test
+    @DisplayName("a failed background refresh should be retried with backoff")
+    void schedule_shouldRetryWithBackoff_whenRefreshFails() {
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID)).thenReturn(
+                Mono.error(new HubSpotApiException("FAILED TO REFRESH TOKEN: 502", HttpStatus.BAD_GATEWAY)),
+                Mono.error(new HubSpotApiException("FAILED TO REFRESH TOKEN: 429", HttpStatus.TOO_MANY_REQUESTS)),
+                Mono.just(new HubSpotTokenResponse()));
+
+        tokenRefreshScheduler.schedule(PORTAL_ID, 100);
+        virtualTime.advanceTimeBy(Duration.ofSeconds(75));
+        verify(hubSpotOAuthService, times(1)).refreshToken(PORTAL_ID);
+
+        virtualTime.advanceTimeBy(Duration.ofSeconds(10));
+        verify(hubSpotOAuthService, times(3)).refreshToken(PORTAL_ID);
+        assertEquals(2.0, counter("failure"));
+        assertEquals(1.0, counter("success"));
+    }
+
+    @Test
+    @DisplayName("a rejected refresh token should not be retried")
+    void schedule_shouldNotRetry_whenRefreshTokenRejected() {
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID))
+                .thenReturn(Mono.error(new HubSpotApiException("FAILED TO REFRESH TOKEN: 400", HttpStatus.BAD_REQUEST)));
+
+        tokenRefreshScheduler.schedule(PORTAL_ID, 100);
+        virtualTime.advanceTimeBy(Duration.ofMinutes(5));
+
+        verify(hubSpotOAuthService, times(1)).refreshToken(PORTAL_ID);
+        assertEquals(1.0, counter("failure"));
+        assertEquals(0.0, meterRegistry.get("hubspot.oauth.refresh.planned").gauge().value());
+    }
+
+    @Test
+    @DisplayName("saving a new token should replace the planned refresh and record the lead time")
+    void schedule_shouldReplacePlannedRefresh() {
+        when(hubSpotOAuthService.refreshToken(PORTAL_ID)).thenReturn(Mono.just(new HubSpotTokenResponse()));
+
+        tokenRefreshScheduler.schedule(PORTAL_ID, 1800);
+        virtualTime.advanceTimeBy(Duration.ofSeconds(1000));
+        tokenRefreshScheduler.schedule(PORTAL_ID, 1800);
+
+        virtualTime.advanceTimeBy(Duration.ofSeconds(1349));
+        verify(hubSpotOAuthService, never()).refreshToken(PORTAL_ID);
+        virtualTime.advanceTimeBy(Duration.ofSeconds(1));
+        verify(hubSpotOAuthService, times(1)).refreshToken(PORTAL_ID);
+
+        assertEquals(800.0, meterRegistry.get("hubspot.oauth.refresh.lead.time").timer().max(TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("cancel should drop the planned refresh")
+    void cancel_shouldDropPlannedRefresh() {
+        tokenRefreshScheduler.schedule(PORTAL_ID, 1800);
+        tokenRefreshScheduler.cancel(PORTAL_ID);
+
+        virtualTime.advanceTimeBy(Duration.ofHours(1));
+
+        verifyNoInteractions(hubSpotOAuthService);
+    }
+}
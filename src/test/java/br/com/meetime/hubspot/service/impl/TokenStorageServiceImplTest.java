@@ -6,13 +6,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class TokenStorageServiceImplTest {
 
+    private static final long PORTAL_ID = 12345L;
+    private static final long OTHER_PORTAL_ID = 67890L;
+
     private TokenStorageService tokenStorageService; // Use interface type
 
     @BeforeEach
@@ -34,12 +38,12 @@ class TokenStorageServiceImplTest {
     void saveAndGetAccessToken_shouldReturnValidToken() {
         HubSpotTokenResponse token = createTokenResponse("access123", "refresh456", 3600);
 
-        tokenStorageService.saveToken(token);
-        Optional<String> accessToken = tokenStorageService.getAccessToken();
+        tokenStorageService.saveToken(PORTAL_ID, token);
+        Optional<String> accessToken = tokenStorageService.getAccessToken(PORTAL_ID);
 
         assertTrue(accessToken.isPresent());
         assertEquals("access123", accessToken.get());
-        assertTrue(tokenStorageService.hasValidToken());
+        assertTrue(tokenStorageService.hasValidToken(PORTAL_ID));
     }
 
 
@@ -48,8 +52,8 @@ class TokenStorageServiceImplTest {
     void saveAndGetRefreshToken_shouldReturnToken() {
         HubSpotTokenResponse token = createTokenResponse("access123", "refresh456", 3600);
 
-        tokenStorageService.saveToken(token);
-        Optional<String> refreshToken = tokenStorageService.getRefreshToken();
+        tokenStorageService.saveToken(PORTAL_ID, token);
+        Optional<String> refreshToken = tokenStorageService.getRefreshToken(PORTAL_ID);
 
         assertTrue(refreshToken.isPresent());
         assertEquals("refresh456", refreshToken.get());
@@ -58,28 +62,29 @@ class TokenStorageServiceImplTest {
     @Test
     @DisplayName("getTokens should return empty when no token saved")
     void getTokens_shouldReturnEmpty_whenNoTokenSaved() {
-        Optional<String> accessToken = tokenStorageService.getAccessToken();
-        Optional<String> refreshToken = tokenStorageService.getRefreshToken();
+        Optional<String> accessToken = tokenStorageService.getAccessToken(PORTAL_ID);
+        Optional<String> refreshToken = tokenStorageService.getRefreshToken(PORTAL_ID);
 
         assertTrue(accessToken.isEmpty());
         assertTrue(refreshToken.isEmpty());
-        assertFalse(tokenStorageService.hasValidToken());
+        assertFalse(tokenStorageService.hasValidToken(PORTAL_ID));
+        assertTrue(tokenStorageService.getSinglePortalId().isEmpty());
     }
 
     @Test
     @DisplayName("clearToken should remove stored token")
     void clearToken_shouldRemoveStoredToken() {
         HubSpotTokenResponse token = createTokenResponse("access123", "refresh456", 3600);
-        tokenStorageService.saveToken(token);
-        assertTrue(tokenStorageService.getAccessToken().isPresent());
+        tokenStorageService.saveToken(PORTAL_ID, token);
+        assertTrue(tokenStorageService.getAccessToken(PORTAL_ID).isPresent());
 
-        tokenStorageService.clearToken();
-        Optional<String> accessToken = tokenStorageService.getAccessToken();
-        Optional<String> refreshToken = tokenStorageService.getRefreshToken();
+        tokenStorageService.clearToken(PORTAL_ID);
+        Optional<String> accessToken = tokenStorageService.getAccessToken(PORTAL_ID);
+        Optional<String> refreshToken = tokenStorageService.getRefreshToken(PORTAL_ID);
 
         assertTrue(accessToken.isEmpty());
         assertTrue(refreshToken.isEmpty());
-        assertFalse(tokenStorageService.hasValidToken());
+        assertFalse(tokenStorageService.hasValidToken(PORTAL_ID));
     }
 
     @Test
@@ -87,11 +92,11 @@ class TokenStorageServiceImplTest {
     void saveToken_shouldReplaceExistingToken() {
         HubSpotTokenResponse token1 = createTokenResponse("access1", "refresh1", 100);
         HubSpotTokenResponse token2 = createTokenResponse("access2", "refresh2", 200);
-        tokenStorageService.saveToken(token1);
+        tokenStorageService.saveToken(PORTAL_ID, token1);
 
-        tokenStorageService.saveToken(token2);
-        Optional<String> accessToken = tokenStorageService.getAccessToken();
-        Optional<String> refreshToken = tokenStorageService.getRefreshToken();
+        tokenStorageService.saveToken(PORTAL_ID, token2);
+        Optional<String> accessToken = tokenStorageService.getAccessToken(PORTAL_ID);
+        Optional<String> refreshToken = tokenStorageService.getRefreshToken(PORTAL_ID);
 
         assertTrue(accessToken.isPresent());
         assertEquals("access2", accessToken.get());
@@ -99,4 +104,38 @@ class TokenStorageServiceImplTest {
         assertEquals("refresh2", refreshToken.get());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("tokens of different portals should be stored and cleared independently")
+    void saveToken_shouldKeepPortalsIndependent() {
+        tokenStorageService.saveToken(PORTAL_ID, createTokenResponse("access1", "refresh1", 3600));
+        assertEquals(Optional.of(PORTAL_ID), tokenStorageService.getSinglePortalId());
+
+        tokenStorageService.saveToken(OTHER_PORTAL_ID, createTokenResponse("access2", "refresh2", 3600));
+        tokenStorageService.clearToken(PORTAL_ID);
+
+        assertTrue(tokenStorageService.getAccessToken(PORTAL_ID).isEmpty());
+        assertEquals(Optional.of("access2"), tokenStorageService.getAccessToken(OTHER_PORTAL_ID));
+        assertEquals(1, tokenStorageService.getPortalCount());
+
+        tokenStorageService.saveToken(PORTAL_ID, createTokenResponse("access3", "refresh3", 3600));
+        assertTrue(tokenStorageService.getSinglePortalId().isEmpty());
+        assertEquals(2, tokenStorageService.getPortalCount());
+    }
+
+    @Test
+    @DisplayName("an expired access token should be reported missing while its refresh token is kept")
+    void getAccessToken_shouldKeepRefreshToken_whenAccessTokenExpired() {
+        // Starts close to overflow to check that expiry survives nanoTime wrapping around.
+        AtomicLong nanoTime = new AtomicLong(Long.MAX_VALUE - Duration.ofMinutes(10).toNanos());
+        tokenStorageService = new TokenStorageServiceImpl(nanoTime::get);
+        tokenStorageService.saveToken(PORTAL_ID, createTokenResponse("access123", "refresh456", 1800));
+
+        nanoTime.addAndGet(Duration.ofSeconds(1800 - 61).toNanos());
+        assertTrue(tokenStorageService.getAccessToken(PORTAL_ID).isPresent());
+
+        nanoTime.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        assertTrue(tokenStorageService.getAccessToken(PORTAL_ID).isEmpty());
+        assertEquals(Optional.of("refresh456"), tokenStorageService.getRefreshToken(PORTAL_ID));
+    }
+}
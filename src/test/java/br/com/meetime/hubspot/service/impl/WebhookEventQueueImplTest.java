@@ -0,0 +1,391 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.config.HubSpotConfig;
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import br.com.meetime.hubspot.service.WebhookEventQueue;
+import br.com.meetime.hubspot.service.WebhookService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookEventQueueImplTest {
+
+    private static final Runnable NO_OP = () -> { };
+
+    @Mock
+    private WebhookService webhookService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WebhookEventQueueImpl webhookEventQueue;
+
+    @AfterEach
+    void tearDown() {
+        if (webhookEventQueue != null) {
+            webhookEventQueue.shutdown();
+        }
+    }
+
+    private HubSpotConfig config(int laneCapacity, int lanes, HubSpotConfig.OverflowPolicy policy) {
+        return config(laneCapacity, lanes, policy, Duration.ZERO);
+    }
+
+    private HubSpotConfig config(int laneCapacity, int lanes, HubSpotConfig.OverflowPolicy policy, Duration coalescingWindow) {
+        HubSpotConfig.CoalescingConfig coalescingConfig = new HubSpotConfig.CoalescingConfig();
+        coalescingConfig.setWindow(coalescingWindow);
+        HubSpotConfig.QueueConfig queueConfig = new HubSpotConfig.QueueConfig();
+        queueConfig.setLaneCapacity(laneCapacity);
+        queueConfig.setLanes(lanes);
+        queueConfig.setOverflowPolicy(policy);
+        HubSpotConfig.WebhookConfig webhookConfig = new HubSpotConfig.WebhookConfig();
+        webhookConfig.setClientSecret("secret");
+        webhookConfig.setQueue(queueConfig);
+        webhookConfig.setCoalescing(coalescingConfig);
+        HubSpotConfig hubSpotConfig = new HubSpotConfig();
+        hubSpotConfig.setWebhook(webhookConfig);
+        return hubSpotConfig;
+    }
+
+    private WebhookEventDTO event(long eventId) {
+        return event(eventId, eventId, eventId);
+    }
+
+    private WebhookEventDTO event(long eventId, long objectId, long occurredAt) {
+        WebhookEventDTO event = new WebhookEventDTO();
+        event.setEventId(eventId);
+        event.setObjectId(objectId);
+        event.setOccurredAt(occurredAt);
+        event.setSubscriptionType("contact.creation");
+        event.setChangeFlag("NEW");
+        return event;
+    }
+
+    private WebhookEventDTO propertyChange(long eventId, long objectId, long occurredAt, String propertyName, String propertyValue) {
+        WebhookEventDTO event = event(eventId, objectId, occurredAt);
+        event.setSubscriptionType("contact.propertyChange");
+        event.setChangeFlag("UPDATED");
+        event.setPropertyName(propertyName);
+        event.setPropertyValue(propertyValue);
+        return event;
+    }
+
+    private boolean enqueue(Runnable onComplete, WebhookEventDTO... events) {
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.open(onComplete)) {
+            boolean accepted = true;
+            for (WebhookEventDTO event : events) {
+                accepted &= batch.offer(event);
+            }
+            return accepted;
+        }
+    }
+
+    @Test
+    @DisplayName("enqueue should hand events to the workers")
+    void enqueue_shouldProcessEventsInBackground() throws InterruptedException {
+        CountDownLatch processed = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            processed.countDown();
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 2, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+
+        assertTrue(enqueue(NO_OP, event(1), event(2), event(3)));
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertEquals(3.0, meterRegistry.counter("hubspot.webhook.queue.accepted").count());
+    }
+
+    @Test
+    @DisplayName("enqueue should reject the whole batch when the queue is full and policy is REJECT")
+    void enqueue_shouldRejectBatch_whenQueueFullAndPolicyReject() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(2, 1, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+
+        assertTrue(enqueue(NO_OP, event(1)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(enqueue(NO_OP, event(2), event(3)));
+
+        assertFalse(enqueue(NO_OP, event(4)));
+        assertEquals(1.0, meterRegistry.counter("hubspot.webhook.queue.rejected").count());
+        assertEquals(2, webhookEventQueue.size());
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("enqueue should keep what fits and drop the rest when policy is DROP")
+    void enqueue_shouldDropOverflow_whenPolicyDrop() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(2, 1, HubSpotConfig.OverflowPolicy.DROP), webhookService, meterRegistry);
+
+        assertTrue(enqueue(NO_OP, event(1)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(enqueue(NO_OP, event(2), event(3), event(4)));
+        assertEquals(2, webhookEventQueue.size());
+        assertEquals(1.0, meterRegistry.counter("hubspot.webhook.queue.dropped").count());
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("events for the same object should keep their order and older ones should be dropped as stale")
+    void lanes_shouldKeepPerObjectOrder_andDropStaleEvents() throws InterruptedException {
+        List<Long> processedForObject = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            WebhookWorkItem workItem = invocation.getArgument(0);
+            if (workItem.getObjectId() == 7L) {
+                processedForObject.add(workItem.getEvents().get(0).getEventId());
+            }
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(100, 4, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.open(completed::countDown)) {
+            for (long eventId = 1; eventId <= 40; eventId++) {
+                long objectId = eventId % 4 == 0 ? 7L : 100 + eventId;
+                assertTrue(batch.offer(propertyChange(eventId, objectId, eventId, "email", "v" + eventId)));
+            }
+            assertTrue(batch.offer(propertyChange(41, 7L, 1, "email", "old")));
+        }
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(4L, 8L, 12L, 16L, 20L, 24L, 28L, 32L, 36L, 40L), processedForObject);
+        assertEquals(1.0, meterRegistry.counter("hubspot.webhook.queue.stale").count());
+    }
+
+    @Test
+    @DisplayName("re-driven events should be processed even when newer events for the object were processed")
+    void openRedrive_shouldSkipStalenessCheck() throws InterruptedException {
+        when(webhookService.process(any(WebhookWorkItem.class))).thenReturn(Mono.empty());
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 2, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+        CountDownLatch live = new CountDownLatch(1);
+        CountDownLatch redriven = new CountDownLatch(1);
+
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.open(live::countDown)) {
+            batch.offer(propertyChange(2, 7L, 200, "email", "new@example.com"));
+        }
+        assertTrue(live.await(5, TimeUnit.SECONDS));
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.openRedrive(redriven::countDown)) {
+            batch.put(propertyChange(1, 7L, 100, "email", "old@example.com"));
+        }
+
+        assertTrue(redriven.await(5, TimeUnit.SECONDS));
+        verify(webhookService, times(2)).process(any(WebhookWorkItem.class));
+        assertEquals(0.0, meterRegistry.counter("hubspot.webhook.queue.stale").count());
+    }
+
+    @Test
+    @DisplayName("a creation should be processed even when a later property change for the object was processed")
+    void lanes_shouldNeverDropCreation_whenOlderThanProcessedPropertyChange() throws InterruptedException {
+        when(webhookService.process(any(WebhookWorkItem.class))).thenReturn(Mono.empty());
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 1, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+        CountDownLatch change = new CountDownLatch(1);
+        CountDownLatch creation = new CountDownLatch(1);
+
+        assertTrue(enqueue(change::countDown, propertyChange(2, 7L, 200, "email", "new@example.com")));
+        assertTrue(change.await(5, TimeUnit.SECONDS));
+        assertTrue(enqueue(creation::countDown, event(1, 7L, 100)));
+
+        assertTrue(creation.await(5, TimeUnit.SECONDS));
+        verify(webhookService, times(2)).process(any(WebhookWorkItem.class));
+        assertEquals(0.0, meterRegistry.counter("hubspot.webhook.queue.stale").count());
+    }
+
+    @Test
+    @DisplayName("a change to one property should not be dropped because a later change to another property was processed")
+    void lanes_shouldTrackStalenessPerProperty() throws InterruptedException {
+        List<String> processedProperties = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            WebhookWorkItem workItem = invocation.getArgument(0);
+            processedProperties.add(workItem.getEvents().get(0).getPropertyName());
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 1, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        CountDownLatch third = new CountDownLatch(1);
+
+        assertTrue(enqueue(first::countDown, propertyChange(2, 7L, 200, "lastname", "Silva")));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(enqueue(second::countDown, propertyChange(1, 7L, 100, "email", "new@example.com")));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(enqueue(third::countDown, propertyChange(3, 7L, 50, "email", "old@example.com")));
+
+        assertTrue(third.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("lastname", "email"), processedProperties);
+        assertEquals(1.0, meterRegistry.counter("hubspot.webhook.queue.stale").count());
+    }
+
+    @Test
+    @DisplayName("events for the same object within the window should reach the handler as one work item")
+    void coalescing_shouldMergeEventsForSameObject() throws InterruptedException {
+        List<WebhookWorkItem> workItems = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            workItems.add(invocation.getArgument(0));
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(
+                config(100, 2, HubSpotConfig.OverflowPolicy.REJECT, Duration.ofMillis(200)), webhookService, meterRegistry);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.open(completed::countDown)) {
+            batch.offer(event(1, 7L, 1));
+            batch.offer(propertyChange(2, 7L, 2, "email", "old@example.com"));
+            batch.offer(propertyChange(3, 7L, 3, "email", "new@example.com"));
+            batch.offer(propertyChange(4, 7L, 4, "phone", "123"));
+            batch.offer(event(5, 8L, 5));
+        }
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, workItems.size());
+        WebhookWorkItem merged = workItems.stream().filter(item -> item.getObjectId() == 7L).findFirst().orElseThrow();
+        assertEquals(4, merged.getEvents().size());
+        assertEquals(List.of("contact.creation", "contact.propertyChange"), List.copyOf(merged.getSubscriptionTypes()));
+        assertEquals(Map.of("email", "new@example.com", "phone", "123"), merged.getChangedProperties());
+        assertEquals(List.of("NEW", "UPDATED"), List.copyOf(merged.getChangeFlags()));
+        assertEquals(4L, merged.getLastOccurredAt());
+        assertEquals(2.5, meterRegistry.get("hubspot.webhook.coalescing.merged").summary().mean());
+    }
+
+    @Test
+    @DisplayName("a work item should not start while the previous one for the same object is still running")
+    void lanes_shouldWaitForInFlightWork_onSameObject() throws InterruptedException {
+        Sinks.Empty<Void> firstHandler = Sinks.empty();
+        List<Long> started = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            WebhookWorkItem workItem = invocation.getArgument(0);
+            started.add(workItem.getEvents().get(0).getEventId());
+            return workItem.getEvents().get(0).getEventId() == 1L ? firstHandler.asMono() : Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 1, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        try (WebhookEventQueue.Batch batch = webhookEventQueue.open(completed::countDown)) {
+            batch.offer(event(1, 7L, 1));
+            batch.offer(event(2, 7L, 2));
+            batch.offer(event(3, 8L, 3));
+        }
+
+        Thread.sleep(200);
+        assertEquals(List.of(1L, 3L), started);
+        assertEquals(1.0, meterRegistry.get("hubspot.webhook.inflight").gauge().value());
+
+        firstHandler.tryEmitEmpty();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 3L, 2L), started);
+    }
+
+    @Test
+    @DisplayName("over the pending limit, the oldest window that can start should be handed over when the oldest is in flight")
+    void coalescing_shouldEvictNextWindow_whenOldestIsInFlight() throws InterruptedException {
+        CountDownLatch processedB = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            WebhookWorkItem workItem = invocation.getArgument(0);
+            if (workItem.getObjectId() == 1L) {
+                return Mono.never();
+            }
+            if (workItem.getObjectId() == 3L) {
+                processedB.countDown();
+            }
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        HubSpotConfig hubSpotConfig = config(10, 1, HubSpotConfig.OverflowPolicy.REJECT, Duration.ofSeconds(30));
+        hubSpotConfig.getWebhook().getCoalescing().setMaxPendingObjectsPerLane(1);
+        webhookEventQueue = new WebhookEventQueueImpl(hubSpotConfig, webhookService, meterRegistry);
+
+        // Object 1 is handed over when object 2 opens a window, then stays in flight; object 2 is handed
+        // over when object 1 opens its second window, which cannot start until the first one finishes.
+        assertTrue(enqueue(NO_OP, event(1, 1L, 1), event(2, 2L, 2), event(3, 1L, 3), event(4, 3L, 4)));
+
+        assertTrue(processedB.await(5, TimeUnit.SECONDS));
+        verify(webhookService, times(3)).process(any(WebhookWorkItem.class));
+    }
+
+    @Test
+    @DisplayName("worker gauges should count work items whose handlers are still running")
+    void workerGauges_shouldReflectInFlightWork() throws InterruptedException {
+        Sinks.Empty<Void> handling = Sinks.empty();
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            return handling.asMono();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        HubSpotConfig hubSpotConfig = config(10, 2, HubSpotConfig.OverflowPolicy.REJECT);
+        hubSpotConfig.getWebhook().getQueue().setMaxInFlightPerLane(2);
+        webhookEventQueue = new WebhookEventQueueImpl(hubSpotConfig, webhookService, meterRegistry);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        assertTrue(enqueue(completed::countDown, event(1)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1.0, meterRegistry.get("hubspot.webhook.workers.active").gauge().value());
+        assertEquals(0.25, meterRegistry.get("hubspot.webhook.workers.utilization").gauge().value());
+        handling.tryEmitEmpty();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(0.0, meterRegistry.get("hubspot.webhook.workers.active").gauge().value());
+    }
+
+    @Test
+    @DisplayName("completion callback should wait for the batch to be closed")
+    void open_shouldNotComplete_untilBatchClosed() throws InterruptedException {
+        CountDownLatch processed = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            processed.countDown();
+            return Mono.empty();
+        }).when(webhookService).process(any(WebhookWorkItem.class));
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 1, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+
+        WebhookEventQueue.Batch batch = webhookEventQueue.open(completed::countDown);
+        assertTrue(batch.offer(event(1)));
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertFalse(completed.await(100, TimeUnit.MILLISECONDS));
+
+        batch.close();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("enqueue should run the completion callback once the whole batch is processed")
+    void enqueue_shouldCompleteBatch_whenAllEventsProcessed() throws InterruptedException {
+        when(webhookService.process(any(WebhookWorkItem.class))).thenReturn(Mono.empty());
+        CountDownLatch completed = new CountDownLatch(1);
+        webhookEventQueue = new WebhookEventQueueImpl(config(10, 3, HubSpotConfig.OverflowPolicy.REJECT), webhookService, meterRegistry);
+
+        assertTrue(enqueue(completed::countDown, event(1), event(2), event(3)));
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        verify(webhookService, times(3)).process(any(WebhookWorkItem.class));
+    }
+}
@@ -0,0 +1,118 @@
+package br.com.meetime.hubspot.service.impl;
+
+import br.com.meetime.hubspot.domain.dto.WebhookEventDTO;
+import br.com.meetime.hubspot.domain.dto.WebhookWorkItem;
+import br.com.meetime.hubspot.exception.WebhookDecodingException;
+import br.com.meetime.hubspot.service.ContactCacheService;
+import br.com.meetime.hubspot.service.ContactService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WebhookServiceImplTest {
+
+    private final ContactCacheService contactCacheService = mock(ContactCacheService.class);
+    private final ContactService contactService = mock(ContactService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WebhookServiceImpl webhookService = new WebhookServiceImpl(new ObjectMapper(),
+            (portalId, contactId, priority) -> Mono.empty(), contactCacheService, contactService, meterRegistry);
+
+    private static byte[] body(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("decodeEvents should emit only events with a handler and skip the others")
+    void decodeEvents_shouldSkipUnhandledSubscriptionTypes() {
+        byte[] requestBody = body("""
+                [
+                  {"eventId": 1, "subscriptionType": "company.creation", "objectId": 10, "extra": {"nested": [1, 2]}},
+                  {"eventId": 2, "portalId": 99, "subscriptionType": "CONTACT.CREATION", "objectId": 20,
+                   "attemptNumber": 0, "unknown": [{"a": 1}], "changeSource": "CRM"},
+                  {"eventId": 3, "objectId": 30},
+                  {"eventId": 4, "subscriptionType": "contact.creation", "objectId": "40"}
+                ]""");
+
+        StepVerifier.create(webhookService.decodeEvents(requestBody))
+                .assertNext(event -> {
+                    assertEquals(2L, event.getEventId());
+                    assertEquals(99L, event.getPortalId());
+                    assertEquals(20L, event.getObjectId());
+                    assertEquals(0, event.getAttemptNumber());
+                    assertEquals("CRM", event.getChangeSource());
+                })
+                .assertNext(event -> assertEquals(40L, event.getObjectId()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("decodeEvents should reject and count events whose ids or occurredAt are not integers")
+    void decodeEvents_shouldRejectNonNumericIds() {
+        byte[] requestBody = body("""
+                [
+                  {"eventId": 1, "subscriptionType": "contact.creation", "objectId": "abc"},
+                  {"eventId": "2x", "subscriptionType": "contact.creation", "objectId": 20},
+                  {"eventId": 3, "subscriptionType": "contact.creation", "objectId": 30, "occurredAt": "yesterday"},
+                  {"eventId": 4, "subscriptionType": "contact.creation", "objectId": 40, "occurredAt": 1.5},
+                  {"eventId": "5", "objectId": "x", "subscriptionType": "company.creation"},
+                  {"eventId": 6, "subscriptionType": "contact.creation", "objectId": " 60 ", "occurredAt": null}
+                ]""");
+
+        StepVerifier.create(webhookService.decodeEvents(requestBody))
+                .assertNext(event -> {
+                    assertEquals(6L, event.getEventId());
+                    assertEquals(60L, event.getObjectId());
+                    assertNull(event.getOccurredAt());
+                })
+                .verifyComplete();
+
+        assertEquals(4.0, meterRegistry.get("hubspot.webhook.events.rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("decodeEvents should fail with WebhookDecodingException after the events read so far when the body is malformed")
+    void decodeEvents_shouldFailAtMalformedBody() {
+        byte[] requestBody = body("[{\"eventId\": 1, \"subscriptionType\": \"contact.creation\"}, {\"eventId\": ");
+
+        StepVerifier.create(webhookService.decodeEvents(requestBody))
+                .assertNext(event -> assertEquals(1L, event.getEventId()))
+                .expectError(WebhookDecodingException.class)
+                .verify();
+
+        StepVerifier.create(webhookService.decodeEvents(body("{\"eventId\": 1}")))
+                .expectError(WebhookDecodingException.class)
+                .verify();
+        assertEquals(2.0, meterRegistry.get("hubspot.webhook.batches.malformed").counter().count());
+    }
+
+    @Test
+    @DisplayName("contact webhooks should patch or drop the cached contact and forget deleted emails")
+    void process_shouldKeepContactCacheCurrent() {
+        WebhookEventDTO propertyChange = new WebhookEventDTO();
+        propertyChange.setPortalId(99L);
+        propertyChange.setObjectId(20L);
+        propertyChange.setSubscriptionType("contact.propertyChange");
+        propertyChange.setPropertyName("firstname");
+        propertyChange.setPropertyValue("Uno");
+        WebhookEventDTO deletion = new WebhookEventDTO();
+        deletion.setPortalId(99L);
+        deletion.setObjectId(30L);
+        deletion.setSubscriptionType("contact.deletion");
+
+        StepVerifier.create(webhookService.process(new WebhookWorkItem(propertyChange))).verifyComplete();
+        StepVerifier.create(webhookService.process(new WebhookWorkItem(deletion))).verifyComplete();
+
+        verify(contactCacheService).applyPropertyChanges(99L, 20L, Map.of("firstname", "Uno"));
+        verify(contactCacheService).invalidate(99L, 30L);
+        verify(contactService).forgetContact(99L, 30L);
+    }
+}